@@ -15,6 +15,7 @@ import java.awt.MediaTracker;
 import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
 import java.net.URL;
 import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
@@ -156,6 +157,11 @@ public class BoardPainter
 
     private int m_width;
 
+    /** Diameter of m_shadowImage. */
+    private int m_shadowImageSize;
+
+    private double m_shadowImageScale;
+
     private static int s_cachedFontFieldSize;
 
     private static final AlphaComposite COMPOSITE_3
@@ -171,6 +177,9 @@ public class BoardPainter
 
     private final Image m_image;
 
+    /** Pre-rendered shadow of a stone. */
+    private Image m_shadowImage;
+
     private void drawBackground(Graphics graphics)
     {
         if (m_image == null)
@@ -314,20 +323,53 @@ public class BoardPainter
         int size = m_fieldSize - 2 * Field.getStoneMargin(m_fieldSize);
         int offsetX = getShadowOffset() / 2; // Relates to stone gradient
         int offsetY = getShadowOffset();
+        double scale = Field.getImageScale(graphics2D);
+        Image image = (scale > 0 ? getShadowImage(size, scale) : null);
+        graphics.setColor(Color.black);
         for (int x = 0; x < m_size; ++x)
             for (int y = 0; y < m_size; ++y)
             {
                 if (field[x][y].getColor() == EMPTY)
                     continue;
                 Point location = getCenter(x, y);
-                graphics.setColor(Color.black);
-                graphics.fillOval(location.x - size / 2 + offsetX,
-                                  location.y - size / 2 + offsetY,
-                                  size, size);
+                int left = location.x - size / 2 + offsetX;
+                int top = location.y - size / 2 + offsetY;
+                if (! graphics.hitClip(left, top, size, size))
+                    continue;
+                if (image != null)
+                    graphics.drawImage(image, left, top, size, size, null);
+                else
+                    graphics.fillOval(left, top, size, size);
             }
         graphics.setPaintMode();
     }
 
+    /** Get the pre-rendered shadow of a stone.
+        @param size The diameter of the shadow.
+        @param scale The scale of the device space to the user space of the
+        graphics object, the image is rendered with this resolution. */
+    private Image getShadowImage(int size, double scale)
+    {
+        if (m_shadowImage != null && size == m_shadowImageSize
+            && scale == m_shadowImageScale)
+            return m_shadowImage;
+        int imageSize = Math.max((int)Math.ceil(scale * size), 1);
+        BufferedImage image =
+            new BufferedImage(imageSize, imageSize,
+                              BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                  RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.scale((double)imageSize / size, (double)imageSize / size);
+        graphics.setColor(Color.black);
+        graphics.fillOval(0, 0, size, size);
+        graphics.dispose();
+        m_shadowImage = image;
+        m_shadowImageSize = size;
+        m_shadowImageScale = scale;
+        return image;
+    }
+
     private void drawLabel(Graphics graphics, Point location,
                            String string)
     {
@@ -11,13 +11,17 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
 import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.util.ObjectUtil;
 
 /** State of a field on the board. */
 public class Field
@@ -27,6 +31,28 @@ public class Field
     {
     }
 
+    /** Copy constructor.
+        Copies the state of the field, but not temporary data used while
+        drawing. */
+    public Field(Field field)
+    {
+        m_crossHair = field.m_crossHair;
+        m_cursor = field.m_cursor;
+        m_lastMoveMarker = field.m_lastMoveMarker;
+        m_mark = field.m_mark;
+        m_markCircle = field.m_markCircle;
+        m_markSquare = field.m_markSquare;
+        m_markTriangle = field.m_markTriangle;
+        m_influenceSet = field.m_influenceSet;
+        m_select = field.m_select;
+        m_influence = field.m_influence;
+        m_label = field.m_label;
+        m_fieldColor = field.m_fieldColor;
+        m_territory = field.m_territory;
+        m_color = field.m_color;
+        m_ghostStone = field.m_ghostStone;
+    }
+
     public void clearInfluence()
     {
         m_influenceSet = false;
@@ -121,6 +147,20 @@ public class Field
         return m_ghostStone;
     }
 
+    /** Get the resolution for pre-rendered images of stones and shadows.
+        @return The scale of the device space to the user space of the
+        graphics object, or 0, if the transform is not only a positive
+        scaling and translation (e.g. the page transform for printing in
+        landscape orientation). Images should not be used in this case. */
+    static double getImageScale(Graphics2D graphics)
+    {
+        AffineTransform transform = graphics.getTransform();
+        if (transform.getShearX() != 0 || transform.getShearY() != 0
+            || transform.getScaleX() <= 0 || transform.getScaleY() <= 0)
+            return 0;
+        return Math.hypot(transform.getScaleX(), transform.getShearY());
+    }
+
     public static int getStoneMargin(int size)
     {
         return size / 17;
@@ -141,6 +181,27 @@ public class Field
         return m_influenceSet;
     }
 
+    /** Check if the state of the field is equal to another field.
+        @return true, if both fields would be drawn the same way. */
+    public boolean isEqualState(Field field)
+    {
+        return (m_crossHair == field.m_crossHair
+                && m_cursor == field.m_cursor
+                && m_lastMoveMarker == field.m_lastMoveMarker
+                && m_mark == field.m_mark
+                && m_markCircle == field.m_markCircle
+                && m_markSquare == field.m_markSquare
+                && m_markTriangle == field.m_markTriangle
+                && m_influenceSet == field.m_influenceSet
+                && m_select == field.m_select
+                && m_influence == field.m_influence
+                && ObjectUtil.equals(m_label, field.m_label)
+                && ObjectUtil.equals(m_fieldColor, field.m_fieldColor)
+                && m_territory == field.m_territory
+                && m_color == field.m_color
+                && m_ghostStone == field.m_ghostStone);
+    }
+
     public void setFieldBackground(Color color)
     {
         m_fieldColor = color;
@@ -243,9 +304,8 @@ public class Field
 
     private static int s_cachedFontFieldSize;
 
-    private int m_paintSizeBlack;
-
-    private int m_paintSizeWhite;
+    /** Field size of the images in s_stoneImage. */
+    private static int s_stoneImageSize;
 
     private int m_size;
 
@@ -300,8 +360,15 @@ public class Field
     private static final Color COLOR_STONE_WHITE_BRIGHT
         = Color.decode("#ffffff");
 
+    private static double s_stoneImageScale;
+
     private static Font s_cachedFont;
 
+    /** Pre-rendered black and white stones.
+        The gradient paint is expensive, so the stones are rendered once for
+        the current field size and device scale and drawn as images. */
+    private static final BufferedImage[] s_stoneImage = new BufferedImage[2];
+
     private GoColor m_color = EMPTY;
 
     private GoColor m_ghostStone;
@@ -310,10 +377,6 @@ public class Field
 
     private Graphics2D m_graphics2D;
 
-    private RadialGradientPaint m_paintBlack;
-
-    private RadialGradientPaint m_paintWhite;
-
     private void drawCircle(Color color)
     {
         m_graphics.setColor(color);
@@ -491,19 +554,23 @@ public class Field
     private void drawStone(GoColor color, Color colorNormal,
                            Color colorBright, boolean isGhostStone)
     {
-        int margin = getStoneMargin(m_size);
+        if (isGhostStone)
+            setComposite(COMPOSITE_8);
         if (m_graphics2D != null && m_size >= 7)
         {
-            RadialGradientPaint paint =
-                getPaint(color, m_size, colorNormal, colorBright);
-            m_graphics2D.setPaint(paint);
-        }
-        else
-        {
-            m_graphics.setColor(colorNormal);
+            double scale = getImageScale(m_graphics2D);
+            if (scale > 0)
+            {
+                BufferedImage image = getStoneImage(color, m_size, scale,
+                                                    colorNormal, colorBright);
+                m_graphics2D.drawImage(image, 0, 0, m_size, m_size, null);
+            }
+            else
+                paintStone(m_graphics2D, m_size, colorNormal, colorBright);
+            return;
         }
-        if (isGhostStone)
-            setComposite(COMPOSITE_8);
+        int margin = getStoneMargin(m_size);
+        m_graphics.setColor(colorNormal);
         m_graphics.fillOval(margin, margin,
                             m_size - 2 * margin, m_size - 2 * margin);
     }
@@ -534,42 +601,63 @@ public class Field
         m_graphics2D.setPaintMode();
     }
 
-    private RadialGradientPaint getPaint(GoColor color, int size,
-                                         Color colorNormal,
-                                         Color colorBright)
-    {
-        RadialGradientPaint paint;
-        int paintSize;
-        if (color == BLACK)
-        {
-            paint = m_paintBlack;
-            paintSize = m_paintSizeBlack;
-        }
-        else
+    /** Get the image of a stone.
+        @param color The color of the stone.
+        @param size The field size.
+        @param scale The scale of the device space to the user space of the
+        graphics object, the image is rendered with this resolution.
+        @param colorNormal The color of the stone.
+        @param colorBright The color of the highlight of the stone.
+        @return An image of a field with the stone on a transparent
+        background. */
+    private static synchronized BufferedImage getStoneImage(GoColor color,
+                                                            int size,
+                                                            double scale,
+                                                            Color colorNormal,
+                                                            Color colorBright)
+    {
+        if (size != s_stoneImageSize || scale != s_stoneImageScale)
         {
-            assert color == WHITE;
-            paint = m_paintWhite;
-            paintSize = m_paintSizeWhite;
+            s_stoneImage[0] = null;
+            s_stoneImage[1] = null;
+            s_stoneImageSize = size;
+            s_stoneImageScale = scale;
         }
-        if (size == paintSize && paint != null)
-            return paint;
+        int index = (color == BLACK ? 0 : 1);
+        if (s_stoneImage[index] != null)
+            return s_stoneImage[index];
+        int imageSize = Math.max((int)Math.ceil(scale * size), 1);
+        BufferedImage image =
+            new BufferedImage(imageSize, imageSize,
+                              BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                  RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.scale((double)imageSize / size, (double)imageSize / size);
+        paintStone(graphics, size, colorNormal, colorBright);
+        graphics.dispose();
+        s_stoneImage[index] = image;
+        return image;
+    }
+
+    /** Paint a stone with a gradient.
+        @param graphics The graphics object.
+        @param size The field size.
+        @param colorNormal The color of the stone.
+        @param colorBright The color of the highlight of the stone. */
+    private static void paintStone(Graphics2D graphics, int size,
+                                   Color colorNormal, Color colorBright)
+    {
         Point2D.Double center = new Point2D.Double(0.43 * size, 0.21 * size);
         Point2D.Double radius1 = new Point2D.Double(0.47 * size, -0.15 * size);
         Point2D.Double radius2 = new Point2D.Double(0.08 * size, 0.25 * size);
         double focus = -0.4;
-        paint = new RadialGradientPaint(center, radius1, radius2, focus,
-                                        colorBright, colorNormal);
-        if (color == BLACK)
-        {
-            m_paintBlack = paint;
-            m_paintSizeBlack = size;
-        }
-        else
-        {
-            m_paintWhite = paint;
-            m_paintSizeWhite = size;
-        }
-        return paint;
+        graphics.setPaint(new RadialGradientPaint(center, radius1, radius2,
+                                                  focus, colorBright,
+                                                  colorNormal));
+        int margin = getStoneMargin(size);
+        graphics.fillOval(margin, margin, size - 2 * margin,
+                          size - 2 * margin);
     }
 
     private void setComposite(AlphaComposite composite)
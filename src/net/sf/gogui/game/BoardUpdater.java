@@ -15,70 +15,263 @@ import net.sf.gogui.go.PointList;
 import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gui.MessageDialogs;
 
-/** Updates a go.Board to a node in a GameTree. */
+/** Updates a go.Board to a node in a GameTree.
+    The updater remembers the path of the last update. If the same board is
+    updated again for the same tree and was not changed in between, only
+    the moves of the nodes after the common ancestor of the old and new node
+    are taken back and the moves of the new path are played, so that
+    stepping through a game costs time proportional to the distance between
+    the nodes, not to their depth. The new node itself is always processed
+    again, because it is the node that Game modifies. The board is
+    initialized and the whole path is replayed if nodes with setup stones or
+    handicap stones stored as moves would have to be taken back, or if a
+    game ruler is attached to the board. */
 public class BoardUpdater
 {
     public BoardUpdater()
     {
         m_nodes = new ArrayList<ConstNode>(400);
+        m_steps = new ArrayList<Step>(400);
     }
 
     public void update(ConstGameTree tree, ConstNode currentNode, Board board)
     {
-        board.init(tree.getBoardSize());
         int handicap = tree.getGameInfoConst(currentNode).getHandicap();
         NodeUtil.getPathToRoot(currentNode, m_nodes);
-        int nuMoves = 0;
-        boolean isFirstPlacement = true;
-        boolean isHandicapSetupDone = false;
-        boolean isInInitialBlackMoveSequence = true;
-        for (int i = m_nodes.size() - 1; i >= 0; --i)
+        int start = getIncrementalStart(tree, board, handicap);
+        if (board.isGameRulerAttached())
+            m_snapshotCache = null;
+        else
+            m_snapshotCache = tree.getSnapshotCache();
+        if (start > 0)
         {
-            ConstNode node = m_nodes.get(i);
-            GoColor player = node.getPlayer();
-            if (node.hasSetup())
-            {
-                ConstPointList setupBlack = node.getSetup(BLACK);
-                ConstPointList setupWhite = node.getSetup(WHITE);
-                ConstPointList setupEmpty = node.getSetup(EMPTY);
-                if (handicap > 0 && isFirstPlacement
-                    && setupBlack.size() == handicap && setupWhite.isEmpty()
-                    && setupEmpty.isEmpty())
-                {
-                    board.setupHandicap(setupBlack);
-                    isHandicapSetupDone = true;
-                }
-                else
-                    newSetup(board, setupBlack, setupWhite, setupEmpty, player);
-                isFirstPlacement = false;
-                isInInitialBlackMoveSequence = false;
-            }
-            else if (player != null)
-                board.setToMove(player);
-            Move move = node.getMove();
-            if (move != null)
+            Step step = m_steps.get(start - 1);
+            board.undo(board.getNumberMoves() - step.m_numberBoardMoves);
+            m_nuMoves = step.m_nuMoves;
+            m_isFirstPlacement = step.m_isFirstPlacement;
+            m_isHandicapSetupDone = step.m_isHandicapSetupDone;
+            m_isInInitialBlackMoveSequence =
+                step.m_isInInitialBlackMoveSequence;
+            m_numberSteps = start;
+        }
+        else
+        {
+            m_numberSteps = 0;
+            if (! restoreSnapshot(tree, board, handicap))
             {
-                board.play(move);
-                ++nuMoves;
-                isFirstPlacement = false;
-                if (move.getColor() != BLACK)
-                    isInInitialBlackMoveSequence = false;
-                // Files from the KGS Go server with Chines rules store
-                // handicap stones as moves, not as setup as specified by SGF
-                if (handicap > 0 && ! isHandicapSetupDone &&
-                    isInInitialBlackMoveSequence && nuMoves == handicap)
-                {
-                    setupMovesAsHandicap(board);
-                    isHandicapSetupDone = true;
-                }
+                board.init(tree.getBoardSize());
+                m_nuMoves = 0;
+                m_isFirstPlacement = true;
+                m_isHandicapSetupDone = false;
+                m_isInInitialBlackMoveSequence = true;
             }
         }
+        for (int i = m_nodes.size() - 1 - m_numberSteps; i >= 0; --i)
+            updateNode(m_nodes.get(i), board, handicap);
+        GoColor toMove = m_steps.get(m_numberSteps - 1).m_toMove;
+        if (board.getToMove() != toMove)
+            board.setToMove(toMove);
+        m_board = board;
+        m_tree = tree;
+        m_handicap = handicap;
+        m_hash = board.getHash();
+        m_numberBoardMoves = board.getNumberMoves();
+    }
+
+    /** State after updating the board to a node of the path. */
+    private static class Step
+    {
+        public ConstNode m_node;
+
+        /** Node cannot be taken back by undoing its move.
+            True for nodes that setup a new position. */
+        public boolean m_isBarrier;
+
+        public int m_numberBoardMoves;
+
+        public GoColor m_toMove;
+
+        public int m_nuMoves;
+
+        public boolean m_isFirstPlacement;
+
+        public boolean m_isHandicapSetupDone;
+
+        public boolean m_isInInitialBlackMoveSequence;
     }
 
     /** Local variable used in update.
         Member variable for avoiding frequent new memory allocations. */
     private final ArrayList<ConstNode> m_nodes;
 
+    /** Steps of the last update from the root to the current node.
+        Only the first m_numberSteps elements are valid, the other elements
+        are kept for reuse. */
+    private final ArrayList<Step> m_steps;
+
+    private int m_numberSteps;
+
+    /** Snapshot cache used in the current update.
+        Null, if the board has a game ruler attached. */
+    private SnapshotCache m_snapshotCache;
+
+    /** Board of the last update. */
+    private Board m_board;
+
+    /** Tree of the last update. */
+    private ConstGameTree m_tree;
+
+    /** Handicap of the last update. */
+    private int m_handicap;
+
+    /** Board hash after the last update. */
+    private long m_hash;
+
+    /** Number of board moves after the last update. */
+    private int m_numberBoardMoves;
+
+    private int m_nuMoves;
+
+    private boolean m_isFirstPlacement;
+
+    private boolean m_isHandicapSetupDone;
+
+    private boolean m_isInInitialBlackMoveSequence;
+
+    /** Get the number of path nodes that can be kept from the last update.
+        @return The number of nodes from the root that are common to the old
+        and new path, excluding the new node, or 0, if the board needs to be
+        initialized and the whole path replayed. */
+    private int getIncrementalStart(ConstGameTree tree, Board board,
+                                    int handicap)
+    {
+        if (board != m_board || tree != m_tree || handicap != m_handicap
+            || board.isGameRulerAttached()
+            || board.getSize() != tree.getBoardSize()
+            || board.getNumberMoves() != m_numberBoardMoves
+            || board.getHash() != m_hash)
+            return 0;
+        int maxStart = Math.min(m_numberSteps, m_nodes.size() - 1);
+        int start = 0;
+        while (start < maxStart
+               && m_steps.get(start).m_node
+                  == m_nodes.get(m_nodes.size() - 1 - start))
+            ++start;
+        for (int i = start; i < m_numberSteps; ++i)
+            if (m_steps.get(i).m_isBarrier)
+                return 0;
+        return start;
+    }
+
+    private void updateNode(ConstNode node, Board board, int handicap)
+    {
+        boolean isBarrier = false;
+        GoColor player = node.getPlayer();
+        if (node.hasSetup())
+        {
+            ConstPointList setupBlack = node.getSetup(BLACK);
+            ConstPointList setupWhite = node.getSetup(WHITE);
+            ConstPointList setupEmpty = node.getSetup(EMPTY);
+            if (handicap > 0 && m_isFirstPlacement
+                && setupBlack.size() == handicap && setupWhite.isEmpty()
+                && setupEmpty.isEmpty())
+            {
+                board.setupHandicap(setupBlack);
+                m_isHandicapSetupDone = true;
+            }
+            else
+                newSetup(board, setupBlack, setupWhite, setupEmpty, player);
+            m_isFirstPlacement = false;
+            m_isInInitialBlackMoveSequence = false;
+            isBarrier = true;
+        }
+        else if (player != null)
+            board.setToMove(player);
+        Move move = node.getMove();
+        if (move != null)
+        {
+            board.play(move);
+            ++m_nuMoves;
+            m_isFirstPlacement = false;
+            if (move.getColor() != BLACK)
+                m_isInInitialBlackMoveSequence = false;
+            // Files from the KGS Go server with Chines rules store
+            // handicap stones as moves, not as setup as specified by SGF
+            if (handicap > 0 && ! m_isHandicapSetupDone &&
+                m_isInInitialBlackMoveSequence && m_nuMoves == handicap)
+            {
+                setupMovesAsHandicap(board);
+                m_isHandicapSetupDone = true;
+                isBarrier = true;
+            }
+        }
+        addStep(node, isBarrier, board);
+        if (m_snapshotCache != null
+            && m_snapshotCache.isStorePosition(m_numberSteps, node))
+        {
+            SnapshotCache.Snapshot snapshot = m_snapshotCache.store(node);
+            snapshot.m_board.copyFrom(board);
+            snapshot.m_handicap = handicap;
+            snapshot.m_nuMoves = m_nuMoves;
+            snapshot.m_isFirstPlacement = m_isFirstPlacement;
+            snapshot.m_isHandicapSetupDone = m_isHandicapSetupDone;
+            snapshot.m_isInInitialBlackMoveSequence =
+                m_isInInitialBlackMoveSequence;
+        }
+    }
+
+    private void addStep(ConstNode node, boolean isBarrier, Board board)
+    {
+        Step step;
+        if (m_numberSteps < m_steps.size())
+            step = m_steps.get(m_numberSteps);
+        else
+        {
+            step = new Step();
+            m_steps.add(step);
+        }
+        ++m_numberSteps;
+        step.m_node = node;
+        step.m_isBarrier = isBarrier;
+        step.m_numberBoardMoves = board.getNumberMoves();
+        step.m_toMove = board.getToMove();
+        step.m_nuMoves = m_nuMoves;
+        step.m_isFirstPlacement = m_isFirstPlacement;
+        step.m_isHandicapSetupDone = m_isHandicapSetupDone;
+        step.m_isInInitialBlackMoveSequence = m_isInInitialBlackMoveSequence;
+    }
+
+    /** Restore the position of the nearest ancestor of the current node
+        from the snapshot cache.
+        The steps of the path to the ancestor are marked as barriers,
+        because their state is not known, so that a later update that needs
+        to take back moves beyond the ancestor starts again from the cache.
+        @return true, if a position was found in the cache. */
+    private boolean restoreSnapshot(ConstGameTree tree, Board board,
+                                    int handicap)
+    {
+        if (m_snapshotCache == null)
+            return false;
+        for (int i = 1; i < m_nodes.size(); ++i)
+        {
+            SnapshotCache.Snapshot snapshot =
+                m_snapshotCache.get(m_nodes.get(i));
+            if (snapshot == null || snapshot.m_handicap != handicap
+                || snapshot.m_board.getSize() != tree.getBoardSize())
+                continue;
+            board.copyFrom(snapshot.m_board);
+            m_nuMoves = snapshot.m_nuMoves;
+            m_isFirstPlacement = snapshot.m_isFirstPlacement;
+            m_isHandicapSetupDone = snapshot.m_isHandicapSetupDone;
+            m_isInInitialBlackMoveSequence =
+                snapshot.m_isInInitialBlackMoveSequence;
+            for (int j = m_nodes.size() - 1; j >= i; --j)
+                addStep(m_nodes.get(j), true, board);
+            return true;
+        }
+        return false;
+    }
+
     /** Initialize board with new setup from merging the current position
         with the setup properties from a node. */
     private void newSetup(Board board, ConstPointList setupBlack,
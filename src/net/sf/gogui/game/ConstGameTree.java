@@ -12,5 +12,10 @@ public interface ConstGameTree
 
     ConstNode getRootConst();
 
+    /** Get the cache of board positions for nodes of this tree.
+        The cache is not part of the state of the tree and can be modified
+        for const trees. */
+    SnapshotCache getSnapshotCache();
+
     boolean hasVariations();
 }
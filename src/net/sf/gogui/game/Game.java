@@ -175,6 +175,7 @@ public class Game
     public void keepOnlyMainVariation()
     {
         m_tree.keepOnlyMainVariation();
+        clearSnapshots();
         setModified();
     }
 
@@ -317,6 +318,7 @@ public class Game
             || color.equals(m_board.getToMove()))
             setModified();
         m_current.setPlayer(color);
+        clearSnapshots();
         updateBoard();
     }
 
@@ -360,6 +362,7 @@ public class Game
     {
         assert p != null;
         m_current.removeSetup(p);
+        clearSnapshots();
         Node father = m_current.getFather();
         if (father != null)
         {
@@ -403,6 +406,7 @@ public class Game
         Node oldCurrentNode = m_current;
         m_current = father;
         m_current.removeChild(oldCurrentNode);
+        clearSnapshots();
         setModified();
     }
 
@@ -410,6 +414,7 @@ public class Game
     public void truncateChildren()
     {
         NodeUtil.truncateChildren(m_current);
+        clearSnapshots();
         setModified();
     }
 
@@ -429,6 +434,14 @@ public class Game
 
     private final Clock m_clock;
 
+    /** Clear the board positions cached for the tree.
+        Needs to be called after changing the current node or removing nodes
+        from the tree. */
+    private void clearSnapshots()
+    {
+        m_tree.getSnapshotCache().clear();
+    }
+
     private void setModified()
     {
         m_modified = true;
@@ -106,6 +106,11 @@ public class GameTree
         return m_root;
     }
 
+    public SnapshotCache getSnapshotCache()
+    {
+        return m_snapshotCache;
+    }
+
     public boolean hasVariations()
     {
         ConstNode node = m_root;
@@ -132,6 +137,8 @@ public class GameTree
 
     private final Node m_root;
 
+    private final SnapshotCache m_snapshotCache = new SnapshotCache();
+
     private void setDate()
     {
         Calendar cal = Calendar.getInstance();
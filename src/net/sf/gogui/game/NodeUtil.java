@@ -81,21 +81,30 @@ public final class NodeUtil
         no such node exists. */
     public static ConstNode findByMoveNumber(ConstNode node, int moveNumber)
     {
-        int maxMoveNumber = getMoveNumber(node) + getMovesLeft(node);
+        int currentMoveNumber = getMoveNumber(node);
+        int maxMoveNumber = currentMoveNumber + getMovesLeft(node);
         if (moveNumber < 0 || moveNumber >  maxMoveNumber)
             return null;
-        if (moveNumber <= getMoveNumber(node))
+        if (moveNumber <= currentMoveNumber)
         {
             while (node.getFatherConst() != null
-                   && (getMoveNumber(node) > moveNumber
+                   && (currentMoveNumber > moveNumber
                        || node.getMove() == null))
+            {
+                if (node.getMove() != null)
+                    --currentMoveNumber;
                 node = node.getFatherConst();
+            }
         }
         else
         {
             while (node.getChildConst() != null
-                   && getMoveNumber(node) < moveNumber)
+                   && currentMoveNumber < moveNumber)
+            {
                 node = node.getChildConst();
+                if (node.getMove() != null)
+                    ++currentMoveNumber;
+            }
         }
         return node;
     }
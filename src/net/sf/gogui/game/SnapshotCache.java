@@ -0,0 +1,157 @@
+// SnapshotCache.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoPoint;
+
+/** Cache of board positions for nodes of a game tree.
+    Used by BoardUpdater to start from the position of the nearest ancestor
+    in the cache, instead of replaying all moves from the root node, if the
+    board cannot be updated incrementally. Positions are stored for the
+    nodes at every getInterval()-th position of the paths that the board
+    was updated to. If the cache is full, the least recently used position
+    is removed.
+    A stored position includes the moves played since the last setup, so
+    it needs memory proportional to the number of these moves (about 50 kB
+    for a position after 200 moves on a 19x19 board).
+    The cache does not notice changes of nodes. Code that changes the
+    moves, setup stones or player of nodes that are in the cache or have
+    descendants in the cache, must call clear() (Game does this for its
+    changes of the current node). */
+public final class SnapshotCache
+{
+    /** Default for getInterval(). */
+    public static final int DEFAULT_INTERVAL = 50;
+
+    /** Default for getMaxSnapshots(). */
+    public static final int DEFAULT_MAX_SNAPSHOTS = 64;
+
+    public SnapshotCache()
+    {
+        m_interval = DEFAULT_INTERVAL;
+        m_maxSnapshots = DEFAULT_MAX_SNAPSHOTS;
+        m_snapshots = new LinkedHashMap<ConstNode,Snapshot>(16, 0.75f, true);
+        m_unused = new ArrayList<Snapshot>();
+    }
+
+    public void clear()
+    {
+        m_unused.addAll(m_snapshots.values());
+        m_snapshots.clear();
+    }
+
+    /** Number of nodes of a path between stored positions. */
+    public int getInterval()
+    {
+        return m_interval;
+    }
+
+    /** Maximum number of stored positions. */
+    public int getMaxSnapshots()
+    {
+        return m_maxSnapshots;
+    }
+
+    public int getNumberSnapshots()
+    {
+        return m_snapshots.size();
+    }
+
+    /** Set the number of nodes of a path between stored positions.
+        Clears the cache.
+        @param interval The interval; values smaller than 1 are treated as
+        1. */
+    public void setInterval(int interval)
+    {
+        m_interval = Math.max(interval, 1);
+        clear();
+    }
+
+    /** Set the maximum number of stored positions.
+        Also releases the memory of positions that are no longer in the
+        cache.
+        @param maxSnapshots The maximum number; zero disables the cache. */
+    public void setMaxSnapshots(int maxSnapshots)
+    {
+        assert maxSnapshots >= 0;
+        m_maxSnapshots = maxSnapshots;
+        Iterator<Snapshot> i = m_snapshots.values().iterator();
+        while (m_snapshots.size() > m_maxSnapshots)
+        {
+            i.next();
+            i.remove();
+        }
+        m_unused.clear();
+    }
+
+    /** Position after updating a board to a node. */
+    static final class Snapshot
+    {
+        public final Board m_board = new Board(GoPoint.DEFAULT_SIZE);
+
+        public int m_handicap;
+
+        public int m_nuMoves;
+
+        public boolean m_isFirstPlacement;
+
+        public boolean m_isHandicapSetupDone;
+
+        public boolean m_isInInitialBlackMoveSequence;
+    }
+
+    /** Get the stored position of a node.
+        Marks the position as recently used.
+        @return The position or null, if the node is not in the cache. */
+    Snapshot get(ConstNode node)
+    {
+        return m_snapshots.get(node);
+    }
+
+    /** Check if a position should be stored for a node of a path.
+        @param pathLength The number of nodes of the path from the root to
+        the node.
+        @param node The node. */
+    boolean isStorePosition(int pathLength, ConstNode node)
+    {
+        return (m_maxSnapshots > 0 && pathLength % m_interval == 0
+                && ! m_snapshots.containsKey(node));
+    }
+
+    /** Create a position in the cache.
+        Removes the least recently used position, if the cache is full.
+        The caller needs to initialize the position.
+        @param node The node, which must not be in the cache. */
+    Snapshot store(ConstNode node)
+    {
+        assert m_maxSnapshots > 0;
+        assert ! m_snapshots.containsKey(node);
+        Snapshot snapshot;
+        if (m_snapshots.size() >= m_maxSnapshots)
+        {
+            Iterator<Snapshot> i = m_snapshots.values().iterator();
+            snapshot = i.next();
+            i.remove();
+        }
+        else if (! m_unused.isEmpty())
+            snapshot = m_unused.remove(m_unused.size() - 1);
+        else
+            snapshot = new Snapshot();
+        m_snapshots.put(node, snapshot);
+        return snapshot;
+    }
+
+    private int m_interval;
+
+    private int m_maxSnapshots;
+
+    /** Stored positions in order of their last use. */
+    private final LinkedHashMap<ConstNode,Snapshot> m_snapshots;
+
+    /** Positions removed by clear() kept for reuse. */
+    private final ArrayList<Snapshot> m_unused;
+}
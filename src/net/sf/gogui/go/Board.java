@@ -78,14 +78,24 @@ implements ConstBoard
         opponent moves or by suicide. */
     public int getCaptured(GoColor c)
     {
-        return m_captured.get(c);
+        return m_captured[c.ordinal()];
     }
 
     /** Get state of a point on the board.
         @return BLACK, WHITE or EMPTY */
     public GoColor getColor(GoPoint p)
     {
-        return m_color[p.getIndex()];
+        return m_core.getColor(p);
+    }
+
+    /** Get the Zobrist hash of the position.
+        The hash depends only on the stones on the board.
+        @return The exclusive or of the keys of all stones.
+        @see Zobrist
+        @see #getSituationalHash() */
+    public long getHash()
+    {
+        return m_core.getHash();
     }
 
     /** Get location of handicap stones for a given board size.
@@ -102,6 +112,8 @@ implements ConstBoard
     /** Opponent stones captured in last move.
         Does not include player stones killed by suicide.
         Requires that there is a last move (or setup stone).
+        The returned list is reused by the board and only valid until the
+        next move is played or taken back.
         @return List of opponent stones (go.Point) captured in last move;
         empty if none were killed or there is no last move.
         @see #getSuicide() */
@@ -127,7 +139,7 @@ implements ConstBoard
         @see #getMove */
     public int getNumberMoves()
     {
-        return m_stack.size();
+        return m_stackSize;
     }
 
     /** Get a move from the sequence of moves played so far.
@@ -136,6 +148,7 @@ implements ConstBoard
         @see #getNumberMoves() */
     public Move getMove(int i)
     {
+        assert i < m_stackSize;
         return m_stack.get(i).m_move;
     }
 
@@ -158,6 +171,15 @@ implements ConstBoard
         return m_setupPlayer;
     }
 
+    /** Get the Zobrist hash of the position and the color to move.
+        @return The hash of the stones combined with the key for the color
+        to move.
+        @see #getHash() */
+    public long getSituationalHash()
+    {
+        return m_core.getHash() ^ Zobrist.getToMoveKey(m_toMove);
+    }
+
     /** Get board size.
         @return The board size. */
     public int getSize()
@@ -168,6 +190,12 @@ implements ConstBoard
     /** Get stones of a block. */
     public void getStones(GoPoint p, GoColor color, PointList stones)
     {
+        if (color.isBlackWhite())
+        {
+            if (getColor(p) == color)
+                m_core.getStones(p, stones);
+            return;
+        }
         assert m_mark.isCleared();
         findStones(p, color, stones);
         m_mark.clear(stones);
@@ -178,7 +206,8 @@ implements ConstBoard
         Requires that there is a last move (or setup stone).
         @return List of stones (go.Point) killed by suicide in last move,
         including the stone played; empty if no stones were killed by suicide
-        or if there is no last move.
+        or if there is no last move. The returned list is reused by the board
+        and only valid until the next move is played or taken back.
         @see #getKilled() */
     public ConstPointList getSuicide()
     {
@@ -194,6 +223,43 @@ implements ConstBoard
         return m_toMove;
     }
 
+    /** Copy the state of another board.
+        Copies the position, the setup stones, the color to move and the
+        moves played, so that the moves can be taken back with undo() on
+        this board. Neither board may have a game ruler attached.
+        @param board The board to copy. */
+    public void copyFrom(Board board)
+    {
+        assert ! isGameRulerAttached();
+        assert ! board.isGameRulerAttached();
+        if (m_mark == null || board.m_size != m_size)
+            m_mark = new Marker(board.m_size);
+        m_size = board.m_size;
+        m_constants = board.m_constants;
+        m_core.copyFrom(board.m_core);
+        for (int i = 0; i < board.m_stackSize; ++i)
+        {
+            if (i == m_stack.size())
+                m_stack.add(new StackEntry());
+            m_stack.get(i).copyFrom(board.m_stack.get(i));
+        }
+        m_stackSize = board.m_stackSize;
+        for (GoColor c : BLACK_WHITE)
+        {
+            m_captured[c.ordinal()] = board.m_captured[c.ordinal()];
+            PointList setup = m_setup.get(c);
+            setup.clear();
+            setup.addAllFromConst(board.m_setup.get(c));
+        }
+        m_toMove = board.m_toMove;
+        m_setupPlayer = board.m_setupPlayer;
+        m_koPoint = board.m_koPoint;
+        m_lastMoveIndex = board.m_lastMoveIndex;
+        m_isSetupHandicap = board.m_isSetupHandicap;
+        m_positionalHistory.copyFrom(board.m_positionalHistory);
+        m_situationalHistory.copyFrom(board.m_situationalHistory);
+    }
+
     /** Initialize the board for a given board size.
         For changing the board size.
         Also calls clear().
@@ -201,9 +267,11 @@ implements ConstBoard
         row / column) in the range from one to GoPoint.MAX_SIZE */
     public void init(int size)
     {
+        if (m_mark == null || size != m_size)
+            m_mark = new Marker(size);
         m_size = size;
-        m_mark = new Marker(m_size);
         m_constants = BoardConstants.get(size);
+        m_core.init(size);
         clear();
     }
 
@@ -232,12 +300,9 @@ implements ConstBoard
         capture any opponent stones, or be a suicide move. */
     public boolean isCaptureOrSuicide(GoColor c, GoPoint p)
     {
-        if (getColor(p) != EMPTY)
+        if (getColor(p) != EMPTY || isGameRulerAttached())
             return false;
-        play(c, p);
-        boolean result = (getKilled().size() > 0 || getSuicide().size() > 0);
-        undo();
-        return result;
+        return (m_core.isCapture(c, p) || m_core.isSuicide(c, p));
     }
 
     /** Check if a point is a handicap point.
@@ -262,12 +327,32 @@ implements ConstBoard
     /** Check if any moves were played or setup stones placed on the board. */
     public boolean isModified()
     {
-        return (! m_stack.isEmpty()
+        return (m_stackSize > 0
                 || m_setup.get(BLACK).size() > 0
                 || m_setup.get(WHITE).size() > 0
                 || m_toMove != BLACK);
     }
 
+    /** Check if the current position occurred before.
+        Compares the position with the initial position and the positions
+        after each move played since the last call to clear() or setup()
+        using the Zobrist hash. The check does not depend on the number of
+        moves played.
+        @param situational true, if positions are only equal if the same
+        color is to move (situational superko); false, if only the stones
+        are compared (positional superko).
+        @return true, if the current position is a repetition. */
+    public boolean isRepetition(boolean situational)
+    {
+        HashHistory history =
+            (situational ? m_situationalHistory : m_positionalHistory);
+        long hash = (situational ? getSituationalHash() : getHash());
+        int count = history.getCount(hash);
+        if (! history.isEmpty() && history.getLast() == hash)
+            --count;
+        return (count > 0);
+    }
+
     /** Check if the initial setup position was a handicap.
         @return <code>true</code>, if the initial position was setup by
         calling setupHandicap, <code>false</code> otherwise.
@@ -284,12 +369,9 @@ implements ConstBoard
         would be a suicide move. */
     public boolean isSuicide(GoColor c, GoPoint p)
     {
-        if (getColor(p) != EMPTY)
+        if (getColor(p) != EMPTY || isGameRulerAttached())
             return false;
-        play(c, p);
-        boolean result = (getSuicide().size() > 0);
-        undo();
-        return result;
+        return m_core.isSuicide(c, p);
     }
 
     public Iterator<GoPoint> iterator()
@@ -301,13 +383,12 @@ implements ConstBoard
         Takes back the effects of any moves or setup stones on the board. */
     public void clear()
     {
-        for (GoPoint p : this)
-            setColor(p, EMPTY);
-        m_stack.clear();
+        m_core.clear();
+        m_stackSize = 0;
         for (GoColor c : BLACK_WHITE)
         {
             m_setup.get(c).clear();
-            m_captured.set(c, 0);
+            m_captured[c.ordinal()] = 0;
         }
         if (isGameRulerAttached())
             try {
@@ -320,6 +401,7 @@ implements ConstBoard
         m_koPoint = null;
         m_isSetupHandicap = false;
         m_setupPlayer = null;
+        initHistory();
     }
 
     /** Play a move.
@@ -338,19 +420,29 @@ implements ConstBoard
         A move will place a stone of the given color, capture all dead
         blocks adjacent to the stone, capture the block the stone is part of
         if it was a suicide move and switches the color to move.
+        Stack entries of moves taken back are reused, so that playing and
+        taking back moves does not allocate memory, once the board has been
+        used with the same number of moves.
         @param move The move (location and player) */
     public void play(Move move)
     {
-        StackEntry entry = new StackEntry(move);
+        StackEntry entry;
+        if (m_stackSize < m_stack.size())
+            entry = m_stack.get(m_stackSize);
+        else
+        {
+            entry = new StackEntry();
+            m_stack.add(entry);
+        }
+        entry.init(move);
         entry.execute(this);
-        m_stack.add(entry);
+        ++m_stackSize;
+        addHistory();
     }
     
     public void playGameMove(Move move)
     {
-        StackEntry entry = new StackEntry(move);
-        entry.execute(this);
-        m_stack.add(entry);
+        play(move);
     }
 
     /** Change the color to move.
@@ -386,11 +478,11 @@ implements ConstBoard
                 m_setup.set(c, new PointList());
             else
             {
-                for (GoPoint p : stones)
-                    setColor(p, c);
+                m_core.setColors(stones, c);
                 m_setup.set(c, new PointList(stones));
             }
         }
+        initHistory();
     }
     
     /**
@@ -398,10 +490,11 @@ implements ConstBoard
      */
     public void setPoints(ConstPointList points, GoColor c)
     {
-        for (GoPoint p: points)
-        {
-            setColor(p, c);
-        }
+        m_core.setColors(points, c);
+        // Replace the entry of the current position in the history
+        m_positionalHistory.removeLast();
+        m_situationalHistory.removeLast();
+        addHistory();
     }
 
     /** Setup initial handicap stones.
@@ -423,7 +516,9 @@ implements ConstBoard
         int index = getNumberMoves() - 1;
         assert index >= 0;
         m_stack.get(index).undo(this);
-        m_stack.remove(index);
+        m_stackSize = index;
+        m_positionalHistory.removeLast();
+        m_situationalHistory.removeLast();
         m_lastMoveIndex = index;
     }
 
@@ -441,7 +536,7 @@ implements ConstBoard
 
     private static class StackEntry
     {
-        public final Move m_move;
+        public Move m_move;
 
         public GoPoint m_oldKoPoint;
 
@@ -449,25 +544,45 @@ implements ConstBoard
 
         public GoColor m_oldToMove;
 
-        public PointList m_killed;
+        public final PointList m_killed = new PointList();
+
+        public final PointList m_suicide = new PointList();
 
-        public PointList m_suicide;
+        /** True, if the move was played on the board core and can be taken
+            back with BoardCore.undo(). */
+        public boolean m_isCoreMove;
 
         public int m_moveIndex = 0;
 
-        public StackEntry(Move move)
+        public void init(Move move)
         {
             m_move = move;
+            m_moveIndex = 0;
+        }
+
+        public void copyFrom(StackEntry entry)
+        {
+            m_move = entry.m_move;
+            m_oldKoPoint = entry.m_oldKoPoint;
+            m_oldColor = entry.m_oldColor;
+            m_oldToMove = entry.m_oldToMove;
+            m_killed.clear();
+            m_killed.addAllFromConst(entry.m_killed);
+            m_suicide.clear();
+            m_suicide.addAllFromConst(entry.m_suicide);
+            m_isCoreMove = entry.m_isCoreMove;
+            m_moveIndex = entry.m_moveIndex;
         }
 
         public void execute(Board board)
         {
-            m_killed = new PointList();
-            m_suicide = new PointList();
+            m_killed.clear();
+            m_suicide.clear();
             m_oldKoPoint = board.m_koPoint;
             board.m_koPoint = null;
-            if (m_moveIndex < board.m_stack.size())
-                m_moveIndex = board.m_stack.size();
+            m_isCoreMove = false;
+            if (m_moveIndex < board.m_stackSize)
+                m_moveIndex = board.m_stackSize;
             if (board.isGameRulerAttached())
             {
                 try {
@@ -504,26 +619,16 @@ implements ConstBoard
             if (p != null)
             {
                 m_oldColor = board.getColor(p);
-                board.setColor(p, c);
                 assert c != EMPTY;
-                for (GoPoint adj : board.getAdjacent(p))
-                {
-                    int killedSize = m_killed.size();
-                    if (board.getColor(adj) == otherColor)
-                        board.checkKill(adj, m_killed);
-                    if (m_killed.size() == killedSize + 1)
-                        board.m_koPoint = m_killed.get(killedSize);
-                }
-                board.checkKill(p, m_suicide);
-                if (board.m_koPoint != null
-                    && ! board.isSingleStoneSingleLib(p, c))
-                    board.m_koPoint = null;
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     + m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     + m_killed.size());
+                if (m_oldColor != EMPTY)
+                    board.m_core.removeStone(p);
+                board.m_core.play(p, c, m_killed, m_suicide);
+                m_isCoreMove = true;
+                if (m_killed.size() == 1
+                    && board.m_core.isSingleStoneSingleLib(p))
+                    board.m_koPoint = m_killed.get(0);
+                board.m_captured[c.ordinal()] += m_suicide.size();
+                board.m_captured[otherColor.ordinal()] += m_killed.size();
             }
             m_oldToMove = board.m_toMove;
             board.m_toMove = otherColor;
@@ -536,17 +641,16 @@ implements ConstBoard
             {
                 GoColor c = m_move.getColor();
                 GoColor otherColor = c.otherColor();
-                for (GoPoint stone : m_suicide)
-                    board.setColor(stone, c);
-                board.setColor(p, m_oldColor);
-                for (GoPoint stone : m_killed)
-                    board.setColor(stone, otherColor);
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     - m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     - m_killed.size());
+                if (! m_isCoreMove)
+                    board.m_core.setColor(p, m_oldColor);
+                else
+                {
+                    board.m_core.undo();
+                    if (m_oldColor != EMPTY)
+                        board.m_core.undo();
+                }
+                board.m_captured[c.ordinal()] -= m_suicide.size();
+                board.m_captured[otherColor.ordinal()] -= m_killed.size();
             }
             board.m_toMove = m_oldToMove;
             board.m_koPoint = m_oldKoPoint;
@@ -557,19 +661,18 @@ implements ConstBoard
 
     private int m_size;
 
-    private final BlackWhiteSet<Integer> m_captured
-        = new BlackWhiteSet<Integer>(0, 0);
+    /** Number of captured stones indexed by GoColor.ordinal(). */
+    private final int[] m_captured = new int[2];
 
+    /** Stack entries of the moves played.
+        Only the first m_stackSize entries are in use, the other entries are
+        kept for reuse. */
     private final ArrayList<StackEntry> m_stack
         = new ArrayList<StackEntry>(361);
 
-    /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStones = new PointList();
-
-    /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStack = new PointList();
+    private int m_stackSize;
 
-    private GoColor[] m_color = new GoColor[GoPoint.NUMBER_INDEXES];
+    private final BoardCore m_core = new BoardCore();
 
     private GoColor m_toMove;
 
@@ -588,71 +691,26 @@ implements ConstBoard
 
     private boolean m_isSetupHandicap;
 
-    private boolean isSingleStoneSingleLib(GoPoint point, GoColor color)
+    /** Hashes of the initial position and the positions after each move.
+        @see #isRepetition */
+    private final HashHistory m_positionalHistory = new HashHistory();
+
+    /** Situational hashes of the initial position and the positions after
+        each move.
+        @see #isRepetition */
+    private final HashHistory m_situationalHistory = new HashHistory();
+
+    private void addHistory()
     {
-        if (getColor(point) != color)
-            return false;
-        int lib = 0;
-        for (GoPoint adj : getAdjacent(point))
-        {
-            GoColor adjColor = getColor(adj);
-            if (adjColor == EMPTY)
-            {
-                ++lib;
-                if (lib > 1)
-                    return false;
-            }
-            else if (adjColor.equals(color))
-                return false;
-        }
-        return true;
+        m_positionalHistory.add(getHash());
+        m_situationalHistory.add(getSituationalHash());
     }
 
-    private void checkKill(GoPoint point, PointList killed)
+    private void initHistory()
     {
-        assert m_mark.isCleared();
-        GoColor color = getColor(point);
-        assert color != EMPTY;
-        m_checkKillStack.clear();
-        m_checkKillStack.add(point);
-        m_mark.set(point);
-        m_checkKillStones.clear();
-        boolean isDead = true;
-        // Recursion is unrolled using a stack for efficiency
-        while (isDead && ! m_checkKillStack.isEmpty())
-        {
-            GoPoint p = m_checkKillStack.pop();
-            assert getColor(p) == color;
-            m_checkKillStones.add(p);
-            ConstPointList adjacent = getAdjacent(p);
-            int nuAdjacent = adjacent.size();
-            // Don't use an iterator for efficiency
-            for (int i = 0; i < nuAdjacent; ++i)
-            {
-                GoPoint adj = adjacent.get(i);
-                GoColor c = getColor(adj);
-                if (c == EMPTY)
-                {
-                    isDead = false;
-                    break;
-                }
-                if (m_mark.get(adj) || ! c.equals(color))
-                    continue;
-                m_checkKillStack.add(adj);
-                m_mark.set(adj);
-            }
-        }
-        if (isDead)
-        {
-            killed.addAll(m_checkKillStones);
-            int nuKillStones = m_checkKillStones.size();
-            // Don't use an iterator for efficiency
-            for (int i = 0; i < nuKillStones; ++i)
-                setColor(m_checkKillStones.get(i), EMPTY);
-        }
-        m_mark.clear(m_checkKillStack);
-        m_mark.clear(m_checkKillStones);
-        //assert m_mark.isCleared();
+        m_positionalHistory.clear();
+        m_situationalHistory.clear();
+        addHistory();
     }
 
     private void findStones(GoPoint p, GoColor color, PointList stones)
@@ -667,12 +725,6 @@ implements ConstBoard
             findStones(adj, color, stones);
     }
 
-    private void setColor(GoPoint p, GoColor c)
-    {
-        assert p != null;
-        m_color[p.getIndex()] = c;
-    }
-
     public GtpClientBase getGameRuler() {
         return m_gameRuler;
     }
@@ -0,0 +1,676 @@
+// BoardCore.java
+
+package net.sf.gogui.go;
+
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+/** Board state with incremental block and liberty tracking.
+    Used by Board to store the stones on the board. All state is kept in
+    primitive arrays indexed by GoPoint.getIndex().
+    Blocks are stored as circular linked lists of stones with an anchor
+    point. For each block the number of pseudo-liberties (the number of
+    pairs of a block stone and an adjacent empty point) is maintained
+    incrementally. A block has no liberties if and only if it has no
+    pseudo-liberties, and its only liberty is a point p if and only if the
+    number of pseudo-liberties is equal to the number of its stones adjacent
+    to p.
+    The Zobrist hash of the position is updated with each change of a
+    point.
+    Moves are taken back using an undo journal stored in an int array, so
+    that playing and undoing moves on a board that was used before does not
+    allocate memory. Functions that change points without playing a move
+    (setColor, setColors) recompute all blocks; moves played before such a
+    change are still taken back correctly, but by recomputing the blocks.
+    Removing a stone with removeStone() is recorded in the journal with the
+    data of the old block and can be taken back with undo(). */
+final class BoardCore
+{
+    public BoardCore()
+    {
+        init(GoPoint.DEFAULT_SIZE);
+    }
+
+    /** Remove all stones and clear the undo journal. */
+    public void clear()
+    {
+        for (int i = 0; i < m_numberPoints; ++i)
+            m_state[m_points[i].getIndex()] = EMPTY_CODE;
+        m_hash = 0;
+        m_journalSize = 0;
+        m_rebuildMark = 0;
+    }
+
+    /** Copy the state of another board core.
+        Includes the undo journal, so that moves played on the other board
+        core can be taken back on this board core. */
+    public void copyFrom(BoardCore core)
+    {
+        init(core.m_size);
+        int n = GoPoint.NUMBER_INDEXES;
+        System.arraycopy(core.m_state, 0, m_state, 0, n);
+        System.arraycopy(core.m_anchor, 0, m_anchor, 0, n);
+        System.arraycopy(core.m_next, 0, m_next, 0, n);
+        System.arraycopy(core.m_numberStones, 0, m_numberStones, 0, n);
+        System.arraycopy(core.m_liberties, 0, m_liberties, 0, n);
+        if (m_journal.length < core.m_journalSize)
+            m_journal = new int[core.m_journal.length];
+        System.arraycopy(core.m_journal, 0, m_journal, 0,
+                         core.m_journalSize);
+        m_journalSize = core.m_journalSize;
+        m_rebuildMark = core.m_rebuildMark;
+        m_hash = core.m_hash;
+    }
+
+    public GoColor getColor(GoPoint p)
+    {
+        return COLORS[m_state[p.getIndex()]];
+    }
+
+    /** Get the Zobrist hash of the stones on the board.
+        @see Zobrist */
+    public long getHash()
+    {
+        return m_hash;
+    }
+
+    /** Get the stones of the block containing a point.
+        @param p A point occupied by a stone.
+        @param stones The list to add the stones to. */
+    public void getStones(GoPoint p, PointList stones)
+    {
+        int start = m_anchor[p.getIndex()];
+        int s = start;
+        do
+        {
+            stones.add(m_pointByIndex[s]);
+            s = m_next[s];
+        }
+        while (s != start);
+    }
+
+    /** Initialize for a board size.
+        Also calls clear(). */
+    public void init(int size)
+    {
+        if (size == m_size)
+        {
+            clear();
+            return;
+        }
+        m_size = size;
+        BoardConstants constants = BoardConstants.get(size);
+        ConstPointList points = constants.getPoints();
+        m_numberPoints = points.size();
+        m_points = new GoPoint[m_numberPoints];
+        for (int i = 0; i < m_numberPoints; ++i)
+        {
+            GoPoint p = points.get(i);
+            int index = p.getIndex();
+            m_points[i] = p;
+            m_pointByIndex[index] = p;
+            ConstPointList adjacent = constants.getAdjacent(p);
+            m_numberAdjacent[index] = adjacent.size();
+            for (int j = 0; j < adjacent.size(); ++j)
+                m_adjacent[4 * index + j] = adjacent.get(j).getIndex();
+        }
+        clear();
+    }
+
+    /** Check if a move would capture opponent stones.
+        @param c The player color.
+        @param p An empty point.
+        @return true, if a block of the opponent has no other liberty than
+        p. */
+    public boolean isCapture(GoColor c, GoPoint p)
+    {
+        int index = p.getIndex();
+        byte opponent = opponentCode(c);
+        int base = 4 * index;
+        for (int i = 0; i < m_numberAdjacent[index]; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] == opponent
+                && isOnlyLiberty(m_anchor[adj], index))
+                return true;
+        }
+        return false;
+    }
+
+    /** Check if a point is a single stone with a single liberty. */
+    public boolean isSingleStoneSingleLib(GoPoint p)
+    {
+        int index = p.getIndex();
+        if (m_state[index] == EMPTY_CODE)
+            return false;
+        int anchor = m_anchor[index];
+        return (m_numberStones[anchor] == 1 && m_liberties[anchor] == 1);
+    }
+
+    /** Check if a move would be a suicide move.
+        @param c The player color.
+        @param p An empty point.
+        @return true, if the move captures nothing and the resulting block
+        has no liberties. */
+    public boolean isSuicide(GoColor c, GoPoint p)
+    {
+        int index = p.getIndex();
+        byte own = colorCode(c);
+        int base = 4 * index;
+        int nuAdjacent = m_numberAdjacent[index];
+        for (int i = 0; i < nuAdjacent; ++i)
+            if (m_state[m_adjacent[base + i]] == EMPTY_CODE)
+                return false;
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            boolean isOnlyLiberty = isOnlyLiberty(m_anchor[adj], index);
+            if (m_state[adj] == own)
+            {
+                if (! isOnlyLiberty)
+                    return false;
+            }
+            else if (isOnlyLiberty)
+                return false;
+        }
+        return true;
+    }
+
+    /** Play a stone on an empty point.
+        Places the stone, merges it with adjacent blocks of the same color,
+        removes adjacent opponent blocks without liberties and the block of
+        the new stone, if it has no liberties.
+        @param p The empty point.
+        @param c The color of the stone (BLACK or WHITE).
+        @param killed List to add captured opponent stones to.
+        @param suicide List to add stones removed by suicide to. */
+    public void play(GoPoint p, GoColor c, PointList killed,
+                     PointList suicide)
+    {
+        int index = p.getIndex();
+        assert m_state[index] == EMPTY_CODE;
+        byte own = colorCode(c);
+        byte opponent = opponentCode(c);
+        int frameStart = m_journalSize;
+        int base = 4 * index;
+        int nuAdjacent = m_numberAdjacent[index];
+        setState(index, own);
+        m_anchor[index] = index;
+        m_next[index] = index;
+        m_numberStones[index] = 1;
+        int liberties = 0;
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] == EMPTY_CODE)
+                ++liberties;
+            else
+                --m_liberties[m_anchor[adj]];
+        }
+        m_liberties[index] = liberties;
+        int nuMerged = 0;
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] == own && m_anchor[adj] != m_anchor[index])
+            {
+                merge(m_anchor[adj], m_anchor[index]);
+                ++nuMerged;
+            }
+        }
+        push(nuMerged);
+        int nuKilledBlocks = 0;
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] == opponent && m_liberties[m_anchor[adj]] == 0)
+            {
+                removeBlock(m_anchor[adj], killed);
+                ++nuKilledBlocks;
+            }
+        }
+        push(nuKilledBlocks);
+        if (m_liberties[m_anchor[index]] == 0)
+        {
+            removeBlock(m_anchor[index], suicide);
+            push(1);
+        }
+        else
+            push(0);
+        push(index);
+        push(own);
+        push(frameStart);
+        push(FRAME_PLAY);
+    }
+
+    /** Remove a stone, such that it can be restored by undo().
+        Used for playing on an occupied point. The block of the stone is
+        split into the blocks of the remaining stones, the old block data is
+        stored in the journal.
+        @param p A point occupied by a stone. */
+    public void removeStone(GoPoint p)
+    {
+        int index = p.getIndex();
+        byte code = m_state[index];
+        assert code != EMPTY_CODE;
+        int frameStart = m_journalSize;
+        int anchor = m_anchor[index];
+        int s = anchor;
+        do
+        {
+            push(s);
+            push(m_next[s]);
+            m_anchor[s] = -1;
+            s = m_next[s];
+        }
+        while (s != anchor);
+        push(m_numberStones[anchor]);
+        push(m_liberties[anchor]);
+        push(anchor);
+        push(index);
+        push(code);
+        push(frameStart);
+        push(FRAME_REMOVE);
+        setState(index, EMPTY_CODE);
+        int base = 4 * index;
+        for (int i = 0; i < m_numberAdjacent[index]; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] == code)
+            {
+                if (m_anchor[adj] < 0)
+                    createBlock(adj);
+            }
+            else if (m_state[adj] != EMPTY_CODE)
+                ++m_liberties[m_anchor[adj]];
+        }
+    }
+
+    /** Change the state of a point without playing a move.
+        Recomputes all blocks. */
+    public void setColor(GoPoint p, GoColor c)
+    {
+        setState(p.getIndex(), colorCode(c));
+        rebuild();
+        m_rebuildMark = m_journalSize;
+    }
+
+    /** Change the state of points without playing a move.
+        Recomputes all blocks. */
+    public void setColors(ConstPointList points, GoColor c)
+    {
+        byte code = colorCode(c);
+        int nuPoints = points.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuPoints; ++i)
+            setState(points.get(i).getIndex(), code);
+        rebuild();
+        m_rebuildMark = m_journalSize;
+    }
+
+    /** Take back the last call of play() or removeStone(). */
+    public void undo()
+    {
+        assert m_journalSize > 0;
+        int pos = m_journalSize;
+        if (m_journal[--pos] == FRAME_REMOVE)
+        {
+            undoRemoveStone(pos);
+            return;
+        }
+        int frameStart = m_journal[--pos];
+        byte own = (byte)m_journal[--pos];
+        int index = m_journal[--pos];
+        byte opponent = (own == BLACK_CODE ? WHITE_CODE : BLACK_CODE);
+        boolean isIncremental = (frameStart >= m_rebuildMark);
+        if (m_journal[--pos] != 0)
+        {
+            int n = m_journal[--pos];
+            pos -= n;
+            restoreBlock(pos, n, own, isIncremental);
+        }
+        int nuKilledBlocks = m_journal[--pos];
+        for (int i = 0; i < nuKilledBlocks; ++i)
+        {
+            int n = m_journal[--pos];
+            pos -= n;
+            restoreBlock(pos, n, opponent, isIncremental);
+        }
+        int nuMerged = m_journal[--pos];
+        for (int i = 0; i < nuMerged; ++i)
+        {
+            pos -= 6;
+            if (isIncremental)
+                unmerge(pos);
+        }
+        assert pos == frameStart;
+        setState(index, EMPTY_CODE);
+        if (isIncremental)
+        {
+            int base = 4 * index;
+            for (int i = 0; i < m_numberAdjacent[index]; ++i)
+            {
+                int adj = m_adjacent[base + i];
+                if (m_state[adj] != EMPTY_CODE)
+                    ++m_liberties[m_anchor[adj]];
+            }
+        }
+        m_journalSize = frameStart;
+        if (! isIncremental)
+        {
+            rebuild();
+            m_rebuildMark = m_journalSize;
+        }
+    }
+
+    private static final GoColor[] COLORS = GoColor.values();
+
+    /** Journal tag of a frame written by play(). */
+    private static final int FRAME_PLAY = 0;
+
+    /** Journal tag of a frame written by removeStone(). */
+    private static final int FRAME_REMOVE = 1;
+
+    private static final byte BLACK_CODE = (byte)BLACK.ordinal();
+
+    private static final byte WHITE_CODE = (byte)WHITE.ordinal();
+
+    private static final byte EMPTY_CODE = (byte)EMPTY.ordinal();
+
+    private int m_size;
+
+    private long m_hash;
+
+    private int m_numberPoints;
+
+    /** Size of the undo journal. */
+    private int m_journalSize;
+
+    /** Journal size at the last recomputation of all blocks.
+        Moves with a journal frame starting below this mark were played
+        on blocks that no longer exist in this form and are taken back by
+        recomputing the blocks. */
+    private int m_rebuildMark;
+
+    /** Points on the board. */
+    private GoPoint[] m_points;
+
+    private final GoPoint[] m_pointByIndex =
+        new GoPoint[GoPoint.NUMBER_INDEXES];
+
+    private final byte[] m_state = new byte[GoPoint.NUMBER_INDEXES];
+
+    /** Anchor point of the block of a stone. */
+    private final int[] m_anchor = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Next stone in the circular list of stones of a block. */
+    private final int[] m_next = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Number of stones of a block. Only valid for anchor points. */
+    private final int[] m_numberStones = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Number of pseudo-liberties of a block.
+        Only valid for anchor points. */
+    private final int[] m_liberties = new int[GoPoint.NUMBER_INDEXES];
+
+    private final int[] m_numberAdjacent = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Adjacent points, four entries per point. */
+    private final int[] m_adjacent = new int[4 * GoPoint.NUMBER_INDEXES];
+
+    /** Temporary variable reused for efficiency. */
+    private final int[] m_blockStack = new int[GoPoint.NUMBER_INDEXES];
+
+    private int[] m_journal = new int[1024];
+
+    private static byte colorCode(GoColor c)
+    {
+        return (byte)c.ordinal();
+    }
+
+    private static byte opponentCode(GoColor c)
+    {
+        assert c.isBlackWhite();
+        return (c == BLACK ? WHITE_CODE : BLACK_CODE);
+    }
+
+    private boolean isOnlyLiberty(int anchor, int index)
+    {
+        int base = 4 * index;
+        int n = 0;
+        for (int i = 0; i < m_numberAdjacent[index]; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] != EMPTY_CODE && m_anchor[adj] == anchor)
+                ++n;
+        }
+        return (m_liberties[anchor] == n);
+    }
+
+    /** Merge two blocks.
+        The stones of the smaller block get the anchor of the larger one. */
+    private void merge(int anchor1, int anchor2)
+    {
+        int keep = anchor1;
+        int other = anchor2;
+        if (m_numberStones[anchor2] > m_numberStones[anchor1])
+        {
+            keep = anchor2;
+            other = anchor1;
+        }
+        push(other);
+        push(keep);
+        push(m_numberStones[other]);
+        push(m_liberties[other]);
+        push(m_numberStones[keep]);
+        push(m_liberties[keep]);
+        int s = other;
+        do
+        {
+            m_anchor[s] = keep;
+            s = m_next[s];
+        }
+        while (s != other);
+        swapNext(keep, other);
+        m_numberStones[keep] += m_numberStones[other];
+        m_liberties[keep] += m_liberties[other];
+    }
+
+    private void push(int value)
+    {
+        if (m_journalSize == m_journal.length)
+        {
+            int[] journal = new int[2 * m_journal.length];
+            System.arraycopy(m_journal, 0, journal, 0, m_journalSize);
+            m_journal = journal;
+        }
+        m_journal[m_journalSize++] = value;
+    }
+
+    /** Recompute all blocks and liberties from the point states. */
+    private void rebuild()
+    {
+        for (int i = 0; i < m_numberPoints; ++i)
+            m_anchor[m_points[i].getIndex()] = -1;
+        for (int i = 0; i < m_numberPoints; ++i)
+        {
+            int index = m_points[i].getIndex();
+            if (m_state[index] != EMPTY_CODE && m_anchor[index] < 0)
+                createBlock(index);
+        }
+    }
+
+    /** Create the block of a stone from the point states.
+        Includes all connected stones of the same color that have no anchor
+        (anchor -1). */
+    private void createBlock(int anchor)
+    {
+        byte code = m_state[anchor];
+        // Visited stones are kept in the stack array to link them
+        int n = 0;
+        int top = 0;
+        m_blockStack[n++] = anchor;
+        m_anchor[anchor] = anchor;
+        int liberties = 0;
+        while (top < n)
+        {
+            int s = m_blockStack[top++];
+            int base = 4 * s;
+            for (int i = 0; i < m_numberAdjacent[s]; ++i)
+            {
+                int adj = m_adjacent[base + i];
+                if (m_state[adj] == EMPTY_CODE)
+                    ++liberties;
+                else if (m_state[adj] == code && m_anchor[adj] < 0)
+                {
+                    m_anchor[adj] = anchor;
+                    m_blockStack[n++] = adj;
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i)
+            m_next[m_blockStack[i]] = m_blockStack[(i + 1) % n];
+        m_numberStones[anchor] = n;
+        m_liberties[anchor] = liberties;
+    }
+
+    /** Remove a block from the board.
+        The stones are appended to the journal followed by their number. */
+    private void removeBlock(int anchor, PointList stones)
+    {
+        int n = 0;
+        int s = anchor;
+        do
+        {
+            setState(s, EMPTY_CODE);
+            stones.add(m_pointByIndex[s]);
+            push(s);
+            ++n;
+            s = m_next[s];
+        }
+        while (s != anchor);
+        do
+        {
+            int base = 4 * s;
+            for (int i = 0; i < m_numberAdjacent[s]; ++i)
+            {
+                int adj = m_adjacent[base + i];
+                if (m_state[adj] != EMPTY_CODE)
+                    ++m_liberties[m_anchor[adj]];
+            }
+            s = m_next[s];
+        }
+        while (s != anchor);
+        push(n);
+    }
+
+    /** Put back a block removed by removeBlock().
+        @param pos Start of the stones in the journal.
+        @param n Number of stones.
+        @param code Color of the stones.
+        @param isIncremental false, if only the point states should be
+        restored, because the blocks will be recomputed. */
+    private void restoreBlock(int pos, int n, byte code,
+                              boolean isIncremental)
+    {
+        for (int i = 0; i < n; ++i)
+            setState(m_journal[pos + i], code);
+        if (! isIncremental)
+            return;
+        int anchor = m_journal[pos];
+        for (int i = 0; i < n; ++i)
+        {
+            int s = m_journal[pos + i];
+            m_anchor[s] = anchor;
+            m_next[s] = m_journal[pos + (i + 1) % n];
+        }
+        m_numberStones[anchor] = n;
+        m_liberties[anchor] = 0;
+        for (int i = 0; i < n; ++i)
+        {
+            int s = m_journal[pos + i];
+            int base = 4 * s;
+            for (int j = 0; j < m_numberAdjacent[s]; ++j)
+            {
+                int adj = m_adjacent[base + j];
+                if (m_state[adj] != EMPTY_CODE && m_anchor[adj] != anchor)
+                    --m_liberties[m_anchor[adj]];
+            }
+        }
+    }
+
+    private void setState(int index, byte code)
+    {
+        byte oldCode = m_state[index];
+        if (oldCode != EMPTY_CODE)
+            m_hash ^= Zobrist.getKey(index, oldCode);
+        if (code != EMPTY_CODE)
+            m_hash ^= Zobrist.getKey(index, code);
+        m_state[index] = code;
+    }
+
+    private void swapNext(int s1, int s2)
+    {
+        int tmp = m_next[s1];
+        m_next[s1] = m_next[s2];
+        m_next[s2] = tmp;
+    }
+
+    /** Take back removeStone().
+        @param pos Position of the top of the frame below the tag. */
+    private void undoRemoveStone(int pos)
+    {
+        int frameStart = m_journal[--pos];
+        byte code = (byte)m_journal[--pos];
+        int index = m_journal[--pos];
+        int anchor = m_journal[--pos];
+        if (frameStart < m_rebuildMark)
+        {
+            // The blocks were recomputed after removeStone(), the block
+            // data in the journal is no longer valid
+            setState(index, code);
+            m_journalSize = frameStart;
+            rebuild();
+            m_rebuildMark = m_journalSize;
+            return;
+        }
+        int base = 4 * index;
+        for (int i = 0; i < m_numberAdjacent[index]; ++i)
+        {
+            int adj = m_adjacent[base + i];
+            if (m_state[adj] != EMPTY_CODE && m_state[adj] != code)
+                --m_liberties[m_anchor[adj]];
+        }
+        setState(index, code);
+        m_liberties[anchor] = m_journal[--pos];
+        m_numberStones[anchor] = m_journal[--pos];
+        for (int i = frameStart; i < pos; i += 2)
+        {
+            int s = m_journal[i];
+            m_anchor[s] = anchor;
+            m_next[s] = m_journal[i + 1];
+        }
+        m_journalSize = frameStart;
+    }
+
+    /** Split two blocks merged by merge().
+        @param pos Start of the merge record in the journal. */
+    private void unmerge(int pos)
+    {
+        int other = m_journal[pos];
+        int keep = m_journal[pos + 1];
+        swapNext(keep, other);
+        int s = other;
+        do
+        {
+            m_anchor[s] = other;
+            s = m_next[s];
+        }
+        while (s != other);
+        m_numberStones[other] = m_journal[pos + 2];
+        m_liberties[other] = m_journal[pos + 3];
+        m_numberStones[keep] = m_journal[pos + 4];
+        m_liberties[keep] = m_journal[pos + 5];
+    }
+}
@@ -21,6 +21,8 @@ public interface ConstBoard
 
     GoColor getColor(GoPoint p);
 
+    long getHash();
+
     ConstPointList getKilled();
 
     Move getLastMove();
@@ -33,6 +35,8 @@ public interface ConstBoard
 
     GoColor getSetupPlayer();
 
+    long getSituationalHash();
+
     int getSize();
 
     void getStones(GoPoint p, GoColor color, PointList stones);
@@ -49,6 +53,8 @@ public interface ConstBoard
 
     boolean isModified();
 
+    boolean isRepetition(boolean situational);
+
     boolean isSetupHandicap();
 
     boolean isSuicide(GoColor c, GoPoint p);
@@ -208,10 +208,12 @@ public final class GenericBoard {
 
     public static void playFromBeginning(GtpClientBase gameRuler, ArrayList<Move> moves, Board board) throws GtpError {
         gameRuler.sendClearBoard(board.getSize());
+        ArrayList<String> commands = new ArrayList<String>(moves.size());
         for (int i = moves.size() - 1; i >= 0; i--)
         {
-            gameRuler.sendPlay(moves.get(i));
+            commands.add(gameRuler.getCommandPlay(moves.get(i)));
         }
+        gameRuler.sendBatch(commands);
         GenericBoard.copyRulerBoardState(gameRuler, board);
     }
 
@@ -0,0 +1,111 @@
+// HashHistory.java
+
+package net.sf.gogui.go;
+
+/** Multiset of position hashes with removal in reverse order of addition.
+    Used by Board to detect repeated positions. The hashes are stored in
+    buckets of singly linked lists in primitive arrays. Since the last
+    added hash is always the head of its bucket list, removeLast() takes
+    constant time and adding and removing hashes does not allocate memory
+    after the arrays have grown to the needed size. */
+final class HashHistory
+{
+    public HashHistory()
+    {
+        m_hash = new long[256];
+        m_next = new int[256];
+        m_head = new int[256];
+        clear();
+    }
+
+    public void add(long hash)
+    {
+        if (m_size == m_hash.length)
+            grow();
+        int bucket = getBucket(hash);
+        m_hash[m_size] = hash;
+        m_next[m_size] = m_head[bucket];
+        m_head[bucket] = m_size;
+        ++m_size;
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < m_head.length; ++i)
+            m_head[i] = -1;
+        m_size = 0;
+    }
+
+    public void copyFrom(HashHistory history)
+    {
+        if (m_hash.length != history.m_hash.length)
+        {
+            m_hash = new long[history.m_hash.length];
+            m_next = new int[m_hash.length];
+            m_head = new int[m_hash.length];
+        }
+        m_size = history.m_size;
+        System.arraycopy(history.m_hash, 0, m_hash, 0, m_size);
+        System.arraycopy(history.m_next, 0, m_next, 0, m_size);
+        System.arraycopy(history.m_head, 0, m_head, 0, m_head.length);
+    }
+
+    /** Get the number of times a hash was added. */
+    public int getCount(long hash)
+    {
+        int count = 0;
+        for (int i = m_head[getBucket(hash)]; i >= 0; i = m_next[i])
+            if (m_hash[i] == hash)
+                ++count;
+        return count;
+    }
+
+    /** Get the last added hash.
+        Requires that the history is not empty. */
+    public long getLast()
+    {
+        assert m_size > 0;
+        return m_hash[m_size - 1];
+    }
+
+    public boolean isEmpty()
+    {
+        return (m_size == 0);
+    }
+
+    public void removeLast()
+    {
+        assert m_size > 0;
+        --m_size;
+        int bucket = getBucket(m_hash[m_size]);
+        assert m_head[bucket] == m_size;
+        m_head[bucket] = m_next[m_size];
+    }
+
+    private int m_size;
+
+    private long[] m_hash;
+
+    private int[] m_next;
+
+    /** Index of the last added hash of a bucket or -1. */
+    private int[] m_head;
+
+    private int getBucket(long hash)
+    {
+        return (int)(hash ^ (hash >>> 32)) & (m_head.length - 1);
+    }
+
+    private void grow()
+    {
+        int size = m_size;
+        long[] hash = new long[2 * m_hash.length];
+        System.arraycopy(m_hash, 0, hash, 0, size);
+        m_hash = hash;
+        m_next = new int[hash.length];
+        m_head = new int[hash.length];
+        clear();
+        for (int i = 0; i < size; ++i)
+            add(hash[i]);
+    }
+}
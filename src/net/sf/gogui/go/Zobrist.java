@@ -0,0 +1,58 @@
+// Zobrist.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+
+/** Random keys for Zobrist hashing of positions.
+    The hash of a position is the exclusive or of the keys of all stones on
+    the board. The keys are generated with a fixed seed, so hash values are
+    the same in each run and can be stored in files.
+    @see ConstBoard#getHash() */
+public final class Zobrist
+{
+    /** Key added to the hash of a position, if White is to move. */
+    public static final long WHITE_TO_MOVE;
+
+    /** Get the key for a stone.
+        @param p The location of the stone.
+        @param c The color of the stone (BLACK or WHITE).
+        @return The key. */
+    public static long getKey(GoPoint p, GoColor c)
+    {
+        assert c.isBlackWhite();
+        return getKey(p.getIndex(), c.ordinal());
+    }
+
+    /** Get the key for the color to move.
+        @param toMove The color to move.
+        @return WHITE_TO_MOVE for White, 0 for Black. */
+    public static long getToMoveKey(GoColor toMove)
+    {
+        return (toMove == GoColor.WHITE ? WHITE_TO_MOVE : 0L);
+    }
+
+    /** Get the key for a stone.
+        @param index The point index (GoPoint.getIndex()).
+        @param color GoColor.ordinal() of BLACK or WHITE. */
+    static long getKey(int index, int color)
+    {
+        return s_keys[2 * index + color];
+    }
+
+    private static final long[] s_keys;
+
+    static
+    {
+        Random random = new Random(0x5a6f627269737431L);
+        s_keys = new long[2 * GoPoint.NUMBER_INDEXES];
+        for (int i = 0; i < s_keys.length; ++i)
+            s_keys[i] = random.nextLong();
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Zobrist()
+    {
+    }
+}
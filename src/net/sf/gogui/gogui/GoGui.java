@@ -2590,9 +2590,19 @@ implements AnalyzeDialog.Listener, GuiBoard.Listener,
         // them to paint on the board, if no command is currently running
         if (! isCommandInProgress())
             return;
-        m_guiBoard.clearAll();
-        GuiBoardUtil.updateFromGoBoard(m_guiBoard, getBoard(), false, false);
-        AnalyzeShow.showGfx(text, m_guiBoard, m_statusBar, null);
+        // Only fields that differ from the currently displayed live gfx
+        // are repainted
+        m_guiBoard.startUpdate();
+        try
+        {
+            m_guiBoard.clearAll();
+            GuiBoardUtil.updateFromGoBoard(m_guiBoard, getBoard(), false, false);
+            AnalyzeShow.showGfx(text, m_guiBoard, m_statusBar, null);
+        }
+        finally
+        {
+            m_guiBoard.endUpdate();
+        }
     }
 
     private class AnalyzeContinue
@@ -3026,8 +3036,7 @@ implements AnalyzeDialog.Listener, GuiBoard.Listener,
                     {
                     if (m_shell == null)
                         return;
-                    boolean invokeLater = true;
-                    m_shell.receivedInvalidResponse(s, invokeLater);
+                    m_shell.receivedInvalidResponse(s);
                 }
             }
 
@@ -3037,8 +3046,7 @@ implements AnalyzeDialog.Listener, GuiBoard.Listener,
                 {
                     if (m_shell == null)
                         return;
-                    boolean invokeLater = true;
-                    m_shell.receivedResponse(error, s, invokeLater);
+                    m_shell.receivedResponse(error, s);
                 }
             }
 
@@ -3057,9 +3065,7 @@ implements AnalyzeDialog.Listener, GuiBoard.Listener,
                                 line.startsWith("warning:")
                                 || line.startsWith("Warning:")
                                 || line.startsWith("WARNING:");
-                        boolean invokeLater = true;
-                        m_shell.receivedStdErr(line, invokeLater, isLiveGfx,
-                                isWarning);
+                        m_shell.receivedStdErr(line, isLiveGfx, isWarning);
                     }
                 }
             }
@@ -3075,7 +3081,10 @@ implements AnalyzeDialog.Listener, GuiBoard.Listener,
 
             private final LineReader m_lineReader = new LineReader();
 
-            private LiveGfx m_liveGfx = new LiveGfx(GoGui.this);
+            private LiveGfx m_liveGfx =
+                new LiveGfx(GoGui.this,
+                            m_prefs.getInt("live-gfx-max-rate",
+                                           LiveGfx.DEFAULT_MAX_RATE));
         };
         GtpSynchronizer.Listener synchronizerCallback =
                 new GtpSynchronizer.Listener() {
@@ -10,6 +10,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -239,17 +241,10 @@ public final class GtpClient
     public String send(String command, long timeout,
                        TimeoutCallback timeoutCallback) throws GtpError
     {
-        assert ! command.trim().equals("");
-        assert ! command.trim().startsWith("#");
         m_timeoutCallback = timeoutCallback;
         m_fullResponse = "";
         m_response = "";
-        ++m_commandNumber;
-        if (m_autoNumber)
-            command = Integer.toString(m_commandNumber) + " " + command;
-        if (m_log)
-            logOut(command);
-        m_out.println(command);
+        command = writeCommand(command);
         m_out.flush();
         try
         {
@@ -269,6 +264,82 @@ public final class GtpClient
         }
     }
 
+    /** Send several commands without waiting for each response.
+        The commands are written to the program in chunks, and the
+        responses are read in the order of the commands. The number of
+        commands waiting for a response is limited to MAX_PENDING, so that
+        the program cannot block while writing responses that are not yet
+        read. If a command fails, the responses to the following commands
+        are still read.
+        @param commands The commands to send
+        @param timeout Timeout in milliseconds for each response or -1, if
+        no timeout
+        @param timeoutCallback Timeout callback or null if no timeout.
+        @return The responses of the commands.
+        @throws GtpError containing the response of the first failed
+        command, or immediately if the program died. */
+    public ArrayList<String> sendBatch(List<String> commands, long timeout,
+                                       TimeoutCallback timeoutCallback)
+        throws GtpError
+    {
+        m_timeoutCallback = timeoutCallback;
+        m_fullResponse = "";
+        m_response = "";
+        int numberCommands = commands.size();
+        String[] sent = new String[numberCommands];
+        ArrayList<String> responses = new ArrayList<String>(numberCommands);
+        GtpError error = null;
+        int numberSent = 0;
+        while (responses.size() < numberCommands)
+        {
+            int index = responses.size();
+            if (numberSent < numberCommands
+                && numberSent - index <= MAX_PENDING / 2)
+            {
+                int begin = numberSent;
+                while (numberSent < numberCommands
+                       && numberSent - index < MAX_PENDING)
+                {
+                    sent[numberSent] = writeCommand(commands.get(numberSent));
+                    ++numberSent;
+                }
+                m_out.flush();
+                if (m_out.checkError())
+                {
+                    GtpError e = programDiedError();
+                    e.setCommand(sent[index]);
+                    throw e;
+                }
+                if (m_callback != null)
+                    for (int i = begin; i < numberSent; ++i)
+                        m_callback.sentCommand(sent[i]);
+            }
+            try
+            {
+                responses.add(readResponse(timeout));
+            }
+            catch (GtpError e)
+            {
+                e.setCommand(sent[index]);
+                if (m_isProgramDead)
+                    throw e;
+                if (error == null)
+                    error = e;
+                responses.add(null);
+            }
+        }
+        if (error != null)
+            throw error;
+        return responses;
+    }
+
+    /** Send several commands without waiting for each response.
+        @see #sendBatch(List,long,TimeoutCallback) */
+    public ArrayList<String> sendBatch(List<String> commands) throws GtpError
+    {
+        return sendBatch(commands, -1, null);
+    }
+
     public void sendPlay(Move move, long timeout,
                          TimeoutCallback timeoutCallback) throws GtpError
     {
@@ -544,6 +615,12 @@ public final class GtpClient
         private final Reader m_in;
     }
 
+    /** Maximum number of commands waiting for a response in sendBatch().
+        Also limits the number of responses that the program needs to write
+        before we read them, since the input thread does not read more
+        responses than fit into its queue. */
+    private static final int MAX_PENDING = 64;
+
     private InvalidResponseCallback m_invalidResponseCallback;
 
     private boolean m_autoNumber;
@@ -653,16 +730,21 @@ public final class GtpClient
         }
     }
 
-    private void throwProgramDied() throws GtpError
+    private GtpError programDiedError()
     {
         m_isProgramDead = true;
         String name = m_name;
         if (name == null)
             name = "The Go program";
         if (m_wasKilled)
-            throw new GtpError(name + " terminated.");
+            return new GtpError(name + " terminated.");
         else
-            throw new GtpError(name + " terminated unexpectedly.");
+            return new GtpError(name + " terminated unexpectedly.");
+    }
+
+    private void throwProgramDied() throws GtpError
+    {
+        throw programDiedError();
     }
 
     private Message waitForMessage(long timeout) throws GtpError
@@ -707,4 +789,20 @@ public final class GtpClient
         }
         return message;
     }
+
+    /** Write a command without flushing the output stream.
+        @return The command as sent (including the command number if
+        auto-numbering is enabled). */
+    private String writeCommand(String command)
+    {
+        assert ! command.trim().equals("");
+        assert ! command.trim().startsWith("#");
+        ++m_commandNumber;
+        if (m_autoNumber)
+            command = Integer.toString(m_commandNumber) + " " + command;
+        if (m_log)
+            logOut(command);
+        m_out.println(command);
+        return command;
+    }
 }
@@ -4,6 +4,7 @@ package net.sf.gogui.gtp;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
@@ -298,6 +299,24 @@ public abstract class GtpClientBase
         @throws GtpError containing the response if the command fails. */
     public abstract String send(String command) throws GtpError;
 
+    /** Send several commands.
+        This implementation sends the commands one after the other with
+        send() and stops at the first failed command. Subclasses can
+        reimplement it to send the commands without waiting for each
+        response (see GtpClient).
+        @param commands The commands.
+        @return The responses of the commands.
+        @throws GtpError containing the response of the first failed command.
+        The state of the program is undefined after an error, because the
+        following commands may have been sent already. */
+    public ArrayList<String> sendBatch(List<String> commands) throws GtpError
+    {
+        ArrayList<String> responses = new ArrayList<String>(commands.size());
+        for (String command : commands)
+            responses.add(send(command));
+        return responses;
+    }
+
     /** Send comment.
         @param comment comment line (must start with '#'). */
     public abstract void sendComment(String comment);
@@ -81,6 +81,8 @@ public class GtpSynchronizer
     {
         int size = board.getSize();
         ConstBoard targetState = computeTargetState(board);
+        // m_engineState is null if the state of the engine is unknown after
+        // a failed command in play(ArrayList<Move>)
         if (m_engineState == null || size != m_engineState.getSize()
             || isSetupDifferent(targetState))
         {
@@ -311,13 +313,32 @@ public class GtpSynchronizer
             for (int i = 0; i < moves.size(); ++i)
                 m_engineState.play(moves.get(i));
         }
+        else if (moves.size() == 1)
+        {
+            play(moves.get(0));
+            updateListener();
+        }
         else
         {
+            // Send all play commands before reading the responses instead of
+            // waiting for each response
+            ArrayList<String> commands = new ArrayList<String>(moves.size());
             for (int i = 0; i < moves.size(); ++i)
+                commands.add(m_gtp.getCommandPlay(moves.get(i)));
+            try
+            {
+                m_gtp.sendBatch(commands);
+            }
+            catch (GtpError e)
             {
-                play(moves.get(i));
-                updateListener();
+                // The engine may have executed the moves after the failed
+                // one
+                m_engineState = null;
+                throw e;
             }
+            for (int i = 0; i < moves.size(); ++i)
+                m_engineState.play(moves.get(i));
+            updateListener();
         }
     }
 
@@ -409,12 +430,14 @@ public class GtpSynchronizer
         else
         {
             assert m_isSupportedUndo;
+            // A failed undo causes a full initialization in synchronize(), so
+            // the commands can be sent without waiting for each response
+            ArrayList<String> commands = new ArrayList<String>(n);
             for (int i = 0; i < n; ++i)
-            {
-                m_gtp.send("undo");
-                m_engineState.undo();
-                updateListener();
-            }
+                commands.add("undo");
+            m_gtp.sendBatch(commands);
+            m_engineState.undo(n);
+            updateListener();
         }
     }
 
@@ -0,0 +1,327 @@
+// GameTreeLayout.java
+
+package net.sf.gogui.gui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import net.sf.gogui.game.ConstNode;
+
+/** Positions of the shown nodes of a game tree in a GameTreePanel.
+    Nodes are placed on a grid. The column of a node is its depth in the
+    tree, the first child of a node is in the same row as its father, other
+    children are placed below the subtree of the previous child. Only the
+    children of expanded nodes are shown.
+    The layout is stored in arrays of primitive types indexed by a node
+    index. For each column, the node indices are also stored sorted by row,
+    so that the nodes in a rectangle can be found without iterating over
+    all nodes. */
+final class GameTreeLayout
+{
+    /** Create layout.
+        @param root The root node of the tree.
+        @param isExpanded The nodes whose children are shown. */
+    public GameTreeLayout(ConstNode root, Set<ConstNode> isExpanded)
+    {
+        initArrays(256);
+        // Iterative preorder traversal, the depth of trees can be larger
+        // than the stack size allows for a recursive traversal
+        ArrayList<ConstNode> stack = new ArrayList<ConstNode>();
+        ArrayList<Integer> stackChild = new ArrayList<Integer>();
+        // Index of the node on top of the stack
+        int index = append(root, -1, 0, 0, root.getMove() != null ? 1 : 0);
+        stack.add(root);
+        stackChild.add(0);
+        while (! stack.isEmpty())
+        {
+            int top = stack.size() - 1;
+            ConstNode node = stack.get(top);
+            int childIndex = stackChild.get(top);
+            if (childIndex >= node.getNumberChildren()
+                || ! isExpanded.contains(node))
+            {
+                stack.remove(top);
+                stackChild.remove(top);
+                index = m_father[index];
+                continue;
+            }
+            stackChild.set(top, childIndex + 1);
+            ConstNode child = node.getChildConst(childIndex);
+            int row;
+            if (childIndex == 0)
+                row = m_row[index];
+            else
+            {
+                row = m_maxRow + 1;
+                m_junctionRow[index] = row;
+            }
+            int moveNumber = m_moveNumber[index];
+            if (child.getMove() != null)
+                ++moveNumber;
+            index = append(child, index, m_column[index] + 1, row,
+                           moveNumber);
+            stack.add(child);
+            stackChild.add(0);
+        }
+        initColumns();
+    }
+
+    /** Add a node that was added as the only child of a node in the
+        layout.
+        @param node The new node.
+        @return The index of the new node. */
+    public int add(ConstNode node)
+    {
+        int fatherIndex = getIndex(node.getFatherConst());
+        assert fatherIndex >= 0;
+        assert ! m_index.containsKey(node);
+        int moveNumber = m_moveNumber[fatherIndex];
+        if (node.getMove() != null)
+            ++moveNumber;
+        int column = m_column[fatherIndex] + 1;
+        int row = m_row[fatherIndex];
+        int index = append(node, fatherIndex, column, row, moveNumber);
+        if (column >= m_numberColumns)
+        {
+            growColumns(column + 1);
+            m_numberColumns = column + 1;
+        }
+        // Insert into node list of column sorted by row
+        int size = m_columnSize[column];
+        if (size == m_columnNodes[column].length)
+        {
+            int[] nodes = new int[Math.max(2 * size, 4)];
+            System.arraycopy(m_columnNodes[column], 0, nodes, 0, size);
+            m_columnNodes[column] = nodes;
+        }
+        int position = findInColumn(column, row);
+        System.arraycopy(m_columnNodes[column], position,
+                         m_columnNodes[column], position + 1,
+                         size - position);
+        m_columnNodes[column][position] = index;
+        ++m_columnSize[column];
+        return index;
+    }
+
+    /** Find the first node in a column with a row greater or equal a given
+        row.
+        @return The position in the node list of the column. */
+    public int findInColumn(int column, int row)
+    {
+        int[] nodes = m_columnNodes[column];
+        int low = 0;
+        int high = m_columnSize[column];
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (m_row[nodes[middle]] < row)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public int getColumn(int index)
+    {
+        return m_column[index];
+    }
+
+    /** Get a node in the node list of a column.
+        @param column The column.
+        @param position The position in the node list of the column.
+        @return The node index. */
+    public int getColumnNode(int column, int position)
+    {
+        return m_columnNodes[column][position];
+    }
+
+    /** Number of nodes in a column. */
+    public int getColumnSize(int column)
+    {
+        return m_columnSize[column];
+    }
+
+    /** Get the index of the father of a node.
+        @return The father index or -1 for the root node. */
+    public int getFather(int index)
+    {
+        return m_father[index];
+    }
+
+    /** Get the index of a node.
+        @return The index or -1, if the node is not in the layout. */
+    public int getIndex(ConstNode node)
+    {
+        Integer index = m_index.get(node);
+        if (index == null)
+            return -1;
+        return index.intValue();
+    }
+
+    /** Get the last row of the vertical line to the children of a node.
+        @return The row of the last child of the node, or the row of the
+        node itself, if it has less than two shown children. */
+    public int getJunctionRow(int index)
+    {
+        return m_junctionRow[index];
+    }
+
+    public int getMaxRow()
+    {
+        return m_maxRow;
+    }
+
+    public int getMoveNumber(int index)
+    {
+        return m_moveNumber[index];
+    }
+
+    public ConstNode getNode(int index)
+    {
+        return m_node[index];
+    }
+
+    /** Get the node index at a position.
+        @return The node index or -1, if there is no node at this position. */
+    public int getNodeAt(int column, int row)
+    {
+        if (column < 0 || column >= m_numberColumns || row < 0)
+            return -1;
+        int position = findInColumn(column, row);
+        if (position == m_columnSize[column])
+            return -1;
+        int index = m_columnNodes[column][position];
+        if (m_row[index] != row)
+            return -1;
+        return index;
+    }
+
+    public int getNumberColumns()
+    {
+        return m_numberColumns;
+    }
+
+    public int getNumberNodes()
+    {
+        return m_numberNodes;
+    }
+
+    public int getRow(int index)
+    {
+        return m_row[index];
+    }
+
+    private int m_maxRow;
+
+    private int m_numberColumns;
+
+    private int m_numberNodes;
+
+    private int[] m_column;
+
+    /** Number of nodes in each column. */
+    private int[] m_columnSize;
+
+    private int[] m_father;
+
+    private int[] m_junctionRow;
+
+    private int[] m_moveNumber;
+
+    private int[] m_row;
+
+    /** Node indices in each column sorted by row. */
+    private int[][] m_columnNodes;
+
+    private ConstNode[] m_node;
+
+    private final HashMap<ConstNode,Integer> m_index =
+        new HashMap<ConstNode,Integer>();
+
+    private int append(ConstNode node, int father, int column, int row,
+                       int moveNumber)
+    {
+        if (m_numberNodes == m_node.length)
+            growArrays(2 * m_numberNodes);
+        int index = m_numberNodes++;
+        m_node[index] = node;
+        m_father[index] = father;
+        m_column[index] = column;
+        m_row[index] = row;
+        m_junctionRow[index] = row;
+        m_moveNumber[index] = moveNumber;
+        m_index.put(node, index);
+        m_maxRow = Math.max(m_maxRow, row);
+        return index;
+    }
+
+    private static int[] copyOf(int[] array, int size)
+    {
+        int[] result = new int[size];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, size));
+        return result;
+    }
+
+    private void growArrays(int size)
+    {
+        ConstNode[] node = new ConstNode[size];
+        System.arraycopy(m_node, 0, node, 0, m_numberNodes);
+        m_node = node;
+        m_father = copyOf(m_father, size);
+        m_column = copyOf(m_column, size);
+        m_row = copyOf(m_row, size);
+        m_junctionRow = copyOf(m_junctionRow, size);
+        m_moveNumber = copyOf(m_moveNumber, size);
+    }
+
+    private void growColumns(int numberColumns)
+    {
+        if (numberColumns <= m_columnNodes.length)
+            return;
+        int size = Math.max(numberColumns, 2 * m_columnNodes.length);
+        int[][] columnNodes = new int[size][];
+        System.arraycopy(m_columnNodes, 0, columnNodes, 0,
+                         m_columnNodes.length);
+        for (int i = m_columnNodes.length; i < size; ++i)
+            columnNodes[i] = new int[0];
+        m_columnNodes = columnNodes;
+        m_columnSize = copyOf(m_columnSize, size);
+    }
+
+    private void initArrays(int size)
+    {
+        m_node = new ConstNode[size];
+        m_father = new int[size];
+        m_column = new int[size];
+        m_row = new int[size];
+        m_junctionRow = new int[size];
+        m_moveNumber = new int[size];
+        m_columnNodes = new int[0][];
+        m_columnSize = new int[0];
+    }
+
+    /** Create the node lists of the columns.
+        The nodes were added in preorder, which has non-decreasing rows, so
+        adding them in this order creates lists sorted by row. */
+    private void initColumns()
+    {
+        int numberColumns = 0;
+        for (int i = 0; i < m_numberNodes; ++i)
+            numberColumns = Math.max(numberColumns, m_column[i] + 1);
+        growColumns(numberColumns);
+        m_numberColumns = numberColumns;
+        for (int i = 0; i < m_numberNodes; ++i)
+            ++m_columnSize[m_column[i]];
+        for (int i = 0; i < numberColumns; ++i)
+        {
+            m_columnNodes[i] = new int[m_columnSize[i]];
+            m_columnSize[i] = 0;
+        }
+        for (int i = 0; i < m_numberNodes; ++i)
+        {
+            int column = m_column[i];
+            m_columnNodes[column][m_columnSize[column]++] = i;
+        }
+    }
+}
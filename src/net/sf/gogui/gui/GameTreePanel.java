@@ -3,47 +3,47 @@
 package net.sf.gogui.gui;
 
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionAdapter;
-import java.util.HashMap;
+import java.awt.font.LineMetrics;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.prefs.Preferences;
 
 import javax.swing.ImageIcon;
 import javax.swing.JDialog;
-import javax.swing.JLabel;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.Scrollable;
-import javax.swing.SpringLayout;
 import javax.swing.SwingConstants;
+import javax.swing.ToolTipManager;
 import net.sf.gogui.game.ConstNode;
-import net.sf.gogui.game.Game;
-import net.sf.gogui.game.Node;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.NodeUtil;
-import net.sf.gogui.gogui.GoGui;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.Move;
 import net.sf.gogui.gogui.GoGuiActions;
-import net.sf.gogui.gtp.GtpError;
-import net.sf.gogui.util.ErrorMessage;
 
 import static net.sf.gogui.gui.I18n.i18n;
 
-/** Panel displaying a game tree. */
+/** Panel displaying a game tree.
+    The panel paints the nodes itself instead of using a component per
+    node. The positions of the nodes are computed in a GameTreeLayout and
+    only nodes in the clip area are painted, so that large trees can be
+    shown. */
 public class GameTreePanel
     extends JPanel
     implements Scrollable
@@ -74,7 +74,7 @@ public class GameTreePanel
                          Label labelMode, Size sizeMode,
                          MessageDialogs messageDialogs, GoGuiActions m_actions)
     {
-        super(new SpringLayout());
+        super(null);
         m_messageDialogs = messageDialogs;
         m_owner = owner;
         setBackground(BACKGROUND);
@@ -86,42 +86,32 @@ public class GameTreePanel
         setAutoscrolls(true);
         addMouseMotionListener(new GameTreePanel.MouseMotionListener());
         m_listener = listener;
-        m_mouseListener = new MouseAdapter()
+        addMouseListener(new MouseAdapter()
             {
                 public void mouseClicked(MouseEvent event)
                 {
                     //Left click
                     if (event.getButton() != MouseEvent.BUTTON1)
                         return;
-                    GameTreeNode gameNode = (GameTreeNode)event.getSource();
-                    gotoNode(gameNode.getNode());
+                    int index = getNodeIndexAt(event.getPoint());
+                    if (index >= 0)
+                        gotoNode(m_layout.getNode(index));
                 }
 
                 public void mousePressed(MouseEvent event)
                 {
                     if (event.isPopupTrigger())
-                    {
-                        GameTreeNode gameNode
-                            = (GameTreeNode)event.getSource();
-                        int x = event.getX();
-                        int y = event.getY();
-                        showPopup(x, y, gameNode, m_actions);
-                    }
+                        showPopup(event, m_actions);
                 }
 
                 public void mouseReleased(MouseEvent event)
                 {
                 	//Right click
                     if (event.isPopupTrigger())
-                    {
-                        GameTreeNode gameNode
-                            = (GameTreeNode)event.getSource();
-                        int x = event.getX();
-                        int y = event.getY();
-                        showPopup(x, y, gameNode, m_actions);
-                    }
+                        showPopup(event, m_actions);
                 }
-            };
+            });
+        ToolTipManager.sharedInstance().registerComponent(this);
     }
 
     public ConstNode getCurrentNode()
@@ -177,6 +167,15 @@ public class GameTreePanel
         return m_nodeFullSize;
     }
 
+    public String getToolTipText(MouseEvent event)
+    {
+        int index = getNodeIndexAt(event.getPoint());
+        if (index < 0)
+            return null;
+        return getToolTip(m_layout.getNode(index),
+                          m_layout.getMoveNumber(index));
+    }
+
     public boolean getShowSubtreeSizes()
     {
         return m_showSubtreeSizes;
@@ -207,18 +206,51 @@ public class GameTreePanel
     {
         GuiUtil.setAntiAlias(graphics);
         super.paintComponent(graphics);
+        if (m_layout == null)
+            return;
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        graphics.setFont(m_font);
+        // Include the columns left and right of the clip area, because
+        // nodes draw the subtree size label into the column right of them
+        // and the lines to their father into the column left of them
+        int minColumn = Math.max((clip.x - MARGIN) / m_nodeFullSize - 1, 0);
+        int maxColumn = Math.min((clip.x + clip.width - MARGIN)
+                                 / m_nodeFullSize + 1,
+                                 m_layout.getNumberColumns() - 1);
+        int minRow = (clip.y - MARGIN) / m_nodeFullSize;
+        int maxRow = (clip.y + clip.height - MARGIN) / m_nodeFullSize;
+        for (int column = minColumn; column <= maxColumn; ++column)
+        {
+            int size = m_layout.getColumnSize(column);
+            int position = m_layout.findInColumn(column, minRow);
+            // The vertical line to the children of the node above the clip
+            // area can cross the clip area
+            if (position > 0)
+                --position;
+            for ( ; position < size; ++position)
+            {
+                int index = m_layout.getColumnNode(column, position);
+                if (m_layout.getRow(index) > maxRow)
+                    break;
+                drawNode(graphics, index);
+            }
+        }
     }
 
     public void redrawCurrentNode()
     {
-        GameTreeNode gameNode = getGameTreeNode(m_currentNode);
-        gameNode.repaint();
+        repaintNode(m_currentNode);
     }
 
     public void scrollToCurrent()
     {
-        scrollRectToVisible(new Rectangle(m_currentNodeX - 2 * m_nodeSize,
-                                          m_currentNodeY - m_nodeSize,
+        Point location = getLocation(m_currentNode);
+        if (location == null)
+            return;
+        scrollRectToVisible(new Rectangle(location.x - 2 * m_nodeSize,
+                                          location.y - m_nodeSize,
                                           5 * m_nodeSize,
                                           3 * m_nodeSize));
     }
@@ -250,6 +282,8 @@ public class GameTreePanel
     public void setShowSubtreeSizes(boolean showSubtreeSizes)
     {
         m_showSubtreeSizes = showSubtreeSizes;
+        updatePreferredSize();
+        repaint();
     }
 
     public void setSizeMode(Size mode)
@@ -264,6 +298,7 @@ public class GameTreePanel
             {
                 m_sizeMode = mode;
                 initSize(m_sizeMode);
+                updatePreferredSize();
             }
             break;
         default:
@@ -279,23 +314,22 @@ public class GameTreePanel
         ConstNode father = node.getFatherConst();
         assert father != null;
         assert father.getNumberChildren() == 1;
-        GameTreeNode fatherGameNode = getGameTreeNode(father);
-        if (fatherGameNode == null)
+        if (m_layout == null || m_layout.getIndex(father) < 0)
         {
             assert false;
             return;
         }
-        int moveNumber = NodeUtil.getMoveNumber(node);
-        GameTreeNode gameNode = createNode(node, moveNumber);
-        m_map.put(node, gameNode);
-        add(gameNode);
-        putConstraint(fatherGameNode, gameNode, m_nodeFullSize, 0);
-        gameNode.setLocation(fatherGameNode.getX() + m_nodeFullSize,
-                             fatherGameNode.getY());
-        gameNode.setSize(m_nodeFullSize, m_nodeFullSize);
-        m_maxX = Math.max(fatherGameNode.getX() + 2 * m_nodeFullSize, m_maxX);
-        setPreferredSize(new Dimension(m_maxX + m_nodeFullSize + MARGIN,
-                                       m_maxY + m_nodeFullSize + MARGIN));
+        // The father is shown and has no other children, so the new node
+        // can be shown without changing the positions of other nodes
+        m_isExpanded.add(father);
+        m_layout.add(node);
+        if (m_subtreeSize != null)
+            m_subtreeSize = Arrays.copyOf(m_subtreeSize,
+                                          m_layout.getNumberNodes());
+        updatePreferredSize();
+        revalidate();
+        repaintNode(father);
+        repaintNode(node);
     }
 
     public void showPopup(GoGuiActions m_actions)
@@ -303,11 +337,11 @@ public class GameTreePanel
         if (m_currentNode == null)
             return;
         scrollToCurrent();
-        GameTreeNode gameNode = getGameTreeNode(m_currentNode);
-        if (gameNode == null)
+        Point location = getLocation(m_currentNode);
+        if (location == null)
             return;
-        showPopup(gameNode.getWidth() / 2, gameNode.getHeight() / 2,
-                  gameNode, m_actions);
+        showPopup(location.x + m_nodeFullSize / 2,
+                  location.y + m_nodeFullSize / 2, m_currentNode, m_actions);
     }
 
     public void update(ConstGameTree tree, ConstNode currentNode,
@@ -323,30 +357,18 @@ public class GameTreePanel
         ensureVisible(currentNode);
         m_tree = tree;
         m_currentNode = currentNode;
-        removeAll();
-        m_map.clear();
-        m_maxX = minWidth;
-        m_maxY = minHeight;
-        try
-        {
-            ConstNode root = m_tree.getRootConst();
-            createNodes(this, root, 0, 0, MARGIN, MARGIN, 0);
-            if (gameTreeChanged
-                && ! NodeUtil.subtreeGreaterThan(root, 10000))
-                showSubtree(root);
-        }
-        catch (OutOfMemoryError e)
-        {
-            m_isExpanded.clear();
-            removeAll();
-            m_messageDialogs.showError(m_owner,
-                                       i18n("MSG_TREE_OUTOFMEM"),
-                                       i18n("MSG_TREE_OUTOFMEM_2"));
-            update(tree, currentNode, minWidth, minHeight);
-        }
-        setPreferredSize(new Dimension(m_maxX + m_nodeFullSize + MARGIN,
-                                       m_maxY + m_nodeFullSize + MARGIN));
+        ConstNode root = m_tree.getRootConst();
+        if (gameTreeChanged
+            && ! NodeUtil.subtreeGreaterThan(root, MAX_EXPAND))
+            expandSubtree(root);
+        // The layout is computed without recursion and stores the positions
+        // in arrays of primitive types, so that even trees with hundreds of
+        // thousands of nodes need only a few megabytes
+        m_layout = new GameTreeLayout(root, m_isExpanded);
+        m_subtreeSize = null;
+        updatePreferredSize();
         revalidate();
+        repaint();
         scrollToCurrent();
         if (m_scrollPane != null)
             m_scrollPane.requestFocusInWindow();
@@ -361,35 +383,20 @@ public class GameTreePanel
             update(m_tree, currentNode, minWidth, minHeight);
             return;
         }
-        GameTreeNode gameNode = getGameTreeNode(m_currentNode);
-        if (gameNode == null)
+        if (m_layout == null || m_layout.getIndex(currentNode) < 0)
         {
-            // The following warning was previously an assert false.
-            // But it can can happen, because GoGui does sometimes defer a full
+            // This can happen, because GoGui does sometimes defer a full
             // update of the tree with SwingUtilities::invokeLater to be
-            // able to show a busy cursor and it can happen that a lightweight
-            // update (which assumes that the tree structure has not changed)
-            // is called before the full update event is dispatched.
-            // In the future, it would be easier to do all full updates in
-            // the event dispatch tree, even if they take long, but then we
-            // need another method to show the busy cursor while the UI is
-            // non-responsive
+            // able to show a busy cursor and it can happen that a
+            // lightweight update (which assumes that the tree structure has
+            // not changed) is called before the full update event is
+            // dispatched.
             System.err.println("GameTreePanel: current node not found");
             return;
         }
-        gameNode.repaint();
-        gameNode = getGameTreeNode(currentNode);
-        if (gameNode == null)
-        {
-            update(m_tree, currentNode, minWidth, minHeight);
-            return;
-        }
-        Point location = gameNode.getLocation();
-        m_currentNodeX = location.x;
-        m_currentNodeY = location.y;
-        gameNode.repaint();
-        gameNode.updateToolTip();
+        repaintNode(m_currentNode);
         m_currentNode = currentNode;
+        repaintNode(m_currentNode);
         scrollToCurrent();
         if (m_scrollPane != null)
             m_scrollPane.requestFocusInWindow();
@@ -408,11 +415,18 @@ public class GameTreePanel
         }
     }
 
-    private boolean m_showSubtreeSizes;
+    /** Subtrees larger than this are not expanded automatically. */
+    private static final int MAX_EXPAND = 100000;
+
+    private static final int MARGIN = 15;
+
+    private static final Color COLOR_LIGHT_BLUE = new Color(103, 122, 164);
+
+    private static final Color COLOR_CURSOR = new Color(142, 168, 226);
 
-    private int m_currentNodeX;
+    private static final Color COLOR_GRID = new Color(148, 148, 148);
 
-    private int m_currentNodeY;
+    private boolean m_showSubtreeSizes;
 
     private Label m_labelMode;
 
@@ -426,16 +440,15 @@ public class GameTreePanel
 
     private int m_nodeFullSize;
 
-    private static final int MARGIN = 15;
-
-    private int m_maxX;
-
-    private int m_maxY;
-
-    private Dimension m_preferredNodeSize;
+    /** Cached number of nodes in the subtrees of collapsed nodes without
+        the root of the subtree plus one, or zero if not yet computed.
+        Indexed by the node index in the layout. */
+    private int[] m_subtreeSize;
 
     private Font m_font;
 
+    private GameTreeLayout m_layout;
+
     private ConstGameTree m_tree;
 
     private final GameTreeViewer.Listener m_listener;
@@ -449,14 +462,9 @@ public class GameTreePanel
 
     private ConstNode m_popupNode;
 
-    private final HashMap<ConstNode,GameTreeNode> m_map =
-        new HashMap<ConstNode,GameTreeNode>(500, 0.8f);
-
     private final HashSet<ConstNode> m_isExpanded
         = new HashSet<ConstNode>(200);
 
-    private final MouseListener m_mouseListener;
-
     private Point m_popupLocation;
 
     private ImageIcon m_iconBlack;
@@ -514,76 +522,6 @@ public class GameTreePanel
 
 
         m_font = new Font("Dialog", Font.PLAIN, (int)(0.4 * m_nodeSize));
-        m_preferredNodeSize = new Dimension(m_nodeFullSize, m_nodeFullSize);
-    }
-
-    private GameTreeNode createNode(ConstNode node, int moveNumber)
-    {
-        return new GameTreeNode(node, moveNumber, this, m_mouseListener,
-                                m_font, m_iconBlack.getImage(),
-                                m_iconWhite.getImage(),
-                                m_iconSetup.getImage(),
-                                m_preferredNodeSize);
-    }
-
-    private int createNodes(Component father, ConstNode node, int x, int y,
-                            int dx, int dy, int moveNumber)
-    {
-        m_maxX = Math.max(x, m_maxX);
-        m_maxY = Math.max(y, m_maxY);
-        if (node.getMove() != null)
-            ++moveNumber;
-        GameTreeNode gameNode = createNode(node, moveNumber);
-        m_map.put(node, gameNode);
-        add(gameNode);
-        putConstraint(father, gameNode, dx, dy);
-        int numberChildren = node.getNumberChildren();
-        dx = m_nodeFullSize;
-        dy = 0;
-        boolean isExpanded = isExpanded(node);
-        if (isExpanded)
-        {
-            int[] childrenDy = new int[numberChildren];
-            for (int i = 0; i < numberChildren; ++i)
-            {
-                childrenDy[i] = dy;
-                dy += createNodes(gameNode, node.getChildConst(i),
-                                  x + dx, y + dy, dx, dy, moveNumber);
-                if (i < numberChildren - 1)
-                    dy += m_nodeFullSize;
-            }
-            if (numberChildren > 1)
-            {
-                GameTreeJunction junction =
-                    new GameTreeJunction(childrenDy, this);
-                add(junction);
-                putConstraint(gameNode, junction, 0, m_nodeFullSize);
-            }
-        }
-        else
-        {
-            if (m_showSubtreeSizes && node.hasChildren())
-            {
-                int subtreeSize = NodeUtil.subtreeSize(node) - 1;
-                String text = Integer.toString(subtreeSize);
-                // Use upper limit for textWidth
-                int textWidth = text.length() + m_font.getSize();
-                int textHeight = m_font.getSize();
-                int pad = GuiUtil.SMALL_PAD;
-                m_maxX = Math.max(x + textWidth + pad, m_maxX);
-                JLabel label = new JLabel(text);
-                label.setFont(m_font);
-                add(label);
-                putConstraint(gameNode, label, dx + pad,
-                              (m_nodeSize - textHeight) / 2);
-            }
-        }
-        if (node == m_currentNode)
-        {
-            m_currentNodeX = x;
-            m_currentNodeY = y;
-        }
-        return dy;
     }
 
     private void createPopup(GoGuiActions m_actions)
@@ -671,9 +609,101 @@ public class GameTreePanel
         m_popup.add(item);
     }
 
-    private GameTreeNode getGameTreeNode(ConstNode node)
+    private void drawNode(Graphics graphics, int index)
+    {
+        ConstNode node = m_layout.getNode(index);
+        int size = m_nodeSize;
+        int fullSize = m_nodeFullSize;
+        int halfSize = size / 2;
+        int x = getX(index);
+        int y = getY(index);
+        int numberChildren = node.getNumberChildren();
+        boolean isExpanded = isExpanded(node);
+        if (node == m_currentNode)
+        {
+            graphics.setColor(COLOR_CURSOR);
+            graphics.fillRect(x, y, size, size > 10 ? size : fullSize - 1);
+        }
+        graphics.setColor(COLOR_GRID);
+        if (numberChildren > 0)
+            graphics.drawLine(x + size, y + halfSize, x + fullSize,
+                              y + halfSize);
+        if (numberChildren > 1 && isExpanded)
+        {
+            int yJunction = MARGIN + m_layout.getJunctionRow(index) * fullSize;
+            graphics.drawLine(x + halfSize, y + size, x + halfSize,
+                              yJunction);
+        }
+        int father = m_layout.getFather(index);
+        if (father >= 0 && m_layout.getRow(father) != m_layout.getRow(index))
+        {
+            // Connect to the vertical line from the father
+            int xFather = getX(father);
+            graphics.drawLine(xFather + halfSize, y, xFather + size,
+                              y + halfSize);
+            graphics.drawLine(xFather + size, y + halfSize, x, y + halfSize);
+        }
+        Move move = node.getMove();
+        if (node.hasSetup())
+            graphics.drawImage(m_iconSetup.getImage(), x, y, null);
+        else if (move == null)
+        {
+            int[] xPoints = { x + halfSize, x + size, x + halfSize, x };
+            int[] yPoints = { y, y + halfSize, y + size, y + halfSize };
+            graphics.fillPolygon(xPoints, yPoints, 4);
+        }
+        else
+        {
+            if (move.getColor() == BLACK)
+                graphics.drawImage(m_iconBlack.getImage(), x, y, null);
+            else
+                graphics.drawImage(m_iconWhite.getImage(), x, y, null);
+            drawText(graphics, x, y, move, m_layout.getMoveNumber(index));
+        }
+        if (node.hasComment())
+        {
+            graphics.setColor(COLOR_LIGHT_BLUE);
+            int yComment = y + size + (fullSize - size) / 4;
+            int d = size / 5;
+            graphics.drawLine(x + d, yComment, x + size - d, yComment);
+        }
+        if (m_showSubtreeSizes && numberChildren > 0 && ! isExpanded)
+        {
+            String text = Integer.toString(getSubtreeSize(index) - 1);
+            FontMetrics fontMetrics = graphics.getFontMetrics();
+            int ascent = (int)fontMetrics.getLineMetrics(text, graphics)
+                .getAscent();
+            graphics.setColor(getForeground());
+            graphics.drawString(text, x + fullSize + GuiUtil.SMALL_PAD,
+                                y + (ascent + size) / 2);
+        }
+    }
+
+    private void drawText(Graphics graphics, int x, int y, Move move,
+                          int moveNumber)
     {
-        return m_map.get(node);
+        if (m_labelMode == Label.NONE)
+            return;
+        String text;
+        if (m_labelMode == Label.MOVE)
+        {
+            if (move.getPoint() == null)
+                return;
+            text = move.getPoint().toString();
+        }
+        else
+            text = Integer.toString(moveNumber);
+        FontMetrics fontMetrics = graphics.getFontMetrics();
+        LineMetrics lineMetrics = fontMetrics.getLineMetrics(text, graphics);
+        int textWidth = fontMetrics.stringWidth(text);
+        int ascent = (int)lineMetrics.getAscent();
+        int xText = x + (m_nodeSize - textWidth) / 2;
+        int yText = y + (ascent + m_nodeSize) / 2;
+        if (move.getColor() == BLACK)
+            graphics.setColor(Color.white);
+        else
+            graphics.setColor(Color.black);
+        graphics.drawString(text, xText, yText);
     }
 
     private boolean ensureVisible(ConstNode node)
@@ -690,6 +720,121 @@ public class GameTreePanel
         return changed;
     }
 
+    private void expandSubtree(ConstNode root)
+    {
+        int depth = NodeUtil.getDepth(root);
+        ConstNode node = root;
+        while (node != null)
+        {
+            m_isExpanded.add(node);
+            node = NodeUtil.nextNode(node, depth);
+        }
+    }
+
+    /** Get the upper left corner of a node.
+        @return The location or null, if the node is not shown. */
+    private Point getLocation(ConstNode node)
+    {
+        if (m_layout == null || node == null)
+            return null;
+        int index = m_layout.getIndex(node);
+        if (index < 0)
+            return null;
+        return new Point(getX(index), getY(index));
+    }
+
+    /** Get the index of the node at a point.
+        @return The node index in the layout or -1, if there is no node
+        at this point. */
+    private int getNodeIndexAt(Point point)
+    {
+        if (m_layout == null || point.x < MARGIN || point.y < MARGIN)
+            return -1;
+        return m_layout.getNodeAt((point.x - MARGIN) / m_nodeFullSize,
+                                  (point.y - MARGIN) / m_nodeFullSize);
+    }
+
+    private int getSubtreeSize(int index)
+    {
+        if (m_subtreeSize == null)
+            m_subtreeSize = new int[m_layout.getNumberNodes()];
+        if (m_subtreeSize[index] == 0)
+            m_subtreeSize[index] =
+                NodeUtil.subtreeSize(m_layout.getNode(index));
+        return m_subtreeSize[index];
+    }
+
+    private static String getToolTip(ConstNode node, int moveNumber)
+    {
+        StringBuilder toolTip = new StringBuilder(128);
+        Move move = node.getMove();
+        GoColor player = node.getPlayer();
+        if (move != null)
+        {
+            toolTip.append(moveNumber);
+            toolTip.append(' ');
+            toolTip.append(move);
+        }
+        else if (node.hasSetup() || player != null)
+        {
+            toolTip.append(i18n("TT_NODE_SETUP"));
+            toolTip.append(" (");
+            boolean anyStones = false;
+            for (GoColor c : BLACK_WHITE_EMPTY)
+            {
+                int n = node.getSetup(c).size();
+                if (n == 0)
+                    continue;
+                if (anyStones)
+                    toolTip.append(", ");
+                anyStones = true;
+                toolTip.append(c.getUppercaseLetter());
+                toolTip.append(' ');
+                toolTip.append(n);
+            }
+            if (player != null)
+            {
+                if (anyStones)
+                    toolTip.append(", ");
+                toolTip.append(i18n("TT_NODE_PLAYER"));
+                toolTip.append(' ');
+                toolTip.append(player.getUppercaseLetter());
+            }
+            toolTip.append(')');
+        }
+        String comment = NodeUtil.getCommentStart(node, false, 80);
+        if (comment != null)
+        {
+            comment = comment.replaceAll("\n *\n", "\n");
+            comment = comment.replaceAll("\n", "<br>");
+            if (comment.length() > 50)
+            {
+                toolTip.append("<p width=\"250\">");
+                toolTip.append(comment);
+                toolTip.append("</p>");
+            }
+            else
+            {
+                toolTip.append("<p>");
+                toolTip.append(comment);
+                toolTip.append("</p>");
+            }
+        }
+        if (toolTip.length() == 0)
+            return null;
+        return "<html>" + toolTip.toString() + "</html>";
+    }
+
+    private int getX(int index)
+    {
+        return MARGIN + m_layout.getColumn(index) * m_nodeFullSize;
+    }
+
+    private int getY(int index)
+    {
+        return MARGIN + m_layout.getRow(index) * m_nodeFullSize;
+    }
+
     private void hideOthers(ConstNode node)
     {
         m_isExpanded.clear();
@@ -737,33 +882,38 @@ public class GameTreePanel
         textViewer.setVisible(true);
     }
 
-    private void putConstraint(Component father, Component son,
-                               int west, int north)
+    private void repaintNode(ConstNode node)
     {
-        SpringLayout layout = (SpringLayout)getLayout();
-        layout.putConstraint(SpringLayout.WEST, son, west,
-                             SpringLayout.WEST, father);
-        layout.putConstraint(SpringLayout.NORTH, son, north,
-                             SpringLayout.NORTH, father);
+        Point location = getLocation(node);
+        if (location != null)
+            repaint(location.x, location.y, m_nodeFullSize, m_nodeFullSize);
     }
 
     private void scrollTo(ConstNode node)
     {
-        if (node == null)
+        Point location = getLocation(node);
+        if (location == null)
             return;
-        GameTreeNode gameNode = getGameTreeNode(node);
         Rectangle rectangle = new Rectangle();
-        rectangle.x = gameNode.getLocation().x;
-        rectangle.y = gameNode.getLocation().y;
+        rectangle.x = location.x;
+        rectangle.y = location.y;
         // Make rectangle large so that children are visible
         rectangle.width = 3 * m_nodeFullSize;
         rectangle.height = 3 * m_nodeFullSize;
         scrollRectToVisible(rectangle);
     }
 
-    private void showPopup(int x, int y, GameTreeNode gameNode, GoGuiActions m_actions)
+    private void showPopup(MouseEvent event, GoGuiActions m_actions)
+    {
+        int index = getNodeIndexAt(event.getPoint());
+        if (index >= 0)
+            showPopup(event.getX(), event.getY(), m_layout.getNode(index),
+                      m_actions);
+    }
+
+    private void showPopup(int x, int y, ConstNode node,
+                           GoGuiActions m_actions)
     {
-        ConstNode node = gameNode.getNode();
         m_popupNode = node;
         if (m_popup == null)
             createPopup(m_actions);
@@ -773,13 +923,13 @@ public class GameTreePanel
         m_itemHideSubtree.setEnabled(hasChildren);
         m_itemShowSubtree.setEnabled(hasChildren);
         m_itemShowChildren.setEnabled(hasChildren);
-        m_popup.show(gameNode, x, y);
+        m_popup.show(this, x, y);
         m_popupLocation = m_popup.getLocationOnScreen();
     }
 
     private void showSubtree(ConstNode root)
     {
-        if (NodeUtil.subtreeGreaterThan(root, 10000))
+        if (NodeUtil.subtreeGreaterThan(root, MAX_EXPAND))
         {
             String mainMessage = i18n("MSG_TREE_EXPAND_LARGE");
             String optionalMessage = i18n("MSG_TREE_EXPAND_LARGE_2");
@@ -801,13 +951,6 @@ public class GameTreePanel
         if (changed)
         {
             update(m_tree, m_currentNode, m_minWidth, m_minHeight);
-            // Game node could have disappeared, because after out of memory
-            // error all nodes are hidden but main variation
-            if (getGameTreeNode(root) == null)
-            {
-                ensureVisible(root);
-                update(m_tree, m_currentNode, m_minWidth, m_minHeight);
-            }
             scrollTo(root);
         }
     }
@@ -821,6 +964,21 @@ public class GameTreePanel
         }
     }
 
+    private void updatePreferredSize()
+    {
+        if (m_layout == null)
+            return;
+        int maxX = (m_layout.getNumberColumns() - 1) * m_nodeFullSize;
+        // Upper limit for the width of subtree size labels
+        if (m_showSubtreeSizes)
+            maxX += m_nodeFullSize + 4 * m_font.getSize();
+        int maxY = m_layout.getMaxRow() * m_nodeFullSize;
+        maxX = Math.max(maxX, m_minWidth);
+        maxY = Math.max(maxY, m_minHeight);
+        setPreferredSize(new Dimension(maxX + m_nodeFullSize + MARGIN,
+                                       maxY + m_nodeFullSize + MARGIN));
+    }
+
     private void treeInfo(Point location, ConstNode node)
     {
         String treeInfo = NodeUtil.treeInfo(node);
@@ -30,8 +30,6 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
-import javax.swing.event.CaretEvent;
-import javax.swing.event.CaretListener;
 import net.sf.gogui.gtp.GtpUtil;
 import static net.sf.gogui.gui.I18n.i18n;
 import net.sf.gogui.util.ObjectUtil;
@@ -60,20 +58,20 @@ public class GtpShell
         m_messageDialogs = messageDialogs;
         m_listener = listener;
         Preferences prefs = Preferences.userNodeForPackage(getClass());
-        m_historyMin = prefs.getInt("history-min", 2000);
-        m_historyMax = prefs.getInt("history-max", 3000);
+        int historyMax = Math.max(prefs.getInt("history-max", 3000), 1);
         JPanel panel = new JPanel(new BorderLayout());
         getContentPane().add(panel, BorderLayout.CENTER);
-        m_gtpShellText = new GtpShellText(m_historyMin, m_historyMax, false);
-        CaretListener caretListener = new CaretListener()
+        m_gtpShellText = new GtpShellText(historyMax, false);
+        m_commands = new GtpShellLog(historyMax);
+        GtpShellText.Listener textListener = new GtpShellText.Listener()
             {
-                public void caretUpdate(CaretEvent event)
+                public void selectionChanged()
                 {
                     if (m_listener == null)
                         return;
                     // Call the callback only if the selected text has changed.
                     // This avoids that the callback is called multiple times
-                    // if the caret position changes, but the text selection
+                    // if the selection changes, but the text selection
                     // was null before and after the change (see also bug
                     // #2964755)
                     String selectedText = m_gtpShellText.getSelectedText();
@@ -84,11 +82,11 @@ public class GtpShell
                     }
                 }
             };
-        m_gtpShellText.addCaretListener(caretListener);
+        m_gtpShellText.setListener(textListener);
         m_scrollPane =
             new JScrollPane(m_gtpShellText,
                             JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
-                            JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+                            JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         if (Platform.isMac())
             // Default Apple L&F uses no border, but Quaqua 3.7.4 does
             m_scrollPane.setBorder(null);
@@ -113,59 +111,28 @@ public class GtpShell
         return m_gtpShellText.isLastTextNonGTP();
     }
 
-    public void receivedInvalidResponse(final String response,
-                                        boolean invokeLater)
+    /** Append an invalid response line.
+        Can be called from any thread. */
+    public void receivedInvalidResponse(String response)
     {
-        if (SwingUtilities.isEventDispatchThread())
-            appendInvalidResponse(response);
-        else
-        {
-            Runnable r = new Runnable() {
-                    public void run() {
-                        appendInvalidResponse(response);
-                    } };
-            if (invokeLater)
-                SwingUtilities.invokeLater(r);
-            else
-                GuiUtil.invokeAndWait(r);
-        }
+        m_gtpShellText.appendInvalidResponse(response);
     }
 
-    public void receivedResponse(final boolean error, final String response,
-                                 boolean invokeLater)
+    /** Append a response.
+        Can be called from any thread. */
+    public void receivedResponse(boolean error, String response)
     {
-        if (SwingUtilities.isEventDispatchThread())
-            appendResponse(error, response);
+        if (error)
+            m_gtpShellText.appendError(response);
         else
-        {
-            Runnable r = new Runnable() {
-                    public void run() {
-                        appendResponse(error, response);
-                    } };
-            if (invokeLater)
-                SwingUtilities.invokeLater(r);
-            else
-                GuiUtil.invokeAndWait(r);
-        }
+            m_gtpShellText.appendInput(response);
     }
 
-    public void receivedStdErr(final String s, boolean invokeLater,
-                               final boolean isLiveGfx,
-                               final boolean isWarning)
+    /** Append a line of standard error of the program.
+        Can be called from any thread. */
+    public void receivedStdErr(String s, boolean isLiveGfx, boolean isWarning)
     {
-        if (SwingUtilities.isEventDispatchThread())
-            appendLog(s, isLiveGfx, isWarning);
-        else
-        {
-            Runnable r = new Runnable() {
-                    public void run() {
-                        appendLog(s, isLiveGfx, isWarning);
-                    } };
-            if (invokeLater)
-                SwingUtilities.invokeLater(r);
-            else
-                GuiUtil.invokeAndWait(r);
-        }
+        m_gtpShellText.appendLog(s, isLiveGfx, isWarning);
     }
 
     public void saveLog(JFrame parent)
@@ -176,7 +143,8 @@ public class GtpShell
 
     public void saveCommands(JFrame parent)
     {
-        save(parent, m_commands.toString(), m_linesTruncated);
+        m_commands.flush();
+        save(parent, m_commands.getText(), m_commands.getLinesTruncated());
     }
 
     public void saveHistory()
@@ -206,15 +174,13 @@ public class GtpShell
         m_gtpShellText.setTimeStamp(enable);
     }
 
-    public void sentCommand(final String command)
+    /** Append a command sent to the program.
+        Can be called from any thread. */
+    public void sentCommand(String command)
     {
-        if (SwingUtilities.isEventDispatchThread())
-            appendSentCommand(command);
-        else
-            GuiUtil.invokeAndWait(new Runnable() {
-                    public void run() {
-                        appendSentCommand(command);
-                    } });
+        m_commands.append(command + "\n", null);
+        SwingUtilities.invokeLater(m_flushCommands);
+        m_gtpShellText.appendOutput(command + "\n");
     }
 
     public void setInitialCompletions(ArrayList<String> completions)
@@ -251,14 +217,6 @@ public class GtpShell
 
     private boolean m_commandInProgress;
 
-    private final int m_historyMax;
-
-    private final int m_historyMin;
-
-    private int m_linesTruncated;
-
-    private int m_numberCommands;
-
     private final Listener m_listener;
 
     private ComboBoxEditor m_editor;
@@ -276,7 +234,17 @@ public class GtpShell
 
     private final GtpShellText m_gtpShellText;
 
-    private final StringBuilder m_commands = new StringBuilder(4096);
+    /** Log of sent commands for saveCommands(). */
+    private final GtpShellLog m_commands;
+
+    /** Flushes m_commands in the event dispatch thread.
+        Commands are sent at a much lower rate than the program output, so
+        an event per command is acceptable. */
+    private final Runnable m_flushCommands = new Runnable() {
+            public void run() {
+                m_commands.flush();
+            }
+        };
 
     private final ArrayList<String> m_history = new ArrayList<String>(128);
 
@@ -309,46 +277,6 @@ public class GtpShell
         m_textField.setCaretPosition(oldCaretPosition);
     }
 
-    private void appendInvalidResponse(String response)
-    {
-        assert SwingUtilities.isEventDispatchThread();
-        m_gtpShellText.appendInvalidResponse(response);
-    }
-
-    private void appendLog(String line, boolean isLiveGfx, boolean isWarning)
-    {
-        assert SwingUtilities.isEventDispatchThread();
-        m_gtpShellText.appendLog(line, isLiveGfx, isWarning);
-    }
-
-    private void appendResponse(boolean error, String response)
-    {
-        assert SwingUtilities.isEventDispatchThread();
-        if (error)
-            m_gtpShellText.appendError(response);
-        else
-            m_gtpShellText.appendInput(response);
-    }
-
-    private void appendSentCommand(String command)
-    {
-        assert SwingUtilities.isEventDispatchThread();
-        m_commands.append(command);
-        m_commands.append('\n');
-        ++m_numberCommands;
-        if (m_numberCommands > m_historyMax)
-        {
-            int truncateLines = m_numberCommands - m_historyMin;
-            String s = m_commands.toString();
-            int index = GtpShellText.findTruncateIndex(s, truncateLines);
-            assert index != -1;
-            m_commands.delete(0, index);
-            m_linesTruncated += truncateLines;
-            m_numberCommands = 0;
-        }
-        m_gtpShellText.appendOutput(command + "\n");
-    }
-
     private void appendToHistory(String command)
     {
         command = command.trim();
@@ -0,0 +1,265 @@
+// GtpShellLog.java
+
+package net.sf.gogui.gui;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import net.sf.gogui.util.ObjectUtil;
+
+/** Bounded log of styled text lines.
+    Text can be appended from any thread without locking. It becomes part
+    of the log when flush() is called by the thread that reads the log
+    (usually the event dispatch thread), so that many appended texts can be
+    handled at once. Only the most recent lines are kept; they are stored in
+    a ring buffer, so that dropping the oldest line takes constant time.
+    Tabs are expanded to spaces, carriage returns are ignored. */
+final class GtpShellLog
+{
+    /** Line of the log.
+        A line consists of runs of text with the same style. */
+    public static final class Line
+    {
+        public int getNumberRuns()
+        {
+            return m_runStart.length;
+        }
+
+        public int getRunEnd(int i)
+        {
+            if (i + 1 < m_runStart.length)
+                return m_runStart[i + 1];
+            return m_text.length();
+        }
+
+        public int getRunStart(int i)
+        {
+            return m_runStart[i];
+        }
+
+        /** Get the style of a run.
+            @return The style name or null for the default style. */
+        public String getRunStyle(int i)
+        {
+            return m_runStyle[i];
+        }
+
+        public String getText()
+        {
+            return m_text;
+        }
+
+        private final int[] m_runStart;
+
+        private final String m_text;
+
+        private final String[] m_runStyle;
+
+        private Line(String text, ArrayList<Integer> runStart,
+                     ArrayList<String> runStyle)
+        {
+            m_text = text;
+            m_runStart = new int[runStart.size()];
+            for (int i = 0; i < m_runStart.length; ++i)
+                m_runStart[i] = runStart.get(i);
+            m_runStyle = runStyle.toArray(new String[runStyle.size()]);
+        }
+    }
+
+    /** Constructor.
+        @param maxLines Maximum number of complete lines to keep. */
+    public GtpShellLog(int maxLines)
+    {
+        assert maxLines > 0;
+        m_lines = new Line[maxLines];
+    }
+
+    /** Append text.
+        Can be called from any thread.
+        @param text The text, can contain multiple lines or be a part of
+        a line.
+        @param style The style name or null for the default style. */
+    public void append(String text, String style)
+    {
+        append(null, null, text, style);
+    }
+
+    /** Append two texts with different styles.
+        The texts are appended without other texts appended in between by
+        other threads.
+        @param prefix The first text or null.
+        @param prefixStyle The style of the first text.
+        @param text The second text.
+        @param style The style of the second text. */
+    public void append(String prefix, String prefixStyle, String text,
+                       String style)
+    {
+        m_queue.add(new Entry(prefix, prefixStyle, text, style));
+    }
+
+    /** Add the text appended since the last call to the log.
+        @return true, if the log has changed. */
+    public boolean flush()
+    {
+        boolean changed = false;
+        Entry entry;
+        while ((entry = m_queue.poll()) != null)
+        {
+            if (entry.m_prefix != null)
+                add(entry.m_prefix, entry.m_prefixStyle);
+            add(entry.m_text, entry.m_style);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** Get a line.
+        @param i The index of the line between 0 and getNumberLines() - 1.
+        @return The line. The last line can be an incomplete line. */
+    public Line getLine(int i)
+    {
+        assert i >= 0 && i < getNumberLines();
+        if (i == m_numberLines)
+        {
+            if (m_currentLine == null)
+                m_currentLine = new Line(m_current.toString(),
+                                         m_currentRunStart,
+                                         m_currentRunStyle);
+            return m_currentLine;
+        }
+        return m_lines[(m_first + i) % m_lines.length];
+    }
+
+    /** Number of lines dropped from the beginning of the log. */
+    public int getLinesTruncated()
+    {
+        return m_truncated;
+    }
+
+    /** Maximum length of all lines added to the log. */
+    public int getMaxLineLength()
+    {
+        return Math.max(m_maxLineLength, m_current.length());
+    }
+
+    /** Number of lines including an incomplete last line. */
+    public int getNumberLines()
+    {
+        if (m_current.length() > 0)
+            return m_numberLines + 1;
+        return m_numberLines;
+    }
+
+    /** Get the text of all lines kept in the log. */
+    public String getText()
+    {
+        StringBuilder buffer = new StringBuilder(m_numberLines * 40);
+        for (int i = 0; i < m_numberLines; ++i)
+        {
+            buffer.append(getLine(i).getText());
+            buffer.append('\n');
+        }
+        buffer.append(m_current);
+        return buffer.toString();
+    }
+
+    private static final int TAB_SIZE = 8;
+
+    private static final class Entry
+    {
+        public Entry(String prefix, String prefixStyle, String text,
+                     String style)
+        {
+            m_prefix = prefix;
+            m_prefixStyle = prefixStyle;
+            m_text = text;
+            m_style = style;
+        }
+
+        public final String m_prefix;
+
+        public final String m_prefixStyle;
+
+        public final String m_text;
+
+        public final String m_style;
+    }
+
+    private int m_first;
+
+    private int m_maxLineLength;
+
+    private int m_numberLines;
+
+    private int m_truncated;
+
+    private final ConcurrentLinkedQueue<Entry> m_queue =
+        new ConcurrentLinkedQueue<Entry>();
+
+    private final ArrayList<Integer> m_currentRunStart =
+        new ArrayList<Integer>();
+
+    private final ArrayList<String> m_currentRunStyle =
+        new ArrayList<String>();
+
+    /** Ring buffer of complete lines. */
+    private final Line[] m_lines;
+
+    /** Cached Line object for the incomplete last line. */
+    private Line m_currentLine;
+
+    /** Incomplete last line. */
+    private final StringBuilder m_current = new StringBuilder(256);
+
+    private void add(String text, String style)
+    {
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            if (c == '\n')
+            {
+                addLine(new Line(m_current.toString(), m_currentRunStart,
+                                 m_currentRunStyle));
+                m_current.setLength(0);
+                m_currentRunStart.clear();
+                m_currentRunStyle.clear();
+                continue;
+            }
+            if (c == '\r')
+                continue;
+            int size = m_currentRunStyle.size();
+            if (size == 0
+                || ! ObjectUtil.equals(m_currentRunStyle.get(size - 1),
+                                       style))
+            {
+                m_currentRunStart.add(m_current.length());
+                m_currentRunStyle.add(style);
+            }
+            if (c == '\t')
+            {
+                m_current.append(' ');
+                while (m_current.length() % TAB_SIZE != 0)
+                    m_current.append(' ');
+            }
+            else
+                m_current.append(c);
+        }
+        m_currentLine = null;
+    }
+
+    private void addLine(Line line)
+    {
+        if (line.getText().length() > m_maxLineLength)
+            m_maxLineLength = line.getText().length();
+        if (m_numberLines == m_lines.length)
+        {
+            m_lines[m_first] = line;
+            m_first = (m_first + 1) % m_lines.length;
+            ++m_truncated;
+        }
+        else
+        {
+            m_lines[(m_first + m_numberLines) % m_lines.length] = line;
+            ++m_numberLines;
+        }
+    }
+}
@@ -3,108 +3,260 @@
 package net.sf.gogui.gui;
 
 import java.awt.Color;
-import javax.swing.JTextPane;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
-import javax.swing.text.Style;
+import javax.swing.Timer;
+import javax.swing.UIManager;
 import net.sf.gogui.game.Clock;
 
+/** Text view of the GTP shell.
+    The text is stored in a GtpShellLog. The text can be appended from any
+    thread; it is added to the view in batches at most FLUSH_RATE times per
+    second. Only the visible lines are painted, so the cost of painting
+    does not depend on the size of the log. Lines are not wrapped.
+    Text can be selected with the mouse and copied to the clipboard. */
 class GtpShellText
-    extends JTextPane
+    extends JComponent
+    implements Scrollable
 {
-    public GtpShellText(int historyMin, int historyMax, boolean timeStamp)
+    /** Callback for changes of the text selection. */
+    public interface Listener
+    {
+        void selectionChanged();
+    }
+
+    /** Maximum number of updates of the view per second. */
+    public static final int FLUSH_RATE = 20;
+
+    /** Constructor.
+        @param historyMax Maximum number of lines to keep.
+        @param timeStamp Prepend time stamps to commands and responses. */
+    public GtpShellText(int historyMax, boolean timeStamp)
     {
         GuiUtil.setMonospacedFont(this);
         m_startTime = System.currentTimeMillis();
         m_timeStamp = timeStamp;
-        m_historyMin = historyMin;
-        m_historyMax = historyMax;
-        GuiUtil.addStyle(this, "error", Color.red);
-        GuiUtil.addStyle(this, "warning", Color.decode("#ff7000"));
-        GuiUtil.addStyle(this, "output", null, null, true);
-        GuiUtil.addStyle(this, "log", new Color(0.5f, 0.5f, 0.5f));
-        GuiUtil.addStyle(this, "livegfx", Color.decode("#5498B0"));
-        GuiUtil.addStyle(this, "time", new Color(0, 0, 0.5f));
-        GuiUtil.addStyle(this, "invalid", new Color(1.0f, 0.58f, 0.25f));
-        setEditable(false);
+        m_log = new GtpShellLog(historyMax);
+        setOpaque(true);
+        setFocusable(true);
+        setAutoscrolls(true);
+        setBorder(BorderFactory.createEmptyBorder(3, 3, 3, 3));
+        Color background = UIManager.getColor("TextPane.background");
+        setBackground(background == null ? Color.white : background);
+        Color foreground = UIManager.getColor("TextPane.foreground");
+        setForeground(foreground == null ? Color.black : foreground);
+        m_selectionColor = UIManager.getColor("TextPane.selectionBackground");
+        if (m_selectionColor == null)
+            m_selectionColor = new Color(0xb8cfe5);
+        MouseAdapter mouseAdapter = new MouseAdapter() {
+                public void mousePressed(MouseEvent event) {
+                    if (! SwingUtilities.isLeftMouseButton(event))
+                        return;
+                    requestFocusInWindow();
+                    flush();
+                    mouseSelect(event.getPoint(), event.isShiftDown(),
+                                event.getClickCount());
+                }
+
+                public void mouseDragged(MouseEvent event) {
+                    if (! SwingUtilities.isLeftMouseButton(event))
+                        return;
+                    mouseSelect(event.getPoint(), true, 1);
+                    scrollRectToVisible(new Rectangle(event.getX(),
+                                                      event.getY(), 1, 1));
+                }
+            };
+        addMouseListener(mouseAdapter);
+        addMouseMotionListener(mouseAdapter);
+        int shortcutKeyMask =
+            Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C,
+                                                 shortcutKeyMask), "copy");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A,
+                                                 shortcutKeyMask),
+                          "select-all");
+        getActionMap().put("copy", new AbstractAction() {
+                public void actionPerformed(ActionEvent event) {
+                    String text = getSelectedText();
+                    if (text != null)
+                        GuiUtil.copyToClipboard(text);
+                }
+            });
+        getActionMap().put("select-all", new AbstractAction() {
+                public void actionPerformed(ActionEvent event) {
+                    flush();
+                    int n = m_log.getNumberLines();
+                    if (n == 0)
+                        return;
+                    int truncated = m_log.getLinesTruncated();
+                    int length = m_log.getLine(n - 1).getText().length();
+                    setSelection(truncated, 0, truncated + n - 1, length);
+                }
+            });
+        m_timer = new Timer(0, new ActionListener() {
+                public void actionPerformed(ActionEvent event) {
+                    flush();
+                }
+            });
+        m_timer.setRepeats(false);
     }
 
     public void appendComment(String text)
     {
         m_isLastTextNonGTP = false;
-        appendText(text, "log");
+        append(null, text, "log");
     }
 
     public void appendError(String text)
     {
         m_isLastTextNonGTP = false;
-        appendTimeStamp();
-        appendText(text, "error");
+        append(getTimeStamp(), text, "error");
     }
 
     public void appendInput(String text)
     {
         m_isLastTextNonGTP = false;
-        appendTimeStamp();
-        appendText(text, null);
+        append(getTimeStamp(), text, null);
     }
 
     public void appendInvalidResponse(String text)
     {
         m_isLastTextNonGTP = true;
-        appendText(text, "invalid");
+        append(null, text, "invalid");
     }
 
     public void appendLog(String text, boolean isLiveGfx, boolean isWarning)
     {
         m_isLastTextNonGTP = true;
         if (isLiveGfx)
-            appendText(text, "livegfx");
+            append(null, text, "livegfx");
         else if (isWarning)
-            appendText(text, "warning");
+            append(null, text, "warning");
         else
-            appendText(text, "log");
+            append(null, text, "log");
     }
 
     public void appendOutput(String text)
     {
         m_isLastTextNonGTP = false;
-        appendTimeStamp();
-        appendText(text, "output");
+        append(getTimeStamp(), text, "output");
     }
 
-    public static int findTruncateIndex(String text, int truncateLines)
+    public int getLinesTruncated()
     {
-        int indexNewLine = 0;
-        int lines = 0;
-        while ((indexNewLine = text.indexOf('\n', indexNewLine)) != -1)
-        {
-            ++indexNewLine;
-            ++lines;
-            if (lines == truncateLines)
-                return indexNewLine;
-        }
-        return -1;
+        assert SwingUtilities.isEventDispatchThread();
+        flush();
+        return m_log.getLinesTruncated();
     }
 
-    public int getLinesTruncated()
+    public String getLog()
     {
-        return m_truncated;
+        assert SwingUtilities.isEventDispatchThread();
+        flush();
+        return m_log.getText();
     }
 
-    public String getLog()
+    public Dimension getPreferredScrollableViewportSize()
     {
-        Document doc = getDocument();
-        try
-        {
-            return doc.getText(0, doc.getLength());
-        }
-        catch (BadLocationException e)
+        FontMetrics metrics = getFontMetrics(getFont());
+        return new Dimension(60 * metrics.charWidth('m'),
+                             15 * metrics.getHeight());
+    }
+
+    public Dimension getPreferredSize()
+    {
+        FontMetrics metrics = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        int width = (m_log.getMaxLineLength() + 1) * metrics.charWidth('m');
+        int height = m_log.getNumberLines() * metrics.getHeight();
+        return new Dimension(width + insets.left + insets.right,
+                             height + insets.top + insets.bottom);
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect,
+                                           int orientation, int direction)
+    {
+        FontMetrics metrics = getFontMetrics(getFont());
+        if (orientation == SwingConstants.VERTICAL)
+            return Math.max(visibleRect.height - metrics.getHeight(),
+                            metrics.getHeight());
+        return Math.max(visibleRect.width - metrics.charWidth('m'),
+                        metrics.charWidth('m'));
+    }
+
+    public boolean getScrollableTracksViewportHeight()
+    {
+        Container parent = getParent();
+        return (parent instanceof JViewport
+                && parent.getHeight() > getPreferredSize().height);
+    }
+
+    public boolean getScrollableTracksViewportWidth()
+    {
+        Container parent = getParent();
+        return (parent instanceof JViewport
+                && parent.getWidth() > getPreferredSize().width);
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect,
+                                          int orientation, int direction)
+    {
+        FontMetrics metrics = getFontMetrics(getFont());
+        if (orientation == SwingConstants.VERTICAL)
+            return metrics.getHeight();
+        return metrics.charWidth('m');
+    }
+
+    /** Get the selected text.
+        @return The selected text or null, if no text is selected. */
+    public String getSelectedText()
+    {
+        if (m_anchorLine == m_leadLine && m_anchorColumn == m_leadColumn)
+            return null;
+        int truncated = m_log.getLinesTruncated();
+        int n = m_log.getNumberLines();
+        int startLine = getSelectionStartLine() - truncated;
+        int endLine = getSelectionEndLine() - truncated;
+        StringBuilder buffer = new StringBuilder();
+        for (int i = Math.max(startLine, 0); i <= endLine && i < n; ++i)
         {
-            assert false;
-            return "";
+            String text = m_log.getLine(i).getText();
+            int start = 0;
+            if (i == startLine)
+                start = Math.min(getSelectionStartColumn(), text.length());
+            int end = text.length();
+            if (i == endLine)
+                end = Math.min(getSelectionEndColumn(), text.length());
+            if (i > startLine)
+                buffer.append('\n');
+            if (end > start)
+                buffer.append(text, start, end);
         }
+        return buffer.toString();
     }
 
     /** Check if last text appended is not part of the GTP streams.
@@ -115,10 +267,17 @@ class GtpShellText
         return m_isLastTextNonGTP;
     }
 
+    public void setListener(Listener listener)
+    {
+        m_listener = listener;
+    }
+
+    /** Add all appended text to the view and scroll to the end. */
     public void setPositionToEnd()
     {
-        int length = getDocument().getLength();
-        setCaretPosition(length);
+        assert SwingUtilities.isEventDispatchThread();
+        flush();
+        scrollToEnd();
     }
 
     public void setTimeStamp(boolean enable)
@@ -126,77 +285,315 @@ class GtpShellText
         m_timeStamp = enable;
     }
 
-    private boolean m_isLastTextNonGTP;
+    private static final Color COLOR_INVALID =
+        new Color(1.0f, 0.58f, 0.25f);
+
+    private static final Color COLOR_LIVEGFX = Color.decode("#5498B0");
+
+    private static final Color COLOR_LOG = new Color(0.5f, 0.5f, 0.5f);
+
+    private static final Color COLOR_TIME = new Color(0, 0, 0.5f);
+
+    private static final Color COLOR_WARNING = Color.decode("#ff7000");
 
-    private boolean m_timeStamp;
+    private volatile boolean m_isLastTextNonGTP;
 
-    private final int m_historyMin;
+    private volatile boolean m_timeStamp;
 
-    private final int m_historyMax;
+    /** Selection start and end as line number including truncated lines
+        and column. The selection is empty if anchor and lead are equal. */
+    private int m_anchorLine;
 
-    private int m_lines;
+    private int m_anchorColumn;
 
-    private int m_truncated;
+    private int m_leadLine;
+
+    private int m_leadColumn;
+
+    /** Time of the last flush. Only accessed in event dispatch thread. */
+    private long m_lastFlushTime;
 
     private final long m_startTime;
 
-    private void appendText(String text, String style)
+    /** True, if a flush is pending. */
+    private final AtomicBoolean m_isFlushPosted = new AtomicBoolean();
+
+    private Color m_selectionColor;
+
+    private Font m_boldFont;
+
+    private final GtpShellLog m_log;
+
+    private Listener m_listener;
+
+    private final Timer m_timer;
+
+    private final Runnable m_flushLater = new Runnable() {
+            public void run()
+            {
+                int interval = 1000 / FLUSH_RATE;
+                long elapsed = System.currentTimeMillis() - m_lastFlushTime;
+                if (elapsed >= 0 && elapsed < interval)
+                {
+                    m_timer.setInitialDelay((int)(interval - elapsed));
+                    m_timer.start();
+                }
+                else
+                    flush();
+            }
+        };
+
+    private void append(String timeStamp, String text, String style)
     {
-        assert SwingUtilities.isEventDispatchThread();
         if (text.equals(""))
             return;
-        int indexNewLine = 0;
-        while ((indexNewLine = text.indexOf('\n', indexNewLine)) != -1)
+        m_log.append(timeStamp, "time", text, style);
+        if (m_isFlushPosted.compareAndSet(false, true))
+            SwingUtilities.invokeLater(m_flushLater);
+    }
+
+    private void flush()
+    {
+        assert SwingUtilities.isEventDispatchThread();
+        m_isFlushPosted.set(false);
+        m_lastFlushTime = System.currentTimeMillis();
+        boolean isAtEnd = isAtEnd();
+        if (! m_log.flush())
+            return;
+        revalidate();
+        repaint();
+        if (isAtEnd)
+            scrollToEnd();
+    }
+
+    private Font getFont(String style)
+    {
+        Font font = getFont();
+        if (! "output".equals(style))
+            return font;
+        if (m_boldFont == null || m_boldFont.getSize() != font.getSize()
+            || ! m_boldFont.getFamily().equals(font.getFamily()))
+            m_boldFont = font.deriveFont(Font.BOLD);
+        return m_boldFont;
+    }
+
+    private int getSelectionEndColumn()
+    {
+        if (m_anchorLine > m_leadLine
+            || (m_anchorLine == m_leadLine && m_anchorColumn > m_leadColumn))
+            return m_anchorColumn;
+        return m_leadColumn;
+    }
+
+    private int getSelectionEndLine()
+    {
+        return Math.max(m_anchorLine, m_leadLine);
+    }
+
+    private int getSelectionStartColumn()
+    {
+        if (m_anchorLine > m_leadLine
+            || (m_anchorLine == m_leadLine && m_anchorColumn > m_leadColumn))
+            return m_leadColumn;
+        return m_anchorColumn;
+    }
+
+    private int getSelectionStartLine()
+    {
+        return Math.min(m_anchorLine, m_leadLine);
+    }
+
+    private Color getStyleColor(String style)
+    {
+        if ("error".equals(style))
+            return Color.red;
+        if ("warning".equals(style))
+            return COLOR_WARNING;
+        if ("log".equals(style))
+            return COLOR_LOG;
+        if ("livegfx".equals(style))
+            return COLOR_LIVEGFX;
+        if ("time".equals(style))
+            return COLOR_TIME;
+        if ("invalid".equals(style))
+            return COLOR_INVALID;
+        return getForeground();
+    }
+
+    private String getTimeStamp()
+    {
+        if (! m_timeStamp)
+            return null;
+        long timeMillis = System.currentTimeMillis();
+        double diff = (float)(timeMillis - m_startTime) / 1000;
+        return Clock.getTimeString(diff, -1) + " ";
+    }
+
+    /** Get the x coordinate of a column in a line. */
+    private int getX(GtpShellLog.Line line, int column)
+    {
+        int x = getInsets().left;
+        for (int i = 0; i < line.getNumberRuns(); ++i)
+        {
+            int start = line.getRunStart(i);
+            if (start >= column)
+                break;
+            int end = Math.min(line.getRunEnd(i), column);
+            FontMetrics metrics =
+                getFontMetrics(getFont(line.getRunStyle(i)));
+            x += metrics.stringWidth(line.getText().substring(start, end));
+        }
+        return x;
+    }
+
+    private boolean isAtEnd()
+    {
+        Container parent = getParent();
+        if (! (parent instanceof JViewport))
+            return true;
+        Rectangle visible = ((JViewport)parent).getViewRect();
+        return (visible.y + visible.height >= getHeight());
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return ! Character.isWhitespace(c);
+    }
+
+    private void mouseSelect(Point point, boolean extend, int clickCount)
+    {
+        int n = m_log.getNumberLines();
+        if (n == 0)
+            return;
+        FontMetrics metrics = getFontMetrics(getFont());
+        int index = (point.y - getInsets().top) / metrics.getHeight();
+        index = Math.max(0, Math.min(index, n - 1));
+        GtpShellLog.Line line = m_log.getLine(index);
+        String text = line.getText();
+        int column = 0;
+        while (column < text.length())
         {
-            ++m_lines;
-            ++indexNewLine;
+            int x = getX(line, column);
+            int nextX = getX(line, column + 1);
+            if (point.x < (x + nextX) / 2)
+                break;
+            ++column;
         }
-        Document doc = getDocument();
-        Style s = null;
-        if (style != null)
-            s = getStyle(style);
-        try
+        int lineNumber = m_log.getLinesTruncated() + index;
+        if (clickCount == 2)
         {
-            int length = doc.getLength();
-            doc.insertString(length, text, s);
-            setPositionToEnd();
+            int start = column;
+            while (start > 0 && isWordChar(text.charAt(start - 1)))
+                --start;
+            int end = column;
+            while (end < text.length() && isWordChar(text.charAt(end)))
+                ++end;
+            setSelection(lineNumber, start, lineNumber, end);
         }
-        catch (BadLocationException e)
+        else if (extend)
+            setSelection(m_anchorLine, m_anchorColumn, lineNumber, column);
+        else
+            setSelection(lineNumber, column, lineNumber, column);
+    }
+
+    protected void paintComponent(Graphics graphics)
+    {
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        graphics.setColor(getBackground());
+        graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (graphics instanceof Graphics2D)
         {
-            assert false;
+            Object hints = Toolkit.getDefaultToolkit().getDesktopProperty(
+                                                   "awt.font.desktophints");
+            if (hints instanceof Map)
+                ((Graphics2D)graphics).addRenderingHints((Map<?,?>)hints);
+            else
+                ((Graphics2D)graphics).setRenderingHint(
+                                     RenderingHints.KEY_TEXT_ANTIALIASING,
+                                     RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         }
-        if (m_lines > m_historyMax)
+        FontMetrics metrics = getFontMetrics(getFont());
+        int lineHeight = metrics.getHeight();
+        int top = getInsets().top;
+        int n = m_log.getNumberLines();
+        int first = Math.max(0, (clip.y - top) / lineHeight);
+        int last = Math.min(n - 1, (clip.y + clip.height - top) / lineHeight);
+        int truncated = m_log.getLinesTruncated();
+        int startLine = getSelectionStartLine() - truncated;
+        int endLine = getSelectionEndLine() - truncated;
+        boolean hasSelection = (m_anchorLine != m_leadLine
+                                || m_anchorColumn != m_leadColumn);
+        for (int i = first; i <= last; ++i)
         {
-            truncateHistory();
-            setPositionToEnd();
+            GtpShellLog.Line line = m_log.getLine(i);
+            int y = top + i * lineHeight;
+            if (hasSelection && i >= startLine && i <= endLine)
+            {
+                int x1 = getInsets().left;
+                if (i == startLine)
+                    x1 = getX(line, Math.min(getSelectionStartColumn(),
+                                             line.getText().length()));
+                int x2;
+                if (i == endLine)
+                    x2 = getX(line, Math.min(getSelectionEndColumn(),
+                                             line.getText().length()));
+                else
+                    x2 = getX(line, line.getText().length())
+                        + metrics.charWidth(' ');
+                graphics.setColor(m_selectionColor);
+                graphics.fillRect(x1, y, x2 - x1, lineHeight);
+            }
+            int x = getInsets().left;
+            String text = line.getText();
+            for (int j = 0; j < line.getNumberRuns(); ++j)
+            {
+                String style = line.getRunStyle(j);
+                String run =
+                    text.substring(line.getRunStart(j), line.getRunEnd(j));
+                Font font = getFont(style);
+                graphics.setFont(font);
+                graphics.setColor(getStyleColor(style));
+                graphics.drawString(run, x, y + metrics.getAscent());
+                x += getFontMetrics(font).stringWidth(run);
+                if (x > clip.x + clip.width)
+                    break;
+            }
         }
     }
 
-    private void appendTimeStamp()
+    private void scrollToEnd()
     {
-        if (! m_timeStamp)
+        Container parent = getParent();
+        if (! (parent instanceof JViewport))
             return;
-        long timeMillis = System.currentTimeMillis();
-        double diff = (float)(timeMillis - m_startTime) / 1000;
-        appendText(Clock.getTimeString(diff, -1) + " ", "time");
+        JViewport viewport = (JViewport)parent;
+        // Set the new size now, the layout of the viewport after
+        // revalidate() is done later
+        Dimension size = getPreferredSize();
+        Dimension extent = viewport.getExtentSize();
+        if (getScrollableTracksViewportWidth())
+            size.width = extent.width;
+        if (getScrollableTracksViewportHeight())
+            size.height = extent.height;
+        viewport.setViewSize(size);
+        int y = Math.max(0, size.height - extent.height);
+        viewport.setViewPosition(new Point(0, y));
     }
 
-    private void truncateHistory()
+    private void setSelection(int anchorLine, int anchorColumn,
+                              int leadLine, int leadColumn)
     {
-        int truncateLines = m_lines - m_historyMin;
-        Document doc = getDocument();
-        try
-        {
-            String text = doc.getText(0, doc.getLength());
-            int truncateIndex = findTruncateIndex(text, truncateLines);
-            assert truncateIndex != -1;
-            doc.remove(0, truncateIndex);
-            m_lines -= truncateLines;
-            m_truncated += truncateLines;
-        }
-        catch (BadLocationException e)
-        {
-            assert false;
-        }
+        if (anchorLine == m_anchorLine && anchorColumn == m_anchorColumn
+            && leadLine == m_leadLine && leadColumn == m_leadColumn)
+            return;
+        m_anchorLine = anchorLine;
+        m_anchorColumn = anchorColumn;
+        m_leadLine = leadLine;
+        m_leadColumn = leadColumn;
+        repaint();
+        if (m_listener != null)
+            m_listener.selectionChanged();
     }
 }
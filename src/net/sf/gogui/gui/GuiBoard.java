@@ -162,6 +162,32 @@ public final class GuiBoard
         m_panel.contextMenu(point);
     }
 
+    /** Finish a sequence of changes started with startUpdate().
+        Repaints all fields with a state different from their state at the
+        call of startUpdate(). */
+    public void endUpdate()
+    {
+        if (m_updateFields == null)
+            // initSize() was called during the update
+            return;
+        Field[][] oldFields = m_updateFields;
+        m_updateFields = null;
+        for (int x = 0; x < m_size; ++x)
+            for (int y = 0; y < m_size; ++y)
+            {
+                Field field = m_field[x][y];
+                Field oldField = oldFields[x][y];
+                if (field.isEqualState(oldField))
+                    continue;
+                GoPoint point = GoPoint.get(x, y);
+                if (field.getColor() != oldField.getColor()
+                    || field.getGhostStone() != oldField.getGhostStone())
+                    repaintWithShadow(point);
+                else
+                    m_panel.repaint(point);
+            }
+    }
+
     /** Get current board size. */
     public int getBoardSize()
     {
@@ -274,6 +300,7 @@ public final class GuiBoard
         m_size = size;
         m_constants = BoardConstants.get(size);
         m_field = new Field[size][size];
+        m_updateFields = null;
         removeAll();
         m_cursor = null;
         setLayout(new SquareLayout());
@@ -415,7 +442,7 @@ public final class GuiBoard
         if (field.getColor() != color)
         {
             field.setColor(color);
-            m_panel.repaintWithShadow(point);
+            repaintWithShadow(point);
         }
     }
 
@@ -468,7 +495,7 @@ public final class GuiBoard
         if (! ObjectUtil.equals(field.getGhostStone(), color))
         {
             field.setGhostStone(color);
-            m_panel.repaintWithShadow(point);
+            repaintWithShadow(point);
         }
     }
 
@@ -613,6 +640,20 @@ public final class GuiBoard
         }
     }
 
+    /** Start a sequence of changes that is painted at once.
+        Until endUpdate() is called, changes of fields do not trigger a
+        repaint. Fields that were changed, but have the same state at the end
+        of the update as before (e.g. markup that was cleared and set again),
+        are not repainted at all. */
+    public void startUpdate()
+    {
+        assert m_updateFields == null;
+        m_updateFields = new Field[m_size][m_size];
+        for (int x = 0; x < m_size; ++x)
+            for (int y = 0; y < m_size; ++y)
+                m_updateFields[x][y] = new Field(m_field[x][y]);
+    }
+
     private class BoardPanel
         extends JPanel
     {
@@ -751,6 +792,11 @@ public final class GuiBoard
 
     private Field m_field[][];
 
+    /** State of the fields at the start of an update.
+        Null if no update is in progress.
+        @see #startUpdate() */
+    private Field m_updateFields[][];
+
     private Image m_image;
 
     private Listener m_listener;
@@ -884,7 +930,14 @@ public final class GuiBoard
 
     private void repaint(GoPoint point)
     {
-        m_panel.repaint(point);
+        if (m_updateFields == null)
+            m_panel.repaint(point);
+    }
+
+    private void repaintWithShadow(GoPoint point)
+    {
+        if (m_updateFields == null)
+            m_panel.repaintWithShadow(point);
     }
 
     private void setCursor(GoPoint point, boolean cursor)
@@ -4,6 +4,8 @@ package net.sf.gogui.gui;
 
 import java.awt.Component;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.SwingUtilities;
 import net.sf.gogui.game.TimeSettings;
 import net.sf.gogui.go.ConstBoard;
@@ -174,6 +176,16 @@ public class GuiGtpClient
         return m_gtp.send(command, TIMEOUT, timeoutCallback);
     }
 
+    /** Send commands in event dispatch thread without waiting for each
+        response. */
+    public ArrayList<String> sendBatch(List<String> commands) throws GtpError
+    {
+        assert SwingUtilities.isEventDispatchThread();
+        assert ! m_commandInProgress;
+        TimeoutCallback timeoutCallback = new TimeoutCallback(null);
+        return m_gtp.sendBatch(commands, TIMEOUT, timeoutCallback);
+    }
+
     public void setAutoNumber(boolean enable)
     {
         m_gtp.setAutoNumber(enable);
@@ -2,10 +2,17 @@
 
 package net.sf.gogui.gui;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /** Parse standard error of a GTP engine for GoGui live graphics commands.
-    See chapter "Live Graphics" in the GoGui documentation. */
+    See chapter "Live Graphics" in the GoGui documentation.
+    Programs can write live graphics much faster than they can be painted.
+    Only the most recent set of draw commands is kept until the listener
+    is invoked in the event dispatch thread, older ones are dropped, and
+    the listener is invoked at most a given number of times per second. */
 public class LiveGfx
 {
     public interface Listener
@@ -13,10 +20,29 @@ public class LiveGfx
         void showLiveGfx(String text);
     }
 
+    /** Default for the maximum number of updates per second. */
+    public static final int DEFAULT_MAX_RATE = 20;
+
     public LiveGfx(Listener listener)
+    {
+        this(listener, DEFAULT_MAX_RATE);
+    }
+
+    /** Constructor.
+        @param listener The listener.
+        @param maxRate The maximum number of times per second that the
+        listener is invoked. Zero or less means no limit. */
+    public LiveGfx(Listener listener, int maxRate)
     {
         m_listener = listener;
         m_duringMultiLineResponse = false;
+        m_minInterval = (maxRate > 0 ? 1000 / maxRate : 0);
+        m_timer = new Timer(m_minInterval, new ActionListener() {
+                public void actionPerformed(ActionEvent event) {
+                    show();
+                }
+            });
+        m_timer.setRepeats(false);
     }
 
     /** Parse line.
@@ -61,17 +87,61 @@ public class LiveGfx
 
     private boolean m_duringMultiLineResponse;
 
+    /** Minimum time between invocations of the listener in milliseconds. */
+    private final int m_minInterval;
+
+    /** Time of last invocation of the listener.
+        Only accessed in the event dispatch thread. */
+    private long m_lastShowTime;
+
     private Listener m_listener;
 
+    /** Most recent draw commands not yet passed to the listener.
+        Synchronized on this. Non-null also means that the event dispatch
+        thread will deliver it, so no new event needs to be posted. */
+    private String m_pending;
+
     private final StringBuilder m_response = new StringBuilder(1024);
 
-    private void showGfx(final String text)
-    {
-        SwingUtilities.invokeLater(new Runnable() {
-                public void run()
+    private final Timer m_timer;
+
+    private final Runnable m_showLater = new Runnable() {
+            public void run()
+            {
+                long elapsed = System.currentTimeMillis() - m_lastShowTime;
+                if (elapsed >= 0 && elapsed < m_minInterval)
                 {
-                    m_listener.showLiveGfx(text);
+                    m_timer.setInitialDelay((int)(m_minInterval - elapsed));
+                    m_timer.start();
                 }
-            });
+                else
+                    show();
+            }
+        };
+
+    private void show()
+    {
+        String text;
+        synchronized (this)
+        {
+            text = m_pending;
+            m_pending = null;
+        }
+        if (text == null)
+            return;
+        m_lastShowTime = System.currentTimeMillis();
+        m_listener.showLiveGfx(text);
+    }
+
+    private void showGfx(String text)
+    {
+        synchronized (this)
+        {
+            boolean isPosted = (m_pending != null);
+            m_pending = text;
+            if (isPosted)
+                return;
+        }
+        SwingUtilities.invokeLater(m_showLater);
     }
 }
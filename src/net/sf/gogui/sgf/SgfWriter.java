@@ -2,9 +2,14 @@
 
 package net.sf.gogui.sgf;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Map;
 import net.sf.gogui.game.ConstGameInfo;
 import net.sf.gogui.game.ConstGameTree;
@@ -28,7 +33,10 @@ import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.PointList;
 import net.sf.gogui.util.StringUtil;
 
-/** Write in SGF format. */
+/** Write in SGF format.
+    The output is buffered and written in large blocks. Like with a
+    PrintStream, write errors are not reported, writing stops at the first
+    error. */
 public class SgfWriter
 {
     public static final String ENCODING = "UTF-8";
@@ -42,23 +50,15 @@ public class SgfWriter
     public SgfWriter(OutputStream out, ConstGameTree tree, String application,
                      String version)
     {
-        try
-        {
-            m_out = new PrintStream(out, false, ENCODING);
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            // UTF-8 should be supported by every Java implementation
-            assert false;
-        }
+        m_out = createWriter(out);
         print("(");
         m_size = tree.getBoardSize();
         printHeader(application, version);
         printNewLine();
-        printNode(tree.getRootConst(), true);
+        printTree(tree.getRootConst());
         print(")");
-        m_out.println(m_buffer.toString());
-        m_out.close();
+        printNewLine();
+        close();
     }
 
     /** Write position in SGF format.
@@ -71,68 +71,96 @@ public class SgfWriter
                      String version)
     {
         m_size = board.getSize();
-        m_out = new PrintStream(out);
+        m_out = createWriter(out);
         print("(");
         printHeader(application, version);
         printNewLine();
         printPosition(board);
         print(")");
-        m_out.println(m_buffer.toString());
-        m_out.close();
+        printNewLine();
+        close();
     }
 
     private static final int STRINGBUF_CAPACITY = 128;
 
     private static final int MAX_CHARS_PER_LINE = 78;
 
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final String LINE_SEPARATOR =
+        System.getProperty("line.separator");
+
+    private boolean m_isError;
+
     private final StringBuilder m_buffer
         = new StringBuilder(STRINGBUF_CAPACITY);
 
+    /** Reused buffer for escaped text. */
+    private final StringBuilder m_escaped
+        = new StringBuilder(STRINGBUF_CAPACITY);
+
+    /** Reused buffer for writing a line. */
+    private char[] m_chars = new char[STRINGBUF_CAPACITY];
+
     private final int m_size;
 
-    private PrintStream m_out;
+    /** Cached property values of points indexed by point index. */
+    private final String[] m_pointValue = new String[GoPoint.NUMBER_INDEXES];
+
+    private final Writer m_out;
+
+    private void close()
+    {
+        try
+        {
+            m_out.close();
+        }
+        catch (IOException e)
+        {
+            m_isError = true;
+        }
+    }
+
+    private static Writer createWriter(OutputStream out)
+    {
+        OutputStream bufferedOut = new BufferedOutputStream(out, BUFFER_SIZE);
+        Charset charset = Charset.forName(ENCODING);
+        return new BufferedWriter(new OutputStreamWriter(bufferedOut, charset),
+                                  BUFFER_SIZE);
+    }
 
     private String getEscaped(String text)
     {
         return getEscaped(text, false);
     }
 
+    /** Escape a property value.
+        @return The text itself, if no characters need to be escaped,
+        otherwise the escaped text. */
     private String getEscaped(String text, boolean escapeColon)
     {
-        StringBuilder result = new StringBuilder(2 * text.length());
-        for (int i = 0; i < text.length(); ++i)
+        int length = text.length();
+        int i = 0;
+        while (i < length && ! needsEscape(text.charAt(i), escapeColon))
+            ++i;
+        if (i == length)
+            return text;
+        m_escaped.setLength(0);
+        m_escaped.append(text, 0, i);
+        for ( ; i < length; ++i)
         {
             char c = text.charAt(i);
-            String specialCharacters;
-            if (escapeColon)
-                specialCharacters = "]:\\";
-            else
-                specialCharacters = "]\\";
-            if (specialCharacters.indexOf(c) >= 0)
+            if (c == ']' || c == '\\' || (escapeColon && c == ':'))
             {
-                result.append('\\');
-                result.append(c);
+                m_escaped.append('\\');
+                m_escaped.append(c);
             }
             else if (c != '\n' && Character.isWhitespace(c))
-                result.append(' ');
+                m_escaped.append(' ');
             else
-                result.append(c);
-        }
-        return result.toString();
-    }
-
-    private static int getMoveNumberInVariation(ConstNode node)
-    {
-        int moveNumber = 0;
-        while (node != null)
-        {
-            if (node.getMove() != null)
-                ++moveNumber;
-            node = node.getFatherConst();
-            if (node != null && node.getNumberChildren() > 1)
-                break;
+                m_escaped.append(c);
         }
-        return moveNumber;
+        return m_escaped.toString();
     }
 
     private String getPoint(GoPoint p)
@@ -146,7 +174,12 @@ public class SgfWriter
 
     private String getPointValue(GoPoint point)
     {
-        return "[" + getPoint(point) + "]";
+        if (point == null)
+            return "[]";
+        int index = point.getIndex();
+        if (m_pointValue[index] == null)
+            m_pointValue[index] = "[" + getPoint(point) + "]";
+        return m_pointValue[index];
     }
 
     private String getPointList(ConstPointList v)
@@ -180,12 +213,19 @@ public class SgfWriter
         m_buffer.append(text);
     }
 
+    private static boolean needsEscape(char c, boolean escapeColon)
+    {
+        if (c == ']' || c == '\\' || (escapeColon && c == ':'))
+            return true;
+        return (c != '\n' && c != ' ' && Character.isWhitespace(c));
+    }
+
     private void printNewLine()
     {
         if (m_buffer.length() > 0)
         {
-            m_out.println(m_buffer.toString());
-            m_buffer.replace(0, m_buffer.length(), "");
+            write(m_buffer);
+            m_buffer.setLength(0);
         }
     }
 
@@ -280,14 +320,18 @@ public class SgfWriter
             print(property + getPointList(marked));
     }
 
-    private void printNode(ConstNode node, boolean isRoot)
+    /** Print the properties of a node.
+        @param node The node.
+        @param isRoot Whether the node is the root node.
+        @param moveNumber The number of moves since the start of the
+        variation, including the move of this node. */
+    private void printNode(ConstNode node, boolean isRoot, int moveNumber)
     {
         Move move = node.getMove();
         if (! isRoot)
         {
             if (move != null)
             {
-                int moveNumber = getMoveNumberInVariation(node);
                 if (moveNumber != 1 && moveNumber % 10 == 1)
                     printNewLine();
             }
@@ -354,8 +398,11 @@ public class SgfWriter
         printLabels(node);
         if (! Double.isNaN(node.getValue()))
             print("V[" + node.getValue() + "]");
-        ConstSgfProperties sgfProps = NodeUtil.cleanSgfProps(node);
-        if (sgfProps != null)
+        ConstSgfProperties sgfProps = node.getSgfPropertiesConst();
+        // Avoid creating a cleaned copy of the properties for every node
+        if (sgfProps != null && ! sgfProps.isEmpty())
+        {
+            sgfProps = NodeUtil.cleanSgfProps(node);
             for (String key : sgfProps.getKeys())
             {
                 if (key.equals("OT") && hasByoyomiInformation(node))
@@ -364,20 +411,6 @@ public class SgfWriter
                 for (int i = 0; i < sgfProps.getNumberValues(key); ++i)
                     print("[" + sgfProps.getValue(key, i) + "]");
             }
-        int numberChildren = node.getNumberChildren();
-        if (numberChildren == 0)
-            return;
-        if (numberChildren == 1)
-        {
-            printNode(node.getChildConst(), false);
-            return;
-        }
-        for (int i = 0; i < numberChildren; ++i)
-        {
-            printNewLine();
-            print("(");
-            printNode(node.getChildConst(i), false);
-            print(")");
         }
     }
 
@@ -417,4 +450,77 @@ public class SgfWriter
         else
             print("PL[W]");
     }
+
+    /** Print the nodes of a tree in preorder.
+        Game trees can be too deep for a recursive traversal, so an explicit
+        stack of the nodes with more than one child is used. Nodes with a
+        single child are handled in a loop without using the stack. */
+    private void printTree(ConstNode root)
+    {
+        ArrayList<ConstNode> stack = new ArrayList<ConstNode>();
+        // Index of the next variation to print for each node on the stack
+        ArrayList<Integer> stackChild = new ArrayList<Integer>();
+        ConstNode node = root;
+        int moveNumber = (node.getMove() != null ? 1 : 0);
+        printNode(node, true, moveNumber);
+        while (true)
+        {
+            int numberChildren = node.getNumberChildren();
+            if (numberChildren == 1)
+            {
+                node = node.getChildConst();
+                if (node.getMove() != null)
+                    ++moveNumber;
+                printNode(node, false, moveNumber);
+                continue;
+            }
+            if (numberChildren > 1)
+            {
+                stack.add(node);
+                stackChild.add(0);
+            }
+            node = null;
+            while (! stack.isEmpty())
+            {
+                int top = stack.size() - 1;
+                ConstNode father = stack.get(top);
+                int childIndex = stackChild.get(top);
+                if (childIndex > 0)
+                    print(")");
+                if (childIndex < father.getNumberChildren())
+                {
+                    stackChild.set(top, childIndex + 1);
+                    node = father.getChildConst(childIndex);
+                    break;
+                }
+                stack.remove(top);
+                stackChild.remove(top);
+            }
+            if (node == null)
+                return;
+            printNewLine();
+            print("(");
+            moveNumber = (node.getMove() != null ? 1 : 0);
+            printNode(node, false, moveNumber);
+        }
+    }
+
+    private void write(StringBuilder line)
+    {
+        if (m_isError)
+            return;
+        int length = line.length();
+        if (length > m_chars.length)
+            m_chars = new char[Math.max(length, 2 * m_chars.length)];
+        line.getChars(0, length, m_chars, 0);
+        try
+        {
+            m_out.write(m_chars, 0, length);
+            m_out.write(LINE_SEPARATOR);
+        }
+        catch (IOException e)
+        {
+            m_isError = true;
+        }
+    }
 }
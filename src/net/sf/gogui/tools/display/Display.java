@@ -183,9 +183,19 @@ public class Display
     public void showLiveGfx(final String text)
     {
         assert SwingUtilities.isEventDispatchThread();
-        m_guiBoard.clearAll();
-        GuiBoardUtil.updateFromGoBoard(m_guiBoard, m_board, false, false);
-        AnalyzeShow.showGfx(text, m_guiBoard, m_statusBar, null);
+        // Only fields that differ from the currently displayed live gfx
+        // are repainted
+        m_guiBoard.startUpdate();
+        try
+        {
+            m_guiBoard.clearAll();
+            GuiBoardUtil.updateFromGoBoard(m_guiBoard, m_board, false, false);
+            AnalyzeShow.showGfx(text, m_guiBoard, m_statusBar, null);
+        }
+        finally
+        {
+            m_guiBoard.endUpdate();
+        }
     }
 
     /** Only accept this board size.
@@ -20,8 +20,10 @@ public final class Main
                 "config:",
                 "gtpfile:",
                 "help",
+                "history:",
                 "long",
                 "output:",
+                "threads:",
                 "verbose",
                 "version"
             };
@@ -39,6 +41,10 @@ public final class Main
             boolean verbose = opt.contains("verbose");
             boolean longOutput = opt.contains("long");
             String output = opt.get("output", "");
+            int numberThreads = opt.getInteger("threads", 1, 1);
+            File historyFile = null;
+            if (opt.contains("history"))
+                historyFile = new File(opt.get("history"));
             File gtpFile = null;
             if (opt.contains("gtpfile"))
                 gtpFile = new File(opt.get("gtpfile")).getAbsoluteFile();
@@ -53,7 +59,8 @@ public final class Main
             ArrayList<String> tests = new ArrayList<String>(arguments);
             tests.remove(0);
             Regress regress = new Regress(program, tests, output, longOutput,
-                                          verbose, gtpFile);
+                                          verbose, gtpFile, numberThreads,
+                                          historyFile);
             System.exit(regress.getResult() ? 0 : 1);
         }
         catch (Throwable t)
@@ -76,8 +83,10 @@ public final class Main
                   "-config       Config file\n" +
                   "-gtpfile      GTP file to execute before each test\n" +
                   "-help         Display this help and exit\n" +
+                  "-history      File with test times of previous runs\n" +
                   "-long         Longer output to standard out\n" +
                   "-output       Output directory\n" +
+                  "-threads      Number of test files to run in parallel\n" +
                   "-verbose      Log GTP stream to stderr\n" +
                   "-version      Display this help and exit\n");
     }
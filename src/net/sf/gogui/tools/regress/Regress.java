@@ -3,6 +3,7 @@
 package net.sf.gogui.tools.regress;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -11,7 +12,14 @@ import java.io.PrintStream;
 import java.io.Reader;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.gogui.gtp.GtpClient;
@@ -23,9 +31,11 @@ import net.sf.gogui.util.HtmlUtil;
 import net.sf.gogui.util.Platform;
 import net.sf.gogui.util.StringUtil;
 
-/** Runs GTP regression tests. */
+/** Runs GTP regression tests.
+    Test files can be run in parallel by several threads, each test file
+    with its own instance of the Go program. The output files and the
+    output to standard out do not depend on the number of threads. */
 public class Regress
-    implements GtpClient.IOCallback
 {
     /** Constructor.
         @param gtpFile File with GTP commands to send at startup or
@@ -33,6 +43,20 @@ public class Regress
     public Regress(String program, ArrayList<String> tests, String output,
                    boolean longOutput, boolean verbose, File gtpFile)
         throws Exception
+    {
+        this(program, tests, output, longOutput, verbose, gtpFile, 1, null);
+    }
+
+    /** Constructor.
+        @param gtpFile File with GTP commands to send at startup or
+        <code>null</code> for no file.
+        @param numberThreads Number of test files to run in parallel.
+        @param historyFile File with the times of the tests in previous runs
+        or <code>null</code> for no time history. */
+    public Regress(String program, ArrayList<String> tests, String output,
+                   boolean longOutput, boolean verbose, File gtpFile,
+                   int numberThreads, File historyFile)
+        throws Exception
     {
         tests = RegressUtil.expandTestSuites(tests);
         RegressUtil.checkFiles(tests);
@@ -41,6 +65,8 @@ public class Regress
         m_longOutput = longOutput;
         m_verbose = verbose;
         m_gtpFile = gtpFile;
+        if (historyFile != null)
+            m_history = new TimeHistory(historyFile);
         if (output.equals(""))
             m_prefix = "";
         else
@@ -53,15 +79,18 @@ public class Regress
             m_prefix = output + File.separator;
         }
         initOutNames(tests);
-        for (int i = 0; i < tests.size(); ++i)
-        {
-            String test = tests.get(i);
-            if (tests.size() > 1)
-                m_outPrefix = test + " ";
-            else
-                m_outPrefix = "";
-            runTest(test);
-        }
+        if (numberThreads > 1 && tests.size() > 1)
+            runParallel(tests, numberThreads);
+        else
+            for (int i = 0; i < tests.size(); ++i)
+            {
+                String test = tests.get(i);
+                TestRun run = new TestRun(test, getOutPrefix(tests, test),
+                                          System.out);
+                addResult(run, run.run());
+            }
+        if (m_history != null)
+            m_history.save();
         writeSummary();
         writeData();
     }
@@ -72,24 +101,6 @@ public class Regress
         return m_result;
     }
 
-    public void receivedInvalidResponse(String s)
-    {
-        printOutLine("invalid", "Invalid response: " + s);
-    }
-
-    public void receivedResponse(boolean error, String s)
-    {
-    }
-
-    public void receivedStdErr(String s)
-    {
-        printOut("stderr", s, -1);
-    }
-
-    public void sentCommand(String s)
-    {
-    }
-
     /** Exception thrown if Go program died. */
     private static class ProgramIsDeadException
         extends Exception
@@ -119,6 +130,17 @@ public class Regress
 
         public String m_lastSgf;
 
+        /** Wall time of the test command in seconds. */
+        public double m_time;
+
+        /** CPU time of the test command in seconds or Double.NaN, if
+            unknown. */
+        public double m_cpuTime = Double.NaN;
+
+        /** Median time of the test in previous runs or Double.NaN, if
+            unknown. */
+        public double m_previousTime = Double.NaN;
+
         public Test(int id, String command, boolean fail,
                     boolean expectedFail, String required, String response,
                     String lastSgf, int lastSgfMove)
@@ -132,6 +154,29 @@ public class Regress
             m_lastSgf = lastSgf;
             m_lastSgfMove = lastSgfMove;
         }
+
+        /** Get the time for comparisons with previous runs.
+            @return The CPU time, if known, otherwise the wall time. */
+        public double getTime()
+        {
+            if (Double.isNaN(m_cpuTime))
+                return m_time;
+            return m_cpuTime;
+        }
+
+        public boolean isFaster()
+        {
+            double time = getTime();
+            return (time * TIME_FACTOR < m_previousTime
+                    && m_previousTime - time >= MIN_TIME_DIFF);
+        }
+
+        public boolean isSlower()
+        {
+            double time = getTime();
+            return (time > m_previousTime * TIME_FACTOR
+                    && time - m_previousTime >= MIN_TIME_DIFF);
+        }
     }
 
     /** Information about test results of one test file. */
@@ -139,7 +184,7 @@ public class Regress
     {
         public File m_file;
 
-        /** See Regress#m_outName */
+        /** See TestRun#m_outName */
         public String m_outName;
 
         public int m_numberTests;
@@ -158,535 +203,980 @@ public class Regress
 
         public double m_cpuTime;
 
+        /** Number of tests slower than in previous runs. */
+        public int m_slower;
+
+        /** Number of tests faster than in previous runs. */
+        public int m_faster;
+
+        /** Times of the tests as returned by Test.getTime(). */
+        public ArrayList<Double> m_testTimes = new ArrayList<Double>();
+
         public int getNumberPasses()
         {
             return m_expectedPasses + m_unexpectedPasses;
         }
     }
 
-    private boolean m_lastError;
+    /** Run of a single test file.
+        Contains the state of the Go program and the output file while the
+        test file is run. Different instances can run in parallel. */
+    private class TestRun
+        implements GtpClient.IOCallback
+    {
+        /** Constructor.
+            @param test The test file.
+            @param outPrefix Prefix for lines written to standard out.
+            @param stdout Stream for the output to standard out. */
+        public TestRun(String test, String outPrefix, PrintStream stdout)
+        {
+            m_testFile = new File(test);
+            m_outName = m_outNames.get(test);
+            m_outPrefix = outPrefix;
+            m_stdout = stdout;
+        }
 
-    private final boolean m_longOutput;
+        /** Return true if the test file had no unexpected failures. */
+        public boolean getResult()
+        {
+            return m_result;
+        }
 
-    private boolean m_result;
+        public void receivedInvalidResponse(String s)
+        {
+            printOutLine("invalid", "Invalid response: " + s);
+        }
 
-    private final boolean m_verbose;
+        public void receivedResponse(boolean error, String s)
+        {
+        }
 
-    private int m_lastCommandId;
+        public void receivedStdErr(String s)
+        {
+            printOut("stderr", s, -1);
+        }
 
-    private int m_lastSgfMove;
+        public void sentCommand(String s)
+        {
+        }
 
-    private int m_otherErrors;
+        /** Run the test file.
+            @return The summary of the test results. */
+        public TestSummary run() throws Exception
+        {
+            initOutFile();
+            File testFileDir = m_testFile.getAbsoluteFile().getParentFile();
+            m_relativePath = FileUtil.getRelativeURI(m_outFile, testFileDir);
+            if (! m_relativePath.equals("") && ! m_relativePath.endsWith("/"))
+                m_relativePath = m_relativePath + "/";
+            FileReader fileReader = new FileReader(m_testFile);
+            BufferedReader reader = new BufferedReader(fileReader);
+            try
+            {
+                m_gtp = new GtpClient(m_program, testFileDir, m_verbose, this);
+                if (m_gtpFile != null)
+                    sendGtpFile();
+                m_lastSgf = null;
+                queryNameAndVersion();
+                double cpuTime = getCpuTime();
+                long timeMillis = System.currentTimeMillis();
+                printOutSeparator();
+                String line;
+                while (true)
+                {
+                    line = reader.readLine();
+                    if (line == null)
+                        break;
+                    handleLine(line);
+                }
+                timeMillis = System.currentTimeMillis() - timeMillis;
+                if (m_lastFullResponse != null)
+                {
+                    handleLastResponse();
+                    m_lastFullResponse = null;
+                }
+                printOutSeparator();
+                cpuTime = getCpuTime() - cpuTime;
+                if (m_lastFullResponse != null)
+                {
+                    handleLastResponse();
+                    m_lastFullResponse = null;
+                }
+                if (! m_gtp.isProgramDead())
+                {
+                    send("quit");
+                    m_gtp.close();
+                }
+                m_gtp.waitForExit();
+                finishOutFile();
+                TestSummary testSummary = getTestSummary(timeMillis, cpuTime);
+                writeTestSummary(testSummary);
+                return testSummary;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
 
-    private File m_testFile;
+        private boolean m_isCpuTimeSupported;
 
-    private PrintStream m_out;
+        private boolean m_lastError;
 
-    private static final String COLOR_ERROR = "#ffa954";
+        private boolean m_result = true;
 
-    private static final String COLOR_HEADER = "#91aee8";
+        private int m_lastCommandId;
 
-    private static final String COLOR_INFO = "#e0e0e0";
+        private int m_lastSgfMove;
 
-    private static final String COLOR_BG_LIGHT = "#e0e0e0";
+        private int m_otherErrors;
 
-    private static final String COLOR_BG_GRAY = "#e0e0e0";
+        /** CPU time of the last command, if it was a numbered test. */
+        private double m_lastCpuTime;
 
-    private static final String COLOR_GREEN = "#5eaf5e";
+        /** Wall time of the last command. */
+        private double m_lastTime;
 
-    private static final String COLOR_RED = "#ff5454";
+        private final File m_testFile;
 
-    /** Output file of the current test.
-        The file contains an HTML formatted log of the GTP streams and
-        the standard error of Go program. */
-    private File m_outFile;
+        private PrintStream m_out;
 
-    private final File m_gtpFile;
+        /** Output file of the current test.
+            The file contains an HTML formatted log of the GTP streams and
+            the standard error of Go program. */
+        private File m_outFile;
 
-    private String m_currentStyle;
+        private final PrintStream m_stdout;
 
-    private String m_lastCommand;
+        private String m_currentStyle;
 
-    private String m_lastFullResponse;
+        private String m_lastCommand;
 
-    private String m_lastResponse;
+        private String m_lastFullResponse;
 
-    private String m_lastSgf;
+        private String m_lastResponse;
 
-    private String m_name;
+        private String m_lastSgf;
 
-    /** Name of m_outFile and the summary file of the test without directory
-        and file extension for the current test. */
-    private String m_outName;
+        private String m_name;
 
-    private String m_outFileRelativeName;
+        /** Name of m_outFile and the summary file of the test without
+            directory and file extension. */
+        private final String m_outName;
 
-    private String m_outPrefix;
+        private String m_outFileRelativeName;
 
-    private final String m_prefix;
+        private final String m_outPrefix;
 
-    private final String m_program;
+        /** Relative URI path between m_outFile and the directory of the
+            test. */
+        private String m_relativePath;
 
-    /** Relative URI path between m_outFile and the directory of the current
-        test. */
-    private String m_relativePath;
+        private String m_version;
 
-    private String m_version;
+        private final ArrayList<Test> m_tests = new ArrayList<Test>();
 
-    /** Name of m_outFile and the summary file of the test without directory
-        and file extension for the all tests. */
-    private TreeMap<String,String> m_outNames;
+        private GtpClient m_gtp;
 
-    private final ArrayList<Test> m_tests = new ArrayList<Test>();
+        private void addTest(Test test)
+        {
+            test.m_time = m_lastTime;
+            test.m_cpuTime = m_lastCpuTime;
+            if (m_history != null)
+                test.m_previousTime =
+                    m_history.getMedian(m_testFile.toString(), test.m_id);
+            if (test.isSlower() || (m_longOutput && test.isFaster()))
+            {
+                String change = (test.isSlower() ? "slower" : "faster");
+                m_stdout.println(m_outPrefix + Integer.toString(test.m_id)
+                                 + " " + change + ": "
+                                 + formatSeconds(test.getTime())
+                                 + " s, median of previous runs "
+                                 + formatSeconds(test.m_previousTime)
+                                 + " s");
+            }
+            m_tests.add(test);
+        }
 
-    private final ArrayList<TestSummary> m_testSummaries
-        = new ArrayList<TestSummary>();
+        private void checkLastSgf(String line)
+        {
+            String regex =
+                "[0-9]*\\s*loadsgf\\s+(\\S+\\.[Ss][Gg][Ff])\\s+([0-9]+)\\s*";
+            Pattern pattern = Pattern.compile(regex);
+            Matcher matcher = pattern.matcher(line);
+            if (matcher.matches())
+            {
+                m_lastSgf = matcher.group(1);
+                try
+                {
+                    m_lastSgfMove = Integer.parseInt(matcher.group(2));
+                    return;
+                }
+                catch (NumberFormatException e)
+                {
+                    assert false;
+                }
+            }
+            regex = "[0-9]*\\s*loadsgf\\s+(\\S+\\.[Ss][Gg][Ff])\\s*";
+            pattern = Pattern.compile(regex);
+            matcher = pattern.matcher(line);
+            if (matcher.matches())
+            {
+                m_lastSgf = matcher.group(1);
+                m_lastSgfMove = -1;
+            }
 
-    private GtpClient m_gtp;
+        }
 
-    private void checkLastSgf(String line)
-    {
-        String regex =
-            "[0-9]*\\s*loadsgf\\s+(\\S+\\.[Ss][Gg][Ff])\\s+([0-9]+)\\s*";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.matches())
+        private void finishOutFile()
         {
-            m_lastSgf = matcher.group(1);
+            if (m_currentStyle != null)
+                m_out.print("</span>");
+            m_out.print("</pre>\n" +
+                        HtmlUtil.getFooter("gogui-regress") +
+                        "</body>\n" +
+                        "</html>\n");
+            m_out.close();
+        }
+
+        private int getId(String line)
+        {
+            line = line.replaceAll("\\t", "\n");
+            int index = line.indexOf(' ');
+            if (index < 0)
+                return -1;
             try
             {
-                m_lastSgfMove = Integer.parseInt(matcher.group(2));
-                return;
+                return Integer.parseInt(line.substring(0, index));
             }
             catch (NumberFormatException e)
             {
-                assert false;
+                return -1;
             }
         }
-        regex = "[0-9]*\\s*loadsgf\\s+(\\S+\\.[Ss][Gg][Ff])\\s*";
-        pattern = Pattern.compile(regex);
-        matcher = pattern.matcher(line);
-        if (matcher.matches())
-        {
-            m_lastSgf = matcher.group(1);
-            m_lastSgfMove = -1;
-        }
 
-    }
-
-    private void finishOutFile()
-    {
-        if (m_currentStyle != null)
-            m_out.print("</span>");
-        m_out.print("</pre>\n" +
-                    HtmlUtil.getFooter("gogui-regress") +
-                    "</body>\n" +
-                    "</html>\n");
-        m_out.close();
-    }
-
-    private int getId(String line)
-    {
-        line = line.replaceAll("\\t", "\n");
-        int index = line.indexOf(' ');
-        if (index < 0)
-            return -1;
-        try
+        private TestSummary getTestSummary(long timeMillis, double cpuTime)
         {
-            return Integer.parseInt(line.substring(0, index));
+            TestSummary summary = new TestSummary();
+            summary.m_file = m_testFile;
+            summary.m_outName = m_outName;
+            summary.m_timeMillis = timeMillis;
+            summary.m_cpuTime = cpuTime;
+            summary.m_otherErrors = m_otherErrors;
+            for (int i = 0; i < m_tests.size(); ++i)
+            {
+                Test t = m_tests.get(i);
+                ++summary.m_numberTests;
+                if (t.m_fail && ! t.m_expectedFail)
+                    ++summary.m_unexpectedFails;
+                else if (t.m_fail && t.m_expectedFail)
+                    ++summary.m_expectedFails;
+                else if (! t.m_fail && ! t.m_expectedFail)
+                    ++summary.m_expectedPasses;
+                else if (! t.m_fail && t.m_expectedFail)
+                    ++summary.m_unexpectedPasses;
+                summary.m_testTimes.add(t.getTime());
+                if (t.isSlower())
+                    ++summary.m_slower;
+                else if (t.isFaster())
+                    ++summary.m_faster;
+            }
+            return summary;
         }
-        catch (NumberFormatException e)
+
+        private synchronized void handleLastResponse()
         {
-            return -1;
+            if (m_lastCommandId >= 0)
+            {
+                boolean fail = false;
+                if (m_lastError)
+                {
+                    printOutLine("fail", m_lastFullResponse);
+                    if (m_lastResponse.equals(""))
+                        m_stdout.println(m_outPrefix
+                                           + Integer.toString(m_lastCommandId)
+                                           + " unexpected FAIL");
+                    else
+                        m_stdout.println(m_outPrefix
+                                           + Integer.toString(m_lastCommandId)
+                                           + " unexpected FAIL: '"
+                                           + m_lastResponse + "'");
+                    fail = true;
+                }
+                else
+                    printOutLine("test", m_lastFullResponse);
+                addTest(new Test(m_lastCommandId, m_lastCommand, fail,
+                                 false, "", m_lastResponse, m_lastSgf,
+                                 m_lastSgfMove));
+            }
+            else
+            {
+                if (m_lastError)
+                {
+                    printOutLine("error", m_lastFullResponse);
+                    ++m_otherErrors;
+                }
+                else
+                    printOutLine(null, m_lastFullResponse);
+            }
         }
-    }
 
-    private TestSummary getTestSummary(long timeMillis, double cpuTime)
-    {
-        TestSummary summary = new TestSummary();
-        summary.m_file = m_testFile;
-        summary.m_outName = m_outName;
-        summary.m_timeMillis = timeMillis;
-        summary.m_cpuTime = cpuTime;
-        summary.m_otherErrors = m_otherErrors;
-        for (int i = 0; i < m_tests.size(); ++i)
+        private void handleLine(String line)
+            throws ErrorMessage, ProgramIsDeadException
         {
-            Test t = m_tests.get(i);
-            ++summary.m_numberTests;
-            if (t.m_fail && ! t.m_expectedFail)
-                ++summary.m_unexpectedFails;
-            else if (t.m_fail && t.m_expectedFail)
-                ++summary.m_expectedFails;
-            else if (! t.m_fail && ! t.m_expectedFail)
-                ++summary.m_expectedPasses;
-            else if (! t.m_fail && t.m_expectedFail)
-                ++summary.m_unexpectedPasses;
+            line = line.trim();
+            if (line.startsWith("#?"))
+            {
+                if (m_lastFullResponse == null)
+                    throw new ErrorMessage(m_testFile
+                                           + ": Response pattern"
+                                           + " without preceding test"
+                                           + " command: "
+                                           + line);
+                printOutLine("test", line);
+                handleTest(line.substring(2).trim());
+                m_lastFullResponse = null;
+                return;
+            }
+            if (m_lastFullResponse != null)
+            {
+                handleLastResponse();
+                m_lastFullResponse = null;
+            }
+            if (line.equals(""))
+                printOutLine(null, line);
+            else if (line.startsWith("#"))
+                printOutLine("comment", line);
+            else
+            {
+                line = line.replaceAll("\\t", " ");
+                m_lastCommandId = getId(line);
+                if (m_lastCommandId < 0)
+                    m_lastCommand = line;
+                else
+                {
+                    int index = line.indexOf(' ');
+                    m_lastCommand = line.substring(index + 1);
+                }
+                printOutLine(m_lastCommandId >= 0 ? "test" : "command", line,
+                             m_lastCommandId);
+                checkLastSgf(line);
+                m_lastError = false;
+                assert m_lastFullResponse == null;
+                double cpuTime = Double.NaN;
+                if (m_lastCommandId >= 0)
+                    cpuTime = queryCpuTime();
+                long timeNanos = System.nanoTime();
+                try
+                {
+                    m_lastResponse = m_gtp.send(line);
+                }
+                catch (GtpError error)
+                {
+                    m_lastError = true;
+                    m_lastResponse = error.getMessage();
+                    if (m_gtp.isProgramDead())
+                        throw new ProgramIsDeadException();
+                }
+                m_lastTime = (System.nanoTime() - timeNanos) / 1e9;
+                m_lastFullResponse = m_gtp.getFullResponse();
+                if (m_lastCommandId >= 0)
+                    m_lastCpuTime = queryCpuTime() - cpuTime;
+            }
         }
-        return summary;
-    }
 
-    private synchronized void handleLastResponse()
-    {
-        if (m_lastCommandId >= 0)
+        private void handleTest(String patternString) throws ErrorMessage
         {
+            boolean expectedFail = false;
+            if (StringUtil.isEmpty(patternString))
+            {
+                handleLastResponse();
+                return;
+            }
+            if (patternString.endsWith("*"))
+            {
+                expectedFail = true;
+                patternString =
+                    patternString.substring(0, patternString.length() - 1);
+            }
+            if (! patternString.startsWith("["))
+                throw new ErrorMessage(m_testFile
+                                       + ": Pattern has no opening bracket: "
+                                       + patternString);
+            if (! patternString.endsWith("]"))
+                throw new ErrorMessage(m_testFile
+                                       + ": Pattern has no closing bracket: "
+                                       + patternString);
+            patternString =
+                patternString.substring(1, patternString.length() - 1).trim();
+            String expectedResponse = patternString;
+            boolean notPattern = false;
+            if (patternString.startsWith("!"))
+            {
+                notPattern = true;
+                patternString = patternString.substring(1);
+            }
             boolean fail = false;
+            String response = "";
+            int index = m_lastFullResponse.indexOf(' ');
+            if (index >= 0)
+                response = m_lastFullResponse.substring(index).trim();
             if (m_lastError)
+                fail = true;
+            else
             {
-                printOutLine("fail", m_lastFullResponse);
-                if (m_lastResponse.equals(""))
-                    System.out.println(m_outPrefix
+                Pattern pattern
+                    = Pattern.compile(patternString,
+                                      Pattern.MULTILINE | Pattern.DOTALL);
+                Matcher matcher = pattern.matcher(response);
+                if ((! matcher.matches() && ! notPattern)
+                    || (matcher.matches() && notPattern))
+                    fail = true;
+            }
+            if (fail  && ! expectedFail)
+                m_result = false;
+            String style = null;
+            if (fail && ! expectedFail)
+                style = "fail";
+            else if (! fail && expectedFail)
+                style = "pass";
+            else
+                style = "test";
+            printOutLine(style, m_lastFullResponse);
+            if (m_longOutput)
+            {
+                // Output compatible with eval.sh in GNU Go
+                if (fail && ! expectedFail)
+                    m_stdout.println(m_outPrefix
                                        + Integer.toString(m_lastCommandId)
-                                       + " unexpected FAIL");
-                else
-                    System.out.println(m_outPrefix
+                                       + " FAILED: Correct '"
+                                       + expectedResponse + "', got '"
+                                       + response + "'");
+                else if (fail && expectedFail)
+                    m_stdout.println(m_outPrefix
                                        + Integer.toString(m_lastCommandId)
-                                       + " unexpected FAIL: '"
-                                       + m_lastResponse + "'");
-                fail = true;
+                                       + " failed: Correct '"
+                                       + expectedResponse + "', got '"
+                                       + response + "'");
+                else if (! fail && expectedFail)
+                    m_stdout.println(m_outPrefix
+                                       + Integer.toString(m_lastCommandId)
+                                       + " PASSED");
+                else if (! fail && ! expectedFail)
+                    m_stdout.println(m_outPrefix
+                                       + Integer.toString(m_lastCommandId)
+                                       + " passed");
             }
             else
-                printOutLine("test", m_lastFullResponse);
-            m_tests.add(new Test(m_lastCommandId, m_lastCommand, fail, false,
-                                 "", m_lastResponse, m_lastSgf,
-                                 m_lastSgfMove));
-        }
-        else
-        {
-            if (m_lastError)
             {
-                printOutLine("error", m_lastFullResponse);
-                ++m_otherErrors;
+                // Output compatible with regress.sh in GNU Go
+                if (fail && ! expectedFail)
+                    m_stdout.println(m_outPrefix
+                                       + Integer.toString(m_lastCommandId)
+                                       + " unexpected FAIL: Correct '"
+                                       + expectedResponse + "', got '"
+                                       + response + "'");
+                else if (! fail && expectedFail)
+                    m_stdout.println(m_outPrefix
+                                       + Integer.toString(m_lastCommandId)
+                                       + " unexpected PASS!");
             }
-            else
-                printOutLine(null, m_lastFullResponse);
+            addTest(new Test(m_lastCommandId, m_lastCommand, fail,
+                             expectedFail, expectedResponse, response,
+                             m_lastSgf, m_lastSgfMove));
         }
-    }
 
-    private void handleLine(String line)
-        throws ErrorMessage, ProgramIsDeadException
-    {
-        line = line.trim();
-        if (line.startsWith("#?"))
-        {
-            if (m_lastFullResponse == null)
-                throw new ErrorMessage(m_testFile
-                                       + ": Response pattern"
-                                       + " without preceding test command: "
-                                       + line);
-            printOutLine("test", line);
-            handleTest(line.substring(2).trim());
-            m_lastFullResponse = null;
-            return;
-        }
-        if (m_lastFullResponse != null)
+        private void initOutFile()
+            throws Exception
         {
-            handleLastResponse();
-            m_lastFullResponse = null;
+            m_outFileRelativeName = m_outName + ".out.html";
+            m_outFile = new File(m_prefix + m_outFileRelativeName);
+            File parent = m_outFile.getParentFile();
+            if (parent != null && ! parent.exists())
+                if (! parent.mkdir())
+                    throw new ErrorMessage("Could not create directory '"
+                                           + parent + "'");
+            m_currentStyle = null;
+            m_out = new PrintStream(m_outFile);
+            m_out.print("<html>\n" +
+                        "<head>\n" +
+                        "<title>Output: " + m_testFile + "</title>\n" +
+                        HtmlUtil.getMeta("gogui-regress") +
+                        "<style type=\"text/css\">\n" +
+                        "<!--\n" +
+                        "body { margin:0; }\n" +
+                        "span.comment { color:#999999; }\n" +
+                        "span.fail { font-weight:bold; color:" + COLOR_RED
+                        + "; }\n" +
+                        "span.error { font-weight:bold; color:" + COLOR_ERROR
+                        + "; }\n" +
+                        "span.stderr { color:#666666; }\n" +
+                        "span.invalid { background:" + COLOR_RED + ";}\n" +
+                        "span.pass { font-weight:bold; color:" + COLOR_GREEN
+                        + "; }\n" +
+                        "span.test { font-weight:bold; }\n" +
+                        "-->\n" +
+                        "</style>\n" +
+                        "</head>\n" +
+                        "<body bgcolor=\"white\" text=\"black\"" +
+                        " link=\"#0000ee\" vlink=\"#551a8b\">\n" +
+                        "<table border=\"0\" width=\"100%\" bgcolor=\""
+                        + COLOR_HEADER + "\" border=\"0\">\n" +
+                        "<tr><td>\n" +
+                        "<h1>Output: " + m_testFile + "</h1>\n" +
+                        "</td></tr>\n" +
+                        "</table>\n" +
+                        "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
+                        + "\">\n");
+            writeInfo(m_out, null, null);
+            m_out.print("</table>\n" +
+                        "<pre style=\"margin:1em\">\n");
         }
-        if (line.equals(""))
-            printOutLine(null, line);
-        else if (line.startsWith("#"))
-            printOutLine("comment", line);
-        else
+
+        private synchronized void printOut(String style, String line, int id)
         {
-            line = line.replaceAll("\\t", " ");
-            m_lastCommandId = getId(line);
-            if (m_lastCommandId < 0)
-                m_lastCommand = line;
-            else
-            {
-                int index = line.indexOf(' ');
-                m_lastCommand = line.substring(index + 1);
-            }
-            printOutLine(m_lastCommandId >= 0 ? "test" : "command", line,
-                         m_lastCommandId);
-            checkLastSgf(line);
-            m_lastError = false;
-            assert m_lastFullResponse == null;
-            try
+            if (line == null || line.length() == 0)
+                return;
+            line = line.replaceAll("&", "&amp;");
+            line = line.replaceAll(">", "&gt;");
+            line = line.replaceAll("<", "&lt;");
+            if (style != null
+                && (style.equals("command") || style.equals("test")))
             {
-                m_lastResponse = m_gtp.send(line);
+                Pattern pattern = Pattern.compile("\\S*\\.[Ss][Gg][Ff]");
+                Matcher matcher = pattern.matcher(line);
+                if (matcher.find())
+                {
+                    String sgf = matcher.group();
+                    StringBuilder stringBuffer = new StringBuilder();
+                    stringBuffer.append(line.substring(0, matcher.start()));
+                    stringBuffer.append("<a href=\"");
+                    stringBuffer.append(m_relativePath);
+                    stringBuffer.append(sgf);
+                    stringBuffer.append("\">");
+                    stringBuffer.append(sgf);
+                    stringBuffer.append("</a>");
+                    stringBuffer.append(line.substring(matcher.end()));
+                    line = stringBuffer.toString();
+                }
             }
-            catch (GtpError error)
+            if ((style == null && m_currentStyle != null)
+                || (style != null && m_currentStyle == null)
+                || (style != null && m_currentStyle != null
+                    && ! style.equals(m_currentStyle)))
             {
-                m_lastError = true;
-                m_lastResponse = error.getMessage();
-                if (m_gtp.isProgramDead())
-                    throw new ProgramIsDeadException();
+                if (m_currentStyle != null)
+                    m_out.print("</span>");
+                if (style != null)
+                    m_out.print("<span class=\"" + style + "\">");
+                m_currentStyle = style;
             }
-            m_lastFullResponse = m_gtp.getFullResponse();
+            if (id >= 0)
+                m_out.print("<a name=\"" + id + "\">");
+            m_out.print(line);
+            if (id >= 0)
+                m_out.print("</a>");
         }
-    }
 
-    private void handleTest(String patternString) throws ErrorMessage
-    {
-        boolean expectedFail = false;
-        if (StringUtil.isEmpty(patternString))
+        private synchronized void printOutLine(String style, String line,
+                                               int id)
         {
-            handleLastResponse();
-            return;
+            if (line == null)
+                return;
+            if (! line.endsWith("\n"))
+                line = line + "\n";
+            printOut(style, line, id);
         }
-        if (patternString.endsWith("*"))
+
+        private synchronized void printOutSeparator()
         {
-            expectedFail = true;
-            patternString =
-                patternString.substring(0, patternString.length() - 1);
+            if (m_currentStyle != null)
+                m_out.print("</span>");
+            m_out.println("</pre>\n" +
+                          "<hr style=\"margin:1em\" size=\"1\">\n" +
+                          "<pre style=\"margin:1em\">");
         }
-        if (! patternString.startsWith("["))
-            throw new ErrorMessage(m_testFile
-                                   + ": Pattern has no opening bracket: "
-                                   + patternString);
-        if (! patternString.endsWith("]"))
-            throw new ErrorMessage(m_testFile
-                                   + ": Pattern has no closing bracket: "
-                                   + patternString);
-        patternString =
-            patternString.substring(1, patternString.length() - 1).trim();
-        String expectedResponse = patternString;
-        boolean notPattern = false;
-        if (patternString.startsWith("!"))
+
+        private synchronized void printOutLine(String style, String line)
         {
-            notPattern = true;
-            patternString = patternString.substring(1);
+            printOutLine(style, line, -1);
         }
-        boolean fail = false;
-        String response = "";
-        int index = m_lastFullResponse.indexOf(' ');
-        if (index >= 0)
-            response = m_lastFullResponse.substring(index).trim();
-        if (m_lastError)
-            fail = true;
-        else
+
+        private String send(String command) throws GtpError
         {
-            Pattern pattern
-                = Pattern.compile(patternString,
-                                  Pattern.MULTILINE | Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(response);
-            if ((! matcher.matches() && ! notPattern)
-                || (matcher.matches() && notPattern))
-                fail = true;
+            printOutLine(null, command);
+            try
+            {
+                return m_gtp.send(command);
+            }
+            finally
+            {
+                printOutLine(null, m_gtp.getFullResponse());
+            }
         }
-        if (fail  && ! expectedFail)
-            m_result = false;
-        String style = null;
-        if (fail && ! expectedFail)
-            style = "fail";
-        else if (! fail && expectedFail)
-            style = "pass";
-        else
-            style = "test";
-        printOutLine(style, m_lastFullResponse);
-        if (m_longOutput)
+
+        /** Query the CPU time of the program without logging the command
+            to the output file.
+            @return The CPU time or Double.NaN, if the program does not
+            support the cputime command. */
+        private double queryCpuTime()
         {
-            // Output compatible with eval.sh in GNU Go
-            if (fail && ! expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " FAILED: Correct '"
-                                   + expectedResponse + "', got '" + response
-                                   + "'");
-            else if (fail && expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " failed: Correct '"
-                                   + expectedResponse + "', got '" + response
-                                   + "'");
-            else if (! fail && expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " PASSED");
-            else if (! fail && ! expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " passed");
+            if (! m_isCpuTimeSupported || m_gtp.isProgramDead())
+                return Double.NaN;
+            try
+            {
+                return Double.parseDouble(m_gtp.send("cputime"));
+            }
+            catch (GtpError e)
+            {
+                return Double.NaN;
+            }
+            catch (NumberFormatException e)
+            {
+                return Double.NaN;
+            }
         }
-        else
+
+        private double getCpuTime()
         {
-            // Output compatible with regress.sh in GNU Go
-            if (fail && ! expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " unexpected FAIL: Correct '"
-                                   + expectedResponse + "', got '" + response
-                                   + "'");
-            else if (! fail && expectedFail)
-                System.out.println(m_outPrefix
-                                   + Integer.toString(m_lastCommandId)
-                                   + " unexpected PASS!");
+            try
+            {
+                double cpuTime = Double.parseDouble(send("cputime"));
+                m_isCpuTimeSupported = true;
+                return cpuTime;
+            }
+            catch (GtpError e)
+            {
+                return 0;
+            }
+            catch (NumberFormatException e)
+            {
+                return 0;
+            }
         }
-        m_tests.add(new Test(m_lastCommandId, m_lastCommand, fail,
-                             expectedFail, expectedResponse, response,
-                             m_lastSgf, m_lastSgfMove));
-    }
 
-    /** Compute unique names for output directory.
-        Appends a number, if tests with same name in different directories
-        exist. */
-    private void initOutNames(ArrayList<String> tests)
-    {
-        m_outNames = new TreeMap<String,String>();
-        for (int i = 0; i < tests.size(); ++i)
+        private void queryNameAndVersion() throws GtpError
+        {
+            try
+            {
+                m_name = send("name");
+            }
+            catch (GtpError e)
+            {
+                m_name = "";
+                if (m_gtp.isProgramDead())
+                    throw e;
+            }
+            try
+            {
+                m_version = send("version");
+            }
+            catch (GtpError e)
+            {
+                m_version = "";
+            }
+        }
+
+        private void sendGtpFile() throws ErrorMessage
         {
-            String test = tests.get(i);
-            File testFile = new File(test);
-            String name =
-                FileUtil.removeExtension(new File(testFile.getName()), "tst");
-            if (m_outNames.containsValue(name))
-                for (int j = 2; ; ++j)
+            Reader reader;
+            try
+            {
+                reader = new FileReader(m_gtpFile);
+            }
+            catch (FileNotFoundException e)
+            {
+                throw new ErrorMessage("GTP file not found: " + m_gtpFile);
+            }
+            java.io.BufferedReader in;
+            in = new BufferedReader(reader);
+            try
+            {
+                while (true)
                 {
-                    String testName = name + "_" + j;
-                    if (! m_outNames.containsValue(testName))
+                    try
                     {
-                        name = testName;
-                        break;
+                        String line = in.readLine();
+                        if (line == null)
+                            break;
+                        if (! GtpUtil.isCommand(line))
+                            continue;
+                        send(line);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new ErrorMessage("Error reading GTP file: "
+                                               + e.getMessage());
+                    }
+                    catch (GtpError e)
+                    {
+                        throw new ErrorMessage("GTP command '" + e.getCommand()
+                                               + "' from file " + m_gtpFile
+                                               + " failed: " + e.getMessage());
                     }
                 }
-            m_outNames.put(test, name);
+                printOutSeparator();
+            }
+            finally
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException e)
+                {
+                }
+            }
         }
-    }
-
-    private void initOutFile()
-        throws Exception
-    {
-        m_outFileRelativeName = m_outName + ".out.html";
-        m_outFile = new File(m_prefix + m_outFileRelativeName);
-        File parent = m_outFile.getParentFile();
-        if (parent != null && ! parent.exists())
-            if (! parent.mkdir())
-                throw new ErrorMessage("Could not create directory '"
-                                       + parent + "'");
-        m_currentStyle = null;
-        m_out = new PrintStream(m_outFile);
-        m_out.print("<html>\n" +
-                    "<head>\n" +
-                    "<title>Output: " + m_testFile + "</title>\n" +
-                    HtmlUtil.getMeta("gogui-regress") +
-                    "<style type=\"text/css\">\n" +
-                    "<!--\n" +
-                    "body { margin:0; }\n" +
-                    "span.comment { color:#999999; }\n" +
-                    "span.fail { font-weight:bold; color:" + COLOR_RED
-                    + "; }\n" +
-                    "span.error { font-weight:bold; color:" + COLOR_ERROR
-                    + "; }\n" +
-                    "span.stderr { color:#666666; }\n" +
-                    "span.invalid { background:" + COLOR_RED + ";}\n" +
-                    "span.pass { font-weight:bold; color:" + COLOR_GREEN
-                    + "; }\n" +
-                    "span.test { font-weight:bold; }\n" +
-                    "-->\n" +
-                    "</style>\n" +
-                    "</head>\n" +
-                    "<body bgcolor=\"white\" text=\"black\"" +
-                    " link=\"#0000ee\" vlink=\"#551a8b\">\n" +
-                    "<table border=\"0\" width=\"100%\" bgcolor=\""
-                    + COLOR_HEADER + "\" border=\"0\">\n" +
-                    "<tr><td>\n" +
-                    "<h1>Output: " + m_testFile + "</h1>\n" +
-                    "</td></tr>\n" +
-                    "</table>\n" +
-                    "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
-                    + "\">\n");
-        writeInfo(m_out, false);
-        m_out.print("</table>\n" +
-                    "<pre style=\"margin:1em\">\n");
-    }
 
-    private synchronized void printOut(String style, String line, int id)
-    {
-        if (line == null || line.length() == 0)
-            return;
-        line = line.replaceAll("&", "&amp;");
-        line = line.replaceAll(">", "&gt;");
-        line = line.replaceAll("<", "&lt;");
-        if (style != null
-            && (style.equals("command") || style.equals("test")))
+        private void writeTestSummary(TestSummary summary)
+            throws FileNotFoundException
         {
-            Pattern pattern = Pattern.compile("\\S*\\.[Ss][Gg][Ff]");
-            Matcher matcher = pattern.matcher(line);
-            if (matcher.find())
+            if (m_longOutput)
             {
-                String sgf = matcher.group();
-                StringBuilder stringBuffer = new StringBuilder();
-                stringBuffer.append(line.substring(0, matcher.start()));
-                stringBuffer.append("<a href=\"");
-                stringBuffer.append(m_relativePath);
-                stringBuffer.append(sgf);
-                stringBuffer.append("\">");
-                stringBuffer.append(sgf);
-                stringBuffer.append("</a>");
-                stringBuffer.append(line.substring(matcher.end()));
-                line = stringBuffer.toString();
+                // Output compatible with eval.sh in GNU Go
+                m_stdout.println("Summary: " + summary.getNumberPasses()
+                                   + "/" + summary.m_numberTests + " passes. "
+                                   + summary.m_unexpectedPasses
+                                   + " unexpected passes, "
+                                   + summary.m_unexpectedFails
+                                   + " unexpected failures");
             }
+            File file = new File(m_prefix + m_outName + ".html");
+            PrintStream out = new PrintStream(file);
+            out.print("<html>\n" +
+                      "<head>\n" +
+                      "<title>Summary: " + m_testFile + "</title>\n" +
+                      HtmlUtil.getMeta("gogui-regress") +
+                      "<style type=\"text/css\">\n" +
+                      "<!--\n" +
+                      "body { margin:0; }\n" +
+                      "-->\n" +
+                      "</style>\n" +
+                      "</head>\n" +
+                      "<body bgcolor=\"white\" text=\"black\" link=\"blue\""
+                      + " vlink=\"purple\" alink=\"red\">\n" +
+                      "<table border=\"0\" width=\"100%\" bgcolor=\""
+                      + COLOR_HEADER + "\">\n" +
+                      "<tr><td>\n" +
+                      "<h1>Summary: " + m_testFile + "</h1>\n" +
+                      "</td></tr>\n" +
+                      "</table>\n" +
+                      "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
+                      + "\">\n");
+            writeInfo(out, m_name, m_version);
+            out.print("<tr><th align=\"left\">Output:</th><td><a href=\""
+                      + m_outFileRelativeName + "\">"
+                      + m_outFileRelativeName + "</a></td></tr>\n" +
+                      "</table>\n" +
+                      "<table width=\"100%\" border=\"0\" cellpadding=\"0\""
+                      + " cellspacing=\"1\">\n" +
+                      "<colgroup>\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "<col width=\"12%\">\n" +
+                      "</colgroup>\n" +
+                      "<thead align=\"center\">\n" +
+                      "<tr bgcolor=\"" + COLOR_HEADER + "\">\n" +
+                      "<th>Tests</th>\n" +
+                      "<th>FAIL</th>\n" +
+                      "<th>fail</th>\n" +
+                      "<th>PASS</th>\n" +
+                      "<th>pass</th>\n" +
+                      "<th>Error</th>\n" +
+                      "<th>Time</th>\n" +
+                      "<th>CpuTime</th>\n" +
+                      "</tr>\n" +
+                      "</thead>\n");
+            writeSummaryRow(out, summary, false, false);
+            out.print("</table>\n");
+            writeTimeHeader(out, false);
+            writeTimeRow(out, summary, false, false);
+            out.print("</table>\n" +
+                      "<table width=\"100%\" border=\"0\" cellpadding=\"0\""
+                      + " cellspacing=\"1\">\n" +
+                      "<thead>\n" +
+                      "<tr bgcolor=\"" + COLOR_HEADER + "\">\n" +
+                      "<th>ID</th>\n" +
+                      "<th>Status</th>\n" +
+                      "<th>Command</th>\n" +
+                      "<th>Output</th>\n" +
+                      "<th>Required</th>\n" +
+                      "<th>Last SGF</th>\n" +
+                      "<th>Time</th>\n" +
+                      "<th>CpuTime</th>\n");
+            if (m_history != null)
+                out.print("<th>Median</th>\n");
+            out.print("</tr>\n" +
+                      "</thead>\n");
+            for (int i = 0; i < m_tests.size(); ++i)
+            {
+                Test t = m_tests.get(i);
+                String rowBackground = COLOR_BG_LIGHT;
+                String statusColor = rowBackground;
+                String status = null;
+                if (t.m_fail && t.m_expectedFail)
+                {
+                    status = "fail";
+                }
+                else if (t.m_fail && ! t.m_expectedFail)
+                {
+                    statusColor = COLOR_RED;
+                    status = "FAIL";
+                }
+                else if (! t.m_fail && t.m_expectedFail)
+                {
+                    statusColor = COLOR_GREEN;
+                    status = "PASS";
+                }
+                else if (! t.m_fail && ! t.m_expectedFail)
+                {
+                    status = "pass";
+                }
+                else
+                    assert false;
+                String lastSgf = "";
+                if (t.m_lastSgf != null)
+                {
+                    lastSgf = "<a href=\"" + m_relativePath + t.m_lastSgf
+                        + "\">" + t.m_lastSgf + "</a>";
+                    if (t.m_lastSgfMove != -1)
+                        lastSgf += "&nbsp;" + t.m_lastSgfMove;
+                }
+                String command = t.m_command.replaceAll(" ", "&nbsp;");
+                out.print("<tr bgcolor=\"" + rowBackground + "\">\n" +
+                          "<td align=\"right\"><a href=\""
+                          + m_outFileRelativeName + "#" + t.m_id + "\">"
+                          + t.m_id + "</a></td>\n" +
+                          "<td align=\"center\" bgcolor=\"" + statusColor
+                          + "\">" + status + "</td>\n" +
+                          "<td>" + command + "</td>\n" +
+                          "<td align=\"center\">" + truncate(t.m_response)
+                          + "</td>\n" +
+                          "<td align=\"center\">" + truncate(t.m_required)
+                          + "</td>\n" +
+                          "<td>" + lastSgf + "</td>\n" +
+                          "<td align=\"right\">" + formatSeconds(t.m_time)
+                          + "</td>\n" +
+                          "<td align=\"right\">" + formatSeconds(t.m_cpuTime)
+                          + "</td>\n");
+                if (m_history != null)
+                {
+                    String colorAttr = "";
+                    if (t.isSlower())
+                        colorAttr = " bgcolor=\"" + COLOR_RED + "\"";
+                    else if (t.isFaster())
+                        colorAttr = " bgcolor=\"" + COLOR_GREEN + "\"";
+                    out.print("<td align=\"right\"" + colorAttr + ">"
+                              + formatSeconds(t.m_previousTime) + "</td>\n");
+                }
+                out.print("</tr>\n");
+            }
+            out.print("</table>\n" +
+                      HtmlUtil.getFooter("gogui-regress") +
+                      "</body>\n" +
+                      "</html>\n");
+            out.close();
         }
-        if ((style == null && m_currentStyle != null)
-            || (style != null && m_currentStyle == null)
-            || (style != null && m_currentStyle != null
-                && ! style.equals(m_currentStyle)))
-        {
-            if (m_currentStyle != null)
-                m_out.print("</span>");
-            if (style != null)
-                m_out.print("<span class=\"" + style + "\">");
-            m_currentStyle = style;
-        }
-        if (id >= 0)
-            m_out.print("<a name=\"" + id + "\">");
-        m_out.print(line);
-        if (id >= 0)
-            m_out.print("</a>");
     }
 
-    private synchronized void printOutLine(String style, String line, int id)
-    {
-        if (line == null)
-            return;
-        if (! line.endsWith("\n"))
-            line = line + "\n";
-        printOut(style, line, id);
-    }
+    private final boolean m_longOutput;
 
-    private synchronized void printOutSeparator()
+    private boolean m_result;
+
+    private final boolean m_verbose;
+
+    /** Factor by which a test must be slower or faster than the median of
+        the previous runs to be reported. */
+    private static final double TIME_FACTOR = 1.5;
+
+    /** Minimum difference in seconds to the median of the previous runs
+        for reporting a test as slower or faster. */
+    private static final double MIN_TIME_DIFF = 0.1;
+
+    /** Set if an exception occurred in a parallel run. */
+    private volatile boolean m_aborted;
+
+    private static final String COLOR_ERROR = "#ffa954";
+
+    private static final String COLOR_HEADER = "#91aee8";
+
+    private static final String COLOR_INFO = "#e0e0e0";
+
+    private static final String COLOR_BG_LIGHT = "#e0e0e0";
+
+    private static final String COLOR_BG_GRAY = "#e0e0e0";
+
+    private static final String COLOR_GREEN = "#5eaf5e";
+
+    private static final String COLOR_RED = "#ff5454";
+
+    private final File m_gtpFile;
+
+    /** Name of the program in the last test file. */
+    private String m_name;
+
+    private final String m_prefix;
+
+    private final String m_program;
+
+    /** Time history or null, if not used. */
+    private TimeHistory m_history;
+
+    /** Version of the program in the last test file. */
+    private String m_version;
+
+    /** Name of the output file and the summary file of a test without
+        directory and file extension for the all tests. */
+    private TreeMap<String,String> m_outNames;
+
+    private final ArrayList<TestSummary> m_testSummaries
+        = new ArrayList<TestSummary>();
+
+    private void addResult(TestRun run, TestSummary summary)
     {
-        if (m_currentStyle != null)
-            m_out.print("</span>");
-        m_out.println("</pre>\n" +
-                      "<hr style=\"margin:1em\" size=\"1\">\n" +
-                      "<pre style=\"margin:1em\">");
+        m_testSummaries.add(summary);
+        if (m_history != null)
+            for (Test t : run.m_tests)
+                m_history.add(run.m_testFile.toString(), t.m_id,
+                              t.getTime());
+        if (! run.getResult())
+            m_result = false;
+        m_name = run.m_name;
+        m_version = run.m_version;
     }
 
-    private synchronized void printOutLine(String style, String line)
+    private static String getOutPrefix(ArrayList<String> tests, String test)
     {
-        printOutLine(style, line, -1);
+        if (tests.size() > 1)
+            return test + " ";
+        return "";
     }
 
-    private String send(String command) throws GtpError
+    /** Format a time in seconds with two decimal places.
+        @return The formatted time or "-", if the time is Double.NaN. */
+    private static String formatSeconds(double seconds)
     {
-        printOutLine(null, command);
-        try
-        {
-            return m_gtp.send(command);
-        }
-        finally
-        {
-            printOutLine(null, m_gtp.getFullResponse());
-        }
+        if (Double.isNaN(seconds))
+            return "-";
+        return StringUtil.getNumberFormat(2).format(seconds);
     }
 
-    private double getCpuTime()
+    /** Get a percentile using the nearest-rank method.
+        @param sorted The values in increasing order.
+        @param p The percentile as a fraction.
+        @return The percentile or Double.NaN, if there are no values. */
+    private static double getPercentile(double[] sorted, double p)
     {
-        try
-        {
-            return Double.parseDouble(send("cputime"));
-        }
-        catch (GtpError e)
-        {
-            return 0;
-        }
-        catch (NumberFormatException e)
-        {
-            return 0;
-        }
+        if (sorted.length == 0)
+            return Double.NaN;
+        int index = (int)Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
     }
 
     private String getTimeString(double seconds)
@@ -714,142 +1204,113 @@ public class Regress
             total.m_unexpectedPasses += summary.m_unexpectedPasses;
             total.m_timeMillis += summary.m_timeMillis;
             total.m_cpuTime += summary.m_cpuTime;
+            total.m_slower += summary.m_slower;
+            total.m_faster += summary.m_faster;
+            total.m_testTimes.addAll(summary.m_testTimes);
         }
         return total;
     }
 
-    private void queryNameAndVersion() throws GtpError
+    /** Compute unique names for output directory.
+        Appends a number, if tests with same name in different directories
+        exist. */
+    private void initOutNames(ArrayList<String> tests)
     {
-        try
-        {
-            m_name = send("name");
-        }
-        catch (GtpError e)
-        {
-            m_name = "";
-            if (m_gtp.isProgramDead())
-                throw e;
-        }
-        try
-        {
-            m_version = send("version");
-        }
-        catch (GtpError e)
+        m_outNames = new TreeMap<String,String>();
+        for (int i = 0; i < tests.size(); ++i)
         {
-            m_version = "";
+            String test = tests.get(i);
+            File testFile = new File(test);
+            String name =
+                FileUtil.removeExtension(new File(testFile.getName()), "tst");
+            if (m_outNames.containsValue(name))
+                for (int j = 2; ; ++j)
+                {
+                    String testName = name + "_" + j;
+                    if (! m_outNames.containsValue(testName))
+                    {
+                        name = testName;
+                        break;
+                    }
+                }
+            m_outNames.put(test, name);
         }
     }
 
-    private void runTest(String test) throws Exception
+    /** Run the test files in parallel.
+        The test files are taken from a queue by a pool of threads in the
+        order of the list. The output to standard out of each test file is
+        buffered and written after the test file and all previous test files
+        have finished, such that the output and the summary are the same as
+        in a sequential run. */
+    private void runParallel(ArrayList<String> tests, int numberThreads)
+        throws Exception
     {
-        m_tests.clear();
-        m_otherErrors = 0;
-        m_testFile = new File(test);
-        m_outName = m_outNames.get(test);
-        initOutFile();
-        File testFileDir = m_testFile.getAbsoluteFile().getParentFile();
-        m_relativePath = FileUtil.getRelativeURI(m_outFile, testFileDir);
-        if (! m_relativePath.equals("") && ! m_relativePath.endsWith("/"))
-            m_relativePath = m_relativePath + "/";
-        FileReader fileReader = new FileReader(m_testFile);
-        BufferedReader reader = new BufferedReader(fileReader);
+        ThreadFactory threadFactory = new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable);
+                    // Don't prevent the JVM from exiting after an error
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        ExecutorService executor =
+            Executors.newFixedThreadPool(Math.min(numberThreads,
+                                                  tests.size()),
+                                         threadFactory);
+        ArrayList<TestRun> runs = new ArrayList<TestRun>();
+        ArrayList<ByteArrayOutputStream> buffers =
+            new ArrayList<ByteArrayOutputStream>();
+        ArrayList<Future<TestSummary>> futures =
+            new ArrayList<Future<TestSummary>>();
         try
         {
-            m_gtp = new GtpClient(m_program, testFileDir, m_verbose, this);
-            if (m_gtpFile != null)
-                sendGtpFile();
-            m_lastSgf = null;
-            queryNameAndVersion();
-            double cpuTime = getCpuTime();
-            long timeMillis = System.currentTimeMillis();
-            printOutSeparator();
-            String line;
-            while (true)
-            {
-                line = reader.readLine();
-                if (line == null)
-                    break;
-                handleLine(line);
-            }
-            timeMillis = System.currentTimeMillis() - timeMillis;
-            if (m_lastFullResponse != null)
-            {
-                handleLastResponse();
-                m_lastFullResponse = null;
-            }
-            printOutSeparator();
-            cpuTime = getCpuTime() - cpuTime;
-            if (m_lastFullResponse != null)
-            {
-                handleLastResponse();
-                m_lastFullResponse = null;
-            }
-            if (! m_gtp.isProgramDead())
+            for (int i = 0; i < tests.size(); ++i)
             {
-                send("quit");
-                m_gtp.close();
+                String test = tests.get(i);
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                final TestRun run =
+                    new TestRun(test, getOutPrefix(tests, test),
+                                new PrintStream(buffer, true));
+                Callable<TestSummary> task = new Callable<TestSummary>()
+                    {
+                        public TestSummary call() throws Exception
+                        {
+                            if (m_aborted)
+                                return null;
+                            return run.run();
+                        }
+                    };
+                runs.add(run);
+                buffers.add(buffer);
+                futures.add(executor.submit(task));
             }
-            m_gtp.waitForExit();
-            finishOutFile();
-            TestSummary testSummary = getTestSummary(timeMillis, cpuTime);
-            m_testSummaries.add(testSummary);
-            writeTestSummary(testSummary);
-        }
-        finally
-        {
-            reader.close();
-        }
-    }
-
-    private void sendGtpFile() throws ErrorMessage
-    {
-        Reader reader;
-        try
-        {
-            reader = new FileReader(m_gtpFile);
-        }
-        catch (FileNotFoundException e)
-        {
-            throw new ErrorMessage("GTP file not found: " + m_gtpFile);
-        }
-        java.io.BufferedReader in;
-        in = new BufferedReader(reader);
-        try
-        {
-            while (true)
+            for (int i = 0; i < tests.size(); ++i)
             {
+                TestSummary summary;
                 try
                 {
-                    String line = in.readLine();
-                    if (line == null)
-                        break;
-                    if (! GtpUtil.isCommand(line))
-                        continue;
-                    send(line);
-                }
-                catch (IOException e)
-                {
-                    throw new ErrorMessage("Error reading GTP file: "
-                                           + e.getMessage());
+                    summary = futures.get(i).get();
                 }
-                catch (GtpError e)
+                catch (ExecutionException e)
                 {
-                    throw new ErrorMessage("GTP command '" + e.getCommand()
-                                           + "' from file " + m_gtpFile
-                                           + " failed: " + e.getMessage());
+                    m_aborted = true;
+                    System.out.print(buffers.get(i).toString());
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception)
+                        throw (Exception)cause;
+                    throw (Error)cause;
                 }
+                System.out.print(buffers.get(i).toString());
+                addResult(runs.get(i), summary);
             }
-            printOutSeparator();
         }
         finally
         {
-            try
-            {
-                in.close();
-            }
-            catch (IOException e)
-            {
-            }
+            m_aborted = true;
+            executor.shutdown();
         }
     }
 
@@ -861,13 +1322,13 @@ public class Regress
         return string.substring(0, maxLength).trim() + "...";
     }
 
-    private void writeInfo(PrintStream out, boolean withName)
+    private void writeInfo(PrintStream out, String name, String version)
     {
         String host = Platform.getHostInfo();
-        if (withName)
-            out.print("<tr><th align=\"left\">Name:</th><td>" + m_name
+        if (name != null)
+            out.print("<tr><th align=\"left\">Name:</th><td>" + name
                       + "</td></tr>\n" +
-                      "<tr><th align=\"left\">Version:</th><td>" + m_version
+                      "<tr><th align=\"left\">Version:</th><td>" + version
                       + "</td></tr>\n");
         out.print("<tr><th align=\"left\">Date:</th><td>"
                   + StringUtil.getDate()
@@ -928,7 +1389,7 @@ public class Regress
                   "</table>\n" +
                   "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
                   + "\">\n");
-        writeInfo(out, true);
+        writeInfo(out, m_name, m_version);
         out.print("</table>\n" +
                   "<table width=\"100%\" border=\"0\" cellpadding=\"0\""
                   + "cellspacing=\"1\">\n" +
@@ -962,6 +1423,11 @@ public class Regress
             writeSummaryRow(out, summary, true, false);
         }
         writeSummaryRow(out, getTotalSummary(), true, true);
+        out.print("</table>\n");
+        writeTimeHeader(out, true);
+        for (int i = 0; i < m_testSummaries.size(); ++i)
+            writeTimeRow(out, m_testSummaries.get(i), true, false);
+        writeTimeRow(out, getTotalSummary(), true, true);
         out.print("</table>\n" +
                   HtmlUtil.getFooter("gogui-regress") +
                   "</body>\n" +
@@ -969,8 +1435,11 @@ public class Regress
         out.close();
     }
 
-    private void writeSummaryRow(PrintStream out, TestSummary summary,
-                                 boolean withFileName, boolean foot)
+    /** Write the start of a summary row.
+        Writes the start of the row and the cell with the file name, if
+        needed. */
+    private void writeRowStart(PrintStream out, TestSummary summary,
+                               boolean withFileName, boolean foot)
     {
         File file = summary.m_file;
         if (foot)
@@ -990,6 +1459,12 @@ public class Regress
                 out.print("<td><a href=\"" + summary.m_outName + ".html" +
                           "\">" + file + "</a></td>");
         }
+    }
+
+    private void writeSummaryRow(PrintStream out, TestSummary summary,
+                                 boolean withFileName, boolean foot)
+    {
+        writeRowStart(out, summary, withFileName, foot);
         double time = ((double)summary.m_timeMillis) / 1000F;
         String colorAttrUnexpectedFails = "";
         if (summary.m_unexpectedFails > 0)
@@ -1017,136 +1492,61 @@ public class Regress
             out.print("</tfoot>\n");
     }
 
-    private void writeTestSummary(TestSummary summary)
-        throws FileNotFoundException
+    /** Write the header of the table with the percentiles of the test
+        times.
+        The table contains the times of the numbered tests as returned by
+        Test.getTime() and, if a time history is used, the number of tests
+        that are slower or faster than in previous runs. */
+    private void writeTimeHeader(PrintStream out, boolean withFileName)
     {
-        if (m_longOutput)
-        {
-            // Output compatible with eval.sh in GNU Go
-            System.out.println("Summary: " + summary.getNumberPasses()
-                               + "/" + summary.m_numberTests + " passes. "
-                               + summary.m_unexpectedPasses
-                               + " unexpected passes, "
-                               + summary.m_unexpectedFails
-                               + " unexpected failures");
-        }
-        File file = new File(m_prefix + m_outName + ".html");
-        PrintStream out = new PrintStream(file);
-        out.print("<html>\n" +
-                  "<head>\n" +
-                  "<title>Summary: " + m_testFile + "</title>\n" +
-                  HtmlUtil.getMeta("gogui-regress") +
-                  "<style type=\"text/css\">\n" +
-                  "<!--\n" +
-                  "body { margin:0; }\n" +
-                  "-->\n" +
-                  "</style>\n" +
-                  "</head>\n" +
-                  "<body bgcolor=\"white\" text=\"black\" link=\"blue\""
-                  + " vlink=\"purple\" alink=\"red\">\n" +
-                  "<table border=\"0\" width=\"100%\" bgcolor=\""
-                  + COLOR_HEADER + "\">\n" +
-                  "<tr><td>\n" +
-                  "<h1>Summary: " + m_testFile + "</h1>\n" +
-                  "</td></tr>\n" +
-                  "</table>\n" +
-                  "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
-                  + "\">\n");
-        writeInfo(out, true);
-        out.print("<tr><th align=\"left\">Output:</th><td><a href=\""
-                  + m_outFileRelativeName + "\">"
-                  + m_outFileRelativeName + "</a></td></tr>\n" +
-                  "</table>\n" +
-                  "<table width=\"100%\" border=\"0\" cellpadding=\"0\""
+        out.print("<table width=\"100%\" border=\"0\" cellpadding=\"0\""
                   + " cellspacing=\"1\">\n" +
-                  "<colgroup>\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "<col width=\"12%\">\n" +
-                  "</colgroup>\n" +
                   "<thead align=\"center\">\n" +
-                  "<tr bgcolor=\"" + COLOR_HEADER + "\">\n" +
-                  "<th>Tests</th>\n" +
-                  "<th>FAIL</th>\n" +
-                  "<th>fail</th>\n" +
-                  "<th>PASS</th>\n" +
-                  "<th>pass</th>\n" +
-                  "<th>Error</th>\n" +
-                  "<th>Time</th>\n" +
-                  "<th>CpuTime</th>\n" +
-                  "</tr>\n" +
-                  "</thead>\n");
-        writeSummaryRow(out, summary, false, false);
-        out.print("</table>\n" +
-                  "<table width=\"100%\" border=\"0\" cellpadding=\"0\""
-                  + " cellspacing=\"1\">\n" +
-                  "<thead>\n" +
-                  "<tr bgcolor=\"" + COLOR_HEADER + "\">\n" +
-                  "<th>ID</th>\n" +
-                  "<th>Status</th>\n" +
-                  "<th>Command</th>\n" +
-                  "<th>Output</th>\n" +
-                  "<th>Required</th>\n" +
-                  "<th>Last SGF</th>\n" +
-                  "</tr>\n" +
+                  "<tr bgcolor=\"" + COLOR_HEADER + "\">\n");
+        if (withFileName)
+            out.print("<th>File</th>\n");
+        out.print("<th>Test&nbsp;Time&nbsp;50%</th>\n" +
+                  "<th>Test&nbsp;Time&nbsp;90%</th>\n" +
+                  "<th>Test&nbsp;Time&nbsp;99%</th>\n" +
+                  "<th>Test&nbsp;Time&nbsp;Max</th>\n");
+        if (m_history != null)
+            out.print("<th>Slower</th>\n" +
+                      "<th>Faster</th>\n");
+        out.print("</tr>\n" +
                   "</thead>\n");
-        for (int i = 0; i < m_tests.size(); ++i)
+    }
+
+    private void writeTimeRow(PrintStream out, TestSummary summary,
+                              boolean withFileName, boolean foot)
+    {
+        writeRowStart(out, summary, withFileName, foot);
+        double[] times = new double[summary.m_testTimes.size()];
+        for (int i = 0; i < times.length; ++i)
+            times[i] = summary.m_testTimes.get(i);
+        Arrays.sort(times);
+        out.print("<td>" + formatSeconds(getPercentile(times, 0.5))
+                  + "</td>\n" +
+                  "<td>" + formatSeconds(getPercentile(times, 0.9))
+                  + "</td>\n" +
+                  "<td>" + formatSeconds(getPercentile(times, 0.99))
+                  + "</td>\n" +
+                  "<td>" + formatSeconds(getPercentile(times, 1))
+                  + "</td>\n");
+        if (m_history != null)
         {
-            Test t = m_tests.get(i);
-            String rowBackground = COLOR_BG_LIGHT;
-            String statusColor = rowBackground;
-            String status = null;
-            if (t.m_fail && t.m_expectedFail)
-            {
-                status = "fail";
-            }
-            else if (t.m_fail && ! t.m_expectedFail)
-            {
-                statusColor = COLOR_RED;
-                status = "FAIL";
-            }
-            else if (! t.m_fail && t.m_expectedFail)
-            {
-                statusColor = COLOR_GREEN;
-                status = "PASS";
-            }
-            else if (! t.m_fail && ! t.m_expectedFail)
-            {
-                status = "pass";
-            }
-            else
-                assert false;
-            String lastSgf = "";
-            if (t.m_lastSgf != null)
-            {
-                lastSgf = "<a href=\"" + m_relativePath + t.m_lastSgf + "\">"
-                    + t.m_lastSgf + "</a>";
-                if (t.m_lastSgfMove != -1)
-                    lastSgf += "&nbsp;" + t.m_lastSgfMove;
-            }
-            String command = t.m_command.replaceAll(" ", "&nbsp;");
-            out.print("<tr bgcolor=\"" + rowBackground + "\">\n" +
-                      "<td align=\"right\"><a href=\"" + m_outFileRelativeName
-                      + "#" + t.m_id + "\">" + t.m_id + "</a></td>\n" +
-                      "<td align=\"center\" bgcolor=\"" + statusColor
-                      + "\">" + status + "</td>\n" +
-                      "<td>" + command + "</td>\n" +
-                      "<td align=\"center\">" + truncate(t.m_response)
+            String colorAttrSlower = "";
+            if (summary.m_slower > 0)
+                colorAttrSlower = " bgcolor=\"" + COLOR_RED + "\"";
+            String colorAttrFaster = "";
+            if (summary.m_faster > 0)
+                colorAttrFaster = " bgcolor=\"" + COLOR_GREEN + "\"";
+            out.print("<td" + colorAttrSlower + ">" + summary.m_slower
                       + "</td>\n" +
-                      "<td align=\"center\">" + truncate(t.m_required)
-                      + "</td>\n" +
-                      "<td>" + lastSgf + "</td>\n" +
-                      "</tr>\n");
+                      "<td" + colorAttrFaster + ">" + summary.m_faster
+                      + "</td>\n");
         }
-        out.print("</table>\n" +
-                  HtmlUtil.getFooter("gogui-regress") +
-                  "</body>\n" +
-                  "</html>\n");
-        out.close();
+        out.print("</tr>\n");
+        if (foot)
+            out.print("</tfoot>\n");
     }
 }
@@ -0,0 +1,165 @@
+// TimeHistory.java
+
+package net.sf.gogui.tools.regress;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.util.Table;
+
+/** Times of numbered tests in previous runs.
+    The history is stored in a table file with one row per test, containing
+    the test file, the test ID and the times of the test in the last
+    NUMBER_RUNS runs, most recent first. Tests of the history file that are
+    not run are kept unchanged, so that the same file can be used for
+    different test suites.
+    The times of the previous runs are not modified by add(), so that
+    getMedian() can be used by several threads while the tests run. */
+class TimeHistory
+{
+    /** Maximum number of runs stored per test. */
+    public static final int NUMBER_RUNS = 10;
+
+    /** Constructor.
+        @param file The history file. Read if it exists. */
+    public TimeHistory(File file) throws ErrorMessage
+    {
+        m_file = file;
+        if (! file.exists())
+            return;
+        Table table = new Table();
+        try
+        {
+            table.read(file);
+            int columnFile = table.getColumnIndex("FILE");
+            int columnId = table.getColumnIndex("ID");
+            for (int row = 0; row < table.getNumberRows(); ++row)
+            {
+                ArrayList<Double> times = new ArrayList<Double>();
+                for (int i = 1; i <= NUMBER_RUNS; ++i)
+                {
+                    String value = table.get("T" + i, row);
+                    if (StringUtil.isEmpty(value))
+                        break;
+                    times.add(Double.valueOf(value));
+                }
+                double[] array = new double[times.size()];
+                for (int i = 0; i < array.length; ++i)
+                    array[i] = times.get(i);
+                m_times.put(getKey(table.get(columnFile, row),
+                                   table.getInt(columnId, row)), array);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not read " + file + ": "
+                                   + e.getMessage());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Invalid time in " + file);
+        }
+        catch (Table.InvalidFormat e)
+        {
+            throw new ErrorMessage("Invalid history file " + file + ": "
+                                   + e.getMessage());
+        }
+        catch (Table.InvalidLocation e)
+        {
+            throw new ErrorMessage("Invalid history file " + file + ": "
+                                   + e.getMessage());
+        }
+        catch (Table.InvalidElement e)
+        {
+            throw new ErrorMessage("Invalid history file " + file + ": "
+                                   + e.getMessage());
+        }
+    }
+
+    /** Add the time of a test in the current run. */
+    public void add(String file, int id, double time)
+    {
+        m_current.put(getKey(file, id), time);
+    }
+
+    /** Get the median time of a test in the previous runs.
+        @return The median or Double.NaN, if the test has no times. */
+    public double getMedian(String file, int id)
+    {
+        double[] times = m_times.get(getKey(file, id));
+        if (times == null || times.length == 0)
+            return Double.NaN;
+        times = times.clone();
+        Arrays.sort(times);
+        int n = times.length;
+        if (n % 2 == 1)
+            return times[n / 2];
+        return (times[n / 2 - 1] + times[n / 2]) / 2;
+    }
+
+    /** Write the history file with the times of the current run. */
+    public void save() throws ErrorMessage
+    {
+        ArrayList<String> columns = new ArrayList<String>();
+        columns.add("FILE");
+        columns.add("ID");
+        for (int i = 1; i <= NUMBER_RUNS; ++i)
+            columns.add("T" + i);
+        Table table = new Table(columns);
+        table.setProperty("Description", "gogui-regress test times");
+        LinkedHashMap<String,double[]> times =
+            new LinkedHashMap<String,double[]>(m_times);
+        for (Map.Entry<String,Double> entry : m_current.entrySet())
+        {
+            double[] previous = times.get(entry.getKey());
+            int n = (previous == null ? 0 : previous.length);
+            double[] array = new double[Math.min(n + 1, NUMBER_RUNS)];
+            array[0] = entry.getValue();
+            for (int i = 1; i < array.length; ++i)
+                array[i] = previous[i - 1];
+            times.put(entry.getKey(), array);
+        }
+        NumberFormat format = StringUtil.getNumberFormat(3);
+        for (Map.Entry<String,double[]> entry : times.entrySet())
+        {
+            String key = entry.getKey();
+            int index = key.lastIndexOf(' ');
+            table.startRow();
+            table.set(0, key.substring(0, index));
+            table.set(1, key.substring(index + 1));
+            double[] array = entry.getValue();
+            for (int i = 0; i < array.length; ++i)
+                table.set(2 + i, format.format(array[i]));
+        }
+        try
+        {
+            table.save(m_file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write " + m_file + ": "
+                                   + e.getMessage());
+        }
+    }
+
+    private final File m_file;
+
+    /** Times of the current run. */
+    private final LinkedHashMap<String,Double> m_current =
+        new LinkedHashMap<String,Double>();
+
+    /** Times of previous runs, most recent first. */
+    private final LinkedHashMap<String,double[]> m_times =
+        new LinkedHashMap<String,double[]>();
+
+    private static String getKey(String file, int id)
+    {
+        return file + " " + id;
+    }
+}
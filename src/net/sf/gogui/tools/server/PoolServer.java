@@ -0,0 +1,608 @@
+// PoolServer.java
+
+package net.sf.gogui.tools.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpUtil;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.ProcessUtil;
+import net.sf.gogui.util.StringUtil;
+
+/** Connects many clients to a pool of Go programs.
+    The Go programs are started in advance. Each client gets a program from
+    the pool for the duration of its connection and waits, if all programs
+    are in use. All client connections are handled by a single thread with
+    a selector; each program has a thread reading its output and a thread
+    writing its input.
+    Commands are forwarded line by line, such that the server knows the
+    number of responses that are still expected from a program. The quit
+    command is answered by the server without forwarding it. After a client
+    disconnected, the responses to the commands already sent to its program
+    are discarded and the program is reset with clear_board and returned to
+    the pool. Other settings of the program (like board size and komi) are
+    not reset. A program that terminates is replaced by a new instance. */
+public final class PoolServer
+{
+    /** Constructor.
+        Runs the server until an error occurs.
+        @param verbose Log connections and everything sent and received to
+        stderr
+        @param program Command line for Go program
+        @param port Port for incoming connections
+        @param poolSize Number of instances of the Go program
+        @param timeout Timeout in seconds for closing idle connections, zero
+        for no timeout. */
+    public PoolServer(boolean verbose, String program, int port,
+                      int poolSize, int timeout)
+        throws IOException, ErrorMessage
+    {
+        m_verbose = verbose;
+        m_program = program;
+        m_timeout = timeout;
+        m_selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        try
+        {
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+            for (int i = 0; i < poolSize; ++i)
+                m_idleEngines.add(new Engine());
+            run(serverChannel);
+        }
+        finally
+        {
+            serverChannel.close();
+            m_selector.close();
+        }
+    }
+
+    /** Connection to a client. */
+    private static class Client
+    {
+        public Client(SocketChannel channel, SelectionKey key)
+        {
+            m_channel = channel;
+            m_key = key;
+            m_name = channel.socket().getInetAddress() + ":"
+                + channel.socket().getPort();
+        }
+
+        public boolean m_isClosed;
+
+        /** Close the connection after the output was written. */
+        public boolean m_closeAfterWrite;
+
+        /** Set after a quit command.
+            The response is sent after all responses of the program. */
+        public boolean m_isQuitting;
+
+        public long m_lastActivity;
+
+        /** Output that is not yet written. */
+        public final ArrayDeque<ByteBuffer> m_output =
+            new ArrayDeque<ByteBuffer>();
+
+        /** Incomplete last line of the input. */
+        public final ByteArrayOutputStream m_line =
+            new ByteArrayOutputStream();
+
+        /** Program used by the client or null, if waiting for a program. */
+        public Engine m_engine;
+
+        public final SelectionKey m_key;
+
+        public final SocketChannel m_channel;
+
+        public final String m_name;
+
+        /** ID of the quit command, empty if it had no ID. */
+        public String m_quitId;
+    }
+
+    /** Instance of the Go program. */
+    private class Engine
+    {
+        public Engine() throws IOException
+        {
+            m_number = ++m_lastEngineNumber;
+            ++m_numberEngines;
+            String[] cmdArray = StringUtil.splitArguments(m_program);
+            m_process = Runtime.getRuntime().exec(cmdArray);
+            new ProcessUtil.StdErrThread(m_process).start();
+            Thread reader = new Thread()
+                {
+                    public void run()
+                    {
+                        readOutput();
+                    }
+                };
+            Thread writer = new Thread()
+                {
+                    public void run()
+                    {
+                        writeInput();
+                    }
+                };
+            reader.start();
+            writer.start();
+        }
+
+        /** Set if the program has sent a response since it was started. */
+        public boolean m_hasResponded;
+
+        /** Set while the program is reset after a client disconnected. */
+        public boolean m_isResetting;
+
+        /** Set if clear_board was sent during a reset. */
+        public boolean m_isClearSent;
+
+        /** Number of commands without a response yet. */
+        public int m_pendingResponses;
+
+        public final int m_number;
+
+        /** Client using the program or null. */
+        public Client m_client;
+
+        /** Count the ends of responses in the output of the program.
+            A response ends with an empty line. */
+        public int countResponses(byte[] data)
+        {
+            int result = 0;
+            for (int i = 0; i < data.length; ++i)
+            {
+                byte b = data[i];
+                if (b == '\n')
+                {
+                    if (! m_isLineEmpty)
+                        m_isInResponse = true;
+                    else if (m_isInResponse)
+                    {
+                        m_isInResponse = false;
+                        ++result;
+                    }
+                    m_isLineEmpty = true;
+                }
+                else if (b != '\r')
+                    m_isLineEmpty = false;
+            }
+            if (result > 0)
+                m_hasResponded = true;
+            return result;
+        }
+
+        public void destroy()
+        {
+            m_input.add(new byte[0]);
+            m_process.destroy();
+        }
+
+        /** Send a line to the program. */
+        public void send(String line)
+        {
+            ++m_pendingResponses;
+            m_input.add((line + "\n").getBytes());
+        }
+
+        private boolean m_isInResponse;
+
+        private boolean m_isLineEmpty = true;
+
+        /** Lines to write to the input of the program.
+            An empty array closes the input. */
+        private final LinkedBlockingQueue<byte[]> m_input =
+            new LinkedBlockingQueue<byte[]>();
+
+        private final Process m_process;
+
+        private void readOutput()
+        {
+            InputStream in = m_process.getInputStream();
+            byte buffer[] = new byte[BUFFER_SIZE];
+            try
+            {
+                while (true)
+                {
+                    int n = in.read(buffer);
+                    if (n < 0)
+                        break;
+                    byte[] data = new byte[n];
+                    System.arraycopy(buffer, 0, data, 0, n);
+                    postOutput(this, data);
+                }
+            }
+            catch (IOException e)
+            {
+            }
+            postOutput(this, null);
+        }
+
+        private void writeInput()
+        {
+            OutputStream out = m_process.getOutputStream();
+            try
+            {
+                while (true)
+                {
+                    byte[] data = m_input.take();
+                    if (data.length == 0)
+                        break;
+                    out.write(data);
+                    out.flush();
+                }
+            }
+            catch (InterruptedException e)
+            {
+            }
+            catch (IOException e)
+            {
+                // Program died, handled by readOutput()
+            }
+            finally
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                }
+            }
+        }
+    }
+
+    /** Output of a program passed to the selector thread. */
+    private static class Output
+    {
+        public Output(Engine engine, byte[] data)
+        {
+            m_engine = engine;
+            m_data = data;
+        }
+
+        public final Engine m_engine;
+
+        /** The output or null, if the program terminated. */
+        public final byte[] m_data;
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean m_verbose;
+
+    private int m_lastEngineNumber;
+
+    private int m_numberEngines;
+
+    private final int m_timeout;
+
+    private final ArrayDeque<Client> m_waitingClients =
+        new ArrayDeque<Client>();
+
+    private final ArrayDeque<Engine> m_idleEngines = new ArrayDeque<Engine>();
+
+    private final ArrayList<Client> m_clients = new ArrayList<Client>();
+
+    private final ByteBuffer m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final ConcurrentLinkedQueue<Output> m_outputs =
+        new ConcurrentLinkedQueue<Output>();
+
+    private final Selector m_selector;
+
+    private final String m_program;
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException
+    {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(m_selector, 0);
+        Client client = new Client(channel, key);
+        key.attach(client);
+        m_clients.add(client);
+        m_waitingClients.add(client);
+        log("Connected with " + client.m_name);
+        assignEngines();
+    }
+
+    /** Assign idle programs to waiting clients. */
+    private void assignEngines()
+    {
+        while (! m_idleEngines.isEmpty() && ! m_waitingClients.isEmpty())
+        {
+            Engine engine = m_idleEngines.poll();
+            Client client = m_waitingClients.poll();
+            engine.m_client = client;
+            client.m_engine = engine;
+            client.m_lastActivity = System.currentTimeMillis();
+            updateInterest(client);
+            log(client.m_name + " uses program " + engine.m_number);
+        }
+        if (! m_waitingClients.isEmpty())
+            log(m_waitingClients.size() + " clients waiting for a program");
+    }
+
+    /** Send the response to a quit command, if all responses of the
+        program were received. */
+    private void checkQuit(Client client)
+    {
+        Engine engine = client.m_engine;
+        if (! client.m_isQuitting || engine.m_pendingResponses > 0)
+            return;
+        client.m_engine = null;
+        releaseEngine(engine);
+        client.m_closeAfterWrite = true;
+        write(client, ("=" + client.m_quitId + "\n\n").getBytes());
+    }
+
+    private void closeClient(Client client)
+    {
+        if (client.m_isClosed)
+            return;
+        client.m_isClosed = true;
+        client.m_key.cancel();
+        try
+        {
+            client.m_channel.close();
+        }
+        catch (IOException e)
+        {
+        }
+        m_clients.remove(client);
+        m_waitingClients.remove(client);
+        log("Connection with " + client.m_name + " closed");
+        Engine engine = client.m_engine;
+        if (engine != null)
+        {
+            client.m_engine = null;
+            releaseEngine(engine);
+        }
+    }
+
+    private void closeIdleClients()
+    {
+        long now = System.currentTimeMillis();
+        for (Client client : new ArrayList<Client>(m_clients))
+            if (client.m_engine != null
+                && now - client.m_lastActivity > 1000L * m_timeout)
+            {
+                log("Timeout for " + client.m_name);
+                closeClient(client);
+            }
+    }
+
+    /** Continue the reset of a program after all pending responses were
+        received. */
+    private void continueReset(Engine engine)
+    {
+        if (! engine.m_isClearSent)
+        {
+            engine.m_isClearSent = true;
+            engine.send("clear_board");
+            return;
+        }
+        engine.m_isResetting = false;
+        m_idleEngines.add(engine);
+        assignEngines();
+    }
+
+    private void handleCommand(Client client, String line)
+    {
+        if (m_verbose)
+            System.err.println(line);
+        if (! GtpUtil.isCommand(line))
+            return;
+        GtpCommand command = new GtpCommand(line);
+        if (command.getCommand().equals("quit"))
+        {
+            client.m_isQuitting = true;
+            client.m_quitId =
+                (command.hasId() ? Integer.toString(command.getId()) : "");
+            updateInterest(client);
+            checkQuit(client);
+            return;
+        }
+        client.m_engine.send(line);
+    }
+
+    private void handleOutput(Engine engine, byte[] data)
+        throws IOException, ErrorMessage
+    {
+        if (data == null)
+        {
+            handleTerminated(engine);
+            return;
+        }
+        if (m_verbose)
+            System.err.write(data, 0, data.length);
+        engine.m_pendingResponses =
+            Math.max(engine.m_pendingResponses
+                     - engine.countResponses(data), 0);
+        Client client = engine.m_client;
+        if (client != null)
+        {
+            write(client, data);
+            if (client.m_engine == engine)
+                checkQuit(client);
+        }
+        else if (engine.m_isResetting && engine.m_pendingResponses == 0)
+            continueReset(engine);
+    }
+
+    private void handleTerminated(Engine engine)
+        throws IOException, ErrorMessage
+    {
+        log("Program " + engine.m_number + " terminated");
+        engine.destroy();
+        m_idleEngines.remove(engine);
+        Client client = engine.m_client;
+        if (client != null)
+        {
+            engine.m_client = null;
+            client.m_engine = null;
+            closeClient(client);
+        }
+        --m_numberEngines;
+        if (! engine.m_hasResponded)
+        {
+            // Don't restart programs that fail at startup
+            if (m_numberEngines == 0)
+                throw new ErrorMessage("Go program terminated");
+            return;
+        }
+        m_idleEngines.add(new Engine());
+        assignEngines();
+    }
+
+    private void log(String message)
+    {
+        if (m_verbose)
+            System.err.println("gogui-server: " + message);
+    }
+
+    /** Called by the threads reading the output of the programs. */
+    private void postOutput(Engine engine, byte[] data)
+    {
+        m_outputs.add(new Output(engine, data));
+        m_selector.wakeup();
+    }
+
+    private void readClient(Client client)
+    {
+        m_buffer.clear();
+        int n;
+        try
+        {
+            n = client.m_channel.read(m_buffer);
+        }
+        catch (IOException e)
+        {
+            n = -1;
+        }
+        if (n < 0)
+        {
+            closeClient(client);
+            return;
+        }
+        client.m_lastActivity = System.currentTimeMillis();
+        m_buffer.flip();
+        while (m_buffer.hasRemaining() && ! client.m_isQuitting)
+        {
+            byte b = m_buffer.get();
+            if (b != '\n')
+            {
+                client.m_line.write(b);
+                continue;
+            }
+            String line = client.m_line.toString();
+            client.m_line.reset();
+            handleCommand(client, line);
+        }
+    }
+
+    /** Return a program to the pool after its client disconnected. */
+    private void releaseEngine(Engine engine)
+    {
+        engine.m_client = null;
+        engine.m_isResetting = true;
+        engine.m_isClearSent = false;
+        if (engine.m_pendingResponses == 0)
+            continueReset(engine);
+    }
+
+    private void run(ServerSocketChannel serverChannel)
+        throws IOException, ErrorMessage
+    {
+        log("Waiting for connections...");
+        while (true)
+        {
+            m_selector.select(m_timeout > 0 ? 1000 : 0);
+            Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+            while (it.hasNext())
+            {
+                SelectionKey key = it.next();
+                it.remove();
+                if (! key.isValid())
+                    continue;
+                if (key.isAcceptable())
+                {
+                    accept(serverChannel);
+                    continue;
+                }
+                Client client = (Client)key.attachment();
+                if (key.isReadable())
+                    readClient(client);
+                if (key.isValid() && key.isWritable())
+                    writeClient(client);
+            }
+            Output output;
+            while ((output = m_outputs.poll()) != null)
+                handleOutput(output.m_engine, output.m_data);
+            if (m_timeout > 0)
+                closeIdleClients();
+        }
+    }
+
+    private void updateInterest(Client client)
+    {
+        if (client.m_isClosed)
+            return;
+        int ops = 0;
+        if (client.m_engine != null && ! client.m_isQuitting)
+            ops |= SelectionKey.OP_READ;
+        if (! client.m_output.isEmpty())
+            ops |= SelectionKey.OP_WRITE;
+        client.m_key.interestOps(ops);
+    }
+
+    private void write(Client client, byte[] data)
+    {
+        if (client.m_isClosed)
+            return;
+        client.m_output.add(ByteBuffer.wrap(data));
+        writeClient(client);
+    }
+
+    /** Write as much of the pending output as possible without blocking. */
+    private void writeClient(Client client)
+    {
+        try
+        {
+            while (! client.m_output.isEmpty())
+            {
+                ByteBuffer buffer = client.m_output.peek();
+                client.m_channel.write(buffer);
+                if (buffer.hasRemaining())
+                    break;
+                client.m_output.poll();
+            }
+        }
+        catch (IOException e)
+        {
+            closeClient(client);
+            return;
+        }
+        if (client.m_output.isEmpty() && client.m_closeAfterWrite)
+            closeClient(client);
+        else
+            updateInterest(client);
+    }
+}
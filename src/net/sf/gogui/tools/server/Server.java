@@ -88,6 +88,7 @@ public final class Server
                 "config:",
                 "help",
                 "loop",
+                "pool:",
                 "port:",
                 "remote:",
                 "timeout:",
@@ -103,6 +104,11 @@ public final class Server
                 System.err.println("Option -loop can't be used with -remote");
                 System.exit(1);
             }
+            if (opt.contains("pool") && opt.contains("remote"))
+            {
+                System.err.println("Option -pool can't be used with -remote");
+                System.exit(1);
+            }
             if (opt.contains("help"))
             {
                 printUsage(System.out);
@@ -134,6 +140,12 @@ public final class Server
                 System.exit(1);
             }
             String program = arguments.get(0);
+            if (opt.contains("pool"))
+            {
+                int poolSize = opt.getInteger("pool", 1, 1);
+                new PoolServer(verbose, program, port, poolSize, timeout);
+                return;
+            }
             new Server(verbose, loop, program, remoteHost, port, userFile,
                        timeout);
         }
@@ -182,6 +194,7 @@ public final class Server
                   "-config  config file\n" +
                   "-help    display this help and exit\n" +
                   "-loop    restart after connection finished\n" +
+                  "-pool    number of programs for concurrent clients\n" +
                   "-port    port of network connection\n" +
                   "-remote  connect to remote host\n" +
                   "-timeout timeout seconds for closing idle connections\n" +
@@ -183,6 +183,10 @@ public class Analyze
         }
     }
 
+    /** Information about a game.
+        The rows of a game in the table are consecutive (Statistics writes
+        the positions of a game one after the other), so they can be found
+        without searching the table. */
     private static class GameData
     {
         public String m_file;
@@ -191,6 +195,9 @@ public class Analyze
 
         public int m_finalPosition;
 
+        /** Index of first row in the table. */
+        public int m_firstRow;
+
         public int m_numberPositions;
     }
 
@@ -210,7 +217,8 @@ public class Analyze
 
     private final Table m_table;
 
-    private Table m_tableFinal;
+    /** Indicates the rows of the final positions of the games. */
+    private boolean[] m_isFinalRow;
 
     private final ArrayList<CommandStatistics> m_commandStatistics;
 
@@ -233,24 +241,27 @@ public class Analyze
         for (int i = 0; i < m_commands.size(); ++i)
         {
             String command = getCommand(i);
+            int column = m_table.getColumnIndex(command);
             boolean isGameGlobal = true;
             ArrayList<String> gameResult = new ArrayList<String>();
-            for (int j = 0; j < m_gameData.size(); ++j)
+            for (int j = 0; j < m_gameData.size() && isGameGlobal; ++j)
             {
                 GameData data = m_gameData.get(j);
-                Table table = TableUtil.select(m_table, "File", data.m_file,
-                                               command);
-                ArrayList<String> notEmpty
-                    = TableUtil.getColumnNotEmpty(table, command);
-                if (notEmpty.size() > 1)
+                String result = null;
+                int end = data.m_firstRow + data.m_numberPositions;
+                for (int row = data.m_firstRow; row < end; ++row)
                 {
-                    isGameGlobal = false;
-                    break;
+                    String value = m_table.get(column, row);
+                    if (StringUtil.isEmpty(value))
+                        continue;
+                    if (result != null)
+                    {
+                        isGameGlobal = false;
+                        break;
+                    }
+                    result = value;
                 }
-                else if (notEmpty.size() == 1)
-                    gameResult.add(notEmpty.get(0));
-                else
-                    gameResult.add("");
+                gameResult.add(result == null ? "" : result);
             }
             if (isGameGlobal)
             {
@@ -349,7 +360,7 @@ public class Analyze
         throws Exception
     {
         String command = getCommand(index);
-        return new CommandStatistics(command, m_table, m_tableFinal,
+        return new CommandStatistics(command, m_table, m_isFinalRow,
                                      getHistoFile(index),
                                      getHistoFinalFile(index),
                                      getColor(command), m_precision);
@@ -367,11 +378,14 @@ public class Analyze
     }
 
     private void generatePlot(int commandIndex, DecimalFormat format,
-                              int gameIndex, String gameFile) throws Exception
+                              int gameIndex) throws Exception
     {
         String command = getCommand(commandIndex);
-        Table table = TableUtil.select(m_table, "File", gameFile,
-                                       "Move", command);
+        GameData data = m_gameData.get(gameIndex);
+        Table table = TableUtil.selectRows(m_table, data.m_firstRow,
+                                           data.m_firstRow
+                                           + data.m_numberPositions,
+                                           "Move", command);
         File file = getPlotFile(gameIndex, commandIndex);
         Plot plot = generatePlotMove(getImgWidth(m_maxMove),
                                      getColor(command));
@@ -427,6 +441,7 @@ public class Analyze
                 if (data != null)
                     m_gameData.add(data);
                 data = new GameData();
+                data.m_firstRow = row;
                 data.m_file = file;
                 data.m_name = new File(file).getName();
             }
@@ -443,15 +458,12 @@ public class Analyze
             m_movePrintInterval *= 2;
         }
         m_gameData.add(data);
-        m_tableFinal = new Table(m_table.getColumnTitles());
+        m_isFinalRow = new boolean[m_table.getNumberRows()];
         for (int i = 0; i < m_gameData.size(); ++i)
         {
             data = m_gameData.get(i);
-            String file = data.m_file;
-            String finalPosition = Integer.toString(data.m_finalPosition);
-            int row = TableUtil.findRow(m_table, "File", file, "Move",
-                                        finalPosition);
-            TableUtil.appendRow(m_tableFinal, m_table, row);
+            m_isFinalRow[data.m_firstRow + data.m_numberPositions - 1]
+                = true;
         }
         ArrayList<String> columnTitles = new ArrayList<String>();
         columnTitles.add("Move");
@@ -690,7 +702,7 @@ public class Analyze
             if (commandStatistics.getCount() > 0
                 && ! commandStatistics.m_isBeginCommand)
             {
-                generatePlot(i, commandStatistics.m_format, gameNumber, game);
+                generatePlot(i, commandStatistics.m_format, gameNumber);
                 out.print("<tr><td align=\"center\">" + getCommandLink(i)
                           + "<br><img src=\""
                           + getPlotFile(gameNumber, i).getName()
@@ -699,13 +711,18 @@ public class Analyze
         }
         out.print("</table>\n" +
                   "<hr>\n");
-        Table table = TableUtil.select(m_table, "File", game);
+        GameData data = m_gameData.get(gameNumber);
+        Table table = TableUtil.selectRows(m_table, data.m_firstRow,
+                                           data.m_firstRow
+                                           + data.m_numberPositions);
         out.print("<table class=\"smalltable\">\n" +
                   "<thead><tr>");
+        boolean[] allEmpty = new boolean[table.getNumberColumns()];
         for (int i = 1; i < table.getNumberColumns(); ++i)
         {
             String command = table.getColumnTitle(i);
-            if (! TableUtil.allEmpty(table, command))
+            allEmpty[i] = TableUtil.allEmpty(table, command);
+            if (! allEmpty[i])
                 out.print("<th>" + command + "</th>");
         }
         out.print("</tr></thead>\n");
@@ -714,10 +731,9 @@ public class Analyze
             out.print("<tr>");
             for (int j = 1; j < table.getNumberColumns(); ++j)
             {
-                String command = table.getColumnTitle(j);
-                if (TableUtil.allEmpty(table, command))
+                if (allEmpty[j])
                     continue;
-                String value = table.get(command, i);
+                String value = table.get(j, i);
                 if (value == null)
                     value = "";
                 out.print("<td>" + value + "</td>");
@@ -27,32 +27,83 @@ public final class CommandStatistics
 
     public final Table m_tableAtMove;
 
-    public CommandStatistics(String command, Table table, Table tableFinal,
-                             File histoFile, File histoFileFinal,
-                             Color color, int precision)
+    /** Constructor.
+        Computes the statistics for all positions, the final positions and
+        the positions at each move number in a single pass over the table.
+        @param command The command (column title in the table).
+        @param table The table.
+        @param isFinalRow Indicates the rows of the final positions of the
+        games. */
+    public CommandStatistics(String command, Table table,
+                             boolean[] isFinalRow, File histoFile,
+                             File histoFileFinal, Color color, int precision)
         throws Exception
     {
-        m_statisticsAll = new PositionStatistics(command, table, false, 0, 0);
+        PositionStatistics.Values valuesAll = new PositionStatistics.Values();
+        PositionStatistics.Values valuesFinal
+            = new PositionStatistics.Values();
+        ArrayList<PositionStatistics.Values> valuesAtMove
+            = new ArrayList<PositionStatistics.Values>();
+        int column = table.getColumnIndex(command);
+        int moveColumn = table.getColumnIndex("Move");
+        int maxMove = 0;
+        for (int row = 0; row < table.getNumberRows(); ++row)
+        {
+            String value = table.get(column, row);
+            int move;
+            if (value != null)
+                move = PositionStatistics.getMove(table, moveColumn, row);
+            else
+            {
+                try
+                {
+                    move = Integer.parseInt(table.get(moveColumn, row));
+                }
+                catch (NumberFormatException e)
+                {
+                    valuesAll.addNoResult();
+                    continue;
+                }
+            }
+            maxMove = Math.max(maxMove, move);
+            PositionStatistics.Values values = null;
+            if (move >= 1)
+            {
+                while (valuesAtMove.size() < move)
+                    valuesAtMove.add(null);
+                values = valuesAtMove.get(move - 1);
+                if (values == null)
+                {
+                    values = new PositionStatistics.Values();
+                    valuesAtMove.set(move - 1, values);
+                }
+            }
+            PositionStatistics.addValue(value, valuesAll, values,
+                                        isFinalRow[row] ? valuesFinal : null);
+        }
+        m_statisticsAll
+            = new PositionStatistics(command, valuesAll, false, 0, 0);
         double min = m_statisticsAll.getMin();
         double max = m_statisticsAll.getMax();
         m_statisticsFinal
-            = new PositionStatistics(command, tableFinal, true, min, max);
+            = new PositionStatistics(command, valuesFinal, true, min, max);
         m_statisticsAtMove = new ArrayList<PositionStatistics>();
         ArrayList<String> columnTitles = new ArrayList<String>();
         columnTitles.add("Move");
         columnTitles.add("Mean");
         columnTitles.add("Error");
         m_tableAtMove = new Table(columnTitles);
-        Table tableAtMove;
-        m_maxMove = (int)(TableUtil.getMax(table, "Move") + 1);
+        m_maxMove = maxMove + 1;
         boolean isBeginCommand = true;
         for (int move = 1; move <= m_maxMove; ++move)
         {
-            tableAtMove = TableUtil.selectIntRange(table, "Move", move,
-                                                    move);
+            PositionStatistics.Values values = null;
+            if (move <= valuesAtMove.size())
+                values = valuesAtMove.get(move - 1);
+            if (values == null)
+                values = new PositionStatistics.Values();
             PositionStatistics statisticsAtMove
-                = new PositionStatistics(command, tableAtMove, true, min,
-                                         max);
+                = new PositionStatistics(command, values, true, min, max);
             m_statisticsAtMove.add(statisticsAtMove);
             int count = statisticsAtMove.getCount();
             if (count > 0)
@@ -36,6 +36,7 @@ public final class Main
                 "random",
                 "setup",
                 "size:",
+                "threads:",
                 "verbose",
                 "version"
             };
@@ -70,6 +71,7 @@ public final class Main
             int min = opt.getInteger("min", 0, 0);
             int max = opt.getInteger("max", Integer.MAX_VALUE, 0);
             int precision = opt.getInteger("precision", 3, 0);
+            int threads = opt.getInteger("threads", 1, 1);
             int boardSize = opt.getInteger("size", GoPoint.DEFAULT_SIZE, 1,
                                            GoPoint.MAX_SIZE);
             ArrayList<String> commands = parseCommands(opt, "commands");
@@ -107,6 +109,7 @@ public final class Main
                 statistics.setMin(min);
                 statistics.setMax(max);
                 statistics.setQuiet(quiet);
+                statistics.setThreads(threads);
                 statistics.run(program, arguments, boardSize, commands,
                                beginCommands, finalCommands, verbose,
                                allowSetup, backward, random);
@@ -160,6 +163,7 @@ public final class Main
                   "-quiet        Don't write logging messages\n" +
                   "-setup        Allow setup stones in root position\n" +
                   "-size         Board size of games\n" +
+                  "-threads      Number of program instances to run\n" +
                   "-verbose      Log GTP stream to stderr\n" +
                   "-version      Display this help and exit\n");
     }
@@ -23,53 +23,66 @@ public final class PositionStatistics
 
     public final Table m_histoTable;
 
+    /** Values of a command for a set of positions.
+        Used to collect the values for several PositionStatistics in a
+        single pass over a table. */
+    public static final class Values
+    {
+        /** Add a value.
+            @param value The value.
+            @param isInt If the value string was an integer.
+            @param isBool If the value string was 0 or 1. */
+        public void add(double value, boolean isInt, boolean isBool)
+        {
+            if (! isInt)
+                m_onlyIntValues = false;
+            if (! isBool)
+                m_onlyBoolValues = false;
+            if (m_size == m_values.length)
+            {
+                double[] values = new double[2 * m_size];
+                System.arraycopy(m_values, 0, values, 0, m_size);
+                m_values = values;
+            }
+            m_values[m_size++] = value;
+        }
+
+        /** Add a position without a value or with a non-number value. */
+        public void addNoResult()
+        {
+            ++m_numberNoResult;
+        }
+
+        private boolean m_onlyBoolValues = true;
+
+        private boolean m_onlyIntValues = true;
+
+        private int m_numberNoResult;
+
+        private int m_size;
+
+        private double[] m_values = new double[16];
+    }
+
     public PositionStatistics(String command, Table table,
                               boolean noAutoScaleHisto,
                               double histoMin, double histoMax)
         throws Table.InvalidLocation, ErrorMessage
+    {
+        this(command, getValues(command, table), noAutoScaleHisto, histoMin,
+             histoMax);
+    }
+
+    public PositionStatistics(String command, Values values,
+                              boolean noAutoScaleHisto,
+                              double histoMin, double histoMax)
     {
         m_statistics = new Statistics();
-        boolean onlyIntValues = true;
-        int numberNoResult = 0;
-        boolean onlyBoolValues = true;
-        for (int row = 0; row < table.getNumberRows(); ++row)
-        {
-            String value = table.get(command, row);
-            if (value == null)
-            {
-                ++numberNoResult;
-                continue;
-            }
-            if (TableUtil.isNumberValue(value))
-            {
-                if (! TableUtil.isIntValue(value))
-                    onlyIntValues = false;
-                if (! TableUtil.isBoolValue(value))
-                    onlyBoolValues = false;
-            }
-            int move;
-            try
-            {
-                move = Integer.parseInt(table.get("Move", row));
-            }
-            catch (NumberFormatException e)
-            {
-                throw new ErrorMessage("Invalid move in table");
-            }
-            if (move < 0)
-                throw new ErrorMessage("Invalid move in table");
-            try
-            {
-                m_statistics.add(Double.parseDouble(value));
-            }
-            catch (NumberFormatException e)
-            {
-                ++numberNoResult;
-            }
-        }
-        m_onlyBoolValues = onlyBoolValues;
-        m_onlyIntValues = onlyIntValues;
-        m_numberNoResult = numberNoResult;
+        for (int i = 0; i < values.m_size; ++i)
+            m_statistics.add(values.m_values[i]);
+        m_onlyBoolValues = values.m_onlyBoolValues;
+        m_onlyIntValues = values.m_onlyIntValues;
+        m_numberNoResult = values.m_numberNoResult;
         double min = m_statistics.getMin();
         double max = m_statistics.getMax();
         if (! noAutoScaleHisto)
@@ -79,28 +92,56 @@ public final class PositionStatistics
         }
         double diff = histoMax - histoMin;
         int maxBins = 20;
-        if (onlyIntValues)
+        if (m_onlyIntValues)
         {
             int step = Math.max(1, (int)(diff / maxBins + 1));
             m_histogram = new Histogram(histoMin, histoMax, step);
         }
         else
             m_histogram = new Histogram(histoMin, histoMax, diff / maxBins);
-        for (int i = 0; i < table.getNumberRows(); ++i)
+        for (int i = 0; i < values.m_size; ++i)
+            m_histogram.add(values.m_values[i]);
+        m_histoTable = TableUtil.fromHistogram(m_histogram, command);
+    }
+
+    /** Add the value of a table element to the values of sets of positions.
+        Parses the element only once.
+        @param value The table element.
+        @param values1 The first set.
+        @param values2 The second set or null.
+        @param values3 The third set or null. */
+    public static void addValue(String value, Values values1,
+                                Values values2, Values values3)
+    {
+        double doubleValue = 0;
+        boolean isNumber = false;
+        if (value != null)
         {
-            String value = table.get(command, i);
-            if (value == null)
-                continue;
             try
             {
-                m_histogram.add(Double.parseDouble(value));
+                doubleValue = Double.parseDouble(value);
+                isNumber = true;
             }
             catch (NumberFormatException e)
             {
-                continue;
             }
         }
-        m_histoTable = TableUtil.fromHistogram(m_histogram, command);
+        if (! isNumber)
+        {
+            values1.addNoResult();
+            if (values2 != null)
+                values2.addNoResult();
+            if (values3 != null)
+                values3.addNoResult();
+            return;
+        }
+        boolean isInt = TableUtil.isIntValue(value);
+        boolean isBool = TableUtil.isBoolValue(value);
+        values1.add(doubleValue, isInt, isBool);
+        if (values2 != null)
+            values2.add(doubleValue, isInt, isBool);
+        if (values3 != null)
+            values3.add(doubleValue, isInt, isBool);
     }
 
     public int getCount()
@@ -142,4 +183,39 @@ public final class PositionStatistics
     {
         return m_statistics.getSum();
     }
+
+    private static Values getValues(String command, Table table)
+        throws Table.InvalidLocation, ErrorMessage
+    {
+        Values values = new Values();
+        int column = table.getColumnIndex(command);
+        int moveColumn = table.getColumnIndex("Move");
+        for (int row = 0; row < table.getNumberRows(); ++row)
+        {
+            String value = table.get(column, row);
+            if (value != null)
+                getMove(table, moveColumn, row);
+            addValue(value, values, null, null);
+        }
+        return values;
+    }
+
+    /** Get the move number of a row.
+        @throws ErrorMessage If the move number is invalid. */
+    static int getMove(Table table, int moveColumn, int row)
+        throws ErrorMessage
+    {
+        int move;
+        try
+        {
+            move = Integer.parseInt(table.get(moveColumn, row));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Invalid move in table");
+        }
+        if (move < 0)
+            throw new ErrorMessage("Invalid move in table");
+        return move;
+    }
 }
@@ -5,7 +5,6 @@ package net.sf.gogui.tools.statistics;
 import java.io.InputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
@@ -26,7 +25,6 @@ import net.sf.gogui.gtp.GtpClient;
 import net.sf.gogui.gtp.GtpClientBase;
 import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gtp.GtpSynchronizer;
-import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.Platform;
@@ -43,9 +41,12 @@ public class Statistics
                     boolean allowSetup, boolean backward, boolean random)
         throws ErrorMessage, GtpError, IOException
     {
-        run(new GtpClient(program, null, verbose, null), program, sgfFiles,
-            size, commands, beginCommands, finalCommands, allowSetup,
-            backward, random);
+        ArrayList<GtpClientBase> gtp =
+            new ArrayList<GtpClientBase>(m_threads);
+        for (int i = 0; i < m_threads; ++i)
+            gtp.add(new GtpClient(program, null, verbose, null));
+        run(gtp, program, sgfFiles, size, commands, beginCommands,
+            finalCommands, allowSetup, backward, random);
     }
 
     /** Construct with existing GTP engine.
@@ -74,35 +75,97 @@ public class Statistics
                     boolean backward, boolean random)
         throws ErrorMessage, IOException
     {
+        ArrayList<GtpClientBase> list = new ArrayList<GtpClientBase>(1);
+        list.add(gtp);
+        run(list, program, sgfFiles, size, commands, beginCommands,
+            finalCommands, allowSetup, backward, random);
+    }
+
+    /** Construct with existing GTP engines.
+        The games are distributed to the engines, each engine runs in its
+        own thread. The rows of the result table are in the order of the
+        files in sgfFiles, independent of the number of engines. All engines
+        should be instances of the same program.
+        @param gtp The GTP engines (instances of the same program)
+        @see #run(GtpClientBase,String,ArrayList,int,ArrayList,ArrayList,
+        ArrayList,boolean,boolean,boolean) */
+    public void run(ArrayList<GtpClientBase> gtp, String program,
+                    ArrayList<String> sgfFiles, int size,
+                    ArrayList<String> commands,
+                    ArrayList<String> beginCommands,
+                    ArrayList<String> finalCommands, boolean allowSetup,
+                    boolean backward, boolean random)
+        throws ErrorMessage, IOException
+    {
+        assert ! gtp.isEmpty();
         new FileCheck(sgfFiles, size, allowSetup);
         m_size = size;
         m_allowSetup = allowSetup;
         m_backward = backward;
         m_random = random;
         initCommands(commands, beginCommands, finalCommands);
-        ArrayList<String> columnHeaders = new ArrayList<String>();
-        columnHeaders.add("File");
-        columnHeaders.add("Move");
+        m_columnHeaders = new ArrayList<String>();
+        m_columnHeaders.add("File");
+        m_columnHeaders.add("Move");
         for (int i = 0; i < m_commands.size(); ++i)
-            columnHeaders.add(getCommand(i).m_columnTitle);
-        m_table = new Table(columnHeaders);
+            m_columnHeaders.add(getCommand(i).m_columnTitle);
+        m_table = new Table(m_columnHeaders);
         m_table.setProperty("Size", Integer.toString(size));
-        m_gtp = gtp;
-        m_synchronizer = new GtpSynchronizer(m_gtp);
-        m_gtp.queryProtocolVersion();
-        m_gtp.queryName();
+        m_numberGames = 0;
+        m_sgfFiles = sgfFiles;
+        m_nextFile = 0;
+        m_nextResult = 0;
+        m_results = new Table[sgfFiles.size()];
+        m_error = null;
+        ArrayList<Worker> workers = new ArrayList<Worker>(gtp.size());
+        for (GtpClientBase client : gtp)
+            workers.add(new Worker(client));
+        GtpClientBase first = gtp.get(0);
+        for (GtpClientBase client : gtp)
+        {
+            client.queryProtocolVersion();
+            client.queryName();
+        }
         if (program != null)
             m_table.setProperty("Program", program);
-        m_table.setProperty("Name", m_gtp.getLabel());
-        m_table.setProperty("Version", m_gtp.queryVersion());
+        m_table.setProperty("Name", first.getLabel());
+        m_table.setProperty("Version", first.queryVersion());
         String host = Platform.getHostInfo();
         m_table.setProperty("Host", host);
         m_table.setProperty("Date", StringUtil.getDate());
-        for (int i = 0; i < sgfFiles.size(); ++i)
-            handleFile(sgfFiles.get(i));
-        m_gtp.send("quit");
-        m_gtp.close();
-        m_gtp.waitForExit();
+        if (workers.size() == 1)
+            workers.get(0).run();
+        else
+        {
+            ArrayList<Thread> threads =
+                new ArrayList<Thread>(workers.size());
+            for (Worker worker : workers)
+            {
+                Thread thread = new Thread(worker);
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads)
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ErrorMessage("Interrupted");
+                }
+            }
+        }
+        if (m_error != null)
+        {
+            if (m_error instanceof ErrorMessage)
+                throw (ErrorMessage)m_error;
+            if (m_error instanceof IOException)
+                throw (IOException)m_error;
+            throw new ErrorMessage(m_error.getMessage());
+        }
         m_table.setProperty("Games", Integer.toString(m_numberGames));
         m_table.setProperty("Backward", backward ? "yes" : "no");
         m_table.setProperty("Random", random ? "yes" : "no");
@@ -129,6 +192,16 @@ public class Statistics
         m_quiet = enable;
     }
 
+    /** Set the number of engine instances used by
+        run(String,ArrayList,int,ArrayList,ArrayList,ArrayList,boolean,
+        boolean,boolean,boolean).
+        Default is one. */
+    public void setThreads(int threads)
+    {
+        assert threads > 0;
+        m_threads = threads;
+    }
+
     /** Save result table of last run. */
     public void saveTable(File output) throws IOException
     {
@@ -154,6 +227,308 @@ public class Statistics
         public String m_columnTitle;
     }
 
+    /** Runs the commands with one GTP engine.
+        Takes the next file from the list of files until all files are
+        processed or another worker failed. */
+    private class Worker
+        implements Runnable
+    {
+        public Worker(GtpClientBase gtp)
+        {
+            m_gtp = gtp;
+            m_synchronizer = new GtpSynchronizer(gtp);
+        }
+
+        public void run()
+        {
+            try
+            {
+                int index;
+                while ((index = getNextFile()) >= 0)
+                    addResult(index, handleFile(m_sgfFiles.get(index)));
+                m_gtp.send("quit");
+            }
+            catch (ErrorMessage e)
+            {
+                setError(e);
+            }
+            catch (IOException e)
+            {
+                setError(e);
+            }
+            catch (RuntimeException e)
+            {
+                setError(e);
+            }
+            m_gtp.close();
+            m_gtp.waitForExit();
+        }
+
+        private double m_lastCpuTime = 0;
+
+        private final GtpClientBase m_gtp;
+
+        private final GtpSynchronizer m_synchronizer;
+
+        /** Result rows of the current file. */
+        private Table m_rows;
+
+        /** NumberFormat is not thread-safe, so each worker has its own. */
+        private final NumberFormat m_format1 =
+            StringUtil.getNumberFormat(1);
+
+        private final NumberFormat m_format2 =
+            StringUtil.getNumberFormat(2);
+
+        private String convertResponse(String command, String response,
+                                       GoColor toMove, Move move)
+            throws GtpError
+        {
+            if (command.equals("cputime"))
+            {
+                try
+                {
+                    double cpuTime = Double.parseDouble(response);
+                    double diff = cpuTime - m_lastCpuTime;
+                    m_lastCpuTime = cpuTime;
+                    return m_format2.format(diff);
+                }
+                catch (NumberFormatException e)
+                {
+                    return response;
+                }
+            }
+            else if (command.equals("estimate_score"))
+            {
+                String arg[] = StringUtil.splitArguments(response);
+                if (arg.length == 0)
+                    return response;
+                return convertScore(arg[0]);
+            }
+            else if (command.equals("final_score"))
+            {
+                return convertScore(response);
+            }
+            else if (command.equals("reg_genmove"))
+            {
+                if (move == null)
+                    return "";
+                try
+                {
+                    GoPoint point = GoPoint.parsePoint(response, m_size);
+                    return Move.get(toMove, point) == move ? "1" : "0";
+                }
+                catch (InvalidPointException e)
+                {
+                    throw new GtpError("Program sent invalid move: "
+                                       + response);
+                }
+            }
+            return response;
+        }
+
+        /** Tries to convert score into number.
+            @return Score string or original string, if conversion fails. */
+        private String convertScore(String string)
+        {
+            String score = string.trim();
+            double sign = 1;
+            if (score.startsWith("W+"))
+            {
+                score = score.substring(2);
+                sign = -1;
+            }
+            else if (score.startsWith("B+"))
+                score = score.substring(2);
+            try
+            {
+                return m_format1.format(sign * Double.parseDouble(score));
+            }
+            catch (NumberFormatException e)
+            {
+                return string;
+            }
+        }
+
+        /** Run the commands on the positions of a game.
+            @return The result rows of the game. */
+        private Table handleFile(String name)
+            throws ErrorMessage, IOException
+        {
+            File file = new File(name);
+            InputStream in = new FileInputStream(file);
+            SgfReader reader;
+            try
+            {
+                reader = new SgfReader(in, file, null, 0);
+            }
+            finally
+            {
+                in.close();
+            }
+            Game game = new Game(reader.getTree());
+            checkGame(game.getTree(), name);
+            m_rows = new Table(m_columnHeaders);
+            if (m_random)
+                iteratePositionsRandom(game, name);
+            else if (m_backward)
+                iteratePositionsBackward(game, name);
+            else
+                iteratePositions(game, name);
+            return m_rows;
+        }
+
+        private void handlePosition(String name, GoColor toMove, Move move,
+                                    int number, boolean beginCommands,
+                                    boolean regularCommands,
+                                    boolean finalCommands)
+            throws GtpError
+        {
+            if (! m_quiet)
+                System.err.println(name + ":" + number);
+            m_rows.startRow();
+            try
+            {
+                m_rows.set("File", name);
+                m_rows.set("Move", number);
+                for (int i = 0; i < m_commands.size(); ++i)
+                {
+                    Command command = getCommand(i);
+                    if (command.m_begin && beginCommands)
+                    {
+                        String response =
+                            send(command.m_command, toMove, move);
+                        m_rows.set(command.m_columnTitle, response);
+                    }
+                }
+                for (int i = 0; i < m_commands.size(); ++i)
+                {
+                    Command command = getCommand(i);
+                    if (! command.m_begin && ! command.m_final
+                        && regularCommands)
+                    {
+                        String response =
+                            send(command.m_command, toMove, move);
+                        m_rows.set(command.m_columnTitle, response);
+                    }
+                }
+                for (int i = 0; i < m_commands.size(); ++i)
+                {
+                    Command command = getCommand(i);
+                    if (command.m_final && finalCommands)
+                    {
+                        String response =
+                            send(command.m_command, toMove, move);
+                        m_rows.set(command.m_columnTitle, response);
+                    }
+                }
+            }
+            catch (Table.InvalidLocation e)
+            {
+                System.err.println(e.getMessage());
+                // Table was created by this class in correct format
+                assert false;
+            }
+        }
+
+        private void iteratePositions(Game game, String name) throws GtpError
+        {
+            int number = 0;
+            for (ConstNode node = game.getRoot(); node != null;
+                 node = node.getChildConst())
+            {
+                game.gotoNode(node, null);
+                synchronize(game);
+                Move move = node.getMove();
+                boolean beginCommands = ! node.hasFather();
+                boolean regularCommands =
+                    ((move != null || node.hasSetup() || ! node.hasFather())
+                     && number >= m_min && number <= m_max);
+                boolean finalCommands = ! node.hasChildren();
+                if (beginCommands || regularCommands || finalCommands)
+                    handlePosition(name, node.getToMove(), move, number,
+                                   beginCommands, regularCommands,
+                                   finalCommands);
+                ++number;
+            }
+        }
+
+        private void iteratePositionsBackward(Game game, String name)
+            throws GtpError
+        {
+            int number = 0;
+            for (ConstNode node = NodeUtil.getLast(game.getRoot());
+                 node != null; node = node.getFatherConst())
+            {
+                game.gotoNode(node, null);
+                synchronize(game);
+                Move move = node.getMove();
+                boolean beginCommands = ! node.hasChildren();
+                boolean regularCommands =
+                    ((move != null || node.hasSetup() || ! node.hasFather())
+                     && number >= m_min && number <= m_max);
+                boolean finalCommands = ! node.hasFather();
+                if (beginCommands || regularCommands || finalCommands)
+                    handlePosition(name, node.getToMove(), move, number,
+                                   beginCommands, regularCommands,
+                                   finalCommands);
+                ++number;
+            }
+        }
+
+        private void iteratePositionsRandom(Game game, String name)
+            throws GtpError
+        {
+            int minDepth;
+            int maxDepth;
+            if (m_backward)
+            {
+                int depth =
+                    NodeUtil.getDepth(NodeUtil.getLast(game.getRoot()));
+                minDepth = depth - m_max;
+                maxDepth = depth - m_min;
+            }
+            else
+            {
+                minDepth = m_min;
+                maxDepth = m_max;
+            }
+            ConstNode node = NodeUtil.selectRandom(game.getRoot(), minDepth,
+                                                   maxDepth);
+            if (node == null)
+                return;
+            int number = NodeUtil.getDepth(node);
+            game.gotoNode(node, null);
+            synchronize(game);
+            Move move = node.getMove();
+            boolean beginCommands = ! node.hasChildren();
+            boolean regularCommands =
+                (move != null || node.hasSetup() || ! node.hasFather());
+            boolean finalCommands = ! node.hasFather();
+            if (beginCommands || regularCommands || finalCommands)
+                handlePosition(name, node.getToMove(), move, number,
+                               beginCommands, regularCommands, finalCommands);
+        }
+
+        private String send(String command, GoColor toMove, Move move)
+            throws GtpError
+        {
+            String cmd = convertCommand(command, toMove);
+            String response = m_gtp.send(cmd).trim();
+            response = response.replaceAll("\t", " ");
+            response = response.replaceAll("\n", " ");
+            return convertResponse(command, response, toMove, move);
+        }
+
+        private void synchronize(ConstGame game) throws GtpError
+        {
+            ConstNode node = game.getGameInfoNode();
+            ConstGameInfo info = game.getGameInfo(node);
+            m_synchronizer.synchronize(game.getBoard(), info.getKomi(),
+                                       info.getTimeSettings());
+        }
+    }
+
     private boolean m_allowSetup;
 
     private boolean m_backward;
@@ -170,20 +545,29 @@ public class Statistics
 
     private int m_size;
 
-    private double m_lastCpuTime = 0;
+    private int m_threads = 1;
 
-    private GtpClientBase m_gtp;
+    /** Index of the next file to be handled by a worker. */
+    private int m_nextFile;
 
-    private static final NumberFormat FORMAT1 = StringUtil.getNumberFormat(1);
+    /** Index of the next file to be appended to the result table. */
+    private int m_nextResult;
 
-    private static final NumberFormat FORMAT2 = StringUtil.getNumberFormat(2);
+    private ArrayList<String> m_sgfFiles;
+
+    private ArrayList<String> m_columnHeaders;
+
+    /** Result rows of files that cannot be appended to the result table
+        yet, because the rows of previous files are not available. */
+    private Table[] m_results;
+
+    /** First error of a worker or null. */
+    private Exception m_error;
 
     private Table m_table;
 
     private ArrayList<Command> m_commands;
 
-    private GtpSynchronizer m_synchronizer;
-
     private void addCommand(String commandLine, boolean isBegin,
                             boolean isFinal) throws ErrorMessage
     {
@@ -221,6 +605,30 @@ public class Statistics
             addCommand(c, isBegin, isFinal);
     }
 
+    /** Append the result rows of a file to the result table.
+        The rows are appended in the order of the files, rows of files
+        that were finished before the previous files are kept until the
+        previous files are finished. */
+    private synchronized void addResult(int index, Table rows)
+    {
+        m_results[index] = rows;
+        ++m_numberGames;
+        while (m_nextResult < m_results.length
+               && m_results[m_nextResult] != null)
+        {
+            Table table = m_results[m_nextResult];
+            m_results[m_nextResult] = null;
+            ++m_nextResult;
+            for (int row = 0; row < table.getNumberRows(); ++row)
+            {
+                m_table.startRow();
+                for (int column = 0; column < table.getNumberColumns();
+                     ++column)
+                    m_table.set(column, table.get(column, row));
+            }
+        }
+    }
+
     private void checkGame(ConstGameTree tree, String name) throws ErrorMessage
     {
         int size = tree.getBoardSize();
@@ -263,74 +671,6 @@ public class Statistics
         return command;
     }
 
-    private String convertResponse(String command, String response,
-                                   GoColor toMove, Move move) throws GtpError
-    {
-        if (command.equals("cputime"))
-        {
-            try
-            {
-                double cpuTime = Double.parseDouble(response);
-                double diff = cpuTime - m_lastCpuTime;
-                m_lastCpuTime = cpuTime;
-                return FORMAT2.format(diff);
-            }
-            catch (NumberFormatException e)
-            {
-                return response;
-            }
-        }
-        else if (command.equals("estimate_score"))
-        {
-            String arg[] = StringUtil.splitArguments(response);
-            if (arg.length == 0)
-                return response;
-            return convertScore(arg[0]);
-        }
-        else if (command.equals("final_score"))
-        {
-            return convertScore(response);
-        }
-        else if (command.equals("reg_genmove"))
-        {
-            if (move == null)
-                return "";
-            try
-            {
-                GoPoint point = GoPoint.parsePoint(response, m_size);
-                return Move.get(toMove, point) == move ? "1" : "0";
-            }
-            catch (InvalidPointException e)
-            {
-                throw new GtpError("Program sent invalid move: " + response);
-            }
-        }
-        return response;
-    }
-
-    /** Tries to convert score into number.
-        @return Score string or original string, if conversion fails. */
-    private String convertScore(String string)
-    {
-        String score = string.trim();
-        double sign = 1;
-        if (score.startsWith("W+"))
-        {
-            score = score.substring(2);
-            sign = -1;
-        }
-        else if (score.startsWith("B+"))
-            score = score.substring(2);
-        try
-        {
-            return FORMAT1.format(sign * Double.parseDouble(score));
-        }
-        catch (NumberFormatException e)
-        {
-            return string;
-        }
-    }
-
     private void initCommands(ArrayList<String> commands,
                               ArrayList<String> beginCommands,
                               ArrayList<String> finalCommands)
@@ -352,164 +692,19 @@ public class Statistics
         return m_commands.get(index);
     }
 
-    private void handleFile(String name)
-        throws ErrorMessage, FileNotFoundException, GtpError,
-               SgfError
-    {
-        File file = new File(name);
-        InputStream in = new FileInputStream(file);
-        SgfReader reader = new SgfReader(in, file, null, 0);
-        ++m_numberGames;
-        Game game = new Game(reader.getTree());
-        checkGame(game.getTree(), name);
-        if (m_random)
-            iteratePositionsRandom(game, name);
-        else if (m_backward)
-            iteratePositionsBackward(game, name);
-        else
-            iteratePositions(game, name);
-    }
-
-    private void handlePosition(String name, GoColor toMove, Move move,
-                                int number, boolean beginCommands,
-                                boolean regularCommands,
-                                boolean finalCommands)
-        throws GtpError
-    {
-        if (! m_quiet)
-            System.err.println(name + ":" + number);
-        m_table.startRow();
-        try
-        {
-            m_table.set("File", name);
-            m_table.set("Move", number);
-            for (int i = 0; i < m_commands.size(); ++i)
-            {
-                Command command = getCommand(i);
-                if (command.m_begin && beginCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
-            }
-            for (int i = 0; i < m_commands.size(); ++i)
-            {
-                Command command = getCommand(i);
-                if (! command.m_begin && ! command.m_final && regularCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
-            }
-            for (int i = 0; i < m_commands.size(); ++i)
-            {
-                Command command = getCommand(i);
-                if (command.m_final && finalCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
-            }
-        }
-        catch (Table.InvalidLocation e)
-        {
-            System.err.println(e.getMessage());
-            // Table was created by this class in correct format
-            assert false;
-        }
-    }
-
-    private void iteratePositions(Game game, String name) throws GtpError
-    {
-        int number = 0;
-        for (ConstNode node = game.getRoot(); node != null;
-             node = node.getChildConst())
-        {
-            game.gotoNode(node, null);
-            synchronize(game);
-            Move move = node.getMove();
-            boolean beginCommands = ! node.hasFather();
-            boolean regularCommands =
-                ((move != null || node.hasSetup() || ! node.hasFather())
-                 && number >= m_min && number <= m_max);
-            boolean finalCommands = ! node.hasChildren();
-            if (beginCommands || regularCommands || finalCommands)
-                handlePosition(name, node.getToMove(), move, number,
-                               beginCommands, regularCommands, finalCommands);
-            ++number;
-        }
-    }
-
-    private void iteratePositionsBackward(Game game, String name)
-        throws GtpError
-    {
-        int number = 0;
-        for (ConstNode node = NodeUtil.getLast(game.getRoot()); node != null;
-             node = node.getFatherConst())
-        {
-            game.gotoNode(node, null);
-            synchronize(game);
-            Move move = node.getMove();
-            boolean beginCommands = ! node.hasChildren();
-            boolean regularCommands =
-                ((move != null || node.hasSetup() || ! node.hasFather())
-                 && number >= m_min && number <= m_max);
-            boolean finalCommands = ! node.hasFather();
-            if (beginCommands || regularCommands || finalCommands)
-                handlePosition(name, node.getToMove(), move, number,
-                               beginCommands, regularCommands, finalCommands);
-            ++number;
-        }
-    }
-
-    private void iteratePositionsRandom(Game game, String name)
-        throws GtpError
-    {
-        int minDepth;
-        int maxDepth;
-        if (m_backward)
-        {
-            int depth = NodeUtil.getDepth(NodeUtil.getLast(game.getRoot()));
-            minDepth = depth - m_max;
-            maxDepth = depth - m_min;
-        }
-        else
-        {
-            minDepth = m_min;
-            maxDepth = m_max;
-        }
-        ConstNode node = NodeUtil.selectRandom(game.getRoot(), minDepth,
-                                               maxDepth);
-        if (node == null)
-            return;
-        int number = NodeUtil.getDepth(node);
-        game.gotoNode(node, null);
-        synchronize(game);
-        Move move = node.getMove();
-        boolean beginCommands = ! node.hasChildren();
-        boolean regularCommands =
-            (move != null || node.hasSetup() || ! node.hasFather());
-        boolean finalCommands = ! node.hasFather();
-        if (beginCommands || regularCommands || finalCommands)
-            handlePosition(name, node.getToMove(), move, number,
-                           beginCommands, regularCommands, finalCommands);
-    }
-
-    private String send(String command, GoColor toMove, Move move)
-        throws GtpError
+    /** Get the index of the next file to handle.
+        @return The index or -1, if all files are handled or a worker
+        failed. */
+    private synchronized int getNextFile()
     {
-        String cmd = convertCommand(command, toMove);
-        String response = m_gtp.send(cmd).trim();
-        response = response.replaceAll("\t", " ");
-        response = response.replaceAll("\n", " ");
-        return convertResponse(command, response, toMove, move);
+        if (m_error != null || m_nextFile == m_sgfFiles.size())
+            return -1;
+        return m_nextFile++;
     }
 
-    private void synchronize(ConstGame game) throws GtpError
+    private synchronized void setError(Exception e)
     {
-        ConstNode node = game.getGameInfoNode();
-        ConstGameInfo info = game.getGameInfo(node);
-        m_synchronizer.synchronize(game.getBoard(), info.getKomi(),
-                                   info.getTimeSettings());
+        if (m_error == null)
+            m_error = e;
     }
 }
@@ -6,6 +6,10 @@ import java.io.File;
 import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeSet;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.FileUtil;
 import net.sf.gogui.util.Histogram;
@@ -13,6 +17,7 @@ import net.sf.gogui.util.HtmlUtil;
 import net.sf.gogui.util.Statistics;
 import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.util.Table;
+import net.sf.gogui.util.TableReader;
 
 /** Analyze the game results and produce a HTML formatted report. */
 public class Analyze
@@ -81,7 +86,48 @@ public class Analyze
 
     private final Statistics m_timeWhite = new Statistics();
 
-    private Table m_table;
+    /** Columns used for creating an entry.
+        The TIME_ columns are optional. */
+    private static final String[] COLUMNS = {
+        "GAME", "RES_B", "RES_W", "RES_R", "ALT", "DUP", "LEN", "TIME_B",
+        "TIME_W", "CPU_B", "CPU_W", "ERR", "ERR_MSG" };
+
+    /** Properties of the table. */
+    private Map<String,String> m_properties;
+
+    /** Create an entry from the elements of a row.
+        @param row The elements in the order of COLUMNS. */
+    private void addEntry(String[] row) throws ErrorMessage
+    {
+        try
+        {
+            int gameIndex = Integer.parseInt(row[0]);
+            String resultBlack = row[1];
+            String resultWhite = row[2];
+            String resultReferee = row[3];
+            boolean alternated = (Integer.parseInt(row[4]) != 0);
+            String duplicate = row[5];
+            int length = Integer.parseInt(row[6]);
+            // twogtp versions before 1.1pre2 did not save TIME_B, TIME_W, we
+            // still support analyzing such old tables for a while
+            double timeBlack =
+                (row[7] == null ? 0 : Double.parseDouble(row[7]));
+            double timeWhite =
+                (row[8] == null ? 0 : Double.parseDouble(row[8]));
+            double cpuBlack = Double.parseDouble(getNotNull(row[9]));
+            double cpuWhite = Double.parseDouble(getNotNull(row[10]));
+            boolean error = (Integer.parseInt(row[11]) != 0);
+            String errorMessage = row[12];
+            m_entries.add(new Entry(gameIndex, resultBlack, resultWhite,
+                                    resultReferee, alternated, duplicate,
+                                    length, timeBlack, timeWhite, cpuBlack,
+                                    cpuWhite, error, errorMessage));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Wrong file format");
+        }
+    }
 
     private void calcStatistics()
     {
@@ -110,6 +156,47 @@ public class Analyze
         }
     }
 
+    /** Get the index of each element of COLUMNS.
+        @return The indices, -1 for missing optional columns. */
+    private static int[] getColumnIndex(ArrayList<String> columnTitles)
+        throws ErrorMessage
+    {
+        int[] index = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; ++i)
+        {
+            index[i] = columnTitles.indexOf(COLUMNS[i]);
+            if (index[i] < 0 && ! COLUMNS[i].startsWith("TIME_"))
+                throw new ErrorMessage("No such column in table: "
+                                       + COLUMNS[i]);
+        }
+        return index;
+    }
+
+    /** Return an element or "", if it is null.
+        Integer.parseInt() throws a NumberFormatException for null, but
+        Double.parseDouble() a NullPointerException. */
+    private static String getNotNull(String element)
+    {
+        return (element == null ? "" : element);
+    }
+
+    private String getProperty(String key)
+    {
+        return m_properties.get(key);
+    }
+
+    private String getProperty(String key, String def)
+    {
+        if (! hasProperty(key))
+            return def;
+        return m_properties.get(key);
+    }
+
+    private boolean hasProperty(String key)
+    {
+        return m_properties.containsKey(key);
+    }
+
     private void parseResult(String result, ResultStatistics statistics)
     {
         boolean hasResult = false;
@@ -184,48 +271,64 @@ public class Analyze
             statistics.m_histo.add(score);
     }
 
+    /** Read the entries.
+        The table file is read row by row with a TableReader without
+        storing the table, the results in the journal are added with
+        ResultFile.readJournal(). */
     private void readTable(File file) throws Exception
     {
-        m_table = new Table();
-        m_table.read(file);
+        TreeSet<Integer> gameExists = new TreeSet<Integer>();
+        ArrayList<String> columnTitles;
+        String[] row = new String[COLUMNS.length];
+        TableReader reader = new TableReader(file);
         try
         {
-            for (int i = 0; i < m_table.getNumberRows(); ++i)
+            m_properties = reader.getProperties();
+            columnTitles = reader.getColumnTitles();
+            int[] index = getColumnIndex(columnTitles);
+            while (reader.next())
             {
-                int gameIndex = m_table.getInt("GAME", i);
-                String resultBlack = m_table.get("RES_B", i);
-                String resultWhite = m_table.get("RES_W", i);
-                String resultReferee = m_table.get("RES_R", i);
-                boolean alternated = (m_table.getInt("ALT", i) != 0);
-                String duplicate = m_table.get("DUP", i);
-                int length = m_table.getInt("LEN", i);
-                double timeBlack = 0;
-                double timeWhite = 0;
-                try
-                {
-                    timeBlack = m_table.getDouble("TIME_B", i);
-                    timeWhite = m_table.getDouble("TIME_W", i);
-                }
-                catch (Table.InvalidLocation e)
-                {
-                    // twogtp versions before 1.1pre2 did not save TIME_B,
-                    // TIME_W, we still support analyzing such old tables for
-                    // a while
-                }
-                double cpuBlack = m_table.getDouble("CPU_B", i);
-                double cpuWhite = m_table.getDouble("CPU_W", i);
-                boolean error = (m_table.getInt("ERR", i) != 0);
-                String errorMessage = m_table.get("ERR_MSG", i);
-                m_entries.add(new Entry(gameIndex, resultBlack, resultWhite,
-                                        resultReferee, alternated, duplicate,
-                                        length, timeBlack, timeWhite,
-                                        cpuBlack, cpuWhite, error,
-                                        errorMessage));
+                for (int i = 0; i < COLUMNS.length; ++i)
+                    row[i] = (index[i] < 0 ? null : reader.get(index[i]));
+                addEntry(row);
+                gameExists.add(m_entries.get(m_entries.size() - 1)
+                               .m_gameIndex);
             }
         }
-        catch (NumberFormatException e)
+        finally
         {
-            throw new ErrorMessage("Wrong file format");
+            reader.close();
+        }
+        // Add the results of a running or terminated match that are not yet
+        // in the table
+        File journalFile = ResultFile.getJournalFile(file);
+        if (! journalFile.exists())
+            return;
+        Table journal = new Table(columnTitles);
+        ResultFile.readJournal(journalFile, journal);
+        int[] index = getColumnIndex(columnTitles);
+        int gameColumn = journal.getColumnIndex("GAME");
+        boolean added = false;
+        for (int i = 0; i < journal.getNumberRows(); ++i)
+        {
+            if (gameExists.contains(journal.getInt(gameColumn, i)))
+                continue;
+            for (int j = 0; j < COLUMNS.length; ++j)
+                row[j] = (index[j] < 0 ? null : journal.get(index[j], i));
+            addEntry(row);
+            added = true;
+        }
+        if (added)
+        {
+            Comparator<Entry> comparator = new Comparator<Entry>()
+                {
+                    public int compare(Entry e1, Entry e2)
+                    {
+                        return (e1.m_gameIndex < e2.m_gameIndex ? -1
+                                : (e1.m_gameIndex > e2.m_gameIndex ? 1 : 0));
+                    }
+                };
+            Collections.sort(m_entries, comparator);
         }
     }
 
@@ -240,22 +343,22 @@ public class Analyze
         PrintStream out = new PrintStream(file);
         NumberFormat format = StringUtil.getNumberFormat(1);
         String black;
-        if (m_table.hasProperty("BlackLabel"))
-            black = m_table.getProperty("BlackLabel");
-        else if (m_table.hasProperty("Black"))
+        if (hasProperty("BlackLabel"))
+            black = getProperty("BlackLabel");
+        else if (hasProperty("Black"))
             // Older versions of TwoGtp do not have BlackLabel property
-            black = m_table.getProperty("Black");
+            black = getProperty("Black");
         else
             black = "Black";
         String white;
-        if (m_table.hasProperty("WhiteLabel"))
-            white = m_table.getProperty("WhiteLabel");
-        else if (m_table.hasProperty("White"))
+        if (hasProperty("WhiteLabel"))
+            white = getProperty("WhiteLabel");
+        else if (hasProperty("White"))
             // Older versions of TwoGtp do not have WhiteLabel property
-            white = m_table.getProperty("White");
+            white = getProperty("White");
         else
             white = "Black";
-        boolean useXml = (! m_table.getProperty("Xml", "0").equals("0"));
+        boolean useXml = (! getProperty("Xml", "0").equals("0"));
         out.print("<html>\n" +
                   "<head>\n" +
                   "<title>" + black + " - " + white + "</title>\n" +
@@ -277,15 +380,20 @@ public class Analyze
                   "</table>\n" +
                   "<table width=\"100%\" bgcolor=\"" + COLOR_INFO
                   + "\">\n");
-        String referee = m_table.getProperty("Referee", "");
+        String referee = getProperty("Referee", "");
         if (referee.equals("-") || referee.equals(""))
             referee = null;
         writePropertyHtmlRow(out, "Black", "Black");
         writePropertyHtmlRow(out, "White", "White");
         writePropertyHtmlRow(out, "Size", "Size");
         writePropertyHtmlRow(out, "Komi", "Komi");
-        if (m_table.hasProperty("Openings"))
+        if (hasProperty("Openings"))
             writePropertyHtmlRow(out, "Openings", "Openings");
+        if (hasProperty("Sprt"))
+        {
+            writePropertyHtmlRow(out, "Sprt", "SPRT");
+            writePropertyHtmlRow(out, "SprtResult", "SPRT result");
+        }
         writePropertyHtmlRow(out, "Date", "Date");
         writePropertyHtmlRow(out, "Host", "Host");
         writePropertyHtmlRow(out, "Referee", "Referee");
@@ -402,7 +510,7 @@ public class Analyze
                                       String keyLabel)
         throws Exception
     {
-        String value = m_table.getProperty(key, "");
+        String value = getProperty(key, "");
         writeHtmlRow(out, keyLabel, value);
     }
 
@@ -7,10 +7,8 @@ import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
-import java.util.TreeMap;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameTree;
-import net.sf.gogui.go.Board;
 import net.sf.gogui.go.BoardUtil;
 import net.sf.gogui.go.ConstBoard;
 import net.sf.gogui.go.GoColor;
@@ -59,7 +57,8 @@ public final class Compare
         @return String containing number of first identical game in
         collection or "-" if no duplicate was found. If a nearly identical
         game is found (&lt;= 20% identical moves comparing moves by number),
-        the game number is returned with a question mark appended. */
+        the game number is returned with a question mark appended.
+        @see DuplicateIndex */
     public static String checkDuplicate(ConstBoard board,
                                       ArrayList<Placement> moves,
                                       Map<Integer, ArrayList<Placement>> games,
@@ -74,28 +73,12 @@ public final class Compare
             if (useAlternate && ((numberGame % 2 != 0) != isAlternated))
                 continue;
             ArrayList<Placement> gameMoves = entry.getValue();
+            int maxDifferent = moves.size() / 5;
             for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
             {
-                int numberDifferent = 0;
-                int moveNumber = moves.size();
-                int maxDifferent = moveNumber / 5;
-                if (gameMoves.size() != moveNumber)
-                {
-                    numberDifferent = Math.abs(gameMoves.size() - moveNumber);
-                    moveNumber = Math.min(gameMoves.size(), moveNumber);
-                }
-                for (int i = 0;
-                     numberDifferent <= maxDifferent && i < moveNumber; ++i)
-                {
-                    Placement move = moves.get(i);
-                    Placement gameMove = gameMoves.get(i);
-                    GoPoint gameRotatedPoint =
-                        BoardUtil.rotate(rot, gameMove.m_point, size);
-                    if (move.m_isSetup != gameMove.m_isSetup
-                        || ! move.m_color.equals(gameMove.m_color)
-                        || ! GoPoint.equals(move.m_point, gameRotatedPoint))
-                        ++numberDifferent;
-                }
+                int numberDifferent =
+                    getNumberDifferent(moves, gameMoves, rot, size,
+                                       maxDifferent);
                 if (numberDifferent == 0)
                     return Integer.toString(numberGame);
                 else if (numberDifferent < maxDifferent)
@@ -113,9 +96,8 @@ public final class Compare
         @throws Exception If reading one of the files fails. */
     public static void compare(ArrayList<String> filenames) throws Exception
     {
-        Board board = null;
-        Map<Integer, ArrayList<Placement>> games =
-            new TreeMap<Integer, ArrayList<Placement>>();
+        DuplicateIndex index = null;
+        int boardSize = 0;
         for (int gameNumber = 0; gameNumber < filenames.size(); ++gameNumber)
         {
             String filename = filenames.get(gameNumber);
@@ -124,17 +106,19 @@ public final class Compare
             SgfReader reader = new SgfReader(fileStream, file, null, 0);
             GameTree tree = reader.getTree();
             int size = tree.getBoardSize();
-            if (board == null)
-                board = new Board(size);
-            else if (size != board.getSize())
+            if (index == null)
+            {
+                index = new DuplicateIndex(size);
+                boardSize = size;
+            }
+            else if (size != boardSize)
                 throw new Exception("Board size in " + filename +
                                     " does not match other games");
             ArrayList<Placement> moves = getPlacements(tree.getRoot());
-            String duplicate =
-                checkDuplicate(board, moves, games, false, false);
+            String duplicate = index.checkDuplicate(moves, false, false);
             System.out.println(Integer.toString(gameNumber) + " " +
                                filename + " " + duplicate);
-            games.put(gameNumber, moves);
+            index.add(gameNumber, moves);
         }
     }
 
@@ -158,6 +142,41 @@ public final class Compare
         return result;
     }
 
+    /** Count the different moves of two games.
+        @param moves The moves of the first game.
+        @param gameMoves The moves of the second game.
+        @param rot The rotation mode to apply to the second game.
+        @param size The board size.
+        @param maxDifferent Stop counting if more than this number of
+        different moves were found.
+        @return The number of moves that are different at the same move
+        number plus the difference of the game lengths. */
+    static int getNumberDifferent(ArrayList<Placement> moves,
+                                  ArrayList<Placement> gameMoves, int rot,
+                                  int size, int maxDifferent)
+    {
+        int numberDifferent = 0;
+        int moveNumber = moves.size();
+        if (gameMoves.size() != moveNumber)
+        {
+            numberDifferent = Math.abs(gameMoves.size() - moveNumber);
+            moveNumber = Math.min(gameMoves.size(), moveNumber);
+        }
+        for (int i = 0;
+             numberDifferent <= maxDifferent && i < moveNumber; ++i)
+        {
+            Placement move = moves.get(i);
+            Placement gameMove = gameMoves.get(i);
+            GoPoint gameRotatedPoint =
+                BoardUtil.rotate(rot, gameMove.m_point, size);
+            if (move.m_isSetup != gameMove.m_isSetup
+                || ! move.m_color.equals(gameMove.m_color)
+                || ! GoPoint.equals(move.m_point, gameRotatedPoint))
+                ++numberDifferent;
+        }
+        return numberDifferent;
+    }
+
     /** Make constructor unavailable; class is for namespace only. */
     private Compare()
     {
@@ -0,0 +1,309 @@
+// CrossTable.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.util.Table;
+
+/** Results of the pairings of a tournament and Elo estimate.
+    The Elo ratings are the maximum likelihood estimate of the logistic
+    (Bradley-Terry) model, with draws counted as half a win for each
+    program. One virtual draw is added to each pairing with games, so that
+    the ratings stay finite if a program wins or loses all games. The
+    ratings are relative to the average of the programs with games. */
+public final class CrossTable
+{
+    public CrossTable(int numberPrograms)
+    {
+        m_numberPrograms = numberPrograms;
+        m_points = new double[numberPrograms][numberPrograms];
+        m_games = new int[numberPrograms][numberPrograms];
+        m_labels = new String[numberPrograms];
+        for (int i = 0; i < numberPrograms; ++i)
+            m_labels[i] = Integer.toString(i + 1);
+    }
+
+    /** Add the result of a game.
+        @param black The index of the Black program.
+        @param white The index of the White program.
+        @param result The result from the point of view of Black (B+...,
+        W+... or 0 for a draw).
+        @return false, if the result is unknown and was ignored. */
+    public boolean addResult(int black, int white, String result)
+    {
+        String s = result.trim();
+        double points;
+        if (s.startsWith("B+"))
+            points = 1;
+        else if (s.startsWith("W+"))
+            points = 0;
+        else if (s.startsWith("0"))
+            points = 0.5;
+        else
+            return false;
+        m_points[black][white] += points;
+        m_points[white][black] += 1 - points;
+        ++m_games[black][white];
+        ++m_games[white][black];
+        return true;
+    }
+
+    /** Get the Elo ratings.
+        @return The ratings, Double.NaN for programs without games. */
+    public double[] getElo()
+    {
+        double[] strength = getStrength();
+        double[] elo = new double[m_numberPrograms];
+        for (int i = 0; i < m_numberPrograms; ++i)
+            elo[i] = (strength[i] > 0 ? 400 * Math.log10(strength[i])
+                      : Double.NaN);
+        return elo;
+    }
+
+    /** Get the standard errors of the Elo ratings.
+        Uses the inverse of the diagonal of the Fisher information matrix,
+        which ignores the correlation between the ratings, so the errors are
+        only approximate.
+        @return The errors, Double.NaN for programs without games. */
+    public double[] getEloError()
+    {
+        double[] strength = getStrength();
+        double[] error = new double[m_numberPrograms];
+        for (int i = 0; i < m_numberPrograms; ++i)
+        {
+            double information = 0;
+            for (int j = 0; j < m_numberPrograms; ++j)
+            {
+                if (m_games[i][j] == 0)
+                    continue;
+                double p = strength[i] / (strength[i] + strength[j]);
+                information += (m_games[i][j] + 1) * p * (1 - p);
+            }
+            error[i] = (information > 0 ?
+                        400 / Math.log(10) / Math.sqrt(information)
+                        : Double.NaN);
+        }
+        return error;
+    }
+
+    public String getLabel(int program)
+    {
+        return m_labels[program];
+    }
+
+    public int getNumberGames(int program)
+    {
+        int result = 0;
+        for (int j = 0; j < m_numberPrograms; ++j)
+            result += m_games[program][j];
+        return result;
+    }
+
+    public int getNumberGames(int program, int opponent)
+    {
+        return m_games[program][opponent];
+    }
+
+    public int getNumberPrograms()
+    {
+        return m_numberPrograms;
+    }
+
+    public double getPoints(int program)
+    {
+        double result = 0;
+        for (int j = 0; j < m_numberPrograms; ++j)
+            result += m_points[program][j];
+        return result;
+    }
+
+    /** Get the points of a program against an opponent.
+        A win counts one point, a draw half a point. */
+    public double getPoints(int program, int opponent)
+    {
+        return m_points[program][opponent];
+    }
+
+    /** Set the labels of the programs.
+        Uses the name of a program, if it is the only one with this name,
+        otherwise the name with the version appended, if this is unique
+        and not empty or longer than 40 characters, otherwise the name with
+        the number of the program appended (as in Program.setLabel()).
+        @param names The names of the programs.
+        @param versions The versions of the programs. */
+    public void setLabels(String[] names, String[] versions)
+    {
+        for (int i = 0; i < m_numberPrograms; ++i)
+        {
+            boolean isNameUnique = true;
+            boolean isVersionUnique = true;
+            for (int j = 0; j < m_numberPrograms; ++j)
+                if (j != i && names[j].equals(names[i]))
+                {
+                    isNameUnique = false;
+                    if (versions[j].equals(versions[i]))
+                        isVersionUnique = false;
+                }
+            if (isNameUnique)
+                m_labels[i] = names[i];
+            else if (isVersionUnique && ! versions[i].trim().equals("")
+                     && versions[i].length() <= 40)
+                m_labels[i] = names[i] + ":" + versions[i];
+            else
+                m_labels[i] = names[i] + "[" + (i + 1) + "]";
+        }
+    }
+
+    /** Get the cross table as a table.
+        Contains a row for each program with the points and number of games
+        against each opponent (column titles are the program numbers), the
+        total number of games, the fraction of points and the Elo rating
+        with its standard error. */
+    public Table toTable()
+    {
+        ArrayList<String> columns = new ArrayList<String>();
+        columns.add("PROGRAM");
+        columns.add("LABEL");
+        for (int j = 0; j < m_numberPrograms; ++j)
+            columns.add(Integer.toString(j + 1));
+        columns.add("GAMES");
+        columns.add("SCORE");
+        columns.add("ELO");
+        columns.add("ELO_ERR");
+        Table table = new Table(columns);
+        NumberFormat format1 = StringUtil.getNumberFormat(1);
+        NumberFormat format3 = StringUtil.getNumberFormat(3);
+        double[] elo = getElo();
+        double[] eloError = getEloError();
+        for (int i = 0; i < m_numberPrograms; ++i)
+        {
+            table.startRow();
+            int column = 0;
+            table.set(column++, Integer.toString(i + 1));
+            table.set(column++, m_labels[i]);
+            for (int j = 0; j < m_numberPrograms; ++j)
+            {
+                if (m_games[i][j] == 0)
+                    table.set(column++, "-");
+                else
+                    table.set(column++, format1.format(m_points[i][j]) + "/"
+                              + m_games[i][j]);
+            }
+            int numberGames = getNumberGames(i);
+            table.set(column++, Integer.toString(numberGames));
+            if (numberGames == 0)
+            {
+                table.set(column++, "-");
+                table.set(column++, "-");
+                table.set(column++, "-");
+                continue;
+            }
+            table.set(column++, format3.format(getPoints(i) / numberGames));
+            table.set(column++, format1.format(elo[i]));
+            table.set(column++, format1.format(eloError[i]));
+        }
+        return table;
+    }
+
+    /** Get the cross table as text with aligned columns. */
+    public String toString()
+    {
+        Table table = toTable();
+        int numberColumns = table.getNumberColumns();
+        int[] width = new int[numberColumns];
+        for (int i = 0; i < numberColumns; ++i)
+        {
+            width[i] = table.getColumnTitle(i).length();
+            for (int j = 0; j < table.getNumberRows(); ++j)
+                width[i] = Math.max(width[i], table.get(i, j).length());
+        }
+        StringBuilder buffer = new StringBuilder();
+        for (int j = -1; j < table.getNumberRows(); ++j)
+        {
+            for (int i = 0; i < numberColumns; ++i)
+            {
+                String value =
+                    (j < 0 ? table.getColumnTitle(i) : table.get(i, j));
+                if (i > 0)
+                    buffer.append("  ");
+                // Left-align the label, right-align the numbers
+                if (i == 1)
+                    buffer.append(value);
+                for (int k = value.length(); k < width[i]; ++k)
+                    buffer.append(' ');
+                if (i != 1)
+                    buffer.append(value);
+            }
+            buffer.append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /** Maximum number of iterations for the maximum likelihood
+        estimate. */
+    private static final int MAX_ITERATIONS = 100000;
+
+    private final int m_numberPrograms;
+
+    /** Number of games between two programs. */
+    private final int[][] m_games;
+
+    /** Points of a program against an opponent. */
+    private final double[][] m_points;
+
+    private final String[] m_labels;
+
+    /** Get the strength parameters of the Bradley-Terry model.
+        Uses the minorization-maximization algorithm (Hunter 2004) with
+        the virtual draws added to the results. The parameters are
+        normalized to a geometric mean of one.
+        @return The parameters, 0 for programs without games. */
+    private double[] getStrength()
+    {
+        double[] strength = new double[m_numberPrograms];
+        double[] newStrength = new double[m_numberPrograms];
+        int numberRated = 0;
+        for (int i = 0; i < m_numberPrograms; ++i)
+            if (getNumberGames(i) > 0)
+            {
+                strength[i] = 1;
+                ++numberRated;
+            }
+        for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration)
+        {
+            double logSum = 0;
+            for (int i = 0; i < m_numberPrograms; ++i)
+            {
+                if (strength[i] == 0)
+                    continue;
+                double points = 0;
+                double sum = 0;
+                for (int j = 0; j < m_numberPrograms; ++j)
+                {
+                    if (m_games[i][j] == 0)
+                        continue;
+                    points += m_points[i][j] + 0.5;
+                    sum += (m_games[i][j] + 1) / (strength[i] + strength[j]);
+                }
+                newStrength[i] = points / sum;
+                logSum += Math.log(newStrength[i]);
+            }
+            double norm = Math.exp(logSum / numberRated);
+            double maxChange = 0;
+            for (int i = 0; i < m_numberPrograms; ++i)
+            {
+                if (strength[i] == 0)
+                    continue;
+                double value = newStrength[i] / norm;
+                maxChange = Math.max(maxChange,
+                                     Math.abs(Math.log(value / strength[i])));
+                strength[i] = value;
+            }
+            if (maxChange < 1e-10)
+                break;
+        }
+        return strength;
+    }
+}
@@ -0,0 +1,256 @@
+// DuplicateIndex.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import net.sf.gogui.go.BoardUtil;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.tools.twogtp.Compare.Placement;
+
+/** Index of games for finding duplicates.
+    Finds the same duplicates as Compare.checkDuplicate(), but without
+    comparing a game with all games in the collection. Identical games are
+    found with a hash of the complete move sequence. Nearly identical games
+    are found with hashes of the blocks of BLOCK_LENGTH moves at the same
+    move numbers: a game with less than 20% different moves has more
+    identical blocks than different moves, so only games that share
+    enough blocks with the game to check are compared move by move.
+    The games are stored in their original orientation, the game to check
+    is hashed for each rotation. */
+public final class DuplicateIndex
+{
+    /** Number of moves of the blocks used for finding nearly identical
+        games.
+        Must not be larger than 5 (a game is nearly identical if less
+        than 1/5 of the moves are different). Shorter blocks need more
+        memory, but allow to skip more games that share only a few blocks
+        (for example the opening) with the game to check. */
+    public static final int BLOCK_LENGTH = 2;
+
+    /** Constructor.
+        @param size The board size of all games. */
+    public DuplicateIndex(int size)
+    {
+        m_size = size;
+        m_inverse = new GoPoint[BoardUtil.NUMBER_ROTATIONS][];
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            m_inverse[rot] = new GoPoint[GoPoint.NUMBER_INDEXES];
+            for (int x = 0; x < size; ++x)
+                for (int y = 0; y < size; ++y)
+                {
+                    GoPoint p = GoPoint.get(x, y);
+                    GoPoint rotated = BoardUtil.rotate(rot, p, size);
+                    m_inverse[rot][rotated.getIndex()] = p;
+                }
+        }
+    }
+
+    /** Add a game to the index.
+        @param gameNumber The game number.
+        @param moves The moves of the game, as returned by
+        Compare.getPlacements(). */
+    public void add(int gameNumber, ArrayList<Placement> moves)
+    {
+        int slot = m_entries.size();
+        m_entries.add(new Entry(gameNumber, moves));
+        int numberMoves = moves.size();
+        getPostings(m_exact, getHash(moves, 0, 0, numberMoves)).add(slot);
+        for (int i = 0; i + BLOCK_LENGTH <= numberMoves; i += BLOCK_LENGTH)
+            getPostings(m_blocks, getHash(moves, 0, i, i + BLOCK_LENGTH))
+                .add(slot);
+    }
+
+    /** Check if a game already exists in the index.
+        See Compare.checkDuplicate() for the meaning of the arguments and the
+        return value. */
+    public String checkDuplicate(ArrayList<Placement> moves,
+                                 boolean useAlternate, boolean isAlternated)
+    {
+        int numberMoves = moves.size();
+        int identical = -1;
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            IntList postings =
+                m_exact.get(getHash(moves, rot, 0, numberMoves));
+            if (postings == null)
+                continue;
+            for (int i = 0; i < postings.m_size; ++i)
+            {
+                Entry entry = m_entries.get(postings.m_elements[i]);
+                if (! isCandidate(entry, useAlternate, isAlternated)
+                    || (identical >= 0 && entry.m_gameNumber >= identical))
+                    continue;
+                if (Compare.getNumberDifferent(moves, entry.m_moves, rot,
+                                               m_size, 0) == 0)
+                    identical = entry.m_gameNumber;
+            }
+        }
+        if (identical >= 0)
+            return Integer.toString(identical);
+        int maxDifferent = numberMoves / 5;
+        if (maxDifferent == 0)
+            return "-";
+        int nearlyIdentical = -1;
+        if (m_count.length < m_entries.size())
+            m_count = new int[Math.max(m_entries.size(),
+                                       2 * m_count.length)];
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+        {
+            m_touched.m_size = 0;
+            for (int i = 0; i + BLOCK_LENGTH <= numberMoves;
+                 i += BLOCK_LENGTH)
+            {
+                IntList postings =
+                    m_blocks.get(getHash(moves, rot, i, i + BLOCK_LENGTH));
+                if (postings == null)
+                    continue;
+                for (int j = 0; j < postings.m_size; ++j)
+                {
+                    int slot = postings.m_elements[j];
+                    if (m_count[slot]++ == 0)
+                        m_touched.add(slot);
+                }
+            }
+            for (int i = 0; i < m_touched.m_size; ++i)
+            {
+                int slot = m_touched.m_elements[i];
+                int count = m_count[slot];
+                m_count[slot] = 0;
+                Entry entry = m_entries.get(slot);
+                if (! isCandidate(entry, useAlternate, isAlternated)
+                    || entry.m_gameNumber <= nearlyIdentical)
+                    continue;
+                int gameNumberMoves = entry.m_moves.size();
+                int lengthDifference = Math.abs(gameNumberMoves - numberMoves);
+                if (lengthDifference >= maxDifferent)
+                    continue;
+                // Each different move in the common part of both games
+                // changes at most one block
+                int minBlocks =
+                    Math.min(gameNumberMoves, numberMoves) / BLOCK_LENGTH
+                    - (maxDifferent - 1 - lengthDifference);
+                if (count < minBlocks)
+                    continue;
+                if (Compare.getNumberDifferent(moves, entry.m_moves, rot,
+                                               m_size, maxDifferent)
+                    < maxDifferent)
+                    nearlyIdentical = entry.m_gameNumber;
+            }
+        }
+        if (nearlyIdentical >= 0)
+            return Integer.toString(nearlyIdentical) + "?";
+        return "-";
+    }
+
+    public int getNumberGames()
+    {
+        return m_entries.size();
+    }
+
+    private static final class Entry
+    {
+        public final int m_gameNumber;
+
+        public final ArrayList<Placement> m_moves;
+
+        public Entry(int gameNumber, ArrayList<Placement> moves)
+        {
+            m_gameNumber = gameNumber;
+            m_moves = moves;
+        }
+    }
+
+    /** Growable array of int without boxing. */
+    private static final class IntList
+    {
+        public int[] m_elements = new int[4];
+
+        public int m_size;
+
+        public void add(int element)
+        {
+            if (m_size == m_elements.length)
+            {
+                int[] elements = new int[2 * m_size];
+                System.arraycopy(m_elements, 0, elements, 0, m_size);
+                m_elements = elements;
+            }
+            m_elements[m_size++] = element;
+        }
+    }
+
+    private final int m_size;
+
+    /** Points that are rotated to a given point.
+        Indices are the rotation mode and GoPoint.getIndex(). */
+    private final GoPoint[][] m_inverse;
+
+    /** Games in the order they were added. */
+    private final ArrayList<Entry> m_entries = new ArrayList<Entry>();
+
+    /** Indices in m_entries by hash of complete game. */
+    private final HashMap<Long,IntList> m_exact = new HashMap<Long,IntList>();
+
+    /** Indices in m_entries by hash of block and its move number. */
+    private final HashMap<Long,IntList> m_blocks
+        = new HashMap<Long,IntList>();
+
+    /** Number of identical blocks of games, indexed like m_entries.
+        Reset to zero after each rotation. */
+    private int[] m_count = new int[0];
+
+    /** Indices in m_entries with non-zero m_count. */
+    private final IntList m_touched = new IntList();
+
+    /** Hash of moves [begin,end) rotated with the inverse of a rotation
+        mode.
+        Includes begin and end, so that identical blocks at different move
+        numbers and games with different lengths have different hashes. */
+    private long getHash(ArrayList<Placement> moves, int rot, int begin,
+                         int end)
+    {
+        long hash = mix(begin, end);
+        for (int i = begin; i < end; ++i)
+        {
+            Placement move = moves.get(i);
+            long code = (move.m_isSetup ? 1 : 0)
+                + (move.m_color.ordinal() << 1);
+            if (move.m_point != null)
+            {
+                GoPoint p = move.m_point;
+                if (rot != 0)
+                    p = m_inverse[rot][p.getIndex()];
+                if (p != null)
+                    code += (p.getIndex() + 1) << 3;
+            }
+            hash = mix(hash, code);
+        }
+        return hash;
+    }
+
+    private static IntList getPostings(HashMap<Long,IntList> map, long hash)
+    {
+        IntList postings = map.get(hash);
+        if (postings == null)
+        {
+            postings = new IntList();
+            map.put(hash, postings);
+        }
+        return postings;
+    }
+
+    private static boolean isCandidate(Entry entry, boolean useAlternate,
+                                       boolean isAlternated)
+    {
+        return (! useAlternate
+                || ((entry.m_gameNumber % 2 != 0) == isAlternated));
+    }
+
+    private static long mix(long hash, long value)
+    {
+        hash = (hash ^ value) * 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 31);
+    }
+}
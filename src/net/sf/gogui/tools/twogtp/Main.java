@@ -31,17 +31,22 @@ public final class Main
                 "debugtocomment",
                 "force",
                 "games:",
+                "gametimeout:",
+                "gauntlet",
                 "help",
                 "handicap:",
                 "komi:",
                 "maxmoves:",
                 "observer:",
+                "openingorder:",
                 "openings:",
                 "referee:",
                 "sgffile:",
                 "size:",
+                "sprt:",
                 "threads:",
                 "time:",
+                "tournament:",
                 "verbose",
                 "version",
                 "white:",
@@ -63,17 +68,22 @@ public final class Main
                    "-debugtocomment save stderr of programs in SGF comments\n" +
                    "-force          overwrite existing files\n" +
                    "-games          number of games (0=unlimited)\n" +
+                   "-gametimeout s  wall-clock time limit per game in seconds\n" +
+                   "-gauntlet       tournament only against first program\n" +
                    "-help           display this help and exit\n" +
                    "-komi           komi\n" +
                    "-handicap       handicap\n" +
                    "-maxmoves       move limit\n" +
                    "-observer       command for observer program\n" +
+                   "-openingorder o sequential, random or balanced\n" +
                    "-openings       directory with opening sgf files\n" +
                    "-referee        command for referee program\n" +
                    "-sgffile        filename prefix\n" +
                    "-size           board size for autoplay (default 19)\n" +
+                   "-sprt spec      stop early by SPRT (elo0,elo1[,alpha,beta])\n" +
                    "-threads n      number of threads\n" +
                    "-time spec      set time limits (min[+min/moves])\n" +
+                   "-tournament f   play all pairings of programs in file\n" +
                    "-verbose        log GTP streams to stderr\n" +
                    "-version        print version and exit\n" +
                    "-white          command for white program\n" +
@@ -103,12 +113,25 @@ public final class Main
             boolean auto = opt.contains("auto");
             boolean debugToComment = opt.contains("debugtocomment");
             boolean verbose = opt.contains("verbose");
+            boolean tournament = opt.contains("tournament");
             String black = opt.get("black", "");
-            if (black.equals(""))
-                throw new ErrorMessage("No black program set");
             String white = opt.get("white", "");
-            if (white.equals(""))
-                throw new ErrorMessage("No white program set");
+            if (tournament)
+            {
+                if (! black.equals("") || ! white.equals(""))
+                    throw new ErrorMessage("Option -tournament cannot be"
+                                           + " used with -black or -white");
+            }
+            else
+            {
+                if (black.equals(""))
+                    throw new ErrorMessage("No black program set");
+                if (white.equals(""))
+                    throw new ErrorMessage("No white program set");
+                if (opt.contains("gauntlet"))
+                    throw new ErrorMessage("Option -gauntlet needs option"
+                                           + " -tournament");
+            }
             String referee = opt.get("referee", "");
             String observer = opt.get("observer", "");
             int size = opt.getInteger("size", GoPoint.DEFAULT_SIZE, 1,
@@ -122,20 +145,81 @@ public final class Main
             TimeSettings timeSettings = null;
             if (opt.contains("time"))
                 timeSettings = TimeSettings.parse(opt.get("time"));
-            int defaultGames = (auto ? 1 : 0);
+            Sprt sprt = null;
+            if (opt.contains("sprt"))
+            {
+                if (! auto)
+                    throw new ErrorMessage("Option -sprt needs option -auto");
+                sprt = Sprt.parse(opt.get("sprt"));
+            }
+            int defaultGames = (auto && sprt == null ? 1 : 0);
             int numberGames = opt.getInteger("games", defaultGames, 0);
             int numberThreads = opt.getInteger("threads", 1, 1);
             if (numberThreads > 1 && ! auto)
                 throw new ErrorMessage("Option -threads needs option -auto");
+            int gameTimeout = opt.getInteger("gametimeout", 0, 0);
+            if (gameTimeout > 0 && ! auto)
+                throw new ErrorMessage("Option -gametimeout needs option"
+                                       + " -auto");
             String sgfFile = opt.get("sgffile", "");
             if (opt.contains("games") && sgfFile.equals(""))
                 throw new ErrorMessage("Use option -sgffile with -games");
+            if (sprt != null && sgfFile.equals(""))
+                throw new ErrorMessage("Use option -sgffile with -sprt");
             Openings openings = null;
             if (opt.contains("openings"))
-                openings = new Openings(new File(opt.get("openings")));
+            {
+                String order = opt.get("openingorder", "sequential");
+                Openings.Order openingOrder;
+                if (order.equals("sequential"))
+                    openingOrder = Openings.Order.SEQUENTIAL;
+                else if (order.equals("random"))
+                    openingOrder = Openings.Order.RANDOM;
+                else if (order.equals("balanced"))
+                    openingOrder = Openings.Order.BALANCED;
+                else
+                    throw new ErrorMessage("Unknown opening order: " + order);
+                openings = new Openings(new File(opt.get("openings")),
+                                        openingOrder);
+            }
+            else if (opt.contains("openingorder"))
+                throw new ErrorMessage("Option -openingorder needs option"
+                                       + " -openings");
             boolean useXml = opt.contains("xml");
             if (auto)
                 System.in.close();
+            if (tournament)
+            {
+                if (! auto)
+                    throw new ErrorMessage("Option -tournament needs option"
+                                           + " -auto");
+                if (numberGames == 0)
+                    throw new ErrorMessage("Option -tournament needs a"
+                                           + " limited number of games");
+                if (sgfFile.equals(""))
+                    throw new ErrorMessage("Use option -sgffile with"
+                                           + " -tournament");
+                if (! observer.equals(""))
+                    throw new ErrorMessage("Option -observer cannot be used"
+                                           + " with -tournament");
+                if (sprt != null)
+                    throw new ErrorMessage("Option -sprt cannot be used"
+                                           + " with -tournament");
+                ArrayList<String> programs =
+                    Tournament.readPrograms(new File(opt.get("tournament")));
+                Tournament t =
+                    new Tournament(programs, opt.contains("gauntlet"),
+                                   referee, size, komi, handicap, numberGames,
+                                   alternate, sgfFile, force, verbose,
+                                   openings, timeSettings, useXml,
+                                   numberThreads);
+                t.setMaxMoves(maxMoves);
+                t.setGameTimeout(1000L * gameTimeout);
+                t.setDebugToComment(debugToComment);
+                if (! t.run())
+                    System.exit(1);
+                return;
+            }
 
             TwoGtp twoGtp[] = new TwoGtp[numberThreads];
             TwoGtpThread thread[] = new TwoGtpThread[numberThreads];
@@ -161,11 +245,15 @@ public final class Main
                 for (Program program : allPrograms)
                     program.setLabel(allPrograms);
                 if (! sgfFile.equals("") && resultFile == null)
+                {
                     resultFile =
                         new ResultFile(force, blackProgram, whiteProgram,
                                        refereeProgram, numberGames, size,
                                        komi, sgfFile, openings, alternate,
                                        useXml, numberThreads);
+                    if (sprt != null)
+                        resultFile.setSprt(sprt);
+                }
                 if (i > 0)
                     verbose = false;
                 twoGtp[i] = new TwoGtp(blackProgram, whiteProgram,
@@ -174,6 +262,7 @@ public final class Main
                                        verbose, openings, timeSettings,
                                        resultFile);
                 twoGtp[i].setMaxMoves(maxMoves);
+                twoGtp[i].setGameTimeout(1000L * gameTimeout);
                 if (debugToComment)
                     twoGtp[i].setDebugToComment(true);
                 if (auto)
@@ -184,8 +273,18 @@ public final class Main
             }
             if (auto)
             {
+                Watchdog watchdog = null;
+                if (gameTimeout > 0 || numberThreads > 1)
+                {
+                    watchdog = new Watchdog(twoGtp, numberThreads > 1);
+                    watchdog.start();
+                }
                 for (int i = 0; i < numberThreads; ++i)
                     thread[i].join();
+                if (watchdog != null)
+                    watchdog.interrupt();
+                if (numberThreads > 1)
+                    Watchdog.printStatistics(twoGtp);
                 for (int i = 0; i < numberThreads; ++i)
                     if (thread[i].getException() != null)
                     {
@@ -6,8 +6,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileFilter;
 import java.io.IOException;
-import net.sf.gogui.game.GameInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.go.BoardUtil;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.util.ErrorMessage;
@@ -22,24 +35,100 @@ class Filter
     }
 }
 
-/** Access opening SGF files from directory. */
+/** Opening SGF files from a directory.
+    All files are read once at construction and the main variation of each
+    file (setup stones, player to move and moves) is stored in a compact
+    array of integers, from which getTree() creates a new game tree for
+    each game. Other properties of the files are not used. Openings that
+    are equal to a previous opening (in the order of the file names) after
+    a rotation or mirroring of the board are ignored. The class is
+    immutable after construction apart from the cached permutation of
+    Order.BALANCED, and can be shared by the threads of twogtp. */
 public class Openings
 {
+    /** Order in which openings are assigned to games. */
+    public enum Order
+    {
+        /** Use the openings in the order of the file names. */
+        SEQUENTIAL,
+
+        /** Choose an opening randomly for each game. */
+        RANDOM,
+
+        /** Use each opening once in a random order, then repeat with a
+            different random order. */
+        BALANCED
+    }
+
     public Openings(File directory) throws ErrorMessage
+    {
+        this(directory, Order.SEQUENTIAL);
+    }
+
+    public Openings(File directory, Order order) throws ErrorMessage
     {
         if (! directory.isDirectory())
             throw new ErrorMessage(directory + " is not a directory");
         m_directory = directory;
-        m_files = directory.listFiles(new Filter());
-        if (m_files.length == 0)
+        m_order = order;
+        File[] files = directory.listFiles(new Filter());
+        if (files.length == 0)
             throw new ErrorMessage("No SGF files found in " + directory);
-        sortFiles();
-        m_currentFile = -1;
+        Arrays.sort(files);
+        ArrayList<File> loaded = new ArrayList<File>(files.length);
+        HashSet<String> canonical = new HashSet<String>();
+        int[] begin = new int[files.length + 1];
+        int[] boardSize = new int[files.length];
+        for (File file : files)
+        {
+            int n = loaded.size();
+            int size;
+            try
+            {
+                size = read(file);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Ignoring opening " + file + ": "
+                                   + e.getMessage());
+                m_dataSize = begin[n];
+                continue;
+            }
+            catch (SgfError e)
+            {
+                System.err.println("Ignoring opening " + file + ": "
+                                   + e.getMessage());
+                m_dataSize = begin[n];
+                continue;
+            }
+            int end = m_dataSize;
+            if (! canonical.add(getCanonical(size, begin[n], end)))
+            {
+                ++m_numberDuplicates;
+                m_dataSize = begin[n];
+                continue;
+            }
+            loaded.add(file);
+            boardSize[n] = size;
+            begin[n + 1] = end;
+        }
+        int number = loaded.size();
+        if (number == 0)
+            throw new ErrorMessage("No valid SGF files found in "
+                                   + directory);
+        m_files = loaded.toArray(new File[number]);
+        m_boardSize = Arrays.copyOf(boardSize, number);
+        m_begin = Arrays.copyOf(begin, number + 1);
+        m_data = Arrays.copyOf(m_data, m_dataSize);
+        if (m_numberDuplicates > 0)
+            System.err.println("Ignored " + m_numberDuplicates
+                               + " duplicate openings in " + directory);
     }
 
-    public int getBoardSize()
+    /** Get the board size of an opening. */
+    public int getBoardSize(int i)
     {
-        return getTree().getBoardSize();
+        return m_boardSize[i];
     }
 
     /** Get name of directory. */
@@ -48,57 +137,255 @@ public class Openings
         return m_directory.toString();
     }
 
-    /** Get name of currently loaded file. */
-    public String getFilename()
+    /** Get the file of an opening. */
+    public File getFile(int i)
     {
-        return m_files[m_currentFile].toString();
+        return m_files[i];
     }
 
-    /** Get game information of currently loaded file. */
-    public GameInfo getGameInfo()
+    /** Get the opening for a game.
+        @param gameNumber The number of the game (the number of the game
+        pair, if colors are alternated, so that both games of a pair use the
+        same opening). The choice only depends on this number and the
+        order, so that it does not change if a match is continued.
+        @return The index of the opening. */
+    public int getIndex(int gameNumber)
     {
-        return m_tree.getGameInfo(m_tree.getRoot());
+        int number = getNumber();
+        switch (m_order)
+        {
+        case RANDOM:
+            return (int)((mix(gameNumber) >>> 1) % number);
+        case BALANCED:
+            return getBalancedIndex(gameNumber);
+        default:
+            return gameNumber % number;
+        }
     }
 
-    /** Get game tree of currently loaded file. */
-    public GameTree getTree()
+    /** Get number of openings. */
+    public int getNumber()
     {
-        return m_tree;
+        return m_files.length;
     }
 
-    /** Get number of opening files in directory. */
-    public int getNumber()
+    /** Get the number of ignored duplicate openings. */
+    public int getNumberDuplicates()
     {
-        return m_files.length;
+        return m_numberDuplicates;
     }
 
-    /** Load opening file number i. */
-    public void loadFile(int i) throws IOException, SgfError
+    /** Create a game tree for an opening.
+        Returns a new tree for each call, which can be modified. */
+    public GameTree getTree(int i)
     {
-        File file = m_files[i];
-        FileInputStream fileStream = new FileInputStream(file);
-        SgfReader reader = new SgfReader(fileStream, file, null, 0);
-        m_tree = reader.getTree();
-        m_currentFile = i;
+        Node root = new Node();
+        Node node = root;
+        for (int j = m_begin[i]; j < m_begin[i + 1]; ++j)
+        {
+            int code = m_data[j];
+            GoColor color = COLORS[(code >> 10) & 3];
+            GoPoint point = getPoint(code);
+            switch (code >> 12)
+            {
+            case KIND_NODE:
+                Node child = new Node();
+                node.append(child);
+                node = child;
+                break;
+            case KIND_MOVE:
+                node.setMove(Move.get(color, point));
+                break;
+            case KIND_SETUP:
+                node.addStone(color, point);
+                break;
+            case KIND_PLAYER:
+                node.setPlayer(color);
+                break;
+            default:
+                assert false;
+            }
+        }
+        return new GameTree(m_boardSize[i], root);
     }
 
-    private int m_currentFile;
+    private static final int KIND_MOVE = 0;
+
+    private static final int KIND_SETUP = 1;
+
+    private static final int KIND_PLAYER = 2;
+
+    /** Start of the next node in the main variation. */
+    private static final int KIND_NODE = 3;
+
+    private static final GoColor[] COLORS = { BLACK, WHITE, EMPTY };
+
+    private int m_dataSize;
+
+    private int m_numberDuplicates;
+
+    /** Cycle of the cached permutation for Order.BALANCED. */
+    private int m_permutationCycle = -1;
+
+    /** Board size of each opening. */
+    private final int[] m_boardSize;
+
+    /** Start of each opening in m_data (with an additional element for
+        the end of the last opening). */
+    private final int[] m_begin;
+
+    /** Encoded setup stones, players, moves and node starts of all
+        openings.
+        Bits 0-9 contain the point (0 for pass, otherwise 1 + x + 32 y),
+        bits 10-11 the color (index in COLORS), bits 12-13 the kind. */
+    private int[] m_data = new int[1024];
+
+    private int[] m_permutation;
 
     private final File m_directory;
 
-    private File[] m_files;
+    private final File[] m_files;
+
+    private final Order m_order;
+
+    private void add(int kind, GoColor color, GoPoint point)
+    {
+        if (m_dataSize == m_data.length)
+            m_data = Arrays.copyOf(m_data, 2 * m_data.length);
+        int colorIndex = (color == BLACK ? 0 : (color == WHITE ? 1 : 2));
+        int pointCode =
+            (point == null ? 0 : 1 + point.getX() + 32 * point.getY());
+        m_data[m_dataSize++] = (kind << 12) | (colorIndex << 10) | pointCode;
+    }
+
+    /** Get a key for the opening that is the same for all rotations and
+        mirrorings.
+        The key is the smallest of the encodings of the opening under all
+        rotation modes, as a string for hashing. */
+    private String getCanonical(int size, int begin, int end)
+    {
+        char[] result = null;
+        char[] key = new char[end - begin + 1];
+        key[0] = (char)size;
+        for (int mode = 0; mode < BoardUtil.NUMBER_ROTATIONS; ++mode)
+        {
+            for (int j = begin; j < end; ++j)
+            {
+                int code = m_data[j];
+                GoPoint point =
+                    BoardUtil.rotate(mode, getPoint(code), size);
+                int pointCode =
+                    (point == null ? 0 : 1 + point.getX() + 32 * point.getY());
+                key[j - begin + 1] = (char)((code & ~1023) | pointCode);
+            }
+            sortSetup(key);
+            if (result == null || compare(key, result) < 0)
+                result = key.clone();
+        }
+        return new String(result);
+    }
+
+    private static int compare(char[] a, char[] b)
+    {
+        for (int i = 0; i < a.length; ++i)
+            if (a[i] != b[i])
+                return (a[i] < b[i] ? -1 : 1);
+        return 0;
+    }
+
+    /** Sort the setup stones of each node in an encoded opening.
+        The order of the setup stones depends on the order in the file and
+        changes under rotation and mirroring, so it must not be part of the
+        key. Sorting the codes sorts by color and then by point, because
+        the color is stored in the higher bits. */
+    private static void sortSetup(char[] key)
+    {
+        int i = 1;
+        while (i < key.length)
+        {
+            if ((key[i] >> 12) != KIND_SETUP)
+            {
+                ++i;
+                continue;
+            }
+            int start = i;
+            while (i < key.length && (key[i] >> 12) == KIND_SETUP)
+                ++i;
+            Arrays.sort(key, start, i);
+        }
+    }
+
+    /** Get the opening for a game with Order.BALANCED.
+        The lookup is done while holding the lock, because the cached
+        permutation is overwritten in place when a thread needs the
+        permutation of another cycle. */
+    private synchronized int getBalancedIndex(int gameNumber)
+    {
+        int number = getNumber();
+        int cycle = gameNumber / number;
+        if (cycle != m_permutationCycle)
+        {
+            if (m_permutation == null)
+                m_permutation = new int[number];
+            for (int i = 0; i < number; ++i)
+                m_permutation[i] = i;
+            Random random = new Random(mix(cycle));
+            for (int i = number - 1; i > 0; --i)
+            {
+                int j = random.nextInt(i + 1);
+                int tmp = m_permutation[i];
+                m_permutation[i] = m_permutation[j];
+                m_permutation[j] = tmp;
+            }
+            m_permutationCycle = cycle;
+        }
+        return m_permutation[gameNumber % number];
+    }
+
+    private static GoPoint getPoint(int code)
+    {
+        int pointCode = code & 1023;
+        if (pointCode == 0)
+            return null;
+        return GoPoint.get((pointCode - 1) % 32, (pointCode - 1) / 32);
+    }
 
-    private GameTree m_tree;
+    /** Finalizer of SplitMix64, used as a hash function for the game
+        numbers. */
+    private static long mix(long value)
+    {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
 
-    private void sortFiles()
+    /** Read the main variation of a file and append it to m_data.
+        @return The board size. */
+    private int read(File file) throws IOException, SgfError
     {
-        for (int i = 0; i < m_files.length - 1; ++i)
-            for (int j = i + 1; j < m_files.length; ++j)
-                if (m_files[i].compareTo(m_files[j]) > 0)
-                {
-                    File tmp = m_files[i];
-                    m_files[i] = m_files[j];
-                    m_files[j] = tmp;
-                }
+        FileInputStream fileStream = new FileInputStream(file);
+        SgfReader reader = new SgfReader(fileStream, file, null, 0);
+        GameTree tree = reader.getTree();
+        ConstNode node = tree.getRootConst();
+        while (true)
+        {
+            for (GoColor c : COLORS)
+            {
+                ConstPointList setup = node.getSetup(c);
+                for (int i = 0; i < setup.size(); ++i)
+                    add(KIND_SETUP, c, setup.get(i));
+            }
+            if (node.getPlayer() != null)
+                add(KIND_PLAYER, node.getPlayer(), null);
+            Move move = node.getMove();
+            if (move != null)
+                add(KIND_MOVE, move.getColor(), move.getPoint());
+            node = node.getChildConst();
+            if (node == null)
+                break;
+            add(KIND_NODE, BLACK, null);
+        }
+        return tree.getBoardSize();
     }
 }
@@ -18,31 +18,11 @@ public class Program
     public Program(String command, String defaultName, String logPrefix,
                    boolean verbose) throws GtpError
     {
+        m_command = command;
         m_defaultName = defaultName;
-        m_gtp = new GtpClient(command, null, verbose, null);
-        m_gtp.setLogPrefix(logPrefix);
-        m_synchronizer = new GtpSynchronizer(m_gtp);
-        m_gtp.queryProtocolVersion();
-        try
-        {
-            m_name = m_gtp.send("name");
-            if (m_name.trim().equals(""))
-                m_name = defaultName;
-        }
-        catch (GtpError e)
-        {
-            m_name = defaultName;
-        }
-        try
-        {
-            m_version = m_gtp.send("version");
-        }
-        catch (GtpError e)
-        {
-            m_version = "";
-        }
-        m_gtp.querySupportedCommands();
-        m_gtp.queryInterruptSupport();
+        m_logPrefix = logPrefix;
+        m_verbose = verbose;
+        start();
     }
 
     public void close()
@@ -123,6 +103,14 @@ public class Program
         }
     }
 
+    /** Kill the program.
+        Can be called from another thread to terminate a program that
+        does not respond. */
+    public synchronized void kill()
+    {
+        m_gtp.destroyProcess();
+    }
+
     public boolean isOutOfSync()
     {
         return m_synchronizer.isOutOfSync();
@@ -138,6 +126,20 @@ public class Program
         return m_gtp.isSupported(command);
     }
 
+    /** Start a new instance of the program.
+        Used after the program died or was killed. The label and the IO
+        callback are kept.
+        @throws GtpError If the new instance cannot be started. */
+    public synchronized void restart() throws GtpError
+    {
+        m_gtp.destroyProcess();
+        m_gtp.close();
+        m_gtp.waitForExit();
+        m_cpuTime = 0;
+        start();
+        m_gtp.setIOCallback(m_callback);
+    }
+
     public String send(String command) throws GtpError
     {
         return m_gtp.send(command);
@@ -163,6 +165,7 @@ public class Program
 
     public void setIOCallback(GtpClient.IOCallback callback)
     {
+        m_callback = callback;
         m_gtp.setIOCallback(callback);
     }
 
@@ -191,12 +194,17 @@ public class Program
             m_label = m_name + "[" + (programs.indexOf(this) + 1) + "]";
     }
 
-    public void setTableProperties(Table table)
+    /** Store name, version, label and command in the result table.
+        @param key The role of the program in the match (Black, White or
+        Referee), used as prefix of the property keys. The role can differ
+        from the default name, if the program is reused in the pairings of
+        a tournament. */
+    public void setTableProperties(Table table, String key)
     {
-        table.setProperty(m_defaultName, m_name);
-        table.setProperty(m_defaultName + "Version", m_version);
-        table.setProperty(m_defaultName + "Label", m_label);
-        table.setProperty(m_defaultName + "Command", getProgramCommand());
+        table.setProperty(key, m_name);
+        table.setProperty(key + "Version", m_version);
+        table.setProperty(key + "Label", m_label);
+        table.setProperty(key + "Command", getProgramCommand());
     }
 
     public void synchronize(ConstGame game) throws GtpError
@@ -240,17 +248,53 @@ public class Program
         m_synchronizer.updateAfterGenmove(board);
     }
 
+    private final boolean m_verbose;
+
     private double m_cpuTime;
 
+    private final String m_command;
+
     private final String m_defaultName;
 
+    private final String m_logPrefix;
+
     private String m_label;
 
-    private final GtpClient m_gtp;
+    private GtpClient m_gtp;
+
+    private GtpClient.IOCallback m_callback;
 
-    private final GtpSynchronizer m_synchronizer;
+    private GtpSynchronizer m_synchronizer;
 
     private String m_name;
 
     private String m_version;
+
+    private void start() throws GtpError
+    {
+        m_gtp = new GtpClient(m_command, null, m_verbose, null);
+        m_gtp.setLogPrefix(m_logPrefix);
+        m_synchronizer = new GtpSynchronizer(m_gtp);
+        m_gtp.queryProtocolVersion();
+        try
+        {
+            m_name = m_gtp.send("name");
+            if (m_name.trim().equals(""))
+                m_name = m_defaultName;
+        }
+        catch (GtpError e)
+        {
+            m_name = m_defaultName;
+        }
+        try
+        {
+            m_version = m_gtp.send("version");
+        }
+        catch (GtpError e)
+        {
+            m_version = "";
+        }
+        m_gtp.querySupportedCommands();
+        m_gtp.queryInterruptSupport();
+    }
 }
@@ -2,13 +2,18 @@
 
 package net.sf.gogui.tools.twogtp;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.text.NumberFormat;
@@ -28,8 +33,28 @@ import net.sf.gogui.util.Table;
 import net.sf.gogui.xml.XmlWriter;
 import net.sf.gogui.version.Version;
 
+/** Result table and game files of a twogtp run.
+    The results of finished games are appended to a journal file
+    (prefix.dat.journal), instead of rewriting the complete result table
+    (prefix.dat) after each game. The journal is flushed after each game,
+    but only synchronized to the disk after SYNC_GAMES games or
+    SYNC_INTERVAL milliseconds. The sorted result table is written at
+    start, by saveTable() and by close(). If the journal still exists at
+    start (because the previous run was terminated), its results are added
+    to the table. */
 public class ResultFile
 {
+    /** Maximum number of times a game is started.
+        @see #releaseGameIndex */
+    public static final int MAX_GAME_STARTS = 3;
+
+    /** Maximum number of results not synchronized to the disk. */
+    public static final int SYNC_GAMES = 16;
+
+    /** Maximum time in milliseconds for results not synchronized to the
+        disk. */
+    public static final long SYNC_INTERVAL = 10000;
+
     public ResultFile(boolean force, Program black, Program white,
                       Program referee, int numberGames, int size, Komi komi,
                       String filePrefix, Openings openings, boolean alternate,
@@ -40,18 +65,24 @@ public class ResultFile
         m_numberGames = numberGames;
         m_useXml = useXml;
         m_numberThreads = numberThreads;
+        m_duplicateIndex = new DuplicateIndex(size);
         m_lockFile = new File(filePrefix + ".lock");
         acquireLock();
         m_tableFile = new File(filePrefix + ".dat");
+        m_journalFile = getJournalFile(m_tableFile);
         if (force)
         {
             if (m_tableFile.exists() && ! m_tableFile.delete())
                 throw new ErrorMessage("Could not delete file '"
                                        + m_tableFile + "'");
+            if (m_journalFile.exists() && ! m_journalFile.delete())
+                throw new ErrorMessage("Could not delete file '"
+                                       + m_journalFile + "'");
         }
         if (m_tableFile.exists())
         {
-            m_table = readTable(m_tableFile, numberGames, m_gameExists);
+            m_table = readTable(m_tableFile, m_journalFile, numberGames,
+                                m_gameExists);
             m_nextGameIndex = 0;
             while (m_gameExists.contains(m_nextGameIndex))
             {
@@ -69,6 +100,7 @@ public class ResultFile
             m_table = createTable(black, white, referee, size, komi, openings);
             m_nextGameIndex = 0;
         }
+        saveTable();
     }
 
     public synchronized void addResult(int gameIndex, ConstGame game,
@@ -84,9 +116,9 @@ public class ResultFile
         ArrayList<Compare.Placement> moves
             = Compare.getPlacements(game.getTree().getRootConst());
         String duplicate =
-            Compare.checkDuplicate(game.getBoard(), moves, m_games,
-                                   m_alternate, alternated);
+            m_duplicateIndex.checkDuplicate(moves, m_alternate, alternated);
         NumberFormat format = StringUtil.getNumberFormat(1);
+        int row = m_table.getNumberRows();
         m_table.startRow();
         m_table.set("GAME", Integer.toString(gameIndex));
         m_table.set("RES_B", resultBlack);
@@ -101,6 +133,13 @@ public class ResultFile
         m_table.set("CPU_W", format.format(cpuTimeWhite));
         m_table.set("ERR", error ? "1" : "0");
         m_table.set("ERR_MSG", errorMessage);
+        appendToJournal(row);
+        if (m_sprt != null && ! m_sprt.isFinished())
+        {
+            addSprtResult(row);
+            if (m_sprt.isFinished())
+                saveTable();
+        }
 
         // The code does not rely on the table being sorted by game number,
         // but it looks nicer for the user.
@@ -115,19 +154,6 @@ public class ResultFile
             rowBegin = gameIndex;
         m_table.sortByIntColumn("GAME", rowBegin, rowEnd);
 
-        File tmpFile = new File(m_tableFile.getAbsolutePath() + ".new");
-        try
-        {
-            m_table.save(tmpFile);
-            if (Platform.isWindows())
-                // File.renameTo() fails on Windows if target exists
-                m_tableFile.delete();
-            tmpFile.renameTo(m_tableFile);
-        }
-        catch (IOException e)
-        {
-            throw new ErrorMessage("Could not write to: " + m_tableFile);
-        }
         File file = getFile(gameIndex);
         try
         {
@@ -138,7 +164,7 @@ public class ResultFile
             else
                 new SgfWriter(out, game.getTree(),
                               "gogui-twogtp", Version.get());
-            m_games.put(gameIndex, moves);
+            m_duplicateIndex.add(gameIndex, moves);
         }
         catch (FileNotFoundException e)
         {
@@ -147,8 +173,22 @@ public class ResultFile
         }
     }
 
-    public void close()
+    /** Write the result table and delete the journal.
+        Must not be called more than once. */
+    public synchronized void close()
     {
+        try
+        {
+            saveTable();
+            closeJournal();
+            if (! m_journalFile.delete())
+                System.err.println("Could not delete '" + m_journalFile
+                                   + "'");
+        }
+        catch (ErrorMessage e)
+        {
+            System.err.println(e.getMessage());
+        }
         try
         {
             m_lockFileChannel.close();
@@ -161,8 +201,13 @@ public class ResultFile
             System.err.println("Could not delete '" + m_lockFile + "'");
     }
 
+    /** Get the index of the next game to play.
+        @return The index or -1, if the maximum number of games was reached
+        or a hypothesis of the SPRT was accepted. */
     public synchronized int getNextGameIndex()
     {
+        if (m_sprt != null && m_sprt.isFinished())
+            return -1;
         if (m_nextGameIndex != -1)
             while (m_gameExists.contains(m_nextGameIndex))
             {
@@ -178,6 +223,197 @@ public class ResultFile
         return m_nextGameIndex;
     }
 
+    /** Get the result of a game from the elements of its row in the
+        result table.
+        Uses the result of the referee, if it is known, otherwise the result
+        of Black or White. Errors and duplicate games are ignored as by
+        Analyze.
+        @return The result from the point of view of Black (B+..., W+... or
+        0 for a draw) or null, if the game has no usable result. */
+    public static String getResult(String error, String duplicate,
+                                   String resultReferee, String resultBlack,
+                                   String resultWhite)
+    {
+        if (! "0".equals(error))
+            return null;
+        if (duplicate != null && ! duplicate.equals("")
+            && ! duplicate.equals("-"))
+            return null;
+        if (isKnownResult(resultReferee))
+            return resultReferee.trim();
+        if (isKnownResult(resultBlack))
+            return resultBlack.trim();
+        if (isKnownResult(resultWhite))
+            return resultWhite.trim();
+        return null;
+    }
+
+    /** Get the name of the journal file for a result table.
+        @param tableFile The result table (prefix.dat).
+        @return The journal (prefix.dat.journal). */
+    public static File getJournalFile(File tableFile)
+    {
+        return new File(tableFile.getPath() + ".journal");
+    }
+
+    /** Add the results in a journal file to a table.
+        Ignores the last line, if it is not terminated by a newline (it was
+        written when the program was terminated), invalid lines and results
+        for games that are already in the table. Does not sort the table.
+        @param file The journal file.
+        @param table The table.
+        @return The number of added results. */
+    public static int readJournal(File file, Table table) throws ErrorMessage
+    {
+        TreeSet<Integer> gameExists = new TreeSet<Integer>();
+        int gameColumn = table.getColumnIndex("GAME");
+        for (int i = 0; i < table.getNumberRows(); ++i)
+            gameExists.add(table.getInt(gameColumn, i));
+        int numberColumns = table.getNumberColumns();
+        int numberAdded = 0;
+        int lineNumber = 0;
+        try
+        {
+            Reader reader = new FileReader(file);
+            try
+            {
+                StringBuilder line = new StringBuilder();
+                char[] buffer = new char[8192];
+                int n;
+                while ((n = reader.read(buffer)) > 0)
+                    for (int i = 0; i < n; ++i)
+                    {
+                        if (buffer[i] != '\n')
+                        {
+                            line.append(buffer[i]);
+                            continue;
+                        }
+                        ++lineNumber;
+                        String[] array = line.toString().split("\t", -1);
+                        line.setLength(0);
+                        int gameIndex = -1;
+                        if (array.length == numberColumns)
+                        {
+                            try
+                            {
+                                gameIndex =
+                                    Integer.parseInt(array[gameColumn]);
+                            }
+                            catch (NumberFormatException e)
+                            {
+                            }
+                        }
+                        if (gameIndex < 0)
+                        {
+                            System.err.println(file + ":" + lineNumber
+                                               + ": invalid line");
+                            continue;
+                        }
+                        if (! gameExists.add(gameIndex))
+                            continue;
+                        // Trailing empty elements are null as in
+                        // Table.read()
+                        int last = numberColumns - 1;
+                        while (last >= 0 && array[last].equals(""))
+                            --last;
+                        table.startRow();
+                        for (int j = 0; j <= last; ++j)
+                            table.set(j, array[j]);
+                        ++numberAdded;
+                    }
+                if (line.length() > 0)
+                    System.err.println(file + ": ignoring incomplete line");
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Read error: " + file);
+        }
+        return numberAdded;
+    }
+
+    /** Return a game that could not be finished because a program died
+        or was killed.
+        The game will be returned again by getNextGameIndex(), unless it was
+        already started MAX_GAME_STARTS times.
+        @param gameIndex The game index returned by getNextGameIndex().
+        @return true, if the game will be played again, false if the
+        game should be saved as an error. */
+    public synchronized boolean releaseGameIndex(int gameIndex)
+    {
+        if (m_sprt != null && m_sprt.isFinished())
+            return false;
+        Integer starts = m_gameStarts.get(gameIndex);
+        int numberStarts = (starts == null ? 1 : starts.intValue() + 1);
+        if (numberStarts >= MAX_GAME_STARTS)
+            return false;
+        m_gameStarts.put(gameIndex, numberStarts);
+        m_gameExists.remove(gameIndex);
+        if (m_nextGameIndex == -1 || gameIndex < m_nextGameIndex)
+            m_nextGameIndex = gameIndex;
+        return true;
+    }
+
+    /** Stop the match early with a sequential probability ratio test.
+        Adds the results that are already in the table to the test.
+        After each result, the test decides if the match is stopped. If a
+        hypothesis is accepted, getNextGameIndex() returns -1, so that all
+        threads stop after their current game, and the decision is stored
+        in the table property SprtResult. */
+    public synchronized void setSprt(Sprt sprt) throws ErrorMessage
+    {
+        m_sprt = sprt;
+        String spec = m_table.getProperty("Sprt");
+        if (spec != null && ! spec.equals(sprt.toString()))
+            throw new ErrorMessage("File " + m_tableFile + " was created"
+                                   + " with different SPRT parameters ("
+                                   + spec + ")");
+        m_table.setProperty("Sprt", sprt.toString());
+        for (int i = 0; i < m_table.getNumberRows() && ! sprt.isFinished();
+             ++i)
+            addSprtResult(i);
+        saveTable();
+    }
+
+    /** Write the sorted result table and clear the journal.
+        Called at start and by close(), but can also be called to make the
+        result table of a running match complete. */
+    public synchronized void saveTable() throws ErrorMessage
+    {
+        m_table.sortByIntColumn("GAME", 0, m_table.getNumberRows());
+        File tmpFile = new File(m_tableFile.getAbsolutePath() + ".new");
+        try
+        {
+            m_table.save(tmpFile);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + m_tableFile);
+        }
+        // The journal must not be truncated if the table could not be
+        // replaced, because results in the journal would be lost. The new
+        // table file is kept in this case.
+        // File.renameTo() fails on Windows if target exists
+        if (Platform.isWindows() && m_tableFile.exists()
+            && ! m_tableFile.delete())
+            throw new ErrorMessage("Could not write to: " + m_tableFile);
+        if (! tmpFile.renameTo(m_tableFile))
+            throw new ErrorMessage("Could not write to: " + m_tableFile);
+        // Results in the journal that are also in the table are ignored
+        // by readJournal(), so it does not matter if we are terminated
+        // between writing the table and truncating the journal
+        closeJournal();
+        openJournal(false);
+    }
+
     private final boolean m_alternate;
 
     private final boolean m_useXml;
@@ -186,6 +422,10 @@ public class ResultFile
 
     private int m_nextGameIndex;
 
+    /** Number of times released games were started. */
+    private final TreeMap<Integer,Integer> m_gameStarts
+        = new TreeMap<Integer,Integer>();
+
     private final int m_numberGames;
 
     private final int m_numberThreads;
@@ -196,12 +436,25 @@ public class ResultFile
 
     private final File m_lockFile;
 
+    private final File m_journalFile;
+
+    private FileOutputStream m_journalStream;
+
+    private Writer m_journalWriter;
+
+    /** Number of results in the journal not synchronized to the disk. */
+    private int m_numberUnsynced;
+
+    /** Time of last synchronization of the journal to the disk. */
+    private long m_lastSync;
+
     private FileChannel m_lockFileChannel;
 
     private final Table m_table;
 
-    private final TreeMap<Integer, ArrayList<Compare.Placement>> m_games
-        = new TreeMap<Integer, ArrayList<Compare.Placement>>();
+    private final DuplicateIndex m_duplicateIndex;
+
+    private Sprt m_sprt;
 
     private void acquireLock() throws ErrorMessage
     {
@@ -223,6 +476,76 @@ public class ResultFile
         }
     }
 
+    /** Add a result in the table to the SPRT.
+        Prints and stores the decision, if a hypothesis is accepted. */
+    private void addSprtResult(int row) throws ErrorMessage
+    {
+        String result = getResult(m_table.get("ERR", row),
+                                  m_table.get("DUP", row),
+                                  m_table.get("RES_R", row),
+                                  m_table.get("RES_B", row),
+                                  m_table.get("RES_W", row));
+        if (result == null)
+            return;
+        m_sprt.addResult(result);
+        if (m_sprt.isFinished())
+        {
+            String decision = m_sprt.getResult();
+            m_table.setProperty("SprtResult", decision);
+            System.err.println("SPRT: " + decision);
+        }
+    }
+
+    private void appendToJournal(int row) throws ErrorMessage
+    {
+        try
+        {
+            int numberColumns = m_table.getNumberColumns();
+            for (int i = 0; i < numberColumns; ++i)
+            {
+                String value = m_table.get(i, row);
+                if (value != null)
+                    m_journalWriter.write(value);
+                m_journalWriter.write(i < numberColumns - 1 ? '\t' : '\n');
+            }
+            m_journalWriter.flush();
+            ++m_numberUnsynced;
+            long time = System.currentTimeMillis();
+            if (m_numberUnsynced >= SYNC_GAMES
+                || time - m_lastSync >= SYNC_INTERVAL)
+            {
+                m_journalStream.getChannel().force(false);
+                m_numberUnsynced = 0;
+                m_lastSync = time;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + m_journalFile);
+        }
+    }
+
+    private void closeJournal() throws ErrorMessage
+    {
+        if (m_journalWriter == null)
+            return;
+        try
+        {
+            m_journalWriter.flush();
+            m_journalStream.getChannel().force(false);
+            m_journalWriter.close();
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + m_journalFile);
+        }
+        finally
+        {
+            m_journalWriter = null;
+            m_journalStream = null;
+        }
+    }
+
     private Table createTable(Program black, Program white, Program referee,
                               int size, Komi komi, Openings openings)
     {
@@ -241,12 +564,12 @@ public class ResultFile
         columns.add("ERR");
         columns.add("ERR_MSG");
         Table table = new Table(columns);
-        black.setTableProperties(table);
-        white.setTableProperties(table);
+        black.setTableProperties(table, "Black");
+        white.setTableProperties(table, "White");
         if (referee == null)
             table.setProperty("Referee", "-");
         else
-            referee.setTableProperties(table);
+            referee.setTableProperties(table, "Referee");
         table.setProperty("Size", Integer.toString(size));
         table.setProperty("Komi", komi.toString());
         if (openings != null)
@@ -267,6 +590,32 @@ public class ResultFile
             return new File(m_filePrefix + "-" + gameIndex + ".sgf");
     }
 
+    private static boolean isKnownResult(String result)
+    {
+        if (result == null)
+            return false;
+        String s = result.trim();
+        return (s.startsWith("B+") || s.startsWith("W+")
+                || s.startsWith("0"));
+    }
+
+    private void openJournal(boolean append) throws ErrorMessage
+    {
+        try
+        {
+            m_journalStream = new FileOutputStream(m_journalFile, append);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage("Could not open " + m_journalFile + ": "
+                                   + e.getMessage());
+        }
+        m_journalWriter =
+            new BufferedWriter(new OutputStreamWriter(m_journalStream));
+        m_numberUnsynced = 0;
+        m_lastSync = System.currentTimeMillis();
+    }
+
     private void readGames()
     {
         for (int n = 0; n < m_numberGames; ++n)
@@ -286,7 +635,7 @@ public class ResultFile
                 FileInputStream fileStream = new FileInputStream(file);
                 SgfReader reader = new SgfReader(fileStream, file, null, 0);
                 ConstNode root = reader.getTree().getRoot();
-                m_games.put(n, Compare.getPlacements(root));
+                m_duplicateIndex.add(n, Compare.getPlacements(root));
             }
             catch (SgfError e)
             {
@@ -301,7 +650,8 @@ public class ResultFile
         }
     }
 
-    private static Table readTable(File file, int numberGames,
+    private static Table readTable(File file, File journalFile,
+                                   int numberGames,
                                    TreeSet<Integer> gameExists)
         throws ErrorMessage
     {
@@ -309,6 +659,13 @@ public class ResultFile
         try
         {
             table.read(file);
+            if (journalFile.exists())
+            {
+                int n = readJournal(journalFile, table);
+                if (n > 0)
+                    System.err.println("Recovered " + n
+                                       + " results from " + journalFile);
+            }
             int numberRows = table.getNumberRows();
             if (numberGames > 0 && numberRows >= numberGames)
                 throw new ErrorMessage("File " + file + " already contains "
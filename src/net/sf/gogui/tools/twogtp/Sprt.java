@@ -0,0 +1,204 @@
+// Sprt.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.text.NumberFormat;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.StringUtil;
+
+/** Sequential probability ratio test for the results of a match.
+    Tests the hypothesis H0, that the Elo difference of Black (the program
+    set with option -black) to White is elo0, against the hypothesis H1,
+    that it is elo1, after each game, and accepts one of them as soon as
+    the log-likelihood ratio (LLR) crosses one of the bounds given by the
+    error probabilities alpha and beta. Uses the approximation for
+    win/draw/loss results of the generalized SPRT with the logistic Elo
+    model, which also fishtest and cutechess-cli use. */
+public final class Sprt
+{
+    /** Constructor.
+        @param elo0 Elo difference of hypothesis H0.
+        @param elo1 Elo difference of hypothesis H1, larger than elo0.
+        @param alpha Probability of accepting H1 if H0 is true.
+        @param beta Probability of accepting H0 if H1 is true. */
+    public Sprt(double elo0, double elo1, double alpha, double beta)
+    {
+        assert elo0 < elo1;
+        assert alpha > 0 && alpha < 1;
+        assert beta > 0 && beta < 1;
+        m_elo0 = elo0;
+        m_elo1 = elo1;
+        m_alpha = alpha;
+        m_beta = beta;
+        m_lowerBound = Math.log(beta / (1 - alpha));
+        m_upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /** Add the result of a game.
+        Results are ignored after a hypothesis was accepted.
+        @param result The result in the format of the result table from the
+        point of view of Black (B+..., W+... or 0 for a draw).
+        @return false, if the result is unknown and was ignored. */
+    public boolean addResult(String result)
+    {
+        String s = result.trim();
+        if (s.startsWith("B+"))
+            ++m_wins;
+        else if (s.startsWith("W+"))
+            ++m_losses;
+        else if (s.startsWith("0"))
+            ++m_draws;
+        else
+            return false;
+        if (m_decision == 0)
+        {
+            double llr = getLlr();
+            if (llr >= m_upperBound)
+                m_decision = 1;
+            else if (llr <= m_lowerBound)
+                m_decision = -1;
+        }
+        return true;
+    }
+
+    /** Get the log-likelihood ratio of H1 to H0 for the current results.
+        Outcomes that did not occur yet are counted as half a game,
+        otherwise the variance would be zero at the beginning of a match
+        or if one program wins all games. */
+    public double getLlr()
+    {
+        double wins = Math.max(m_wins, 0.5);
+        double draws = Math.max(m_draws, 0.5);
+        double losses = Math.max(m_losses, 0.5);
+        double n = wins + draws + losses;
+        double score = (wins + 0.5 * draws) / n;
+        double variance =
+            (wins * square(1 - score) + draws * square(0.5 - score)
+             + losses * square(score)) / n;
+        double score0 = getScore(m_elo0);
+        double score1 = getScore(m_elo1);
+        return n * (score1 - score0) * (2 * score - score0 - score1)
+            / (2 * variance);
+    }
+
+    public double getLowerBound()
+    {
+        return m_lowerBound;
+    }
+
+    public int getNumberGames()
+    {
+        return m_wins + m_draws + m_losses;
+    }
+
+    /** Get a description of the decision for the result table.
+        @return The description, or null if no hypothesis was accepted
+        yet. */
+    public String getResult()
+    {
+        if (m_decision == 0)
+            return null;
+        NumberFormat format = StringUtil.getNumberFormat(2);
+        return (m_decision > 0 ? "H1" : "H0") + " accepted (LLR="
+            + format.format(getLlr()) + ", bounds=["
+            + format.format(m_lowerBound) + ","
+            + format.format(m_upperBound) + "], games=" + getNumberGames()
+            + ", +" + m_wins + "=" + m_draws + "-" + m_losses + ")";
+    }
+
+    public double getUpperBound()
+    {
+        return m_upperBound;
+    }
+
+    /** Check if H0 was accepted (the Elo difference is elo0 or less). */
+    public boolean isH0Accepted()
+    {
+        return (m_decision < 0);
+    }
+
+    /** Check if H1 was accepted (the Elo difference is elo1 or more). */
+    public boolean isH1Accepted()
+    {
+        return (m_decision > 0);
+    }
+
+    public boolean isFinished()
+    {
+        return (m_decision != 0);
+    }
+
+    /** Parse the argument of option -sprt.
+        @param spec The Elo differences of H0 and H1 and optionally alpha
+        and beta (default 0.05), separated by commas (for example 0,10 or
+        0,10,0.05,0.1). */
+    public static Sprt parse(String spec) throws ErrorMessage
+    {
+        String[] args = spec.split(",");
+        if (args.length != 2 && args.length != 4)
+            throw new ErrorMessage("Invalid SPRT specification: " + spec);
+        double elo0;
+        double elo1;
+        double alpha = 0.05;
+        double beta = 0.05;
+        try
+        {
+            elo0 = Double.parseDouble(args[0].trim());
+            elo1 = Double.parseDouble(args[1].trim());
+            if (args.length == 4)
+            {
+                alpha = Double.parseDouble(args[2].trim());
+                beta = Double.parseDouble(args[3].trim());
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ErrorMessage("Invalid SPRT specification: " + spec);
+        }
+        if (! (elo0 < elo1))
+            throw new ErrorMessage("SPRT elo0 must be less than elo1");
+        if (! (alpha > 0 && alpha < 0.5 && beta > 0 && beta < 0.5))
+            throw new ErrorMessage("SPRT alpha and beta must be between 0"
+                                   + " and 0.5");
+        return new Sprt(elo0, elo1, alpha, beta);
+    }
+
+    /** Get the parameters in the format of the result table. */
+    public String toString()
+    {
+        return "elo0=" + m_elo0 + " elo1=" + m_elo1 + " alpha=" + m_alpha
+            + " beta=" + m_beta;
+    }
+
+    private final double m_alpha;
+
+    private final double m_beta;
+
+    private final double m_elo0;
+
+    private final double m_elo1;
+
+    private final double m_lowerBound;
+
+    private final double m_upperBound;
+
+    /** 1 if H1 was accepted, -1 if H0 was accepted, 0 otherwise. */
+    private int m_decision;
+
+    private int m_draws;
+
+    private int m_losses;
+
+    private int m_wins;
+
+    /** Expected score for an Elo difference. */
+    private static double getScore(double elo)
+    {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double square(double x)
+    {
+        return x * x;
+    }
+}
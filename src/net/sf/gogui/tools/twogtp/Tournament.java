@@ -0,0 +1,529 @@
+// Tournament.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import net.sf.gogui.game.TimeSettings;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.gtp.GtpError;
+import net.sf.gogui.util.ErrorMessage;
+import net.sf.gogui.util.StringUtil;
+import net.sf.gogui.util.Table;
+import net.sf.gogui.util.TableReader;
+
+/** Round-robin or gauntlet tournament between several programs.
+    Each pairing is a match with its own result file (prefix-i-j.dat,
+    with the numbers of the programs in the list, the first program plays
+    Black) and the given number of games. In a gauntlet, only the pairings
+    of the first program with each other program are played.
+    Each thread starts a program only when it plays its first pairing with
+    it and keeps it running until the end of the tournament, so that a
+    program is reused in all pairings it plays in that thread. A thread
+    prefers the unfinished pairings with the most programs it already
+    runs, and several threads can play the games of the same pairing.
+    Pairings with complete result files are skipped, so an interrupted
+    tournament can be continued. At the end, the cross table with the Elo
+    estimate is computed from the result files, printed and saved to
+    prefix.summary.dat. */
+public class Tournament
+{
+    public Tournament(ArrayList<String> programs, boolean gauntlet,
+                      String referee, int size, Komi komi, int handicap,
+                      int numberGames, boolean alternate, String filePrefix,
+                      boolean force, boolean verbose, Openings openings,
+                      TimeSettings timeSettings, boolean useXml,
+                      int numberThreads)
+        throws ErrorMessage
+    {
+        assert numberGames > 0;
+        if (programs.size() < 2)
+            throw new ErrorMessage("Tournament needs at least two programs");
+        m_programs = programs;
+        m_gauntlet = gauntlet;
+        m_referee = referee;
+        m_size = size;
+        m_komi = komi;
+        m_handicap = handicap;
+        m_numberGames = numberGames;
+        m_alternate = alternate;
+        m_filePrefix = filePrefix;
+        m_force = force;
+        m_verbose = verbose;
+        m_openings = openings;
+        m_timeSettings = timeSettings;
+        m_useXml = useXml;
+        m_current = new TwoGtp[numberThreads];
+        int numberPrograms = programs.size();
+        for (int i = 0; i < (gauntlet ? 1 : numberPrograms); ++i)
+            for (int j = i + 1; j < numberPrograms; ++j)
+            {
+                Pairing pairing = new Pairing(i, j, filePrefix + "-" + (i + 1)
+                                              + "-" + (j + 1));
+                if (! force && isComplete(pairing))
+                    pairing.m_isFinished = true;
+                m_pairings.add(pairing);
+            }
+    }
+
+    /** Get the cross table of the results in the result files.
+        Games with errors and duplicate games are ignored as by Analyze. */
+    public CrossTable getCrossTable() throws ErrorMessage
+    {
+        int numberPrograms = m_programs.size();
+        CrossTable crossTable = new CrossTable(numberPrograms);
+        String[] names = new String[numberPrograms];
+        String[] versions = new String[numberPrograms];
+        for (Pairing pairing : m_pairings)
+        {
+            File file = new File(pairing.m_filePrefix + ".dat");
+            if (! file.exists())
+                continue;
+            try
+            {
+                TableReader reader = new TableReader(file);
+                try
+                {
+                    if (names[pairing.m_black] == null)
+                    {
+                        names[pairing.m_black] =
+                            reader.getProperty("Black", "");
+                        versions[pairing.m_black] =
+                            reader.getProperty("BlackVersion", "");
+                    }
+                    if (names[pairing.m_white] == null)
+                    {
+                        names[pairing.m_white] =
+                            reader.getProperty("White", "");
+                        versions[pairing.m_white] =
+                            reader.getProperty("WhiteVersion", "");
+                    }
+                    int columnError = reader.getColumnIndex("ERR");
+                    int columnDuplicate = reader.getColumnIndex("DUP");
+                    int columnReferee = reader.getColumnIndex("RES_R");
+                    int columnBlack = reader.getColumnIndex("RES_B");
+                    int columnWhite = reader.getColumnIndex("RES_W");
+                    while (reader.next())
+                    {
+                        String result =
+                            ResultFile.getResult(reader.get(columnError),
+                                                 reader.get(columnDuplicate),
+                                                 reader.get(columnReferee),
+                                                 reader.get(columnBlack),
+                                                 reader.get(columnWhite));
+                        if (result != null)
+                            crossTable.addResult(pairing.m_black,
+                                                 pairing.m_white, result);
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            catch (FileNotFoundException e)
+            {
+                throw new ErrorMessage(e.getMessage());
+            }
+            catch (IOException e)
+            {
+                throw new ErrorMessage("Read error: " + file);
+            }
+        }
+        for (int i = 0; i < numberPrograms; ++i)
+            if (names[i] == null || names[i].equals(""))
+            {
+                names[i] = "Program" + (i + 1);
+                versions[i] = "";
+            }
+        crossTable.setLabels(names, versions);
+        return crossTable;
+    }
+
+    /** Read the list of programs for option -tournament.
+        @param file A file with the command of a program in each line.
+        Empty lines and lines starting with '#' are ignored. */
+    public static ArrayList<String> readPrograms(File file)
+        throws ErrorMessage
+    {
+        ArrayList<String> programs = new ArrayList<String>();
+        try
+        {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    line = line.trim();
+                    if (! line.equals("") && ! line.startsWith("#"))
+                        programs.add(line);
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage("File not found: " + file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Read error: " + file);
+        }
+        return programs;
+    }
+
+    /** Play the games of all pairings and save the cross table.
+        @return false, if a thread was terminated by an error (the errors
+        are printed). */
+    public boolean run() throws ErrorMessage, InterruptedException
+    {
+        int numberThreads = m_current.length;
+        PlayerThread[] thread = new PlayerThread[numberThreads];
+        for (int i = 0; i < numberThreads; ++i)
+        {
+            thread[i] = new PlayerThread(i, m_verbose && i == 0);
+            thread[i].start();
+        }
+        Watchdog watchdog = null;
+        if (m_gameTimeout > 0)
+        {
+            watchdog = new Watchdog(m_current, false);
+            watchdog.start();
+        }
+        for (int i = 0; i < numberThreads; ++i)
+            thread[i].join();
+        if (watchdog != null)
+            watchdog.interrupt();
+        boolean success = true;
+        for (int i = 0; i < numberThreads; ++i)
+            if (thread[i].getException() != null)
+            {
+                StringUtil.printException(thread[i].getException());
+                success = false;
+            }
+        // Result files of pairings not finished because of errors
+        for (Pairing pairing : m_pairings)
+            if (pairing.m_resultFile != null)
+            {
+                pairing.m_resultFile.close();
+                pairing.m_resultFile = null;
+            }
+        CrossTable crossTable = getCrossTable();
+        Table table = crossTable.toTable();
+        table.setProperty("Tournament", m_gauntlet ? "gauntlet"
+                          : "round robin");
+        table.setProperty("Games", Integer.toString(m_numberGames));
+        for (int i = 0; i < m_programs.size(); ++i)
+            table.setProperty("Program" + (i + 1), m_programs.get(i));
+        File file = new File(m_filePrefix + ".summary.dat");
+        try
+        {
+            table.save(file);
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Could not write to: " + file);
+        }
+        System.out.print(crossTable.toString());
+        return success;
+    }
+
+    /** @see TwoGtp#setDebugToComment */
+    public void setDebugToComment(boolean enable)
+    {
+        m_debugToComment = enable;
+    }
+
+    /** @see TwoGtp#setGameTimeout */
+    public void setGameTimeout(long milliseconds)
+    {
+        m_gameTimeout = milliseconds;
+    }
+
+    /** @see TwoGtp#setMaxMoves */
+    public void setMaxMoves(int maxMoves)
+    {
+        m_maxMoves = maxMoves;
+    }
+
+    /** Match between two programs of the tournament. */
+    private static final class Pairing
+    {
+        public Pairing(int black, int white, String filePrefix)
+        {
+            m_black = black;
+            m_white = white;
+            m_filePrefix = filePrefix;
+        }
+
+        public final int m_black;
+
+        public final int m_white;
+
+        public final String m_filePrefix;
+
+        /** All games were started.
+            Set when autoPlay() of any thread returns, because the result
+            file has no more games. */
+        public boolean m_isFinished;
+
+        /** Number of threads currently playing the pairing. */
+        public int m_numberThreads;
+
+        /** Result file, opened by the first thread playing the pairing. */
+        public ResultFile m_resultFile;
+    }
+
+    /** Thread playing the pairings.
+        Owns its instances of the programs and the referee. */
+    private final class PlayerThread
+        extends Thread
+    {
+        public PlayerThread(int index, boolean verbose)
+        {
+            m_index = index;
+            m_verbose = verbose;
+            m_instances = new Program[m_programs.size()];
+        }
+
+        public Exception getException()
+        {
+            return m_exception;
+        }
+
+        public void run()
+        {
+            try
+            {
+                if (! m_referee.equals(""))
+                    m_refereeInstance =
+                        new Program(m_referee, "Referee", "R", m_verbose);
+                Pairing pairing;
+                while ((pairing = startPairing(m_instances)) != null)
+                {
+                    boolean isFinished = false;
+                    try
+                    {
+                        play(pairing);
+                        isFinished = true;
+                    }
+                    finally
+                    {
+                        endPairing(pairing, isFinished);
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                m_exception = e;
+            }
+            finally
+            {
+                for (Program program : m_instances)
+                    if (program != null)
+                        program.close();
+                if (m_refereeInstance != null)
+                    m_refereeInstance.close();
+            }
+        }
+
+        private final boolean m_verbose;
+
+        private final int m_index;
+
+        private Exception m_exception;
+
+        private Program m_refereeInstance;
+
+        private final Program[] m_instances;
+
+        /** Get the instance of a program, start it if necessary. */
+        private Program getInstance(int program) throws GtpError
+        {
+            Program instance = m_instances[program];
+            if (instance == null)
+            {
+                instance = new Program(m_programs.get(program),
+                                       "Program" + (program + 1),
+                                       Integer.toString(program + 1),
+                                       m_verbose);
+                m_instances[program] = instance;
+            }
+            else if (instance.isProgramDead())
+                instance.restart();
+            return instance;
+        }
+
+        private void play(Pairing pairing) throws Exception
+        {
+            Program black = getInstance(pairing.m_black);
+            Program white = getInstance(pairing.m_white);
+            ArrayList<Program> allPrograms = new ArrayList<Program>();
+            allPrograms.add(black);
+            allPrograms.add(white);
+            if (m_refereeInstance != null)
+                allPrograms.add(m_refereeInstance);
+            for (Program program : allPrograms)
+                program.setLabel(allPrograms);
+            ResultFile resultFile;
+            synchronized (pairing)
+            {
+                if (pairing.m_resultFile == null)
+                    pairing.m_resultFile =
+                        new ResultFile(m_force, black, white,
+                                       m_refereeInstance, m_numberGames,
+                                       m_size, m_komi, pairing.m_filePrefix,
+                                       m_openings, m_alternate, m_useXml,
+                                       m_current.length);
+                resultFile = pairing.m_resultFile;
+            }
+            TwoGtp twoGtp =
+                new TwoGtp(black, white, m_refereeInstance, "", m_size,
+                           m_komi, m_handicap, m_numberGames, m_alternate,
+                           pairing.m_filePrefix, m_verbose, m_openings,
+                           m_timeSettings, resultFile);
+            twoGtp.setMaxMoves(m_maxMoves);
+            twoGtp.setGameTimeout(m_gameTimeout);
+            if (m_debugToComment)
+                twoGtp.setDebugToComment(true);
+            synchronized (m_current)
+            {
+                m_current[m_index] = twoGtp;
+            }
+            try
+            {
+                twoGtp.autoPlay();
+            }
+            finally
+            {
+                synchronized (m_current)
+                {
+                    m_current[m_index] = null;
+                }
+                twoGtp.detachPrograms();
+            }
+        }
+    }
+
+    private final boolean m_alternate;
+
+    private boolean m_debugToComment;
+
+    private final boolean m_force;
+
+    private final boolean m_gauntlet;
+
+    private final boolean m_useXml;
+
+    private final boolean m_verbose;
+
+    private final int m_handicap;
+
+    private int m_maxMoves = 1000;
+
+    private final int m_numberGames;
+
+    private final int m_size;
+
+    private long m_gameTimeout;
+
+    private final String m_filePrefix;
+
+    private final String m_referee;
+
+    private final ArrayList<String> m_programs;
+
+    private final ArrayList<Pairing> m_pairings = new ArrayList<Pairing>();
+
+    private final Komi m_komi;
+
+    private final Openings m_openings;
+
+    private final TimeSettings m_timeSettings;
+
+    /** Current TwoGtp instance of each thread, or null (used by the
+        watchdog for the game timeout). */
+    private final TwoGtp[] m_current;
+
+    /** Release a pairing started with startPairing().
+        Closes the result file, if all games were started and no other
+        thread plays the pairing anymore.
+        @param isFinished true, if autoPlay() returned, because the result
+        file has no more games. */
+    private synchronized void endPairing(Pairing pairing, boolean isFinished)
+    {
+        --pairing.m_numberThreads;
+        if (isFinished)
+            pairing.m_isFinished = true;
+        if (pairing.m_isFinished && pairing.m_numberThreads == 0
+            && pairing.m_resultFile != null)
+        {
+            pairing.m_resultFile.close();
+            pairing.m_resultFile = null;
+        }
+    }
+
+    /** Check if the result file of a pairing from a previous run already
+        contains all games. */
+    private boolean isComplete(Pairing pairing) throws ErrorMessage
+    {
+        File file = new File(pairing.m_filePrefix + ".dat");
+        if (! file.exists())
+            return false;
+        Table table = new Table();
+        try
+        {
+            table.read(file);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new ErrorMessage(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throw new ErrorMessage("Read error: " + file);
+        }
+        File journalFile = ResultFile.getJournalFile(file);
+        if (journalFile.exists())
+            ResultFile.readJournal(journalFile, table);
+        return (table.getNumberRows() >= m_numberGames);
+    }
+
+    /** Choose the next pairing for a thread.
+        Prefers the unfinished pairing with the most programs that the
+        thread already runs, then the first in the list.
+        @param instances The program instances of the thread (null for
+        programs not started).
+        @return The pairing or null, if all pairings are finished. */
+    private synchronized Pairing startPairing(Program[] instances)
+    {
+        Pairing result = null;
+        int maxReused = -1;
+        for (Pairing pairing : m_pairings)
+        {
+            if (pairing.m_isFinished)
+                continue;
+            int reused = 0;
+            if (instances[pairing.m_black] != null)
+                ++reused;
+            if (instances[pairing.m_white] != null)
+                ++reused;
+            if (reused > maxReused)
+            {
+                result = pairing;
+                maxReused = reused;
+            }
+        }
+        if (result != null)
+            ++result.m_numberThreads;
+        return result;
+    }
+}
@@ -2,7 +2,14 @@
 
 package net.sf.gogui.tools.twogtp;
 
+import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.Game;
@@ -78,9 +85,18 @@ public class TwoGtp
         initGame(size);
     }
 
+    /** Play games until the maximum number of games is reached.
+        If a program dies or a game exceeds the time limit set with
+        setGameTimeout(), the programs are restarted and the game is
+        returned to the result file to be played again by this or another
+        instance (see ResultFile.releaseGameIndex()). */
     public void autoPlay() throws Exception
     {
         StringBuilder response = new StringBuilder(256);
+        synchronized (this)
+        {
+            m_startTime = System.currentTimeMillis();
+        }
         while (true)
         {
             try
@@ -96,7 +112,14 @@ public class TwoGtp
             {
                 if (m_gameIndex == -1)
                     break;
-                handleEndOfGame(true, e.getMessage());
+                if (isTimeoutExceeded() || isAnyProgramDead())
+                    handleProgramFailure(e.getMessage());
+                else
+                    handleEndOfGame(true, e.getMessage());
+            }
+            finally
+            {
+                stopGameTimer();
             }
         }
         if (m_black.isProgramDead())
@@ -105,10 +128,57 @@ public class TwoGtp
             throw new ErrorMessage("White program died");
     }
 
+    /** Kill the programs, if the current game exceeds the time limit.
+        Called regularly from a watchdog thread. The blocked command
+        fails after the programs were killed and autoPlay() restarts them.
+        @see #setGameTimeout */
+    public void checkGameTimeout()
+    {
+        synchronized (this)
+        {
+            if (m_gameTimeout <= 0 || m_gameStartTime < 0
+                || m_isTimeoutExceeded
+                || (System.currentTimeMillis() - m_gameStartTime
+                    <= m_gameTimeout))
+                return;
+            m_isTimeoutExceeded = true;
+        }
+        for (Program program : m_allPrograms)
+            program.kill();
+    }
+
     public void close()
     {
         for (Program program : m_allPrograms)
             program.close();
+        if (m_synchronizeExecutor != null)
+            m_synchronizeExecutor.shutdown();
+    }
+
+    /** Close the observer, but keep the other programs running.
+        Used instead of close(), if the black, white and referee programs
+        are reused by another instance (see Tournament). */
+    public void detachPrograms()
+    {
+        if (m_observer != null)
+            m_observer.close();
+        if (m_synchronizeExecutor != null)
+            m_synchronizeExecutor.shutdown();
+    }
+
+    /** Get statistics about the games played by autoPlay().
+        @return A string with the number of games and moves played, the
+        games per hour and moves per second and the number of program
+        restarts. */
+    public synchronized String getStatistics()
+    {
+        double hours =
+            Math.max(System.currentTimeMillis() - m_startTime, 1) / 3600000.;
+        NumberFormat format = StringUtil.getNumberFormat(1);
+        return m_numberGamesPlayed + " games, " + m_numberMovesPlayed
+            + " moves, " + format.format(m_numberGamesPlayed / hours)
+            + " games/h, " + format.format(m_numberMovesPlayed / hours / 3600)
+            + " moves/s, " + m_numberRestarts + " restarts";
     }
 
     public void handleCommand(GtpCommand cmd) throws GtpError
@@ -261,6 +331,14 @@ public class TwoGtp
         }
     }
 
+    /** Set a wall-clock time limit for games played with autoPlay().
+        @param timeout Time limit in milliseconds; zero for no limit.
+        @see #checkGameTimeout */
+    public synchronized void setGameTimeout(long timeout)
+    {
+        m_gameTimeout = timeout;
+    }
+
     /** Limit number of moves.
         @param maxMoves Maximum number of moves after which genmove will fail,
         -1 for no limit. */
@@ -281,6 +359,26 @@ public class TwoGtp
 
     private boolean m_resigned;
 
+    /** Current game was aborted by checkGameTimeout().
+        Access only in synchronized blocks. */
+    private boolean m_isTimeoutExceeded;
+
+    /** Start time of the current game or -1, if no game is running.
+        Access only in synchronized blocks. */
+    private long m_gameStartTime = -1;
+
+    /** See setGameTimeout(). */
+    private long m_gameTimeout;
+
+    /** Start time of autoPlay(). */
+    private long m_startTime;
+
+    private int m_numberGamesPlayed;
+
+    private int m_numberMovesPlayed;
+
+    private int m_numberRestarts;
+
     private final boolean m_verbose;
 
     private final int m_numberGames;
@@ -308,6 +406,10 @@ public class TwoGtp
 
     private final ArrayList<Program> m_allPrograms;
 
+    /** Threads for synchronizing all programs but the first.
+        Created on first use. */
+    private ExecutorService m_synchronizeExecutor;
+
     private final BlackWhiteSet<Double> m_realTime =
         new BlackWhiteSet<Double>(0., 0.);
 
@@ -495,20 +597,7 @@ public class TwoGtp
         double cpuTimeWhite = m_white.getAndClearCpuTime();
         double realTimeBlack = m_realTime.get(BLACK);
         double realTimeWhite = m_realTime.get(WHITE);
-        // If a program is dead we wait for a few seconds, because it
-        // could be because the TwoGtp process was killed and we don't
-        // want to write a result in this case.
-        if (m_black.isProgramDead() || m_white.isProgramDead())
-        {
-            try
-            {
-                Thread.sleep(3000);
-            }
-            catch (InterruptedException e)
-            {
-                assert false;
-            }
-        }
+        waitIfProgramDead();
 
         String nameBlack = m_black.getLabel();
         String nameWhite = m_white.getLabel();
@@ -562,6 +651,11 @@ public class TwoGtp
             realTimeWhite = m_realTime.get(BLACK);
         }
         int moveNumber = NodeUtil.getMoveNumber(getCurrentNode());
+        synchronized (this)
+        {
+            ++m_numberGamesPlayed;
+            m_numberMovesPlayed += moveNumber;
+        }
         if (m_resultFile != null)
             m_resultFile.addResult(m_gameIndex, m_game, resultBlack,
                                    resultWhite, resultReferee, isAlternated(),
@@ -570,6 +664,43 @@ public class TwoGtp
                                    cpuTimeWhite);
     }
 
+    /** Handle a game that was aborted because a program died or the game
+        exceeded the time limit.
+        Restarts the programs. The game is played again later, if the
+        result file accepts it, otherwise it is saved as an error. */
+    private void handleProgramFailure(String errorMessage)
+        throws ErrorMessage
+    {
+        if (isTimeoutExceeded())
+            errorMessage = "game exceeded time limit";
+        waitIfProgramDead();
+        if (m_resultFile != null
+            && m_resultFile.releaseGameIndex(m_gameIndex))
+            System.err.println("Game " + m_gameIndex + ": " + errorMessage
+                               + ", game will be played again");
+        else
+            handleEndOfGame(true, errorMessage);
+        boolean restartAll = isTimeoutExceeded();
+        for (Program program : m_allPrograms)
+            if (restartAll || program.isProgramDead())
+            {
+                try
+                {
+                    program.restart();
+                }
+                catch (GtpError e)
+                {
+                    throw new ErrorMessage("Could not restart "
+                                           + program.getLabel() + ": "
+                                           + e.getMessage());
+                }
+                synchronized (this)
+                {
+                    ++m_numberRestarts;
+                }
+            }
+    }
+
     private void initGame(int size) throws GtpError
     {
         m_game = new Game(size, m_komi, Board.getHandicapStones(size, m_handicap), null, null);
@@ -580,25 +711,15 @@ public class TwoGtp
         m_resigned = false;
         if (m_openings != null)
         {
-            int openingFileIndex;
-            if (m_alternate)
-                openingFileIndex = (m_gameIndex / 2) % m_openings.getNumber();
-            else
-                openingFileIndex = m_gameIndex % m_openings.getNumber();
-            try
-            {
-                m_openings.loadFile(openingFileIndex);
-            }
-            catch (Exception e)
-            {
-                throw new GtpError(e.getMessage());
-            }
-            m_openingFile = m_openings.getFilename();
+            int opening =
+                m_openings.getIndex(m_alternate ? m_gameIndex / 2
+                                    : m_gameIndex);
+            m_openingFile = m_openings.getFile(opening).toString();
             if (m_verbose)
-                System.err.println("Loaded opening " + m_openingFile);
-            if (m_openings.getBoardSize() != size)
+                System.err.println("Using opening " + m_openingFile);
+            if (m_openings.getBoardSize(opening) != size)
                 throw new GtpError("Wrong board size: " + m_openingFile);
-            m_game.init(m_openings.getTree());
+            m_game.init(m_openings.getTree(opening));
             m_game.setKomi(m_komi);
             m_lastOpeningNode = NodeUtil.getLast(getTree().getRootConst());
             // TODO: Check that root node contains no setup stones, if
@@ -619,6 +740,19 @@ public class TwoGtp
             return result;
     }
 
+    private boolean isAnyProgramDead()
+    {
+        for (Program program : m_allPrograms)
+            if (program.isProgramDead())
+                return true;
+        return false;
+    }
+
+    private synchronized boolean isTimeoutExceeded()
+    {
+        return m_isTimeoutExceeded;
+    }
+
     private boolean isAlternated()
     {
         return (m_alternate && m_gameIndex % 2 != 0);
@@ -676,6 +810,11 @@ public class TwoGtp
             System.err.println("Game " + m_gameIndex);
             System.err.println("============================================");
         }
+        synchronized (this)
+        {
+            m_gameStartTime = System.currentTimeMillis();
+            m_isTimeoutExceeded = false;
+        }
         m_black.getAndClearCpuTime();
         m_white.getAndClearCpuTime();
         initGame(size);
@@ -776,16 +915,136 @@ public class TwoGtp
             program.sendIfSupported(cmd, cmdLine);
     }
 
+    private synchronized void stopGameTimer()
+    {
+        m_gameStartTime = -1;
+    }
+
     private void synchronize() throws GtpError
     {
-        for (Program program : m_allPrograms)
+        synchronizeAll(false);
+    }
+
+    /** Synchronize all programs concurrently.
+        Each program has its own GTP connection, so the round trips of the
+        programs overlap instead of adding up. The current thread
+        synchronizes the first program, the others are synchronized by
+        threads of m_synchronizeExecutor. Returns after all programs are
+        synchronized, even if some of them failed.
+        @param init Use Program.synchronizeInit() instead of
+        Program.synchronize().
+        @throws GtpError The error of the first program in m_allPrograms
+        that failed. The message contains the label of the program. */
+    private void synchronizeAll(final boolean init) throws GtpError
+    {
+        if (m_synchronizeExecutor == null)
+        {
+            ThreadFactory threadFactory = new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable);
+                        // Don't prevent the JVM from exiting, if close()
+                        // is not called
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                };
+            m_synchronizeExecutor =
+                Executors.newFixedThreadPool(m_allPrograms.size() - 1,
+                                             threadFactory);
+        }
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 1; i < m_allPrograms.size(); ++i)
+        {
+            final Program program = m_allPrograms.get(i);
+            Callable<Void> task = new Callable<Void>()
+                {
+                    public Void call() throws GtpError
+                    {
+                        synchronize(program, init);
+                        return null;
+                    }
+                };
+            futures.add(m_synchronizeExecutor.submit(task));
+        }
+        GtpError error = null;
+        try
+        {
+            synchronize(m_allPrograms.get(0), init);
+        }
+        catch (GtpError e)
+        {
+            error = e;
+        }
+        // The programs must not be used before their synchronization
+        // finished, so we wait even if this thread is interrupted
+        boolean interrupted = false;
+        Throwable unexpected = null;
+        for (Future<Void> future : futures)
+        {
+            while (true)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                    continue;
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+                    if (! (cause instanceof GtpError))
+                        unexpected = cause;
+                    else if (error == null)
+                        error = (GtpError)cause;
+                }
+                break;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (unexpected instanceof RuntimeException)
+            throw (RuntimeException)unexpected;
+        if (unexpected instanceof Error)
+            throw (Error)unexpected;
+        if (error != null)
+            throw error;
+    }
+
+    private void synchronize(Program program, boolean init) throws GtpError
+    {
+        if (init)
+            program.synchronizeInit(m_game);
+        else
             program.synchronize(m_game);
     }
 
     private void synchronizeInit() throws GtpError
     {
-        for (Program program : m_allPrograms)
-            program.synchronizeInit(m_game);
+        synchronizeAll(true);
+    }
+
+    /** Wait for a few seconds, if a program is dead.
+        A dead program could be caused by the TwoGtp process being killed
+        and we don't want to write a result or restart programs in this
+        case. */
+    private void waitIfProgramDead()
+    {
+        if (m_black.isProgramDead() || m_white.isProgramDead())
+        {
+            try
+            {
+                Thread.sleep(3000);
+            }
+            catch (InterruptedException e)
+            {
+                assert false;
+            }
+        }
     }
 
     private void twogtpColor(Program program, GtpCommand cmd) throws GtpError
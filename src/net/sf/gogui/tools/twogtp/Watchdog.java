@@ -0,0 +1,63 @@
+// Watchdog.java
+
+package net.sf.gogui.tools.twogtp;
+
+/** Thread that checks the time limit of the games and reports the
+    throughput of the TwoGtp instances. */
+class Watchdog
+    extends Thread
+{
+    /** Interval for printing statistics in milliseconds. */
+    public static final long STATISTICS_INTERVAL = 600000;
+
+    /** Constructor.
+        @param twoGtp The TwoGtp instances.
+        @param reportStatistics Print statistics every STATISTICS_INTERVAL
+        milliseconds. */
+    public Watchdog(TwoGtp[] twoGtp, boolean reportStatistics)
+    {
+        m_twoGtp = twoGtp;
+        m_reportStatistics = reportStatistics;
+        setDaemon(true);
+    }
+
+    public static void printStatistics(TwoGtp[] twoGtp)
+    {
+        for (int i = 0; i < twoGtp.length; ++i)
+            System.err.println("Thread " + (i + 1) + ": "
+                               + twoGtp[i].getStatistics());
+    }
+
+    public void run()
+    {
+        long lastReport = System.currentTimeMillis();
+        try
+        {
+            while (true)
+            {
+                Thread.sleep(1000);
+                // Elements can be replaced or null in tournaments
+                synchronized (m_twoGtp)
+                {
+                    for (TwoGtp twoGtp : m_twoGtp)
+                        if (twoGtp != null)
+                            twoGtp.checkGameTimeout();
+                }
+                long now = System.currentTimeMillis();
+                if (m_reportStatistics
+                    && now - lastReport >= STATISTICS_INTERVAL)
+                {
+                    printStatistics(m_twoGtp);
+                    lastReport = now;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
+
+    private final boolean m_reportStatistics;
+
+    private final TwoGtp[] m_twoGtp;
+}
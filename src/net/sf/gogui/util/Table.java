@@ -3,6 +3,7 @@
 package net.sf.gogui.util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -11,10 +12,19 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
-/** Table of string elements. */
+/** Table of string elements.
+    The elements are stored by column. As long as all elements of a column
+    are decimal numbers that can be converted to a string and a double
+    without loss, the column stores them as primitive numbers, otherwise as
+    indices into a dictionary of the distinct strings of the column. This
+    needs much less memory than storing a string object for each element
+    and allows getDouble() and getInt() to avoid parsing. */
 public class Table
 {
     /** Error thrown on invalid table location argument. */
@@ -57,11 +67,14 @@ public class Table
     {
         m_columnTitles = columnTitles;
         m_numberColumns = columnTitles.size();
+        for (int i = 0; i < m_numberColumns; ++i)
+            m_columns.add(new Column());
     }
 
     public String get(int column, int row)
     {
-        return getRow(row).get(column);
+        assert row < m_numberRows;
+        return m_columns.get(column).get(row);
     }
 
     public String get(String columnTitle, int row) throws InvalidLocation
@@ -72,6 +85,10 @@ public class Table
     public double getDouble(int column, int row)
         throws InvalidLocation, InvalidElement
     {
+        assert row < m_numberRows;
+        Column col = m_columns.get(column);
+        if (col.isNumber(row))
+            return col.getDouble(row);
         try
         {
             String s = get(column, row);
@@ -95,6 +112,10 @@ public class Table
 
     public int getInt(int column, int row) throws InvalidElement
     {
+        assert row < m_numberRows;
+        Column col = m_columns.get(column);
+        if (col.isInt(row))
+            return col.getInt(row);
         try
         {
             String s = get(column, row);
@@ -144,7 +165,7 @@ public class Table
 
     public int getNumberRows()
     {
-        return m_rows.size();
+        return m_numberRows;
     }
 
     /** Get meta information.
@@ -170,6 +191,10 @@ public class Table
         return m_properties.containsKey(key);
     }
 
+    /** Read a table file.
+        Does not use a memory-mapped TableReader, because callers may
+        replace the file after reading it, which fails on some platforms
+        while the file is still mapped. */
     public void read(File file) throws FileNotFoundException, IOException,
                                        InvalidFormat
     {
@@ -192,7 +217,7 @@ public class Table
 
     public void save(File file) throws IOException
     {
-        FileWriter writer = new FileWriter(file);
+        Writer writer = new BufferedWriter(new FileWriter(file), BUFFER_SIZE);
         try
         {
             save(writer);
@@ -208,40 +233,51 @@ public class Table
         save(out, true);
     }
 
+    /** Write the table.
+        The rows are collected in a buffer and written in blocks, so that
+        the number of calls of the writer does not depend on the number of
+        elements. */
     public void save(Writer out, boolean withHeader) throws IOException
     {
+        StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
         if (withHeader)
         {
             for (Map.Entry<String,String> entry : m_properties.entrySet())
             {
                 String key = entry.getKey();
                 String value = entry.getValue();
-                out.write("# " + key + ": " + value + "\n");
+                buffer.append("# ").append(key).append(": ").append(value)
+                    .append('\n');
             }
-            out.write("#\n#");
+            buffer.append("#\n#");
             for (int i = 0; i < m_numberColumns; ++i)
             {
-                out.write(getColumnTitle(i));
+                buffer.append(getColumnTitle(i));
                 if (i < m_numberColumns - 1)
-                    out.write('\t');
+                    buffer.append('\t');
                 else
-                    out.write('\n');
+                    buffer.append('\n');
             }
         }
-        for (int i = 0; i < m_rows.size(); ++i)
+        for (int i = 0; i < m_numberRows; ++i)
         {
-            ArrayList<String> row = m_rows.get(i);
             for (int j = 0; j < m_numberColumns; ++j)
             {
-                String value = row.get(j);
+                String value = get(j, i);
                 if (value != null)
-                    out.write(value);
+                    buffer.append(value);
                 if (j < m_numberColumns - 1)
-                    out.write('\t');
+                    buffer.append('\t');
                 else
-                    out.write('\n');
+                    buffer.append('\n');
+            }
+            if (buffer.length() >= BUFFER_SIZE)
+            {
+                out.append(buffer);
+                buffer.setLength(0);
             }
         }
+        out.append(buffer);
     }
 
     /** Set element in last row.
@@ -249,12 +285,13 @@ public class Table
         @param value The value (must not contain newlines or tabs). */
     public void set(int column, String value)
     {
-        assert m_lastRow.get(column) == null;
+        assert m_numberRows > 0;
+        assert get(column, m_numberRows - 1) == null;
         // Values containing newlines and tabs are not supported by save()
         // yet
         assert value == null || value.indexOf("\n") < 0;
         assert value == null || value.indexOf("\t") < 0;
-        m_lastRow.set(column, value);
+        m_columns.get(column).set(m_numberRows - 1, value);
     }
 
     public void set(String column, int value) throws InvalidLocation
@@ -282,24 +319,33 @@ public class Table
 
     public void startRow()
     {
-        ArrayList<String> row = new ArrayList<String>(m_numberColumns);
         for (int i = 0; i < m_numberColumns; ++i)
-            row.add(null);
-        m_rows.add(row);
-        m_lastRow = row;
+            m_columns.get(i).addRow();
+        ++m_numberRows;
     }
 
-    public void sortByIntColumn(int column, int rowBegin,
+    public void sortByIntColumn(final int column, int rowBegin,
                                 int rowEnd) throws InvalidElement
     {
-        for (int row1 = rowBegin; row1 < rowEnd - 1; ++row1)
-            for (int row2 = row1 + 1; row2 < rowEnd; ++row2)
-                if (getInt(column, row2) < getInt(column, row1))
+        final int[] keys = new int[m_numberRows];
+        Integer[] order = new Integer[rowEnd - rowBegin];
+        for (int row = rowBegin; row < rowEnd; ++row)
+        {
+            keys[row] = getInt(column, row);
+            order[row - rowBegin] = row;
+        }
+        Comparator<Integer> comparator = new Comparator<Integer>()
+            {
+                public int compare(Integer row1, Integer row2)
                 {
-                    ArrayList<String> tmp = m_rows.get(row1);
-                    m_rows.set(row1, m_rows.get(row2));
-                    m_rows.set(row2, tmp);
+                    int i1 = keys[row1.intValue()];
+                    int i2 = keys[row2.intValue()];
+                    return (i1 < i2 ? -1 : (i1 > i2 ? 1 : 0));
                 }
+            };
+        Arrays.sort(order, comparator);
+        for (int i = 0; i < m_numberColumns; ++i)
+            m_columns.get(i).permute(rowBegin, order);
     }
 
     public void sortByIntColumn(String columnTitle, int rowBegin,
@@ -309,6 +355,276 @@ public class Table
         sortByIntColumn(getColumnIndex(columnTitle), rowBegin, rowEnd);
     }
 
+    /** Maximum number of decimal places for toDouble().
+        Powers of ten up to 10^22 are exactly representable as double. */
+    static final int MAX_SCALE = 22;
+
+    /** Maximum absolute value of a mantissa for toDouble().
+        Integers up to 2^53 are exactly representable as double. */
+    static final long MAX_MANTISSA = 1L << 53;
+
+    /** Convert a decimal number to a double.
+        Gives the same result as Double.parseDouble(), because both the
+        mantissa and the power of ten are exactly representable and a
+        single division is correctly rounded.
+        @param mantissa The digits of the number, not larger than
+        MAX_MANTISSA in absolute value.
+        @param scale The number of decimal places, not larger than
+        MAX_SCALE. */
+    static double toDouble(long mantissa, int scale)
+    {
+        assert Math.abs(mantissa) <= MAX_MANTISSA;
+        assert scale >= 0 && scale <= MAX_SCALE;
+        return mantissa / POWER_OF_TEN[scale];
+    }
+
+    /** Elements of a column.
+        Stores decimal numbers as mantissa and number of decimal places, if
+        the conversion back to a string gives the original string and
+        toDouble() can be used for the conversion to a double. After an
+        element that is not such a number was set, the column converts all
+        elements to indices into a dictionary of the distinct strings. */
+    private static final class Column
+    {
+        public void addRow()
+        {
+            if (m_index != null)
+            {
+                if (m_size == m_index.length)
+                    m_index = Arrays.copyOf(m_index, 2 * m_size);
+                m_index[m_size++] = -1;
+            }
+            else
+            {
+                if (m_size == m_mantissa.length)
+                {
+                    m_mantissa = Arrays.copyOf(m_mantissa, 2 * m_size);
+                    m_scale = Arrays.copyOf(m_scale, 2 * m_size);
+                }
+                m_mantissa[m_size] = 0;
+                m_scale[m_size] = SCALE_NULL;
+                ++m_size;
+            }
+        }
+
+        public String get(int row)
+        {
+            if (m_index != null)
+            {
+                int index = m_index[row];
+                return (index < 0 ? null : m_dictionary.get(index));
+            }
+            int scale = m_scale[row];
+            if (scale == SCALE_NULL)
+                return null;
+            if (scale == SCALE_EMPTY)
+                return "";
+            long mantissa = m_mantissa[row];
+            if (scale == 0)
+                return Long.toString(mantissa);
+            StringBuilder buffer = new StringBuilder(24);
+            if (mantissa < 0)
+                buffer.append('-');
+            String digits = Long.toString(Math.abs(mantissa));
+            for (int i = digits.length(); i <= scale; ++i)
+                buffer.append('0');
+            buffer.append(digits);
+            buffer.insert(buffer.length() - scale, '.');
+            return buffer.toString();
+        }
+
+        /** Get element as double.
+            Requires isNumber(row). */
+        public double getDouble(int row)
+        {
+            assert isNumber(row);
+            return toDouble(m_mantissa[row], m_scale[row]);
+        }
+
+        /** Get element as int.
+            Requires isInt(row). */
+        public int getInt(int row)
+        {
+            assert isInt(row);
+            return (int)m_mantissa[row];
+        }
+
+        /** Check if an element is an integer stored as a number that fits
+            into an int. */
+        public boolean isInt(int row)
+        {
+            return (m_index == null && m_scale[row] == 0
+                    && m_mantissa[row] >= Integer.MIN_VALUE
+                    && m_mantissa[row] <= Integer.MAX_VALUE);
+        }
+
+        /** Check if an element is stored as a number. */
+        public boolean isNumber(int row)
+        {
+            return (m_index == null && m_scale[row] >= 0);
+        }
+
+        /** Reorder a range of elements.
+            @param begin The first row of the range.
+            @param order The old row indices in their new order. */
+        public void permute(int begin, Integer[] order)
+        {
+            if (m_index != null)
+            {
+                int[] index = new int[order.length];
+                for (int i = 0; i < order.length; ++i)
+                    index[i] = m_index[order[i].intValue()];
+                System.arraycopy(index, 0, m_index, begin, order.length);
+            }
+            else
+            {
+                long[] mantissa = new long[order.length];
+                byte[] scale = new byte[order.length];
+                for (int i = 0; i < order.length; ++i)
+                {
+                    mantissa[i] = m_mantissa[order[i].intValue()];
+                    scale[i] = m_scale[order[i].intValue()];
+                }
+                System.arraycopy(mantissa, 0, m_mantissa, begin,
+                                 order.length);
+                System.arraycopy(scale, 0, m_scale, begin, order.length);
+            }
+        }
+
+        public void set(int row, String value)
+        {
+            if (m_index == null)
+            {
+                if (value == null)
+                {
+                    m_scale[row] = SCALE_NULL;
+                    return;
+                }
+                if (value.equals(""))
+                {
+                    m_scale[row] = SCALE_EMPTY;
+                    return;
+                }
+                if (parseNumber(value, row))
+                    return;
+                convertToStrings();
+            }
+            if (value == null)
+            {
+                m_index[row] = -1;
+                return;
+            }
+            Integer index = m_dictionaryIndex.get(value);
+            if (index == null)
+            {
+                index = Integer.valueOf(m_dictionary.size());
+                m_dictionary.add(value);
+                m_dictionaryIndex.put(value, index);
+            }
+            m_index[row] = index.intValue();
+        }
+
+        private static final byte SCALE_NULL = -1;
+
+        private static final byte SCALE_EMPTY = -2;
+
+        private int m_size;
+
+        /** Mantissas of numbers; null after conversion to strings. */
+        private long[] m_mantissa = new long[16];
+
+        /** Decimal places of numbers, SCALE_NULL or SCALE_EMPTY; null after
+            conversion to strings. */
+        private byte[] m_scale = new byte[16];
+
+        /** Dictionary indices or -1 for null; null before conversion to
+            strings. */
+        private int[] m_index;
+
+        private ArrayList<String> m_dictionary;
+
+        private HashMap<String,Integer> m_dictionaryIndex;
+
+        private void convertToStrings()
+        {
+            m_dictionary = new ArrayList<String>();
+            m_dictionaryIndex = new HashMap<String,Integer>();
+            int[] index = new int[m_mantissa.length];
+            for (int i = 0; i < m_size; ++i)
+                index[i] = -1;
+            String[] values = new String[m_size];
+            for (int i = 0; i < m_size; ++i)
+                values[i] = get(i);
+            m_index = index;
+            m_mantissa = null;
+            m_scale = null;
+            for (int i = 0; i < m_size; ++i)
+                set(i, values[i]);
+        }
+
+        /** Store a value as a number, if possible.
+            @return false, if the value cannot be stored as a number without
+            loss. */
+        private boolean parseNumber(String value, int row)
+        {
+            int length = value.length();
+            int pos = 0;
+            boolean negative = false;
+            if (value.charAt(0) == '-')
+            {
+                negative = true;
+                ++pos;
+            }
+            int begin = pos;
+            long mantissa = 0;
+            int scale = -1;
+            for ( ; pos < length; ++pos)
+            {
+                char c = value.charAt(pos);
+                if (c == '.')
+                {
+                    if (scale >= 0)
+                        return false;
+                    scale = 0;
+                    continue;
+                }
+                if (c < '0' || c > '9')
+                    return false;
+                mantissa = 10 * mantissa + (c - '0');
+                if (mantissa > MAX_MANTISSA)
+                    return false;
+                if (scale >= 0)
+                    ++scale;
+            }
+            int numberIntDigits =
+                (scale < 0 ? length - begin : length - begin - scale - 1);
+            if (numberIntDigits == 0 || scale == 0 || scale > MAX_SCALE)
+                return false;
+            // Leading zeros and negative zero would not be preserved
+            if (numberIntDigits > 1 && value.charAt(begin) == '0')
+                return false;
+            if (negative && mantissa == 0)
+                return false;
+            m_mantissa[row] = (negative ? -mantissa : mantissa);
+            m_scale[row] = (byte)Math.max(scale, 0);
+            return true;
+        }
+    }
+
+    /** Size of buffers used by save(). */
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final double[] POWER_OF_TEN = new double[MAX_SCALE + 1];
+
+    static
+    {
+        POWER_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; ++i)
+            POWER_OF_TEN[i] = 10 * POWER_OF_TEN[i - 1];
+    }
+
+    private int m_numberRows;
+
     private boolean m_propertiesRead;
 
     private int m_lineNumber;
@@ -320,22 +636,19 @@ public class Table
 
     private final ArrayList<String> m_columnTitles;
 
-    private ArrayList<String> m_lastRow;
-
-    private final ArrayList<ArrayList<String>> m_rows
-        = new ArrayList<ArrayList<String>>();
+    private final ArrayList<Column> m_columns = new ArrayList<Column>();
 
     private void addColumnTitle(String columnTitle)
     {
         m_columnTitles.add(columnTitle);
+        // Comment lines with column titles can follow rows
+        Column column = new Column();
+        for (int i = 0; i < m_numberRows; ++i)
+            column.addRow();
+        m_columns.add(column);
         ++m_numberColumns;
     }
 
-    private ArrayList<String> getRow(int index)
-    {
-        return m_rows.get(index);
-    }
-
     private void handleComment(String comment)
     {
         comment = comment.trim();
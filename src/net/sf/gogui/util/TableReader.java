@@ -0,0 +1,462 @@
+// TableReader.java
+
+package net.sf.gogui.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Reads the rows of a table file one at a time.
+    Reads files in the format written by Table.save() without storing the
+    rows, so that tools can iterate over tables that are too large to be
+    loaded into memory. The file is memory-mapped in windows of limited
+    size, and the elements of a row are only converted to strings or
+    numbers when they are requested.
+    The elements are interpreted as in Table.read(): lines are trimmed,
+    missing elements at the end of a row are null, and comment lines
+    starting with '#' contain the properties, followed by an empty comment
+    line and the column titles.
+    The mapped memory is only released when it is garbage collected, not by
+    close(). On Windows, the file cannot be deleted or replaced until then,
+    so this class should only be used for files that are not modified by
+    the same process. */
+public class TableReader
+{
+    /** Open a table file and read the properties and column titles. */
+    public TableReader(File file)
+        throws FileNotFoundException, IOException, Table.InvalidFormat
+    {
+        this(file, MAX_WINDOW_SIZE);
+    }
+
+    public void close() throws IOException
+    {
+        m_window = null;
+        m_channel.close();
+    }
+
+    /** Get an element of the current row.
+        @return The element or null, if the row has less elements. */
+    public String get(int column)
+    {
+        assert m_numberRows > 0;
+        if (column >= m_numberElements)
+            return null;
+        return getString(m_elementBegin[column], m_elementEnd[column]);
+    }
+
+    public String get(String columnTitle) throws Table.InvalidLocation
+    {
+        return get(getColumnIndex(columnTitle));
+    }
+
+    public int getColumnIndex(String column) throws Table.InvalidLocation
+    {
+        int index = m_columnTitles.indexOf(column);
+        if (index < 0)
+            throw new Table.InvalidLocation("No such column in table: "
+                                            + column);
+        return index;
+    }
+
+    public String getColumnTitle(int index)
+    {
+        return m_columnTitles.get(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getColumnTitles()
+    {
+        return (ArrayList<String>)m_columnTitles.clone();
+    }
+
+    /** Get an element of the current row as a double.
+        Decimal numbers with up to 15 digits are converted without creating
+        a string. */
+    public double getDouble(int column) throws Table.InvalidElement
+    {
+        assert m_numberRows > 0;
+        if (column < m_numberElements)
+        {
+            int end = m_elementEnd[column];
+            int pos = m_elementBegin[column];
+            boolean negative = (pos < end && m_window.get(pos) == '-');
+            if (negative)
+                ++pos;
+            long mantissa = 0;
+            int numberDigits = 0;
+            int scale = -1;
+            for ( ; pos < end && numberDigits <= 15; ++pos)
+            {
+                byte c = m_window.get(pos);
+                if (c == '.' && scale < 0)
+                    scale = 0;
+                else if (c >= '0' && c <= '9')
+                {
+                    mantissa = 10 * mantissa + (c - '0');
+                    ++numberDigits;
+                    if (scale >= 0)
+                        ++scale;
+                }
+                else
+                    break;
+            }
+            // Negative zero is not representable by the mantissa
+            if (pos == end && numberDigits > 0 && numberDigits <= 15
+                && ! (negative && mantissa == 0))
+                return Table.toDouble(negative ? -mantissa : mantissa,
+                                      Math.max(scale, 0));
+        }
+        String s = get(column);
+        try
+        {
+            return Double.parseDouble(s == null ? "" : s);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new Table.InvalidElement("Expected floating point number"
+                                           + " in table (column=" + column
+                                           + ", line=" + m_lineNumber + ")");
+        }
+    }
+
+    public double getDouble(String columnTitle)
+        throws Table.InvalidLocation, Table.InvalidElement
+    {
+        return getDouble(getColumnIndex(columnTitle));
+    }
+
+    /** Get an element of the current row as an int.
+        Integers with up to 9 digits are converted without creating a
+        string. */
+    public int getInt(int column) throws Table.InvalidElement
+    {
+        assert m_numberRows > 0;
+        if (column < m_numberElements)
+        {
+            int end = m_elementEnd[column];
+            int pos = m_elementBegin[column];
+            boolean negative = (pos < end && m_window.get(pos) == '-');
+            if (negative)
+                ++pos;
+            int numberDigits = end - pos;
+            int value = 0;
+            for ( ; pos < end; ++pos)
+            {
+                byte c = m_window.get(pos);
+                if (c < '0' || c > '9')
+                    break;
+                value = 10 * value + (c - '0');
+            }
+            if (pos == end && numberDigits > 0 && numberDigits <= 9)
+                return (negative ? -value : value);
+        }
+        String s = get(column);
+        try
+        {
+            return Integer.parseInt(s == null ? "" : s);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new Table.InvalidElement("Expected integer in table"
+                                           + " (column=" + column
+                                           + ", line=" + m_lineNumber + ")");
+        }
+    }
+
+    public int getInt(String columnTitle)
+        throws Table.InvalidLocation, Table.InvalidElement
+    {
+        return getInt(getColumnIndex(columnTitle));
+    }
+
+    /** Get the line number of the current row in the file. */
+    public int getLineNumber()
+    {
+        return m_lineNumber;
+    }
+
+    public int getNumberColumns()
+    {
+        return m_columnTitles.size();
+    }
+
+    /** Get the number of elements of the current row.
+        Can be smaller than getNumberColumns(), the remaining elements are
+        null. */
+    public int getNumberElements()
+    {
+        return m_numberElements;
+    }
+
+    /** Get the number of rows read so far. */
+    public int getNumberRows()
+    {
+        return m_numberRows;
+    }
+
+    /** Get all properties in the order of their keys. */
+    public Map<String,String> getProperties()
+    {
+        return new TreeMap<String,String>(m_properties);
+    }
+
+    /** Get meta information.
+        @param key the property key
+        @param def the default value, if this property does not exist */
+    public String getProperty(String key, String def)
+    {
+        if (! hasProperty(key))
+            return def;
+        return m_properties.get(key);
+    }
+
+    public boolean hasProperty(String key)
+    {
+        return m_properties.containsKey(key);
+    }
+
+    /** Advance to the next row.
+        Comment lines between rows are handled as in Table.read(); column
+        titles in such lines are added to the column titles.
+        @return false, if the end of the file was reached. */
+    public boolean next() throws IOException, Table.InvalidFormat
+    {
+        while (m_isLinePending || readLine())
+        {
+            m_isLinePending = false;
+            if (isComment())
+            {
+                handleComment();
+                continue;
+            }
+            int begin = m_lineBegin;
+            int end = m_lineEnd;
+            m_numberElements = 0;
+            int elementBegin = begin;
+            for (int i = begin; i <= end; ++i)
+                if (i == end || m_window.get(i) == '\t')
+                {
+                    if (m_numberElements == m_elementBegin.length)
+                        throw new Table.InvalidFormat("Invalid line "
+                                                      + m_lineNumber + ": "
+                                                      + getLine());
+                    m_elementBegin[m_numberElements] = elementBegin;
+                    m_elementEnd[m_numberElements] = i;
+                    ++m_numberElements;
+                    elementBegin = i + 1;
+                }
+            ++m_numberRows;
+            return true;
+        }
+        return false;
+    }
+
+    /** Constructor with a given window size for testing. */
+    TableReader(File file, int maxWindowSize)
+        throws FileNotFoundException, IOException, Table.InvalidFormat
+    {
+        m_maxWindowSize = maxWindowSize;
+        m_charset = Charset.defaultCharset();
+        m_channel = new FileInputStream(file).getChannel();
+        try
+        {
+            m_fileSize = m_channel.size();
+            map(0);
+            // Read the header lines up to the first row, the line of the
+            // first row is parsed by the first call of next()
+            while (readLine())
+            {
+                if (! isComment())
+                {
+                    m_isLinePending = true;
+                    break;
+                }
+                handleComment();
+            }
+        }
+        catch (IOException e)
+        {
+            m_channel.close();
+            throw e;
+        }
+        catch (Table.InvalidFormat e)
+        {
+            m_channel.close();
+            throw e;
+        }
+        m_elementBegin = new int[getNumberColumns()];
+        m_elementEnd = new int[getNumberColumns()];
+    }
+
+    /** Default for the maximum size of a mapped part of the file. */
+    private static final int MAX_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private boolean m_isAscii;
+
+    /** The current line was read but not yet handled by next(). */
+    private boolean m_isLinePending;
+
+    private boolean m_propertiesRead;
+
+    private int m_lineBegin;
+
+    private int m_lineEnd;
+
+    private int m_lineNumber;
+
+    private final int m_maxWindowSize;
+
+    private int m_numberElements;
+
+    private int m_numberRows;
+
+    /** Position of the next line in the current window. */
+    private int m_pos;
+
+    private int m_windowSize;
+
+    /** Start and end position of elements of the current row in the
+        current window. */
+    private int[] m_elementBegin;
+
+    private int[] m_elementEnd;
+
+    private long m_windowBegin;
+
+    private final long m_fileSize;
+
+    private byte[] m_bytes = new byte[256];
+
+    private final ArrayList<String> m_columnTitles = new ArrayList<String>();
+
+    private final Charset m_charset;
+
+    private final FileChannel m_channel;
+
+    private MappedByteBuffer m_window;
+
+    private final Map<String,String> m_properties =
+        new TreeMap<String,String>();
+
+    private void handleComment() throws Table.InvalidFormat
+    {
+        String comment = getLine().substring(1).trim();
+        if (m_propertiesRead)
+        {
+            String[] array = comment.split("\\t");
+            for (int i = 0; i < array.length; ++i)
+                m_columnTitles.add(array[i]);
+            if (m_elementBegin != null
+                && m_elementBegin.length < getNumberColumns())
+            {
+                m_elementBegin = new int[getNumberColumns()];
+                m_elementEnd = new int[getNumberColumns()];
+            }
+            return;
+        }
+        if (comment.equals(""))
+        {
+            m_propertiesRead = true;
+            return;
+        }
+        int pos = comment.indexOf(':');
+        if (pos < 0)
+        {
+            System.err.println("Invalid line " + m_lineNumber + ": "
+                               + comment);
+            return;
+        }
+        String key = comment.substring(0, pos).trim();
+        String value = comment.substring(pos + 1).trim();
+        m_properties.put(key, value);
+    }
+
+    /** Get the trimmed current line as a string. */
+    private String getLine()
+    {
+        return getString(m_lineBegin, m_lineEnd);
+    }
+
+    /** Decode a part of the current line.
+        Lines that contain only ASCII characters are decoded as ISO-8859-1,
+        which is faster than the default charset and gives the same
+        result. */
+    private String getString(int begin, int end)
+    {
+        int length = end - begin;
+        if (m_bytes.length < length)
+            m_bytes = new byte[Math.max(length, 2 * m_bytes.length)];
+        m_window.position(begin);
+        m_window.get(m_bytes, 0, length);
+        return new String(m_bytes, 0, length,
+                          m_isAscii ? StandardCharsets.ISO_8859_1
+                          : m_charset);
+    }
+
+    private boolean isComment()
+    {
+        return (m_lineBegin < m_lineEnd && m_window.get(m_lineBegin) == '#');
+    }
+
+    private void map(long begin) throws IOException
+    {
+        m_windowBegin = begin;
+        m_windowSize = (int)Math.min(m_maxWindowSize, m_fileSize - begin);
+        m_window =
+            m_channel.map(FileChannel.MapMode.READ_ONLY, begin, m_windowSize);
+        m_pos = 0;
+    }
+
+    /** Find the next line and its trimmed part.
+        Maps the next part of the file, if the line does not end in the
+        current window. Only '\n' is handled as line end, a '\r' before it
+        is removed by the trimming.
+        @return false, if the end of the file was reached. */
+    private boolean readLine() throws IOException, Table.InvalidFormat
+    {
+        if (m_pos == m_windowSize)
+        {
+            if (m_windowBegin + m_pos == m_fileSize)
+                return false;
+            map(m_windowBegin + m_pos);
+        }
+        int end = m_pos;
+        while (end < m_windowSize && m_window.get(end) != '\n')
+            ++end;
+        if (end == m_windowSize && m_windowBegin + end < m_fileSize)
+        {
+            if (m_pos == 0)
+                throw new Table.InvalidFormat("Line " + (m_lineNumber + 1)
+                                              + " too long");
+            map(m_windowBegin + m_pos);
+            return readLine();
+        }
+        ++m_lineNumber;
+        int begin = m_pos;
+        m_pos = (end < m_windowSize ? end + 1 : end);
+        m_isAscii = true;
+        for (int i = begin; i < end; ++i)
+            if (m_window.get(i) < 0)
+            {
+                m_isAscii = false;
+                break;
+            }
+        // Trim the same characters as String.trim()
+        while (begin < end && (m_window.get(begin) & 0xff) <= ' ')
+            ++begin;
+        while (end > begin && (m_window.get(end - 1) & 0xff) <= ' ')
+            --end;
+        m_lineBegin = begin;
+        m_lineEnd = end;
+        return true;
+    }
+}
@@ -250,6 +250,43 @@ public final class TableUtil
         return result;
     }
 
+    /** Select a range of rows.
+        @param table The table.
+        @param rowBegin The first row.
+        @param rowEnd The row after the last row. */
+    public static Table selectRows(Table table, int rowBegin, int rowEnd)
+    {
+        Table result = new Table(table.getColumnTitles());
+        for (int row = rowBegin; row < rowEnd; ++row)
+            appendRow(result, table, row);
+        return result;
+    }
+
+    /** Select two columns of a range of rows.
+        @param table The table.
+        @param rowBegin The first row.
+        @param rowEnd The row after the last row.
+        @param selectColumn1 The first column title.
+        @param selectColumn2 The second column title. */
+    public static Table selectRows(Table table, int rowBegin, int rowEnd,
+                                   String selectColumn1, String selectColumn2)
+        throws Table.InvalidLocation
+    {
+        ArrayList<String> columnTitles = new ArrayList<String>(2);
+        columnTitles.add(selectColumn1);
+        columnTitles.add(selectColumn2);
+        Table result = new Table(columnTitles);
+        int column1 = table.getColumnIndex(selectColumn1);
+        int column2 = table.getColumnIndex(selectColumn2);
+        for (int row = rowBegin; row < rowEnd; ++row)
+        {
+            result.startRow();
+            result.set(0, table.get(column1, row));
+            result.set(1, table.get(column2, row));
+        }
+        return result;
+    }
+
     public static Table selectIntRange(Table table, String compareColumn,
                                        int min, int max)
         throws Table.InvalidLocation
@@ -2,9 +2,12 @@
 
 package net.sf.gogui.game;
 
+import java.util.ArrayList;
 import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.go.Move;
@@ -59,6 +62,64 @@ public final class BoardUpdaterTest
         assertEquals(BLACK, board.getColor(GoPoint.get(3, 1)));
     }
 
+    /** Test that updating to different nodes of a tree with the same board
+        gives the same positions as updating a new board.
+        The updater takes back only the moves after the common ancestor in
+        this case. */
+    public void testIncremental()
+    {
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        GameTree tree = createTree(nodes);
+        tree.getSnapshotCache().setMaxSnapshots(0);
+        Board board = new Board(9);
+        int[] order = { 30, 5, 29, 12, 35, 39, 41, 20, 40, 9, 0, 41, 38 };
+        for (int i = 0; i < order.length; ++i)
+        {
+            Node target = nodes.get(order[i]);
+            m_updater.update(tree, target, board);
+            Board expected = new Board(9);
+            new BoardUpdater().update(tree, target, expected);
+            checkSameBoard(expected, board);
+        }
+    }
+
+    /** Test that positions restored from the snapshot cache are the same as
+        the positions after replaying all moves.
+        Also checks that moves can be taken back after restoring a
+        position. */
+    public void testSnapshotCache()
+    {
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        GameTree tree = createTree(nodes);
+        SnapshotCache cache = tree.getSnapshotCache();
+        cache.setMaxSnapshots(0);
+        ArrayList<Board> expected = new ArrayList<Board>();
+        for (Node node : nodes)
+        {
+            Board board = new Board(9);
+            new BoardUpdater().update(tree, node, board);
+            expected.add(board);
+        }
+        cache.setInterval(4);
+        cache.setMaxSnapshots(3);
+        Board board = new Board(9);
+        int[] order = { 30, 5, 29, 12, 35, 39, 41, 20, 40, 9, 0, 41, 38, 25 };
+        for (int i = 0; i < order.length; ++i)
+        {
+            Node target = nodes.get(order[i]);
+            new BoardUpdater().update(tree, target, board);
+            checkSameBoard(expected.get(order[i]), board);
+            m_updater.update(tree, target, board);
+            checkSameBoard(expected.get(order[i]), board);
+            assertTrue(cache.getNumberSnapshots() <= 3);
+        }
+        assertTrue(cache.getNumberSnapshots() > 0);
+        new BoardUpdater().update(tree, nodes.get(29), board);
+        board.undo(board.getNumberMoves());
+        for (GoPoint p : board)
+            assertEquals(EMPTY, board.getColor(p));
+    }
+
     /** Test that setting a stone on an point occupied by the second move
         in a game works.
         Checks for a bug that was only triggered, if the changed stone color
@@ -82,4 +143,49 @@ public final class BoardUpdaterTest
     }
 
     private BoardUpdater m_updater;
+
+    private void checkSameBoard(Board expected, Board board)
+    {
+        assertEquals(expected.getToMove(), board.getToMove());
+        assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+        for (int i = 0; i < board.getNumberMoves(); ++i)
+            assertEquals(expected.getMove(i), board.getMove(i));
+        for (GoPoint p : board)
+            assertEquals(expected.getColor(p), board.getColor(p));
+    }
+
+    /** Create a 9x9 game tree with a variation and a setup node.
+        @param nodes The list to add the nodes to, except the root node. */
+    private GameTree createTree(ArrayList<Node> nodes)
+    {
+        GameTree tree = new GameTree(9, new Komi(6.5), null, null, null);
+        Node node = tree.getRoot();
+        GoColor c = BLACK;
+        for (int i = 0; i < 30; ++i)
+        {
+            Node child = new Node(Move.get(c, GoPoint.get(i % 9, i / 9)));
+            node.append(child);
+            nodes.add(child);
+            node = child;
+            c = c.otherColor();
+        }
+        Node variation = nodes.get(10);
+        for (int i = 0; i < 10; ++i)
+        {
+            Node child = new Node(Move.get(c, GoPoint.get(i, 8)));
+            variation.append(child);
+            nodes.add(child);
+            variation = child;
+            c = c.otherColor();
+        }
+        Node setup = new Node();
+        setup.addStone(WHITE, GoPoint.get(4, 4));
+        setup.addStone(BLACK, GoPoint.get(0, 0));
+        nodes.get(20).append(setup);
+        nodes.add(setup);
+        Node afterSetup = new Node(Move.get(BLACK, GoPoint.get(5, 5)));
+        setup.append(afterSetup);
+        nodes.add(afterSetup);
+        return tree;
+    }
 }
@@ -2,6 +2,7 @@
 
 package net.sf.gogui.go;
 
+import java.util.Random;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
 import static net.sf.gogui.go.GoColor.EMPTY;
@@ -64,6 +65,37 @@ public final class BoardTest
     }
 
     /** Test Board.getKilled(). */
+    /** Test that moves played before Board.copyFrom() can be taken back on
+        the copy. */
+    public void testCopyFrom()
+    {
+        Random random = new Random(2);
+        Board board = new Board(7);
+        GoColor[][] positions = new GoColor[100][];
+        for (int i = 0; i < 100; ++i)
+        {
+            positions[i] = getPosition(board);
+            board.play(random.nextBoolean() ? BLACK : WHITE,
+                       GoPoint.get(random.nextInt(7), random.nextInt(7)));
+        }
+        Board copy = new Board(19);
+        copy.copyFrom(board);
+        assertEquals(7, copy.getSize());
+        assertEquals(board.getHash(), copy.getHash());
+        assertEquals(board.getToMove(), copy.getToMove());
+        assertEquals(board.getCaptured(BLACK), copy.getCaptured(BLACK));
+        checkBlocks(copy);
+        for (int i = 99; i >= 0; --i)
+        {
+            copy.undo();
+            GoColor[] position = getPosition(copy);
+            for (int j = 0; j < position.length; ++j)
+                assertEquals(positions[i][j], position[j]);
+            checkBlocks(copy);
+        }
+        assertEquals(100, board.getNumberMoves());
+    }
+
     public void testGetKilled()
     {
         Board board = new Board(19);
@@ -91,6 +123,10 @@ public final class BoardTest
         board.undo();
         board.play(WHITE, GoPoint.get(3, 0));
         assertTrue(board.getKilled().isEmpty());
+        board.undo();
+        board.play(WHITE, GoPoint.get(2, 0));
+        assertEquals(3, board.getKilled().size());
+        assertEquals(3, board.getCaptured(BLACK));
     }
 
     /** Test Board.getSuicide(). */
@@ -118,6 +154,68 @@ public final class BoardTest
         assertTrue(suicide.contains(GoPoint.get(1, 0)));
     }
 
+    /** Test that the hash depends only on the position. */
+    public void testHash()
+    {
+        Board board = new Board(19);
+        long emptyHash = board.getHash();
+        board.play(BLACK, GoPoint.get(3, 3));
+        board.play(WHITE, GoPoint.get(4, 4));
+        long hash = board.getHash();
+        assertTrue(hash != emptyHash);
+        board.undo(2);
+        assertEquals(emptyHash, board.getHash());
+        board.play(WHITE, GoPoint.get(4, 4));
+        board.play(BLACK, GoPoint.get(3, 3));
+        assertEquals(hash, board.getHash());
+        board.setup(new PointList(GoPoint.get(3, 3)),
+                    new PointList(GoPoint.get(4, 4)), BLACK);
+        assertEquals(hash, board.getHash());
+        assertTrue(board.getSituationalHash()
+                   != new Board(19).getSituationalHash());
+    }
+
+    /** Test Board.isRepetition() with a ko fight. */
+    public void testIsRepetition()
+    {
+        Board board = new Board(19);
+        // 3 . . . .
+        // 2 @ O . .
+        // 1 . @ O .
+        //   A B C D
+        PointList black = new PointList();
+        PointList white = new PointList();
+        black.add(GoPoint.get(0, 1));
+        black.add(GoPoint.get(1, 0));
+        white.add(GoPoint.get(1, 1));
+        white.add(GoPoint.get(2, 0));
+        board.setup(black, white, BLACK);
+        assertFalse(board.isRepetition(false));
+        board.play(WHITE, GoPoint.get(0, 0));
+        assertFalse(board.isRepetition(false));
+        board.play(BLACK, GoPoint.get(1, 0));
+        assertTrue(board.isRepetition(false));
+        assertFalse(board.isRepetition(true));
+        board.play(WHITE, GoPoint.get(0, 0));
+        assertTrue(board.isRepetition(true));
+        board.undo();
+        board.undo();
+        assertFalse(board.isRepetition(false));
+    }
+
+    /** Test that Board.isRepetition() uses positions changed by
+        Board.setPoints(). */
+    public void testIsRepetitionSetPoints()
+    {
+        Board board = new Board(19);
+        board.play(BLACK, GoPoint.get(0, 0));
+        board.setPoints(new PointList(GoPoint.get(1, 0)), BLACK);
+        assertFalse(board.isRepetition(false));
+        board.play(WHITE, GoPoint.get(2, 0));
+        board.setPoints(new PointList(GoPoint.get(2, 0)), EMPTY);
+        assertTrue(board.isRepetition(false));
+    }
+
     /** Test Board.isKo(). */
     public void testIsKo()
     {
@@ -158,6 +256,47 @@ public final class BoardTest
         assertTrue(board.isSuicide(WHITE, GoPoint.get(1, 0)));
     }
 
+    /** Test play and undo of random moves against a simple reference.
+        Checks that isSuicide and isCaptureOrSuicide predict the result of
+        the move, that blocks are consistent with a flood fill and that
+        undo restores the previous position. */
+    public void testRandomPlayUndo()
+    {
+        Random random = new Random(1);
+        for (int size = 1; size <= 9; size += 2)
+        {
+            Board board = new Board(size);
+            GoColor[][] positions = new GoColor[201][];
+            for (int i = 0; i < 200; ++i)
+            {
+                positions[i] = getPosition(board);
+                GoPoint p = GoPoint.get(random.nextInt(size),
+                                        random.nextInt(size));
+                GoColor c = (random.nextBoolean() ? BLACK : WHITE);
+                boolean isEmpty = (board.getColor(p) == EMPTY);
+                boolean isSuicide = board.isSuicide(c, p);
+                boolean isCaptureOrSuicide = board.isCaptureOrSuicide(c, p);
+                board.play(c, p);
+                if (isEmpty)
+                {
+                    assertEquals(isSuicide, ! board.getSuicide().isEmpty());
+                    assertEquals(isCaptureOrSuicide,
+                                 ! board.getSuicide().isEmpty()
+                                 || ! board.getKilled().isEmpty());
+                }
+                checkBlocks(board);
+            }
+            for (int i = 199; i >= 0; --i)
+            {
+                board.undo();
+                GoColor[] position = getPosition(board);
+                for (int j = 0; j < position.length; ++j)
+                    assertEquals(positions[i][j], position[j]);
+                checkBlocks(board);
+            }
+        }
+    }
+
     public void testGetLastMove()
     {
         Board board = new Board(19);
@@ -181,6 +320,24 @@ public final class BoardTest
         assertEquals(WHITE, board.getColor(point));
     }
 
+    /** Test undo of a move on an occupied point after setPoints().
+        The blocks stored when the stone was removed are no longer valid
+        after setPoints() changed the position. */
+    public void testPlayOnOccupiedSetPoints()
+    {
+        Board board = new Board(19);
+        board.play(WHITE, GoPoint.get(0, 0));
+        board.play(WHITE, GoPoint.get(1, 0));
+        board.play(BLACK, GoPoint.get(0, 0));
+        board.setPoints(new PointList(GoPoint.get(2, 0)), WHITE);
+        board.undo();
+        assertEquals(WHITE, board.getColor(GoPoint.get(0, 0)));
+        PointList stones = new PointList();
+        board.getStones(GoPoint.get(0, 0), WHITE, stones);
+        assertEquals(3, stones.size());
+        assertTrue(stones.contains(GoPoint.get(2, 0)));
+    }
+
     /** Test that setup does not cause suicide. */
     public void testSetupSuicide()
     {
@@ -234,4 +391,43 @@ public final class BoardTest
         assertEquals(EMPTY, board.getColor(GoPoint.get(0, 0)));
         assertEquals(BLACK, board.getToMove());
     }
+
+    private static void checkBlocks(Board board)
+    {
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c == EMPTY)
+                continue;
+            PointList stones = new PointList();
+            board.getStones(p, c, stones);
+            assertTrue(stones.contains(p));
+            Marker marker = new Marker(board.getSize());
+            PointList stack = new PointList(p);
+            marker.set(p);
+            int n = 0;
+            while (! stack.isEmpty())
+            {
+                GoPoint stone = stack.pop();
+                ++n;
+                assertTrue(stones.contains(stone));
+                for (GoPoint adj : board.getAdjacent(stone))
+                    if (board.getColor(adj) == c && ! marker.get(adj))
+                    {
+                        marker.set(adj);
+                        stack.add(adj);
+                    }
+            }
+            assertEquals(n, stones.size());
+        }
+    }
+
+    private static GoColor[] getPosition(Board board)
+    {
+        int size = board.getSize();
+        GoColor[] result = new GoColor[size * size];
+        for (GoPoint p : board)
+            result[p.getY() * size + p.getX()] = board.getColor(p);
+        return result;
+    }
 }
@@ -0,0 +1,69 @@
+// GtpClientTest.java
+
+package net.sf.gogui.gtp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+public final class GtpClientTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GtpClientTest.class);
+    }
+
+    public void setUp() throws IOException, GtpError
+    {
+        m_expect = new GtpExpectEngine(null);
+        m_gtp = new GtpEngineConnection(m_expect).getGtpClient();
+    }
+
+    /** Test sendBatch() with more commands than can be pending. */
+    public void testSendBatch() throws GtpError
+    {
+        ArrayList<String> commands = new ArrayList<String>();
+        for (int i = 0; i < 300; ++i)
+        {
+            commands.add("cmd" + i);
+            m_expect.expect("cmd" + i, "response" + i);
+        }
+        ArrayList<String> responses = m_gtp.sendBatch(commands);
+        assertTrue(m_expect.isExpectQueueEmpty());
+        assertEquals(300, responses.size());
+        for (int i = 0; i < 300; ++i)
+            assertEquals("response" + i, responses.get(i));
+    }
+
+    /** Test that sendBatch() reads all responses if a command fails. */
+    public void testSendBatchError() throws GtpError
+    {
+        ArrayList<String> commands = new ArrayList<String>();
+        for (int i = 0; i < 100; ++i)
+        {
+            commands.add("cmd" + i);
+            if (i != 50)
+                m_expect.expect("cmd" + i, "");
+        }
+        try
+        {
+            m_gtp.sendBatch(commands);
+            fail();
+        }
+        catch (GtpError e)
+        {
+            assertEquals("cmd50", e.getCommand());
+        }
+        m_expect.expect("name", "Expect");
+        assertEquals("Expect", m_gtp.send("name"));
+    }
+
+    private GtpClientBase m_gtp;
+
+    private GtpExpectEngine m_expect;
+}
@@ -0,0 +1,136 @@
+// GameTreeLayoutTest.java
+
+package net.sf.gogui.gui;
+
+import java.util.HashSet;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.Node;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoColor;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class GameTreeLayoutTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GameTreeLayoutTest.class);
+    }
+
+    /** Test layout of a tree with variations.
+        <pre>
+        root - b1 - w1
+                  \ w2 - b2
+                       \ b3
+        </pre> */
+    public void testLayout()
+    {
+        Node root = new Node();
+        Node b1 = append(root, BLACK);
+        Node w1 = append(b1, WHITE);
+        Node w2 = append(b1, WHITE);
+        Node b2 = append(w2, BLACK);
+        Node b3 = append(w2, BLACK);
+        HashSet<ConstNode> isExpanded = new HashSet<ConstNode>();
+        isExpanded.add(root);
+        isExpanded.add(b1);
+        isExpanded.add(w2);
+        GameTreeLayout layout = new GameTreeLayout(root, isExpanded);
+        assertEquals(6, layout.getNumberNodes());
+        assertEquals(4, layout.getNumberColumns());
+        assertEquals(2, layout.getMaxRow());
+        checkPosition(layout, root, 0, 0);
+        checkPosition(layout, b1, 1, 0);
+        checkPosition(layout, w1, 2, 0);
+        checkPosition(layout, w2, 2, 1);
+        checkPosition(layout, b2, 3, 1);
+        checkPosition(layout, b3, 3, 2);
+        assertEquals(1, layout.getJunctionRow(layout.getIndex(b1)));
+        assertEquals(2, layout.getJunctionRow(layout.getIndex(w2)));
+        assertEquals(0, layout.getJunctionRow(layout.getIndex(w1)));
+        assertEquals(3, layout.getMoveNumber(layout.getIndex(b2)));
+        assertEquals(layout.getIndex(b1),
+                     layout.getFather(layout.getIndex(w2)));
+        assertEquals(-1, layout.getFather(layout.getIndex(root)));
+        assertEquals(-1, layout.getNodeAt(1, 1));
+        assertEquals(-1, layout.getNodeAt(4, 0));
+    }
+
+    public void testCollapsed()
+    {
+        Node root = new Node();
+        Node b1 = append(root, BLACK);
+        Node w1 = append(b1, WHITE);
+        HashSet<ConstNode> isExpanded = new HashSet<ConstNode>();
+        isExpanded.add(root);
+        GameTreeLayout layout = new GameTreeLayout(root, isExpanded);
+        assertEquals(2, layout.getNumberNodes());
+        assertEquals(-1, layout.getIndex(w1));
+    }
+
+    public void testAdd()
+    {
+        Node root = new Node();
+        Node b1 = append(root, BLACK);
+        Node w1 = append(b1, WHITE);
+        Node w2 = append(b1, WHITE);
+        HashSet<ConstNode> isExpanded = new HashSet<ConstNode>();
+        isExpanded.add(root);
+        isExpanded.add(b1);
+        GameTreeLayout layout = new GameTreeLayout(root, isExpanded);
+        Node b2 = append(w1, BLACK);
+        layout.add(b2);
+        Node b3 = append(w2, BLACK);
+        layout.add(b3);
+        Node w3 = append(b3, WHITE);
+        layout.add(w3);
+        checkPosition(layout, b2, 3, 0);
+        checkPosition(layout, b3, 3, 1);
+        checkPosition(layout, w3, 4, 1);
+        assertEquals(5, layout.getNumberColumns());
+        assertEquals(2, layout.getColumnSize(3));
+        assertEquals(layout.getIndex(b2), layout.getColumnNode(3, 0));
+        assertEquals(layout.getIndex(b3), layout.getColumnNode(3, 1));
+        assertEquals(4, layout.getMoveNumber(layout.getIndex(w3)));
+    }
+
+    /** Test that deep trees do not cause a stack overflow. */
+    public void testDeep()
+    {
+        Node root = new Node();
+        HashSet<ConstNode> isExpanded = new HashSet<ConstNode>();
+        Node node = root;
+        for (int i = 0; i < 100000; ++i)
+        {
+            isExpanded.add(node);
+            node = append(node, i % 2 == 0 ? BLACK : WHITE);
+        }
+        GameTreeLayout layout = new GameTreeLayout(root, isExpanded);
+        assertEquals(100001, layout.getNumberNodes());
+        checkPosition(layout, node, 100000, 0);
+    }
+
+    private static Node append(Node father, GoColor c)
+    {
+        Node node = new Node(Move.get(c, GoPoint.get(0, 0)));
+        father.append(node);
+        return node;
+    }
+
+    private void checkPosition(GameTreeLayout layout, ConstNode node,
+                               int column, int row)
+    {
+        int index = layout.getIndex(node);
+        assertTrue(index >= 0);
+        assertEquals(column, layout.getColumn(index));
+        assertEquals(row, layout.getRow(index));
+        assertEquals(index, layout.getNodeAt(column, row));
+    }
+}
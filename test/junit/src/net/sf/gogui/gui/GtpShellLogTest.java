@@ -0,0 +1,65 @@
+// GtpShellLogTest.java
+
+package net.sf.gogui.gui;
+
+public final class GtpShellLogTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GtpShellLogTest.class);
+    }
+
+    public void testFlush()
+    {
+        GtpShellLog log = new GtpShellLog(10);
+        log.append("foo\n", null);
+        assertEquals(0, log.getNumberLines());
+        assertTrue(log.flush());
+        assertEquals(1, log.getNumberLines());
+        assertEquals("foo", log.getLine(0).getText());
+        assertFalse(log.flush());
+    }
+
+    public void testRing()
+    {
+        GtpShellLog log = new GtpShellLog(3);
+        for (int i = 0; i < 5; ++i)
+            log.append(i + "\n", null);
+        log.append("5", null);
+        log.flush();
+        assertEquals(2, log.getLinesTruncated());
+        assertEquals(4, log.getNumberLines());
+        assertEquals("2", log.getLine(0).getText());
+        assertEquals("4", log.getLine(2).getText());
+        assertEquals("5", log.getLine(3).getText());
+        assertEquals("2\n3\n4\n5", log.getText());
+    }
+
+    public void testStyles()
+    {
+        GtpShellLog log = new GtpShellLog(10);
+        log.append("00:01 ", "time", "genmove b\n= C3\n\n", "output");
+        log.append("a\tb", "log");
+        log.append("c\n", "log");
+        log.flush();
+        assertEquals(4, log.getNumberLines());
+        GtpShellLog.Line line = log.getLine(0);
+        assertEquals("00:01 genmove b", line.getText());
+        assertEquals(2, line.getNumberRuns());
+        assertEquals("time", line.getRunStyle(0));
+        assertEquals(6, line.getRunEnd(0));
+        assertEquals("output", line.getRunStyle(1));
+        assertEquals(6, line.getRunStart(1));
+        assertEquals(0, log.getLine(2).getNumberRuns());
+        line = log.getLine(3);
+        assertEquals("a       bc", line.getText());
+        assertEquals(1, line.getNumberRuns());
+        assertEquals(15, log.getMaxLineLength());
+    }
+}
@@ -7,8 +7,13 @@ import java.io.UnsupportedEncodingException;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
 import net.sf.gogui.game.TimeSettings;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
 
 public final class SgfWriterTest
     extends junit.framework.TestCase
@@ -46,6 +51,34 @@ public final class SgfWriterTest
         assertTrue(s.indexOf("KM[4]") >= 0);
     }
 
+    /** Test that deep trees do not cause a stack overflow. */
+    public void testDeepTree() throws Exception
+    {
+        GameTree tree = new GameTree();
+        Node node = tree.getRoot();
+        for (int i = 0; i < 100000; ++i)
+        {
+            Node child = new Node(Move.getPass(i % 2 == 0 ? BLACK : WHITE));
+            node.append(child);
+            node = child;
+        }
+        String s = writeToString(tree);
+        assertTrue(s.trim().endsWith(";W[])"));
+    }
+
+    public void testVariations() throws Exception
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        Node b1 = new Node(Move.get(BLACK, GoPoint.get(0, 0)));
+        root.append(b1);
+        b1.append(new Node(Move.get(WHITE, GoPoint.get(1, 0))));
+        b1.append(new Node(Move.get(WHITE, GoPoint.get(2, 0))));
+        root.append(new Node(Move.get(BLACK, GoPoint.get(3, 0))));
+        String s = writeToString(tree).replaceAll("\\s", "");
+        assertTrue(s.endsWith("(;B[as](;W[bs])(;W[cs]))(;B[ds]))"));
+    }
+
     public void testWriteTimeSettings() throws Exception
     {
         GameTree tree = new GameTree();
@@ -2,10 +2,15 @@
 
 package net.sf.gogui.tools.statistics;
 
+import java.io.File;
 import java.util.ArrayList;
 import net.sf.gogui.gtp.GtpClientBase;
+import net.sf.gogui.gtp.GtpCommand;
+import net.sf.gogui.gtp.GtpEngine;
 import net.sf.gogui.gtp.GtpEngineClient;
+import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gtp.GtpExpectEngine;
+import net.sf.gogui.util.Table;
 
 public final class StatisticsTest
     extends junit.framework.TestCase
@@ -51,4 +56,63 @@ public final class StatisticsTest
                        allowSetup, backward, false);
         assertTrue(expect.isExpectQueueEmpty());
     }
+
+    /** Test that the rows of a run with several engines are in the order
+        of the files. */
+    public void testThreads() throws Exception
+    {
+        ArrayList<GtpClientBase> gtp = new ArrayList<GtpClientBase>();
+        for (int i = 0; i < 3; ++i)
+            gtp.add(new GtpEngineClient(new MoveCountEngine()));
+        ArrayList<String> sgfFiles = new ArrayList<String>();
+        for (int i = 0; i < 10; ++i)
+            sgfFiles.add(getClass().getResource("game-1.sgf").getFile());
+        ArrayList<String> commands = new ArrayList<String>();
+        commands.add("foo");
+        Statistics statistics = new Statistics();
+        statistics.setQuiet(true);
+        statistics.run(gtp, null, sgfFiles, 9, commands, null, null, false,
+                       false, false);
+        File file = File.createTempFile("gogui-statistics", ".dat");
+        file.deleteOnExit();
+        statistics.saveTable(file);
+        Table table = new Table();
+        table.read(file);
+        assertEquals("10", table.getProperty("Games"));
+        assertEquals(40, table.getNumberRows());
+        for (int i = 0; i < 40; ++i)
+        {
+            assertEquals(i % 4, table.getInt("Move", i));
+            assertEquals(i % 4, table.getInt("foo", i));
+        }
+        file.delete();
+    }
+
+    /** GTP engine that responds to the command foo with the number of
+        moves played since the last clear_board. */
+    private static class MoveCountEngine
+        extends GtpEngine
+    {
+        public MoveCountEngine()
+        {
+            super(null);
+        }
+
+        public void handleCommand(GtpCommand cmd) throws GtpError
+        {
+            String command = cmd.getCommand();
+            if (command.equals("boardsize") || command.equals("komi"))
+                return;
+            if (command.equals("clear_board"))
+                m_numberMoves = 0;
+            else if (command.equals("play"))
+                ++m_numberMoves;
+            else if (command.equals("foo"))
+                cmd.setResponse(Integer.toString(m_numberMoves));
+            else
+                super.handleCommand(cmd);
+        }
+
+        private int m_numberMoves;
+    }
 }
@@ -0,0 +1,92 @@
+// CrossTableTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.util.Table;
+
+public final class CrossTableTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CrossTableTest.class);
+    }
+
+    public void testAddResult()
+    {
+        CrossTable crossTable = new CrossTable(3);
+        assertTrue(crossTable.addResult(0, 1, "B+R"));
+        assertTrue(crossTable.addResult(0, 1, "0"));
+        assertTrue(crossTable.addResult(2, 0, "W+3.5"));
+        assertFalse(crossTable.addResult(2, 0, "?"));
+        assertEquals(1.5, crossTable.getPoints(0, 1), 0);
+        assertEquals(0.5, crossTable.getPoints(1, 0), 0);
+        assertEquals(1, crossTable.getPoints(0, 2), 0);
+        assertEquals(2.5, crossTable.getPoints(0), 0);
+        assertEquals(3, crossTable.getNumberGames(0));
+        assertEquals(1, crossTable.getNumberGames(2, 0));
+        assertEquals(0, crossTable.getNumberGames(1, 2));
+    }
+
+    /** Test the Elo estimate with the virtual draws.
+        With two programs and 75 of 100 points, the ratio of the strengths
+        is 75.5 / 25.5. With a chain of pairings, the differences add up. */
+    public void testElo()
+    {
+        CrossTable crossTable = new CrossTable(4);
+        for (int i = 0; i < 100; ++i)
+        {
+            String result = (i % 4 == 0 ? "W+R" : "B+R");
+            crossTable.addResult(0, 1, result);
+            crossTable.addResult(1, 2, result);
+        }
+        double diff = 400 * Math.log10(75.5 / 25.5);
+        double[] elo = crossTable.getElo();
+        assertEquals(diff, elo[0] - elo[1], 1e-6);
+        assertEquals(diff, elo[1] - elo[2], 1e-6);
+        assertEquals(0, elo[0] + elo[1] + elo[2], 1e-6);
+        assertTrue(Double.isNaN(elo[3]));
+        double[] error = crossTable.getEloError();
+        assertTrue(error[1] < error[0]);
+        assertEquals(error[0], error[2], 1e-6);
+        assertTrue(Double.isNaN(error[3]));
+    }
+
+    public void testEloAllWins()
+    {
+        CrossTable crossTable = new CrossTable(2);
+        for (int i = 0; i < 10; ++i)
+            crossTable.addResult(1, 0, "B+R");
+        double[] elo = crossTable.getElo();
+        assertEquals(400 * Math.log10(10.5 / 0.5), elo[1] - elo[0], 1e-6);
+    }
+
+    public void testSetLabels()
+    {
+        CrossTable crossTable = new CrossTable(4);
+        crossTable.setLabels(new String[] { "A", "B", "B", "B" },
+                             new String[] { "1", "1", "2", "2" });
+        assertEquals("A", crossTable.getLabel(0));
+        assertEquals("B:1", crossTable.getLabel(1));
+        assertEquals("B[3]", crossTable.getLabel(2));
+        assertEquals("B[4]", crossTable.getLabel(3));
+    }
+
+    public void testToTable()
+    {
+        CrossTable crossTable = new CrossTable(2);
+        crossTable.addResult(0, 1, "B+R");
+        crossTable.addResult(1, 0, "0");
+        Table table = crossTable.toTable();
+        assertEquals(2, table.getNumberRows());
+        assertEquals("1.5/2", table.get(3, 0));
+        assertEquals("-", table.get(2, 0));
+        assertEquals("0.5/2", table.get(2, 1));
+        assertEquals("0.75", table.get(5, 0));
+    }
+}
@@ -0,0 +1,113 @@
+// DuplicateIndexTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.BoardUtil;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.tools.twogtp.Compare.Placement;
+
+public final class DuplicateIndexTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(DuplicateIndexTest.class);
+    }
+
+    public void testRotated()
+    {
+        DuplicateIndex index = new DuplicateIndex(SIZE);
+        Random random = new Random(1);
+        ArrayList<Placement> moves = createGame(random, 30);
+        index.add(0, moves);
+        index.add(1, createGame(random, 30));
+        for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+            assertEquals("0", index.checkDuplicate(rotate(moves, rot),
+                                                   false, false));
+        ArrayList<Placement> changed = rotate(moves, 5);
+        changed.set(10, new Placement(false, BLACK, null));
+        assertEquals("0?", index.checkDuplicate(changed, false, false));
+        assertEquals("-", index.checkDuplicate(createGame(random, 30),
+                                               false, false));
+    }
+
+    /** Compare results with Compare.checkDuplicate() for random games with
+        many similar games. */
+    public void testSameAsCompare()
+    {
+        Board board = new Board(SIZE);
+        DuplicateIndex index = new DuplicateIndex(SIZE);
+        TreeMap<Integer,ArrayList<Placement>> games =
+            new TreeMap<Integer,ArrayList<Placement>>();
+        Random random = new Random(2);
+        for (int i = 0; i < 300; ++i)
+        {
+            ArrayList<Placement> moves;
+            if (games.isEmpty() || random.nextInt(3) == 0)
+                moves = createGame(random, 5 + random.nextInt(40));
+            else
+            {
+                ArrayList<Placement> game =
+                    games.get(random.nextInt(games.size()));
+                moves = rotate(game, random.nextInt(8));
+                int numberChanges = random.nextInt(moves.size() / 4 + 1);
+                for (int j = 0; j < numberChanges; ++j)
+                {
+                    int k = random.nextInt(moves.size());
+                    if (random.nextInt(4) == 0)
+                        moves.remove(k);
+                    else
+                        moves.set(k, createMove(random, k));
+                }
+            }
+            boolean alternated = random.nextBoolean();
+            boolean useAlternate = random.nextBoolean();
+            String expected = Compare.checkDuplicate(board, moves, games,
+                                                     useAlternate, alternated);
+            assertEquals(expected,
+                         index.checkDuplicate(moves, useAlternate,
+                                              alternated));
+            games.put(i, moves);
+            index.add(i, moves);
+        }
+    }
+
+    private static final int SIZE = 9;
+
+    private static ArrayList<Placement> createGame(Random random,
+                                                   int numberMoves)
+    {
+        ArrayList<Placement> moves = new ArrayList<Placement>();
+        for (int i = 0; i < numberMoves; ++i)
+            moves.add(createMove(random, i));
+        return moves;
+    }
+
+    private static Placement createMove(Random random, int moveNumber)
+    {
+        GoPoint p = GoPoint.get(random.nextInt(SIZE), random.nextInt(SIZE));
+        return new Placement(false, moveNumber % 2 == 0 ? BLACK : WHITE, p);
+    }
+
+    private static ArrayList<Placement> rotate(ArrayList<Placement> moves,
+                                               int rot)
+    {
+        ArrayList<Placement> result = new ArrayList<Placement>();
+        for (Placement move : moves)
+            result.add(new Placement(move.m_isSetup, move.m_color,
+                                     BoardUtil.rotate(rot, move.m_point,
+                                                      SIZE)));
+        return result;
+    }
+}
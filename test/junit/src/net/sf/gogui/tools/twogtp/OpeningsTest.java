@@ -0,0 +1,138 @@
+// OpeningsTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class OpeningsTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(OpeningsTest.class);
+    }
+
+    public void setUp() throws IOException
+    {
+        m_directory = File.createTempFile("gogui", "");
+        m_directory.delete();
+        m_directory.mkdir();
+    }
+
+    public void tearDown()
+    {
+        File[] files = m_directory.listFiles();
+        for (int i = 0; i < files.length; ++i)
+            files[i].delete();
+        m_directory.delete();
+    }
+
+    /** Test that openings equal after mirroring are ignored. */
+    public void testDuplicates() throws Exception
+    {
+        write("a.sgf", "(;SZ[9];B[cc];W[gg])");
+        write("b.sgf", "(;SZ[9]AB[ee];W[cc])");
+        // a.sgf mirrored
+        write("c.sgf", "(;SZ[9];B[gc];W[cg])");
+        write("d.sgf", "(;SZ[9];B[cc];W[gg];B[ee])");
+        write("e.txt", "(;SZ[9])");
+        Openings openings = new Openings(m_directory);
+        assertEquals(3, openings.getNumber());
+        assertEquals(1, openings.getNumberDuplicates());
+        assertEquals("a.sgf", openings.getFile(0).getName());
+        assertEquals("b.sgf", openings.getFile(1).getName());
+        assertEquals("d.sgf", openings.getFile(2).getName());
+    }
+
+    /** Test that openings with setup stones equal after mirroring are
+        ignored. */
+    public void testDuplicatesSetup() throws Exception
+    {
+        write("a.sgf", "(;SZ[9]AB[aa][ca]AW[ee];W[gg])");
+        // a.sgf mirrored, setup stones in a different order
+        write("b.sgf", "(;SZ[9]AB[ga][ia]AW[ee];W[cg])");
+        Openings openings = new Openings(m_directory);
+        assertEquals(1, openings.getNumber());
+        assertEquals(1, openings.getNumberDuplicates());
+    }
+
+    public void testGetTree() throws Exception
+    {
+        write("a.sgf",
+              "(;SZ[9]AB[ee]AW[cc]PL[W]C[Comment];W[gg](;B[])(;B[aa]))");
+        Openings openings = new Openings(m_directory);
+        assertEquals(9, openings.getBoardSize(0));
+        GameTree tree = openings.getTree(0);
+        assertEquals(9, tree.getBoardSize());
+        ConstNode root = tree.getRootConst();
+        assertEquals(1, root.getSetup(BLACK).size());
+        assertEquals(GoPoint.get(4, 4), root.getSetup(BLACK).get(0));
+        assertEquals(GoPoint.get(2, 6), root.getSetup(WHITE).get(0));
+        assertEquals(WHITE, root.getPlayer());
+        assertFalse(root.hasComment());
+        ConstNode node = root.getChildConst();
+        assertEquals(Move.get(WHITE, 6, 2), node.getMove());
+        node = node.getChildConst();
+        assertEquals(Move.getPass(BLACK), node.getMove());
+        assertFalse(node.hasChildren());
+        // Each call returns a new tree
+        assertNotSame(tree, openings.getTree(0));
+    }
+
+    public void testOrder() throws Exception
+    {
+        for (int i = 0; i < 5; ++i)
+            write(i + ".sgf", "(;SZ[9];B[" + (char)('a' + i) + "a])");
+        Openings sequential = new Openings(m_directory);
+        Openings random =
+            new Openings(m_directory, Openings.Order.RANDOM);
+        Openings balanced =
+            new Openings(m_directory, Openings.Order.BALANCED);
+        Openings balanced2 =
+            new Openings(m_directory, Openings.Order.BALANCED);
+        boolean isSequential = true;
+        for (int cycle = 0; cycle < 4; ++cycle)
+        {
+            boolean[] used = new boolean[5];
+            for (int i = 0; i < 5; ++i)
+            {
+                int gameNumber = 5 * cycle + i;
+                assertEquals(i, sequential.getIndex(gameNumber));
+                int index = balanced.getIndex(gameNumber);
+                assertFalse(used[index]);
+                used[index] = true;
+                if (index != i)
+                    isSequential = false;
+                int randomIndex = random.getIndex(gameNumber);
+                assertTrue(randomIndex >= 0 && randomIndex < 5);
+            }
+        }
+        assertFalse(isSequential);
+        // The choice does not depend on the order of the calls
+        for (int gameNumber = 19; gameNumber >= 0; --gameNumber)
+            assertEquals(balanced.getIndex(gameNumber),
+                         balanced2.getIndex(gameNumber));
+    }
+
+    private File m_directory;
+
+    private void write(String name, String text) throws IOException
+    {
+        FileWriter writer = new FileWriter(new File(m_directory, name));
+        writer.write(text);
+        writer.close();
+    }
+}
@@ -0,0 +1,97 @@
+// SprtTest.java
+
+package net.sf.gogui.tools.twogtp;
+
+import net.sf.gogui.util.ErrorMessage;
+
+public final class SprtTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(SprtTest.class);
+    }
+
+    public void testBounds()
+    {
+        Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+        assertEquals(-2.944, sprt.getLowerBound(), 1e-3);
+        assertEquals(2.944, sprt.getUpperBound(), 1e-3);
+    }
+
+    public void testDecision()
+    {
+        Sprt sprt = new Sprt(0, 50, 0.05, 0.05);
+        int numberGames = 0;
+        while (! sprt.isFinished())
+        {
+            // Black wins 3 of 4 games
+            assertTrue(sprt.addResult(numberGames % 4 == 0 ? "W+R"
+                                      : "B+3.5"));
+            ++numberGames;
+            assertTrue(numberGames < 1000);
+        }
+        assertTrue(sprt.isH1Accepted());
+        assertFalse(sprt.isH0Accepted());
+        assertEquals(numberGames, sprt.getNumberGames());
+        assertTrue(sprt.getResult().startsWith("H1 accepted"));
+        // Results after the decision do not change it
+        for (int i = 0; i < 100; ++i)
+            sprt.addResult("W+R");
+        assertTrue(sprt.isH1Accepted());
+        sprt = new Sprt(0, 50, 0.05, 0.05);
+        while (! sprt.isFinished())
+            sprt.addResult("W+1.5");
+        assertTrue(sprt.isH0Accepted());
+        assertTrue(sprt.getResult().startsWith("H0 accepted"));
+    }
+
+    public void testLlr()
+    {
+        Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+        for (int i = 0; i < 20; ++i)
+        {
+            sprt.addResult("B+R");
+            sprt.addResult("0");
+            sprt.addResult("B+R");
+            sprt.addResult("W+0.5");
+            sprt.addResult("B+R");
+        }
+        assertFalse(sprt.addResult("?"));
+        assertFalse(sprt.addResult(""));
+        assertEquals(100, sprt.getNumberGames());
+        assertEquals(1.7337, sprt.getLlr(), 1e-4);
+        assertFalse(sprt.isFinished());
+        assertNull(sprt.getResult());
+    }
+
+    public void testParse() throws ErrorMessage
+    {
+        assertEquals("elo0=0.0 elo1=10.0 alpha=0.05 beta=0.05",
+                     Sprt.parse("0,10").toString());
+        assertEquals("elo0=-5.0 elo1=5.0 alpha=0.01 beta=0.1",
+                     Sprt.parse("-5, 5, 0.01, 0.1").toString());
+        checkParseError("10");
+        checkParseError("0,10,0.05");
+        checkParseError("10,0");
+        checkParseError("0,10,0,0.05");
+        checkParseError("a,b");
+    }
+
+    private static void checkParseError(String spec)
+    {
+        try
+        {
+            Sprt.parse(spec);
+            fail();
+        }
+        catch (ErrorMessage e)
+        {
+        }
+    }
+}
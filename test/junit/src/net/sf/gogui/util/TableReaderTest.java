@@ -0,0 +1,192 @@
+// TableReaderTest.java
+
+package net.sf.gogui.util;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+
+public final class TableReaderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(TableReaderTest.class);
+    }
+
+    public void tearDown()
+    {
+        if (m_file != null)
+            m_file.delete();
+    }
+
+    public void testBasic() throws Exception
+    {
+        TableReader reader = open("# Key: Value\n" +
+                                  "#\n" +
+                                  "#Col1\tCol2\tCol3\n" +
+                                  "1\t2.5\tfoo\n" +
+                                  "-7\t\tbar\n" +
+                                  "3\n", 1024);
+        assertEquals("Value", reader.getProperty("Key", null));
+        assertEquals(3, reader.getNumberColumns());
+        assertEquals(2, reader.getColumnIndex("Col3"));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getInt(0));
+        assertEquals(2.5, reader.getDouble("Col2"), 0);
+        assertEquals("foo", reader.get(2));
+        assertTrue(reader.next());
+        assertEquals(-7, reader.getInt(0));
+        assertEquals("", reader.get(1));
+        assertEquals("bar", reader.get(2));
+        assertTrue(reader.next());
+        assertEquals("3", reader.get(0));
+        assertNull(reader.get(1));
+        assertNull(reader.get(2));
+        assertFalse(reader.next());
+        assertEquals(3, reader.getNumberRows());
+        reader.close();
+    }
+
+    /** Test that numbers converted without creating a string are the same
+        as converted by Integer.parseInt() and Double.parseDouble(). */
+    public void testGetNumber() throws Exception
+    {
+        String[] values = { "0", "-0", "0.1", "-2.675", "123456789",
+                            "-1234567890", "2147483647", ".5", "5.",
+                            "1234567890.12345", "12345678901234567",
+                            "1e3", "+4" };
+        StringBuilder text = new StringBuilder("#\n#Value\n");
+        for (int i = 0; i < values.length; ++i)
+            text.append(values[i]).append('\n');
+        TableReader reader = open(text.toString(), 1024);
+        for (int i = 0; i < values.length; ++i)
+        {
+            assertTrue(reader.next());
+            assertEquals(Double.parseDouble(values[i]), reader.getDouble(0),
+                         0);
+            assertEquals(Double.valueOf(Double.parseDouble(values[i])),
+                         Double.valueOf(reader.getDouble(0)));
+            try
+            {
+                int value = Integer.parseInt(values[i]);
+                assertEquals(value, reader.getInt(0));
+            }
+            catch (NumberFormatException e)
+            {
+                try
+                {
+                    reader.getInt(0);
+                    fail();
+                }
+                catch (Table.InvalidElement e2)
+                {
+                }
+            }
+        }
+        reader.close();
+    }
+
+    public void testInvalidLine() throws Exception
+    {
+        TableReader reader = open("#\n#Col1\n1\t2\n", 1024);
+        try
+        {
+            reader.next();
+            fail();
+        }
+        catch (Table.InvalidFormat e)
+        {
+        }
+        reader.close();
+    }
+
+    /** Test that reading with a small window gives the same table as
+        Table.read(Reader). */
+    public void testSameAsReadReader() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        text.append("# Key1: Value1\n# Key2: \u00e4\u00f6\u00fc\n#\n");
+        text.append("#A\tB\tC\n");
+        for (int i = 0; i < 200; ++i)
+        {
+            text.append(i).append('\t');
+            if (i % 3 == 0)
+                text.append("x").append(i % 7);
+            else if (i % 5 != 0)
+                text.append(i * 0.25);
+            if (i % 2 == 0)
+                text.append("\t\u00df").append(i);
+            text.append(i % 11 == 0 ? "\r\n" : "\n");
+        }
+        text.append("  \n#D\n1\t2\t3\t4");
+        write(text.toString());
+        // Non-ASCII characters depend on the default charset
+        Table expected = new Table();
+        expected.read(new FileReader(m_file));
+        for (int windowSize = 40; windowSize < 400; windowSize += 37)
+        {
+            TableReader reader = new TableReader(m_file, windowSize);
+            int row = 0;
+            while (reader.next())
+            {
+                assertEquals(expected.getNumberColumns() - 1 + row / 201,
+                             reader.getNumberColumns());
+                for (int i = 0; i < expected.getNumberColumns(); ++i)
+                    assertEquals(expected.get(i, row), reader.get(i));
+                ++row;
+            }
+            assertEquals(expected.getNumberRows(), row);
+            reader.close();
+        }
+        Table table = new Table();
+        table.read(m_file);
+        assertEquals(save(expected), save(table));
+    }
+
+    public void testLineTooLong() throws Exception
+    {
+        TableReader reader =
+            open("#\n#Col1\n1\n123456789012345678901234567890\n", 16);
+        assertTrue(reader.next());
+        try
+        {
+            reader.next();
+            fail();
+        }
+        catch (Table.InvalidFormat e)
+        {
+        }
+        reader.close();
+    }
+
+    private File m_file;
+
+    private TableReader open(String text, int windowSize) throws Exception
+    {
+        write(text);
+        return new TableReader(m_file, windowSize);
+    }
+
+    private static String save(Table table) throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        table.save(writer);
+        return writer.toString();
+    }
+
+    private void write(String text) throws IOException
+    {
+        m_file = File.createTempFile("gogui", ".dat");
+        FileWriter writer = new FileWriter(m_file);
+        writer.write(text);
+        writer.close();
+    }
+}
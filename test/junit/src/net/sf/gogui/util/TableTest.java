@@ -126,6 +126,67 @@ public final class TableTest
         assertTrue(errorThrown);
     }
 
+    /** Test that elements are returned unchanged, if a column changes
+        from numbers to strings. */
+    public void testGetUnchanged() throws ErrorMessage
+    {
+        String[] values = { "0", "1.50", "-0.05", "12", "", null, "007",
+                            "-0", "1e5", ".5", "5.", "1.50", "-",
+                            "123456789012345678901234", "0.000001" };
+        ArrayList<String> columnTitles = new ArrayList<String>();
+        columnTitles.add("Column 1");
+        Table table = new Table(columnTitles);
+        for (int i = 0; i < values.length; ++i)
+        {
+            table.startRow();
+            table.set(0, values[i]);
+            for (int j = 0; j <= i; ++j)
+                assertEquals(values[j], table.get(0, j));
+        }
+        assertEquals(-0.05, table.getDouble(0, 2), 0);
+        assertEquals(1e5, table.getDouble(0, 8), 0);
+        assertEquals(12, table.getInt(0, 3));
+    }
+
+    public void testGetDoubleExact() throws ErrorMessage
+    {
+        String[] values = { "0.1", "0.3", "-2.675", "1234.5678",
+                            "9007199254740991", "0.0000000000000000000001" };
+        ArrayList<String> columnTitles = new ArrayList<String>();
+        columnTitles.add("Column 1");
+        Table table = new Table(columnTitles);
+        for (int i = 0; i < values.length; ++i)
+        {
+            table.startRow();
+            table.set(0, values[i]);
+        }
+        for (int i = 0; i < values.length; ++i)
+        {
+            assertEquals(values[i], table.get(0, i));
+            assertEquals(Double.parseDouble(values[i]),
+                         table.getDouble(0, i), 0);
+        }
+    }
+
+    public void testSortByIntColumn() throws Exception
+    {
+        Table table = get("#\n" +
+                          "#Col1\tCol2\tCol3\n" +
+                          "3\tc\t0.3\n" +
+                          "1\ta\t\n" +
+                          "2\tb\t0.2\n");
+        table.sortByIntColumn("Col1", 0, table.getNumberRows());
+        assertEquals("1", table.get(0, 0));
+        assertEquals("a", table.get(1, 0));
+        assertEquals(null, table.get(2, 0));
+        assertEquals("2", table.get(0, 1));
+        assertEquals("b", table.get(1, 1));
+        assertEquals("0.2", table.get(2, 1));
+        assertEquals("3", table.get(0, 2));
+        assertEquals("c", table.get(1, 2));
+        assertEquals("0.3", table.get(2, 2));
+    }
+
     private static Table get(String string) throws Exception
     {
         Table table = new Table();